@@ -20,6 +20,7 @@ import com.denizenscript.denizen.tags.BukkitTagContext;
 import com.denizenscript.denizen.tags.core.NPCTagBase;
 import com.denizenscript.denizen.tags.core.ServerTagBase;
 import com.denizenscript.denizen.utilities.*;
+import com.denizenscript.denizen.utilities.blocks.FakeBlock;
 import com.denizenscript.denizen.utilities.command.*;
 import com.denizenscript.denizen.utilities.command.manager.CommandManager;
 import com.denizenscript.denizen.utilities.command.manager.Injector;
@@ -27,11 +28,15 @@ import com.denizenscript.denizen.utilities.command.manager.messaging.Messaging;
 import com.denizenscript.denizen.utilities.debugging.BStatsMetricsLite;
 import com.denizenscript.denizen.utilities.debugging.StatsRecord;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.debugging.DebugOutputBuffer;
 import com.denizenscript.denizen.utilities.depends.Depends;
 import com.denizenscript.denizen.utilities.entity.DenizenEntityType;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
+import com.denizenscript.denizen.utilities.flags.FlagFileHelper;
 import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
 import com.denizenscript.denizen.utilities.flags.WorldFlagHandler;
 import com.denizenscript.denizen.utilities.implementation.DenizenCoreImplementation;
+import com.denizenscript.denizen.utilities.inventory.OfflineInventoryRegistry;
 import com.denizenscript.denizen.utilities.maps.DenizenMapManager;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.interfaces.FakeArrow;
@@ -59,6 +64,7 @@ import com.denizenscript.denizencore.utilities.text.ConfigUpdater;
 import org.bukkit.*;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
@@ -69,9 +75,12 @@ import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.*;
 import java.net.URLDecoder;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 
 public class Denizen extends JavaPlugin {
 
@@ -456,10 +465,14 @@ public class Denizen extends JavaPlugin {
             }
         }.runTaskTimer(this, 100, 20 * 60 * 60);
         Bukkit.getPluginManager().registerEvents(new PlayerFlagHandler(), this);
+        Bukkit.getPluginManager().registerEvents(new OfflinePlayerDataCache(), this);
+        Bukkit.getPluginManager().registerEvents(new FakeBlock.ViewerListener(), this);
         new BukkitRunnable() {
             @Override
             public void run() {
                 PlayerFlagHandler.cleanCache();
+                OfflineInventoryRegistry.evictIdle();
+                OfflinePlayerDataCache.cleanCache();
             }
         }.runTaskTimer(this, 100, 20 * 60);
         new BukkitRunnable() {
@@ -508,7 +521,10 @@ public class Denizen extends JavaPlugin {
         Bukkit.getServer().getScheduler().cancelTasks(this);
         HandlerList.unregisterAll(this);
         saveSaves(false);
+        OfflinePlayerDataCache.flushAll();
         worldFlags.shutdown();
+        SavePipeline.shutdown();
+        DebugOutputBuffer.shutdown();
     }
 
     @Override
@@ -527,6 +543,12 @@ public class Denizen extends JavaPlugin {
     public WorldFlagHandler worldFlags;
 
     public void reloadSaves() {
+        if (scoreboardsConfig != null && SavePipeline.hasPendingWrites()) {
+            // Read the files back once pending saves are on disk, without holding up the main thread
+            SavePipeline.whenIdle(this::reloadSaves);
+            return;
+        }
+        SavePipeline.flush(30 * 1000);
         if (scoreboardsConfigFile == null) {
             scoreboardsConfigFile = new File(getDataFolder(), "scoreboards.yml");
         }
@@ -536,7 +558,7 @@ public class Denizen extends JavaPlugin {
         // Load maps from maps.yml
         DenizenMapManager.reloadMaps();
         // Reload server flags
-        serverFlagMap = SavableMapFlagTracker.loadFlagFile(new File(getDataFolder(), "server_flags").getPath());
+        serverFlagMap = FlagFileHelper.load(new File(getDataFolder(), "server_flags").getPath());
         if (worldFlags == null) {
             worldFlags = new WorldFlagHandler();
         }
@@ -564,14 +586,29 @@ public class Denizen extends JavaPlugin {
         // Save maps to maps.yml
         DenizenMapManager.saveMaps();
         // Save server flags
-        serverFlagMap.saveToFile(new File(getDataFolder(), "server_flags").getPath());
-        try {
-            scoreboardsConfig.save(scoreboardsConfigFile);
-        }
-        catch (IOException ex) {
-            Logger.getLogger(JavaPlugin.class.getName()).log(Level.SEVERE, "Could not save to " + scoreboardsConfigFile, ex);
+        FlagFileHelper.saveAsync("server_flags", new File(getDataFolder(), "server_flags").getPath(), serverFlagMap);
+        long scoreboardStart = System.nanoTime();
+        List<Map.Entry<String, Object>> scoreboardValues = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : scoreboardsConfig.getValues(true).entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof List) {
+                value = new ArrayList<>((List<?>) value);
+            }
+            scoreboardValues.add(new AbstractMap.SimpleEntry<>(entry.getKey(), value));
         }
-        PlayerFlagHandler.saveAllNow(canSleep);
+        SavePipeline.submit("scoreboards", scoreboardsConfigFile.getPath(), System.nanoTime() - scoreboardStart, true, () -> {
+            YamlConfiguration output = new YamlConfiguration();
+            for (Map.Entry<String, Object> entry : scoreboardValues) {
+                if (entry.getValue() instanceof ConfigurationSection) {
+                    output.createSection(entry.getKey());
+                }
+                else {
+                    output.set(entry.getKey(), entry.getValue());
+                }
+            }
+            return output.saveToString();
+        });
+        PlayerFlagHandler.saveAllNow();
         worldFlags.saveAll();
         RunLaterCommand.saveToFile(canSleep);
     }
@@ -3,13 +3,17 @@ package com.denizenscript.denizen.events;
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.objects.*;
 import com.denizenscript.denizen.objects.notable.NotableManager;
+import com.denizenscript.denizen.objects.notable.NotedAreaTracker;
 import com.denizenscript.denizen.scripts.containers.core.EntityScriptHelper;
 import com.denizenscript.denizen.scripts.containers.core.InventoryScriptHelper;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.tags.BukkitTagContext;
-import com.denizenscript.denizen.utilities.VanillaTagHelper;
 import com.denizenscript.denizen.utilities.implementation.BukkitScriptEntryData;
+import com.denizenscript.denizen.utilities.matchers.EntityMatcher;
+import com.denizenscript.denizen.utilities.matchers.ItemMatcher;
+import com.denizenscript.denizen.utilities.matchers.MaterialMatcher;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
+import com.denizenscript.denizencore.flags.FlaggableObject;
 import com.denizenscript.denizencore.objects.core.ScriptTag;
 import com.denizenscript.denizencore.objects.notable.Notable;
 import com.denizenscript.denizencore.tags.TagContext;
@@ -20,7 +24,6 @@ import com.denizenscript.denizencore.utilities.CoreUtilities;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.*;
 import org.bukkit.event.*;
 import org.bukkit.event.inventory.InventoryType;
@@ -653,22 +656,10 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
             }
             else if (lower.startsWith("area_flagged:")) {
                 String flagName = inputText.substring("area_flagged:".length());
-                for (CuboidTag cuboid : NotableManager.getAllType(CuboidTag.class)) {
-                    if (cuboid.isInsideCuboid(location) && cuboid.flagTracker.hasFlag(flagName)) {
-                        return true;
-                    }
-                }
-                for (EllipsoidTag ellipsoid : NotableManager.getAllType(EllipsoidTag.class)) {
-                    if (ellipsoid.contains(location) && ellipsoid.flagTracker.hasFlag(flagName)) {
-                        return true;
-                    }
-                }
-                for (PolygonTag polygon : NotableManager.getAllType(PolygonTag.class)) {
-                    if (polygon.doesContainLocation(location) && polygon.flagTracker.hasFlag(flagName)) {
-                        return true;
-                    }
-                }
-                return false;
+                return NotedAreaTracker.anyAreaContains(location, (area) -> {
+                    AbstractFlagTracker tracker = ((FlaggableObject) area).getFlagTracker();
+                    return tracker != null && tracker.hasFlag(flagName);
+                });
             }
             else if (lower.startsWith("biome:")) {
                 String biome = inputText.substring("biome:".length());
@@ -676,28 +667,13 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
             }
         }
         if (lower.equals("cuboid")) {
-            for (CuboidTag cuboid : NotableManager.getAllType(CuboidTag.class)) {
-                if (cuboid.isInsideCuboid(location)) {
-                    return true;
-                }
-            }
-            return false;
+            return NotedAreaTracker.anyAreaContains(location, (area) -> area instanceof CuboidTag);
         }
         else if (lower.equals("ellipsoid")) {
-            for (EllipsoidTag ellipsoid : NotableManager.getAllType(EllipsoidTag.class)) {
-                if (ellipsoid.contains(location)) {
-                    return true;
-                }
-            }
-            return false;
+            return NotedAreaTracker.anyAreaContains(location, (area) -> area instanceof EllipsoidTag);
         }
         else if (lower.equals("polygon")) {
-            for (PolygonTag polygon : NotableManager.getAllType(PolygonTag.class)) {
-                if (polygon.doesContainLocation(location)) {
-                    return true;
-                }
-            }
-            return false;
+            return NotedAreaTracker.anyAreaContains(location, (area) -> area instanceof PolygonTag);
         }
         else if (WorldTag.matches(inputText)) {
             return CoreUtilities.equalsIgnoreCase(location.getWorld().getName(), lower);
@@ -734,20 +710,8 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
         }
         else if (isAdvancedMatchable(lower)) {
             MatchHelper matcher = createMatcher(lower);
-            for (CuboidTag cuboid : NotableManager.getAllType(CuboidTag.class)) {
-                if (cuboid.isInsideCuboid(location) && matcher.doesMatch(cuboid.noteName)) {
-                    return true;
-                }
-            }
-            for (EllipsoidTag ellipsoid : NotableManager.getAllType(EllipsoidTag.class)) {
-                if (ellipsoid.contains(location) && matcher.doesMatch(ellipsoid.noteName)) {
-                    return true;
-                }
-            }
-            for (PolygonTag polygon : NotableManager.getAllType(PolygonTag.class)) {
-                if (polygon.doesContainLocation(location) && matcher.doesMatch(polygon.noteName)) {
-                    return true;
-                }
+            if (NotedAreaTracker.anyAreaContains(location, (area) -> matcher.doesMatch(area.getNoteName()))) {
+                return true;
             }
             if (matcher.doesMatch(CoreUtilities.toLowerCase(location.getWorld().getName()))) {
                 return true;
@@ -949,64 +913,7 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
         if (comparedto == null || comparedto.isEmpty() || item == null) {
             return false;
         }
-        String rawComparedTo = comparedto;
-        comparedto = CoreUtilities.toLowerCase(comparedto);
-        if (comparedto.startsWith("item_flagged:")) {
-            for (String flag : CoreUtilities.split(rawComparedTo.substring("item_flagged:".length()), '|')) {
-                if (!item.getFlagTracker().hasFlag(flag)) {
-                    return false;
-                }
-            }
-            return true;
-        }
-        if (comparedto.startsWith("item_enchanted:")) {
-            String enchMatcher = comparedto.substring("item_enchanted:".length());
-            if (!item.getItemMeta().hasEnchants()) {
-                return false;
-            }
-            for (Enchantment enchant : item.getItemMeta().getEnchants().keySet()) {
-                if (runGenericCheck(enchMatcher, enchant.getKey().getKey())) {
-                    return true;
-                }
-            }
-            return false;
-        }
-        if (comparedto.startsWith("raw_exact:")) {
-            ItemTag compareItem = ItemTag.valueOf(rawComparedTo.substring("raw_exact:".length()), CoreUtilities.errorButNoDebugContext);
-            return compareItem != null && compareItem.matchesRawExact(item);
-        }
-        if (comparedto.startsWith("vanilla_tagged:")) {
-            String tagCheck = comparedto.substring("vanilla_tagged:".length());
-            HashSet<String> tags = VanillaTagHelper.tagsByMaterial.get(item.getItemStack().getType());
-            if (tags == null) {
-                return false;
-            }
-            MatchHelper matcher = createMatcher(tagCheck);
-            for (String tag : tags) {
-                if (matcher.doesMatch(tag)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-        if (comparedto.equals("item")) {
-            return true;
-        }
-        if (comparedto.equals("potion") && CoreUtilities.toLowerCase(item.getBukkitMaterial().name()).contains("potion")) {
-            return true;
-        }
-        MatchHelper matcher = createMatcher(comparedto);
-        if (item.isItemscript()) {
-            if (matcher.doesMatch(item.getScriptName())) {
-                return true;
-            }
-        }
-        else {
-            if (matcher.doesMatch(item.getMaterialName())) {
-                return true;
-            }
-        }
-        return false;
+        return ItemMatcher.get(comparedto).matches(item);
     }
 
     public static boolean tryMaterial(MaterialTag mat, String comparedto) {
@@ -1017,38 +924,7 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
         if (comparedto == null || comparedto.isEmpty() || mat == null) {
             return false;
         }
-        comparedto = CoreUtilities.toLowerCase(comparedto);
-        if (comparedto.equals("block") || comparedto.equals("material")) {
-            return true;
-        }
-        if (comparedto.startsWith("vanilla_tagged:")) {
-            String tagCheck = comparedto.substring("vanilla_tagged:".length());
-            HashSet<String> tags = VanillaTagHelper.tagsByMaterial.get(mat);
-            if (tags == null) {
-                return false;
-            }
-            MatchHelper matcher = createMatcher(tagCheck);
-            for (String tag : tags) {
-                if (matcher.doesMatch(tag)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-        MaterialTag quickOf = MaterialTag.quickOfNamed(comparedto);
-        if (quickOf != null) {
-            if (quickOf.getMaterial() != mat) {
-                return false;
-            }
-            if (quickOf.getMaterial().equals(mat)) {
-                return true;
-            }
-        }
-        MatchHelper matcher = createMatcher(comparedto);
-        if (matcher.doesMatch(mat.name())) {
-            return true;
-        }
-        return false;
+        return MaterialMatcher.get(comparedto).matches(mat);
     }
 
     public static HashSet<String> specialEntityMatchables = new HashSet<>(Arrays.asList("entity", "npc", "player", "living", "vehicle", "fish", "projectile", "hanging", "monster", "mob", "animal"));
@@ -1057,65 +933,7 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
         if (comparedto == null || comparedto.isEmpty() || entity == null) {
             return false;
         }
-        Entity bEntity = entity.getBukkitEntity();
-        comparedto = CoreUtilities.toLowerCase(comparedto);
-        if (specialEntityMatchables.contains(comparedto)) {
-            switch (comparedto) {
-                case "entity":
-                    return true;
-                case "npc":
-                    return entity.isCitizensNPC();
-                case "player":
-                    return entity.isPlayer();
-                case "living":
-                    return bEntity instanceof LivingEntity;
-                case "vehicle":
-                    return bEntity instanceof Vehicle;
-                case "fish":
-                    return bEntity instanceof Fish;
-                case "projectile":
-                    return bEntity instanceof Projectile;
-                case "hanging":
-                    return bEntity instanceof Hanging;
-                case "monster":
-                    return bEntity instanceof Monster;
-                case "mob":
-                    return bEntity instanceof Mob;
-                case "animal":
-                    return bEntity instanceof Animals;
-            }
-        }
-        if (comparedto.contains(":")) {
-            if (comparedto.startsWith("entity_flagged:")) {
-                return entity.getFlagTracker().hasFlag(comparedto.substring("entity_flagged:".length()));
-            }
-            else if (comparedto.startsWith("player_flagged:")) {
-                return entity.isPlayer() && entity.getFlagTracker().hasFlag(comparedto.substring("player_flagged:".length()));
-            }
-            else if (comparedto.startsWith("npc_flagged:")) {
-                return entity.isCitizensNPC() && entity.getFlagTracker().hasFlag(comparedto.substring("npc_flagged:".length()));
-            }
-        }
-        MatchHelper matcher = createMatcher(comparedto);
-        if (matcher instanceof InverseMatchHelper) {
-            matcher = ((InverseMatchHelper) matcher).matcher;
-            if (entity.getEntityScript() != null && matcher.doesMatch(entity.getEntityScript())) {
-                return false;
-            }
-            else if (matcher.doesMatch(entity.getEntityType().getLowercaseName())) {
-                return false;
-            }
-            return true;
-        }
-        else {
-            if (entity.getEntityScript() != null && matcher.doesMatch(entity.getEntityScript())) {
-                return true;
-            }
-            else if (matcher.doesMatch(entity.getEntityType().getLowercaseName())) {
-                return true;
-            }
-            return false;
-        }
+        return EntityMatcher.get(comparedto).matches(entity);
     }
 
 }
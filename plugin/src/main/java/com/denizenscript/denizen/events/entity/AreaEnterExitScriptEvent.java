@@ -2,6 +2,7 @@ package com.denizenscript.denizen.events.entity;
 
 import com.denizenscript.denizen.events.BukkitScriptEvent;
 import com.denizenscript.denizen.objects.*;
+import com.denizenscript.denizen.objects.notable.AreaMembershipTracker;
 import com.denizenscript.denizen.objects.notable.NotableManager;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.implementation.BukkitScriptEntryData;
@@ -269,7 +270,10 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
     }
 
     public void processSingle(AreaContainmentObject obj, EntityTag entity, HashSet<String> inAreas, Location pos, Event eventCause) {
-        boolean containedNow = pos != null && obj.doesContainLocation(pos);
+        processSingle(obj, entity, inAreas, pos, pos != null && obj.doesContainLocation(pos), eventCause);
+    }
+
+    public void processSingle(AreaContainmentObject obj, EntityTag entity, HashSet<String> inAreas, Location pos, boolean containedNow, Event eventCause) {
         boolean wasContained = inAreas != null && inAreas.contains(obj.getNoteName());
         if (containedNow == wasContained) {
             return;
@@ -295,21 +299,31 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
         if (onlyTrackPlayers && !entity.isPlayer()) {
             return;
         }
-        HashSet<String> inAreas = entitiesInArea.get(entity.getUUID());
+        HashSet<String> inAreas = entitiesInArea.computeIfAbsent(entity.getUUID(), k -> new HashSet<>());
+        AreaMembershipTracker.SectionState section = AreaMembershipTracker.getSection(pos);
         if (doTrackAll || matchers != null || flagTracked != null) {
-            for (CuboidTag cuboid : NotableManager.getAllType(CuboidTag.class)) {
-                if (anyMatch(cuboid.noteName, cuboid)) {
-                    processSingle(cuboid, entity, inAreas, pos, eventCause);
+            List<AreaContainmentObject> toCheck = new ArrayList<>();
+            for (String name : inAreas) {
+                Notable obj = NotableManager.getSavedObject(name);
+                if (obj instanceof AreaContainmentObject) {
+                    toCheck.add((AreaContainmentObject) obj);
                 }
             }
-            for (EllipsoidTag ellipsoid : NotableManager.getAllType(EllipsoidTag.class)) {
-                if (anyMatch(ellipsoid.noteName, ellipsoid)) {
-                    processSingle(ellipsoid, entity, inAreas, pos, eventCause);
+            if (section != null) {
+                for (AreaContainmentObject candidate : section.fullyInside) {
+                    if (!inAreas.contains(candidate.getNoteName())) {
+                        toCheck.add(candidate);
+                    }
+                }
+                for (AreaContainmentObject candidate : section.boundary) {
+                    if (!inAreas.contains(candidate.getNoteName())) {
+                        toCheck.add(candidate);
+                    }
                 }
             }
-            for (PolygonTag polygon : NotableManager.getAllType(PolygonTag.class)) {
-                if (anyMatch(polygon.noteName, polygon)) {
-                    processSingle(polygon, entity, inAreas, pos, eventCause);
+            for (AreaContainmentObject area : toCheck) {
+                if (anyMatch(area.getNoteName(), (FlaggableObject) area)) {
+                    processSingle(area, entity, inAreas, pos, AreaMembershipTracker.contains(section, area, pos), eventCause);
                 }
             }
         }
@@ -320,10 +334,10 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
                     Debug.echoError("Invalid area enter/exit event area '" + name + "'");
                     continue;
                 }
-                processSingle((AreaContainmentObject) obj, entity, inAreas, pos, eventCause);
+                processSingle((AreaContainmentObject) obj, entity, inAreas, pos, AreaMembershipTracker.contains(section, (AreaContainmentObject) obj, pos), eventCause);
             }
         }
-        if (inAreas != null && inAreas.isEmpty()) {
+        if (inAreas.isEmpty()) {
             entitiesInArea.remove(entity.getUUID());
         }
     }
@@ -0,0 +1,103 @@
+package com.denizenscript.denizen.nms.abstracts;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+
+import java.util.*;
+
+/**
+ * Writes many blocks into one world at once, setting block states directly into chunk sections.
+ * This skips the per-block neighbor updates (physics) and per-block client packets of a normal block change:
+ * changed blocks are only queued for relighting (which the server processes in one batch) and have their points of interest updated,
+ * and each changed chunk is resent to players once, in 'finish' (or earlier in 'finishBelowX', for writes spread over several ticks).
+ * Blocks that have (or had) a tile entity go through a normal no-physics block change instead, and tile entity data is applied in 'finish', after all blocks are placed.
+ */
+public abstract class BulkBlockWriter {
+
+    public static class PendingTileData {
+
+        public final int x, y, z;
+
+        public final CompoundTag data;
+
+        public PendingTileData(int x, int y, int z, CompoundTag data) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.data = data;
+        }
+    }
+
+    public final World world;
+
+    /**
+     * Chunks changed by direct writes since the last 'finish', as chunk X in the upper 32 bits and chunk Z in the lower 32 bits.
+     */
+    public final Set<Long> changedChunks = new HashSet<>();
+
+    public final List<PendingTileData> pendingTileData = new ArrayList<>();
+
+    public BulkBlockWriter(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Sets the block directly into its chunk section, returning false (without changing anything) if the block can't be written directly.
+     * Implementations must queue any needed lighting updates, but should not send anything to players.
+     */
+    public abstract boolean setDirect(int x, int y, int z, BlockData data);
+
+    public void setBlock(int x, int y, int z, BlockData data) {
+        if (setDirect(x, y, z, data)) {
+            changedChunks.add((((long) (x >> 4)) << 32) | ((z >> 4) & 0xFFFFFFFFL));
+        }
+        else {
+            world.getBlockAt(x, y, z).setBlockData(data, false);
+        }
+    }
+
+    /**
+     * Queues tile entity data to be applied to the block in 'finish'.
+     */
+    public void setTileEntityData(int x, int y, int z, CompoundTag data) {
+        pendingTileData.add(new PendingTileData(x, y, z, data));
+    }
+
+    public void applyTileData() {
+        for (PendingTileData pending : pendingTileData) {
+            NMSHandler.getBlockHelper().setNbtData(world.getBlockAt(pending.x, pending.y, pending.z), pending.data);
+        }
+        pendingTileData.clear();
+    }
+
+    /**
+     * Applies any queued tile entity data, and resends changed chunks that lie entirely below the given block X coordinate.
+     * For writes placed in increasing X order over several ticks, those chunks won't be written again, so each is resent once, as soon as it's complete.
+     * Call 'finish' after the last write to resend the rest.
+     */
+    public void finishBelowX(int blockX) {
+        applyTileData();
+        int chunkLimit = blockX >> 4;
+        Iterator<Long> iterator = changedChunks.iterator();
+        while (iterator.hasNext()) {
+            long key = iterator.next();
+            if ((int) (key >> 32) < chunkLimit) {
+                NMSHandler.getChunkHelper().refreshChunkSections(world.getChunkAt((int) (key >> 32), (int) key));
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Applies any queued tile entity data and resends changed chunks to players. The writer can be reused afterwards.
+     */
+    public void finish() {
+        applyTileData();
+        for (long key : changedChunks) {
+            NMSHandler.getChunkHelper().refreshChunkSections(world.getChunkAt((int) (key >> 32), (int) key));
+        }
+        changedChunks.clear();
+    }
+}
@@ -29,6 +29,8 @@ package com.denizenscript.denizen.nms.abstracts;
  */
 
 import com.denizenscript.denizen.nms.util.jnbt.*;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
@@ -38,26 +40,97 @@ import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.util.Vector;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 
 public abstract class ImprovedOfflinePlayer {
 
     protected UUID player;
     protected File file;
-    protected CompoundTag compound;
+    protected volatile CompoundTag compound;
     protected boolean exists;
     protected boolean autosave = true;
-    public static Map<UUID, PlayerInventory> offlineInventories = new HashMap<>();
-    public static Map<UUID, Inventory> offlineEnderChests = new HashMap<>();
 
+    /**
+     * Whether there are changes not yet written to file, and whether a write is already scheduled to handle them.
+     * Only changed while synchronized on this object.
+     */
+    private boolean dirty = false, writeScheduled = false;
+
+    /**
+     * Held while writing to file, so that writes of the same data never overlap.
+     */
+    private final Object writeLock = new Object();
+
+    public static long writes = 0, coalescedChanges = 0;
+
+    /**
+     * Creates an unloaded instance. Use 'PlayerHelper.getOfflineData' to get loaded (and cached) data.
+     */
     public ImprovedOfflinePlayer(UUID playeruuid) {
-        this.exists = loadPlayerData(playeruuid);
+        this.player = playeruuid;
+    }
+
+    /**
+     * The 'playerdata' folders of the loaded worlds, in order of preference, as captured on the main thread by 'updatePlayerDataFolders'.
+     */
+    private static volatile List<File> playerDataFolders;
+
+    /**
+     * Captures the 'playerdata' folder of each loaded world, other than the given world (if any). Must be called on the main thread, and again whenever worlds load or unload.
+     */
+    public static void updatePlayerDataFolders(World excluded) {
+        List<File> folders = new ArrayList<>();
+        for (World world : Bukkit.getWorlds()) {
+            if (world != excluded) {
+                folders.add(new File(world.getWorldFolder(), "playerdata"));
+            }
+        }
+        playerDataFolders = folders;
     }
 
+    /**
+     * Returns the possible locations of a player's data file, in order of preference. Can be called from any thread once the folders have been captured.
+     */
+    public static List<File> getPlayerDataFiles(UUID uuid) {
+        List<File> folders = playerDataFolders;
+        if (folders == null) {
+            updatePlayerDataFolders(null);
+            folders = playerDataFolders;
+        }
+        List<File> files = new ArrayList<>(folders.size());
+        for (File folder : folders) {
+            files.add(new File(folder, uuid + ".dat"));
+        }
+        return files;
+    }
+
+    /**
+     * Loads the data from the first of the given files that exists. Can be called off the main thread.
+     */
+    public void load(List<File> files) {
+        for (File candidate : files) {
+            if (candidate.exists()) {
+                try {
+                    this.file = candidate;
+                    this.compound = readPlayerData(candidate);
+                    this.exists = true;
+                }
+                catch (Exception ex) {
+                    Debug.echoError(ex);
+                }
+                return;
+            }
+        }
+    }
+
+    protected abstract CompoundTag readPlayerData(File file) throws Exception;
+
+    protected abstract void writePlayerData(File file, CompoundTag compound) throws Exception;
+
     public abstract PlayerInventory getInventory();
 
     public abstract void setInventory(PlayerInventory inventory);
@@ -116,9 +189,69 @@ public abstract class ImprovedOfflinePlayer {
 
     public abstract void setMaxHealth(double input);
 
-    protected abstract boolean loadPlayerData(UUID uuid);
+    /**
+     * Queues the current data to be written to file shortly, on the save I/O thread.
+     */
+    public void savePlayerData() {
+        if (this.exists) {
+            OfflinePlayerDataCache.queueWrite(this);
+        }
+    }
+
+    /**
+     * Marks the data as changed, returning true if the caller needs to schedule a write.
+     */
+    public synchronized boolean markDirty() {
+        if (dirty) {
+            coalescedChanges++;
+        }
+        dirty = true;
+        if (writeScheduled) {
+            return false;
+        }
+        writeScheduled = true;
+        return true;
+    }
 
-    public abstract void savePlayerData();
+    public synchronized boolean hasPendingWrite() {
+        return dirty || writeScheduled;
+    }
+
+    /**
+     * Runs a write scheduled by 'markDirty'.
+     */
+    public void runScheduledWrite() {
+        synchronized (this) {
+            writeScheduled = false;
+        }
+        writeIfDirty();
+    }
+
+    /**
+     * Writes the data to file on the calling thread, if it has changes that haven't been written yet.
+     * The data is written to a temporary file first, so that the real file is never left partially written.
+     */
+    public void writeIfDirty() {
+        synchronized (writeLock) {
+            CompoundTag snapshot;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                dirty = false;
+                snapshot = this.compound;
+            }
+            try {
+                File temp = new File(file.getParentFile(), file.getName() + ".denizen-tmp");
+                writePlayerData(temp, snapshot);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                writes++;
+            }
+            catch (Exception ex) {
+                Debug.echoError(ex);
+            }
+        }
+    }
 
     public boolean exists() {
         return this.exists;
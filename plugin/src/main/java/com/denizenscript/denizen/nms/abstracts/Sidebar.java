@@ -1,11 +1,11 @@
 package com.denizenscript.denizen.nms.abstracts;
 
+import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 public abstract class Sidebar {
 
@@ -54,14 +54,9 @@ public abstract class Sidebar {
     }
 
     public final void setTitle(String title) {
-        if (this.title == null || !this.title.equals(title)) {
-            this.title = title;
-            setDisplayName(title);
-        }
+        this.title = title;
     }
 
-    protected abstract void setDisplayName(String title);
-
     public void setLines(List<SidebarLine> lines) {
         setCount = Math.min(lines.size(), MAX_LENGTH);
         for (int i = 0; i < setCount; i++) {
@@ -75,7 +70,43 @@ public abstract class Sidebar {
         }
     }
 
-    public abstract void sendUpdate();
+    /**
+     * Sidebars with changes waiting to be sent, at most once per tick each.
+     */
+    public static final Set<Sidebar> pendingUpdates = new LinkedHashSet<>();
+
+    public static void sendPendingUpdates() {
+        List<Sidebar> toSend = new ArrayList<>(pendingUpdates);
+        pendingUpdates.clear();
+        for (Sidebar sidebar : toSend) {
+            if (sidebar.player.isOnline()) {
+                sidebar.sendChanges();
+            }
+        }
+    }
+
+    /**
+     * Queues the current lines and title to be sent on the next tick, so that any number of changes within one tick only go out once.
+     */
+    public void sendUpdate() {
+        if (pendingUpdates.isEmpty()) {
+            Bukkit.getScheduler().runTask(Denizen.getInstance(), Sidebar::sendPendingUpdates);
+        }
+        pendingUpdates.add(this);
+    }
+
+    /**
+     * Sends the player only what changed since the last call (or everything, if the sidebar isn't currently shown).
+     */
+    protected abstract void sendChanges();
+
+    public void remove() {
+        pendingUpdates.remove(this);
+        sendRemove();
+    }
 
-    public abstract void remove();
+    /**
+     * Removes the sidebar from the player's client. A later update will show it again from scratch.
+     */
+    protected abstract void sendRemove();
 }
@@ -1,9 +1,11 @@
 package com.denizenscript.denizen.nms.interfaces;
 
+import com.denizenscript.denizen.nms.abstracts.BulkBlockWriter;
 import com.denizenscript.denizen.nms.util.PlayerProfile;
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.Skull;
@@ -78,4 +80,8 @@ public interface BlockHelper {
     default void doRandomTick(Location location) {
         throw new UnsupportedOperationException();
     }
+
+    default BulkBlockWriter createBulkBlockWriter(World world) {
+        throw new UnsupportedOperationException();
+    }
 }
@@ -2,11 +2,14 @@ package com.denizenscript.denizen.nms.interfaces;
 
 import org.bukkit.Chunk;
 import org.bukkit.World;
+import org.bukkit.entity.Player;
 
 public interface ChunkHelper {
 
     void refreshChunkSections(Chunk chunk);
 
+    void refreshChunkSectionsFor(Player player, Chunk chunk);
+
     int[] getHeightMap(Chunk chunk);
 
     default void changeChunkServerThread(World world) {
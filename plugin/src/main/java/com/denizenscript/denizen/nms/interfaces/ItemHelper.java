@@ -61,6 +61,15 @@ public abstract class ItemHelper {
 
     public abstract ItemStack setNbtData(ItemStack itemStack, CompoundTag compoundTag);
 
+    /**
+     * Reads a single string key from the root of an item's NBT, without copying or converting the full NBT data where possible.
+     * Returns null if the key is not present.
+     */
+    public String getStringTagDirect(ItemStack itemStack, String key) {
+        String value = getNbtData(itemStack).getString(key);
+        return value == null || value.isEmpty() ? null : value;
+    }
+
     public abstract PotionEffect getPotionEffect(PotionEffectType type, int duration, int amplifier, boolean ambient, boolean particles, boolean icon);
 
     public void registerSmithingRecipe(String keyName, ItemStack result, ItemStack[] baseItem, boolean baseExact, ItemStack[] upgradeItem, boolean upgradeExact) {
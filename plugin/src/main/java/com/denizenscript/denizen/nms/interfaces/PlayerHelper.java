@@ -53,6 +53,11 @@ public abstract class PlayerHelper {
 
     public abstract ImprovedOfflinePlayer getOfflineData(OfflinePlayer offlinePlayer);
 
+    /**
+     * Starts loading an offline player's data in the background, for batch operations that are about to use it.
+     */
+    public abstract void prefetchOfflineData(UUID uuid);
+
     public abstract void resendDiscoveredRecipes(Player player);
 
     public abstract void quietlyAddRecipe(Player player, NamespacedKey key);
@@ -72,14 +72,11 @@ public final class NBTInputStream implements Closeable {
      * @throws IOException if an I/O error occurs.
      */
     private NamedTag readNamedTag(int depth) throws IOException {
-        int type = is.readByte() & 0xFF;
+        int type = readTagType();
 
         String name;
         if (type != NBTConstants.TYPE_END) {
-            int nameLength = is.readShort() & 0xFFFF;
-            byte[] nameBytes = new byte[nameLength];
-            is.readFully(nameBytes);
-            name = new String(nameBytes, NBTConstants.CHARSET);
+            name = readTagName();
         }
         else {
             name = "";
@@ -88,6 +85,116 @@ public final class NBTInputStream implements Closeable {
         return new NamedTag(name, readTagPayload(type, depth));
     }
 
+    /**
+     * Reads the type of the next tag. Together with {@link #readTagName()},
+     * {@link #readTagPayload(int)} and {@link #skipTagPayload(int)}, this allows
+     * reading a stream one tag at a time, rather than as a whole object graph.
+     * A {@code TAG_End} has no name or payload.
+     *
+     * @return The tag type.
+     * @throws IOException if an I/O error occurs.
+     */
+    public int readTagType() throws IOException {
+        return is.readByte() & 0xFF;
+    }
+
+    /**
+     * Reads the name of a tag, following its type.
+     *
+     * @return The tag name.
+     * @throws IOException if an I/O error occurs.
+     */
+    public String readTagName() throws IOException {
+        int nameLength = is.readShort() & 0xFFFF;
+        byte[] nameBytes = new byte[nameLength];
+        is.readFully(nameBytes);
+        return new String(nameBytes, NBTConstants.CHARSET);
+    }
+
+    /**
+     * Reads the payload of a tag within a compound or list, following its type and name.
+     *
+     * @param type the type
+     * @return the tag
+     * @throws IOException if an I/O error occurs.
+     */
+    public Tag readTagPayload(int type) throws IOException {
+        return readTagPayload(type, 1);
+    }
+
+    /**
+     * Skips over the payload of a tag without building it.
+     *
+     * @param type the type
+     * @throws IOException if an I/O error occurs.
+     */
+    public void skipTagPayload(int type) throws IOException {
+        switch (type) {
+            case NBTConstants.TYPE_END:
+                break;
+            case NBTConstants.TYPE_BYTE:
+                skipFully(1);
+                break;
+            case NBTConstants.TYPE_SHORT:
+                skipFully(2);
+                break;
+            case NBTConstants.TYPE_INT:
+            case NBTConstants.TYPE_FLOAT:
+                skipFully(4);
+                break;
+            case NBTConstants.TYPE_LONG:
+            case NBTConstants.TYPE_DOUBLE:
+                skipFully(8);
+                break;
+            case NBTConstants.TYPE_BYTE_ARRAY:
+                skipFully(is.readInt());
+                break;
+            case NBTConstants.TYPE_STRING:
+                skipFully(is.readShort() & 0xFFFF);
+                break;
+            case NBTConstants.TYPE_LIST:
+                int childType = is.readByte();
+                int length = is.readInt();
+                for (int i = 0; i < length; ++i) {
+                    skipTagPayload(childType);
+                }
+                break;
+            case NBTConstants.TYPE_COMPOUND:
+                int childTagType;
+                while ((childTagType = readTagType()) != NBTConstants.TYPE_END) {
+                    skipFully(is.readShort() & 0xFFFF);
+                    skipTagPayload(childTagType);
+                }
+                break;
+            case NBTConstants.TYPE_INT_ARRAY:
+                skipFully(is.readInt() * 4L);
+                break;
+            default:
+                throw new IOException("Invalid tag type: " + type + ".");
+        }
+    }
+
+    private void skipFully(long count) throws IOException {
+        while (count > 0) {
+            int skipped = is.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skipBytes doesn't distinguish end-of-stream from a stream that can't skip, so read a byte to find out
+                is.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Gets the underlying data stream, for reading large payloads (eg a byte array's content) directly, after reading their length.
+     *
+     * @return The data stream.
+     */
+    public DataInputStream getDataInput() {
+        return is;
+    }
+
     /**
      * Reads the payload of a tag given the type.
      *
@@ -76,13 +76,51 @@ public final class NBTOutputStream implements Closeable {
         writeTagPayload(tag);
     }
 
+    /**
+     * Writes just the type and name of a tag, to write a stream one tag at a time.
+     * Follow with the payload, through {@link #writeTagPayload(Tag)} or directly on {@link #getDataOutput()}.
+     * A compound started this way must be closed with {@link #writeEndTag()}.
+     *
+     * @param type The tag type.
+     * @param name The tag name.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeTagHeader(int type, String name) throws IOException {
+        checkNotNull(name);
+        if (type == NBTConstants.TYPE_END) {
+            throw new IOException("Named TAG_End not permitted.");
+        }
+        byte[] nameBytes = name.getBytes(NBTConstants.CHARSET);
+        os.writeByte(type);
+        os.writeShort(nameBytes.length);
+        os.write(nameBytes);
+    }
+
+    /**
+     * Writes a {@code TAG_End}, closing a compound started with {@link #writeTagHeader(int, String)}.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeEndTag() throws IOException {
+        os.writeByte(NBTConstants.TYPE_END);
+    }
+
+    /**
+     * Gets the underlying data stream, for writing large payloads (eg a byte array's content) directly.
+     *
+     * @return The data stream.
+     */
+    public DataOutputStream getDataOutput() {
+        return os;
+    }
+
     /**
      * Writes tag payload.
      *
      * @param tag The tag.
      * @throws IOException if an I/O error occurs.
      */
-    private void writeTagPayload(Tag tag) throws IOException {
+    public void writeTagPayload(Tag tag) throws IOException {
         int type = NBTUtils.getTypeCode(tag.getClass());
         switch (type) {
             case NBTConstants.TYPE_END:
@@ -7,6 +7,7 @@ import com.denizenscript.denizen.objects.EntityTag;
 import com.denizenscript.denizen.objects.NPCTag;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
 import net.citizensnpcs.api.event.NPCDespawnEvent;
@@ -165,6 +166,7 @@ public class DenizenNPCHelper implements Listener {
         if (inventory.getHolder() instanceof NPCTag) {
             NPCTag npc = (NPCTag) inventory.getHolder();
             npc.getInventory().setContents(inventory.getContents());
+            InventoryContentIndex.markModified(npc.getInventory());
             Equipment equipment = npc.getEquipmentTrait();
             for (int i = 0; i < 5; i++) {
                 equipment.set(i, inventory.getItem(i));
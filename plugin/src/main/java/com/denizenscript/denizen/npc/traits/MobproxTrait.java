@@ -2,6 +2,7 @@ package com.denizenscript.denizen.npc.traits;
 
 import com.denizenscript.denizen.objects.EntityTag;
 import com.denizenscript.denizen.objects.NPCTag;
+import com.denizenscript.denizen.utilities.entity.ProximityEngine;
 import com.denizenscript.denizencore.objects.ObjectTag;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import net.citizensnpcs.api.event.NPCTraitCommandAttachEvent;
@@ -12,10 +13,7 @@ import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 // TODO: Documenting language files
 
@@ -28,7 +26,8 @@ public class MobproxTrait extends Trait {
     int timerBounce = 0;
     LivingEntity liveEnt;
     NPCTag dnpc;
-    List<Entity> inrange = new ArrayList<>();
+    Set<Entity> inrange = new LinkedHashSet<>();
+    ProximityEngine.MovementTracker movement = new ProximityEngine.MovementTracker();
 
     @Override
     public void run() {
@@ -42,22 +41,23 @@ public class MobproxTrait extends Trait {
                     int range = getRange();
                     boolean acceptnpc = acceptNpcs();
                     List<Entity> nearby = liveEnt.getNearbyEntities(range, range, range);
-                    List<Entity> removeme = new ArrayList<>(inrange);
+                    Set<Entity> removeme = new LinkedHashSet<>(inrange);
                     for (Entity ent : nearby) {
                         if (ent instanceof LivingEntity && (!(ent instanceof Player) || EntityTag.isCitizensNPC(ent))
                                 && (acceptnpc || (!EntityTag.isCitizensNPC(ent)))) {
                             removeme.remove(ent);
-                            if (!inrange.contains(ent)) {
-                                inrange.add(ent);
+                            boolean moved = movement.hasMoved(ent.getUniqueId(), ent.getLocation());
+                            if (inrange.add(ent)) {
                                 callAction("enter", ent);
                             }
-                            else {
+                            else if (moved) {
                                 callAction("move", ent);
                             }
                         }
                     }
                     for (Entity ent : removeme) {
                         inrange.remove(ent);
+                        movement.forget(ent.getUniqueId());
                         callAction("exit", ent);
                     }
                 }
@@ -94,6 +94,7 @@ public class MobproxTrait extends Trait {
     //
     // @Triggers when a mob moves in the proximity of the NPC (Requires MobProx trait).
     // (Fires at a rate of specified by the 'mobprox_timer' flag, default of 2 seconds)
+    // (If the proximity trigger "Movement threshold" config option is set, only fires for mobs that moved at least that far)
     //
     // @Context
     // <context.entity> returns the mob that entered the proximity
@@ -1,5 +1,6 @@
 package com.denizenscript.denizen.objects;
 
+import com.denizenscript.denizen.utilities.blocks.BlockCursor;
 import com.denizenscript.denizencore.objects.ObjectTag;
 import org.bukkit.Location;
 
@@ -20,4 +21,14 @@ public interface AreaContainmentObject extends ObjectTag {
     String getNoteName();
 
     boolean doesContainLocation(Location loc);
+
+    /**
+     * Returns a cuboid that contains (at least) every block this area contains.
+     */
+    CuboidTag getCuboidBoundary();
+
+    /**
+     * Returns a cursor over every block position inside this area.
+     */
+    BlockCursor getBlockCursor();
 }
@@ -1,10 +1,13 @@
 package com.denizenscript.denizen.objects;
 
 import com.denizenscript.denizen.events.BukkitScriptEvent;
+import com.denizenscript.denizen.objects.notable.FlaggedNotable;
 import com.denizenscript.denizen.objects.notable.NotableManager;
-import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizen.objects.notable.NotedAreaTracker;
+import com.denizenscript.denizen.utilities.blocks.BlockCursor;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.entity.NearbyEntityHelper;
 import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
@@ -21,21 +24,19 @@ import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.tags.TagRunnable;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.Deprecations;
-import net.citizensnpcs.api.CitizensAPI;
-import net.citizensnpcs.api.npc.NPC;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, AreaContainmentObject, FlaggableObject {
+public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, AreaContainmentObject, FlaggableObject, FlaggedNotable {
 
     // <--[ObjectType]
     // @name CuboidTag
@@ -91,9 +92,9 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
 
     public static List<CuboidTag> getNotableCuboidsContaining(Location location) {
         List<CuboidTag> cuboids = new ArrayList<>();
-        for (CuboidTag cuboid : NotableManager.getAllType(CuboidTag.class)) {
-            if (cuboid.isInsideCuboid(location)) {
-                cuboids.add(cuboid);
+        for (AreaContainmentObject area : NotedAreaTracker.getCandidates(location)) {
+            if (area instanceof CuboidTag && ((CuboidTag) area).isInsideCuboid(location)) {
+                cuboids.add((CuboidTag) area);
             }
         }
         return cuboids;
@@ -268,6 +269,20 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
         return isInsideCuboid(loc);
     }
 
+    @Override
+    public CuboidTag getCuboidBoundary() {
+        return this;
+    }
+
+    @Override
+    public BlockCursor getBlockCursor() {
+        BlockCursor cursor = new BlockCursor(getWorld());
+        for (LocationPair pair : pairs) {
+            cursor.addBox(pair.low.getBlockX(), pair.low.getBlockY(), pair.low.getBlockZ(), pair.high.getBlockX(), pair.high.getBlockY(), pair.high.getBlockZ());
+        }
+        return cursor;
+    }
+
     ///////////////
     //  LocationPairs
     /////////////
@@ -515,33 +530,25 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
         if (matcher == null) {
             return getBlockLocationsUnfiltered(true);
         }
+        return getBlocksMatching(getBlockCursor(), matcher, attribute);
+    }
+
+    /**
+     * Returns the locations of all blocks from the cursor with a material matching the matcher, up to the block tag limit.
+     */
+    public static List<LocationTag> getBlocksMatching(BlockCursor cursor, String matcher, Attribute attribute) {
         int max = Settings.blockTagsMaxBlocks();
-        LocationTag loc;
         List<LocationTag> list = new ArrayList<>();
-        int index = 0;
-        for (LocationPair pair : pairs) {
-            LocationTag loc_1 = pair.low;
-            int y_distance = pair.yDistance();
-            int z_distance = pair.zDistance();
-            int x_distance = pair.xDistance();
-            for (int x = 0; x != x_distance + 1; x++) {
-                for (int y = 0; y != y_distance + 1; y++) {
-                    for (int z = 0; z != z_distance + 1; z++) {
-                        loc = new LocationTag(loc_1.clone().add(x, y, z));
-                        if (!Utilities.isLocationYSafe(loc)) {
-                            continue;
-                        }
-                        if (BukkitScriptEvent.tryMaterial(loc.getBlockTypeForTag(attribute), matcher)) {
-                            list.add(loc);
-                        }
-                        index++;
-                        if (index > max) {
-                            return list;
-                        }
-                    }
-                }
+        cursor.filter(material -> BukkitScriptEvent.tryMaterial(material, matcher));
+        while (cursor.next()) {
+            list.add(cursor.getLocation());
+            if (list.size() >= max) {
+                break;
             }
         }
+        if (cursor.skippedChunks > 0 && !attribute.hasAlternative()) {
+            Debug.echoError("Skipped " + cursor.skippedChunks + " unloaded chunk(s) while searching blocks. Use the 'chunkload' command to ensure the chunks are loaded.");
+        }
         return list;
     }
 
@@ -649,11 +656,16 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
     @Note("Cuboids")
     public Object getSaveObject() {
         ConfigurationSection section = new YamlConfiguration();
-        section.set("object", identifyFull());
+        section.set("object", getNoteObjectText());
         section.set("flags", flagTracker.toString());
         return section;
     }
 
+    @Override
+    public String getNoteObjectText() {
+        return identifyFull();
+    }
+
     @Override
     public void makeUnique(String id) {
         CuboidTag toNote = clone();
@@ -783,6 +795,8 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
         // @description
         // Returns each block location within the CuboidTag.
         // Optionally, specify a material match to only return locations with that block type.
+        // Without a matcher, locations are listed in X, then Z, then Y order.
+        // With a matcher, locations are listed one chunk column at a time, bottom to top.
         // -->
         registerTag("blocks", (attribute, cuboid) -> {
             if (attribute.hasContext(1)) {
@@ -1457,10 +1471,8 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
         // -->
         registerTag("players", (attribute, cuboid) -> {
             ArrayList<PlayerTag> players = new ArrayList<>();
-            for (Player player : Bukkit.getOnlinePlayers()) {
-                if (cuboid.isInsideCuboid(player.getLocation())) {
-                    players.add(PlayerTag.mirrorBukkitPlayer(player));
-                }
+            for (Entity player : NearbyEntityHelper.getEntitiesInArea(cuboid, (e) -> e instanceof Player && !EntityTag.isCitizensNPC(e))) {
+                players.add(PlayerTag.mirrorBukkitPlayer((Player) player));
             }
             return new ListTag(players);
         }, "list_players");
@@ -1473,14 +1485,7 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
         // -->
         if (Depends.citizens != null) {
             registerTag("npcs", (attribute, cuboid) -> {
-                ArrayList<NPCTag> npcs = new ArrayList<>();
-                for (NPC npc : CitizensAPI.getNPCRegistry()) {
-                    NPCTag dnpc = new NPCTag(npc);
-                    if (cuboid.isInsideCuboid(dnpc.getLocation())) {
-                        npcs.add(dnpc);
-                    }
-                }
-                return new ListTag(npcs);
+                return new ListTag(NearbyEntityHelper.getNPCsInArea(cuboid));
             }, "list_npcs");
         }
 
@@ -1493,13 +1498,8 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
         registerTag("entities", (attribute, cuboid) -> {
             String matcher = attribute.hasContext(1) ? attribute.getContext(1) : null;
             ListTag entities = new ListTag();
-            for (Entity ent : new WorldTag(cuboid.getWorld()).getEntitiesForTag()) {
-                EntityTag current = new EntityTag(ent);
-                if (cuboid.isInsideCuboid(ent.getLocation())) {
-                    if (matcher == null || BukkitScriptEvent.tryEntity(current, matcher)) {
-                        entities.addObject(new EntityTag(ent).getDenizenObject());
-                    }
-                }
+            for (Entity ent : NearbyEntityHelper.getEntitiesInArea(cuboid, matcher == null ? null : (e) -> BukkitScriptEvent.tryEntity(new EntityTag(e), matcher))) {
+                entities.addObject(new EntityTag(ent).getDenizenObject());
             }
             return entities;
         }, "list_entities");
@@ -1513,10 +1513,8 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
         // -->
         registerTag("living_entities", (attribute, cuboid) -> {
             ArrayList<EntityTag> entities = new ArrayList<>();
-            for (Entity ent : cuboid.getWorld().getLivingEntities()) {
-                if (cuboid.isInsideCuboid(ent.getLocation()) && !EntityTag.isCitizensNPC(ent)) {
-                    entities.add(new EntityTag(ent));
-                }
+            for (Entity ent : NearbyEntityHelper.getEntitiesInArea(cuboid, (e) -> e instanceof LivingEntity && !EntityTag.isCitizensNPC(e))) {
+                entities.add(new EntityTag(ent));
             }
             return new ListTag(entities);
         }, "list_living_entities");
@@ -1734,6 +1732,10 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable, Are
             pairs.remove(member - 1);
         }
 
+        if (noteName != null) {
+            NotedAreaTracker.refresh(this);
+        }
+
         CoreUtilities.autoPropertyMechanism(this, mechanism);
 
     }
@@ -1,9 +1,14 @@
 package com.denizenscript.denizen.objects;
 
 import com.denizenscript.denizen.events.BukkitScriptEvent;
+import com.denizenscript.denizen.objects.notable.FlaggedNotable;
 import com.denizenscript.denizen.objects.notable.NotableManager;
+import com.denizenscript.denizen.objects.notable.NotedAreaTracker;
+import com.denizenscript.denizen.utilities.Settings;
+import com.denizenscript.denizen.utilities.blocks.BlockCursor;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.entity.NearbyEntityHelper;
 import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
@@ -18,9 +23,6 @@ import com.denizenscript.denizencore.tags.Attribute;
 import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.tags.TagRunnable;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
-import net.citizensnpcs.api.CitizensAPI;
-import net.citizensnpcs.api.npc.NPC;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
@@ -31,7 +33,7 @@ import org.bukkit.util.Vector;
 import java.util.ArrayList;
 import java.util.List;
 
-public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainmentObject, FlaggableObject {
+public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainmentObject, FlaggableObject, FlaggedNotable {
 
     // <--[ObjectType]
     // @name EllipsoidTag
@@ -57,9 +59,9 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
 
     public static List<EllipsoidTag> getNotableEllipsoidsContaining(Location location) {
         List<EllipsoidTag> ellipsoids = new ArrayList<>();
-        for (EllipsoidTag ellipsoid : NotableManager.getAllType(EllipsoidTag.class)) {
-            if (ellipsoid.contains(location)) {
-                ellipsoids.add(ellipsoid);
+        for (AreaContainmentObject area : NotedAreaTracker.getCandidates(location)) {
+            if (area instanceof EllipsoidTag && ((EllipsoidTag) area).contains(location)) {
+                ellipsoids.add((EllipsoidTag) area);
             }
         }
 
@@ -166,35 +168,33 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
     }
 
     public ListTag getBlocks(String matcher, Attribute attribute) {
-        List<LocationTag> initial = new CuboidTag(new Location(center.getWorld(),
-                center.getX() - size.getX(), center.getY() - size.getY(), center.getZ() - size.getZ()),
-                new Location(center.getWorld(),
-                        center.getX() + size.getX(), center.getY() + size.getY(), center.getZ() + size.getZ()))
-                .getBlocks_internal(matcher, attribute);
-        ListTag list = new ListTag();
-        for (LocationTag loc : initial) {
-            if (contains(loc)) {
-                list.addObject(loc);
-            }
+        if (matcher != null) {
+            return new ListTag(CuboidTag.getBlocksMatching(getBlockCursor(), matcher, attribute));
         }
-        return list;
+        return new ListTag(getBlockLocationsUnfiltered(true));
     }
 
     public List<LocationTag> getBlockLocationsUnfiltered(boolean doMax) {
-        List<LocationTag> initial = new CuboidTag(new Location(center.getWorld(),
-                center.getX() - size.getX(), center.getY() - size.getY(), center.getZ() - size.getZ()),
-                new Location(center.getWorld(),
-                        center.getX() + size.getX(), center.getY() + size.getY(), center.getZ() + size.getZ()))
-                .getBlockLocationsUnfiltered(doMax);
+        int max = doMax ? Settings.blockTagsMaxBlocks() : Integer.MAX_VALUE;
         List<LocationTag> locations = new ArrayList<>();
-        for (LocationTag loc : initial) {
-            if (contains(loc)) {
-                locations.add(loc);
+        BlockCursor cursor = getBlockCursor().positionOrder();
+        while (cursor.next()) {
+            locations.add(cursor.getLocation());
+            if (locations.size() >= max) {
+                break;
             }
         }
         return locations;
     }
 
+    @Override
+    public BlockCursor getBlockCursor() {
+        return new BlockCursor(center.getWorld())
+                .addBox((int) Math.floor(center.getX() - size.getX()), (int) Math.floor(center.getY() - size.getY()), (int) Math.floor(center.getZ() - size.getZ()),
+                        (int) Math.floor(center.getX() + size.getX()), (int) Math.floor(center.getY() + size.getY()), (int) Math.floor(center.getZ() + size.getZ()))
+                .shape(this::contains);
+    }
+
     public ListTag getShell() {
         ListTag output = new ListTag();
         double yScale = size.getY();
@@ -238,9 +238,13 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
         if (test.getWorld() == null || !test.getWorld().getName().equals(center.getWorld().getName())) {
             return false;
         }
-        double xbase = test.getX() - center.getX();
-        double ybase = test.getY() - center.getY();
-        double zbase = test.getZ() - center.getZ();
+        return contains(test.getX(), test.getY(), test.getZ());
+    }
+
+    public boolean contains(double x, double y, double z) {
+        double xbase = x - center.getX();
+        double ybase = y - center.getY();
+        double zbase = z - center.getZ();
         return ((xbase * xbase) / (size.getX() * size.getX())
                 + (ybase * ybase) / (size.getY() * size.getY())
                 + (zbase * zbase) / (size.getZ() * size.getZ()) <= 1);
@@ -297,11 +301,16 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
     @Note("Ellipsoids")
     public Object getSaveObject() {
         ConfigurationSection section = new YamlConfiguration();
-        section.set("object", identifyFull());
+        section.set("object", getNoteObjectText());
         section.set("flags", flagTracker.toString());
         return section;
     }
 
+    @Override
+    public String getNoteObjectText() {
+        return identifyFull();
+    }
+
     @Override
     public void makeUnique(String id) {
         EllipsoidTag toNote = clone();
@@ -439,6 +448,8 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
         // @description
         // Returns each block location within the EllipsoidTag.
         // Optionally, specify a material matcher to only return locations with that block type.
+        // Without a matcher, locations are listed in X, then Z, then Y order.
+        // With a matcher, locations are listed one chunk column at a time, bottom to top.
         // -->
         registerTag("blocks", (attribute, object) -> {
             if (attribute.hasContext(1)) {
@@ -649,10 +660,8 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
         // -->
         registerTag("players", (attribute, object) -> {
             ArrayList<PlayerTag> players = new ArrayList<>();
-            for (Player player : Bukkit.getOnlinePlayers()) {
-                if (object.contains(player.getLocation())) {
-                    players.add(PlayerTag.mirrorBukkitPlayer(player));
-                }
+            for (Entity player : NearbyEntityHelper.getEntitiesInArea(object, (e) -> e instanceof Player && !EntityTag.isCitizensNPC(e))) {
+                players.add(PlayerTag.mirrorBukkitPlayer((Player) player));
             }
             return new ListTag(players);
         });
@@ -665,14 +674,7 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
         // -->
         if (Depends.citizens != null) {
             registerTag("npcs", (attribute, object) -> {
-                ArrayList<NPCTag> npcs = new ArrayList<>();
-                for (NPC npc : CitizensAPI.getNPCRegistry()) {
-                    NPCTag dnpc = new NPCTag(npc);
-                    if (object.contains(dnpc.getLocation())) {
-                        npcs.add(dnpc);
-                    }
-                }
-                return new ListTag(npcs);
+                return new ListTag(NearbyEntityHelper.getNPCsInArea(object));
             });
         }
 
@@ -685,13 +687,8 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
         registerTag("entities", (attribute, object) -> {
             String matcher = attribute.hasContext(1) ? attribute.getContext(1) : null;
             ListTag entities = new ListTag();
-            for (Entity ent : new WorldTag(object.center.getWorld()).getEntitiesForTag()) {
-                EntityTag current = new EntityTag(ent);
-                if (object.contains(ent.getLocation())) {
-                    if (matcher == null || BukkitScriptEvent.tryEntity(current, matcher)) {
-                        entities.addObject(new EntityTag(ent).getDenizenObject());
-                    }
-                }
+            for (Entity ent : NearbyEntityHelper.getEntitiesInArea(object, matcher == null ? null : (e) -> BukkitScriptEvent.tryEntity(new EntityTag(e), matcher))) {
+                entities.addObject(new EntityTag(ent).getDenizenObject());
             }
             return entities;
         });
@@ -760,4 +757,10 @@ public class EllipsoidTag implements ObjectTag, Notable, Cloneable, AreaContainm
     public boolean doesContainLocation(Location loc) {
         return contains(loc);
     }
+
+    @Override
+    public CuboidTag getCuboidBoundary() {
+        return new CuboidTag(new Location(center.getWorld(), center.getX() - size.getX(), center.getY() - size.getY(), center.getZ() - size.getZ()),
+                new Location(center.getWorld(), center.getX() + size.getX(), center.getY() + size.getY(), center.getZ() + size.getZ()));
+    }
 }
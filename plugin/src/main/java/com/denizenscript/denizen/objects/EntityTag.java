@@ -13,6 +13,7 @@ import com.denizenscript.denizen.scripts.containers.core.EntityScriptHelper;
 import com.denizenscript.denizen.utilities.depends.Depends;
 import com.denizenscript.denizen.utilities.entity.*;
 import com.denizenscript.denizen.utilities.flags.DataPersistenceFlagTracker;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.utilities.nbt.CustomNBT;
 import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
@@ -765,6 +766,7 @@ public class EntityTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
                     }
                     getLivingEntity().teleport(location);
                     getLivingEntity().getEquipment().setArmorContents(despawned_entity.equipment);
+                    InventoryContentIndex.markModified(getLivingEntity());
                     getLivingEntity().setHealth(despawned_entity.health);
 
                     despawned_entity = null;
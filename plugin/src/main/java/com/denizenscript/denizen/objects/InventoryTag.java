@@ -7,7 +7,9 @@ import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.utilities.AdvancedTextImpl;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.utilities.inventory.InventoryTrackerSystem;
+import com.denizenscript.denizen.utilities.inventory.OfflineInventoryRegistry;
 import com.denizenscript.denizen.utilities.inventory.RecipeHelper;
 import com.denizenscript.denizen.utilities.inventory.SlotHelper;
 import com.denizenscript.denizen.utilities.nbt.CustomNBT;
@@ -17,6 +19,7 @@ import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
 import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
+import com.denizenscript.denizen.objects.notable.FlaggedNotable;
 import com.denizenscript.denizen.objects.notable.NotableManager;
 import com.denizenscript.denizen.tags.BukkitTagContext;
 import com.denizenscript.denizencore.objects.core.ElementTag;
@@ -50,7 +53,7 @@ import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.*;
 
-public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableObject {
+public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableObject, FlaggedNotable {
 
     // <--[ObjectType]
     // @name InventoryTag
@@ -85,6 +88,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
 
     public static void setupInventoryTracker() {
         InventoryTrackerSystem.setup();
+        InventoryContentIndex.setup();
     }
 
     public static InventoryTag mirrorBukkitInventory(Inventory inventory) {
@@ -100,17 +104,15 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
         if (result != null) {
             return result;
         }
-        // Iterate through offline player inventories
-        for (Map.Entry<UUID, PlayerInventory> inv : ImprovedOfflinePlayer.offlineInventories.entrySet()) {
-            if (inv.getValue().equals(inventory)) {
-                return new InventoryTag(NMSHandler.getPlayerHelper().getOfflineData(inv.getKey()));
-            }
+        // Check offline player inventories
+        UUID owner = OfflineInventoryRegistry.getInventoryOwner(inventory);
+        if (owner != null) {
+            return new InventoryTag(NMSHandler.getPlayerHelper().getOfflineData(owner));
         }
-        // Iterate through offline player enderchests
-        for (Map.Entry<UUID, Inventory> inv : ImprovedOfflinePlayer.offlineEnderChests.entrySet()) {
-            if (inv.getValue().equals(inventory)) {
-                return new InventoryTag(NMSHandler.getPlayerHelper().getOfflineData(inv.getKey()), true);
-            }
+        // Check offline player enderchests
+        owner = OfflineInventoryRegistry.getEnderChestOwner(inventory);
+        if (owner != null) {
+            return new InventoryTag(NMSHandler.getPlayerHelper().getOfflineData(owner), true);
         }
 
         return new InventoryTag(inventory);
@@ -141,12 +143,17 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
 
     @Note("Inventories")
     public Object getSaveObject() {
+        ConfigurationSection section = new YamlConfiguration();
+        section.set("object", getNoteObjectText());
+        section.set("flags", flagTracker.toString());
+        return section;
+    }
+
+    @Override
+    public String getNoteObjectText() {
         isSaving = true;
         try {
-            ConfigurationSection section = new YamlConfiguration();
-            section.set("object", "in@" + idType + PropertyParser.getPropertiesString(this));
-            section.set("flags", flagTracker.toString());
-            return section;
+            return "in@" + idType + PropertyParser.getPropertiesString(this);
         }
         finally {
             isSaving = false;
@@ -536,28 +543,8 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
         item = new ItemTag(item.getItemStack().clone());
         item.setAmount(1);
         String myItem = CoreUtilities.toLowerCase(item.identify());
-        for (int i = 0; i < inventory.getSize(); i++) {
-            ItemStack is = inventory.getItem(i);
-            if (is == null || item.getMaterial().getMaterial() != is.getType()) {
-                continue;
-            }
-            is = is.clone();
-            int count = is.getAmount();
-            is.setAmount(1);
-            String newItem = CoreUtilities.toLowerCase(new ItemTag(is).identify());
-            if (myItem.equals(newItem)) {
-                if (count <= amount) {
-                    amount -= count;
-                    if (amount == 0) {
-                        return true;
-                    }
-                }
-                else if (count > amount) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        int count = InventoryContentIndex.get(inventory).countByIdentity(myItem);
+        return count > 0 && count >= amount;
     }
 
     public void setSize(int size) {
@@ -654,24 +641,20 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
             if (idHolder instanceof PlayerTag) {
                 return;
             }
-            // Iterate through offline player inventories
-            for (Map.Entry<UUID, PlayerInventory> inv : ImprovedOfflinePlayer.offlineInventories.entrySet()) { // TODO: Less weird lookup?
-                if (inv.getValue().equals(inventory)) {
-                    idHolder = new PlayerTag(inv.getKey());
-                    return;
-                }
+            UUID owner = OfflineInventoryRegistry.getInventoryOwner(inventory);
+            if (owner != null) {
+                idHolder = new PlayerTag(owner);
+                return;
             }
         }
         else if (getIdType().equals("enderchest")) {
             if (idHolder instanceof PlayerTag) {
                 return;
             }
-            // Iterate through offline player enderchests
-            for (Map.Entry<UUID, Inventory> inv : ImprovedOfflinePlayer.offlineEnderChests.entrySet()) { // TODO: Less weird lookup?
-                if (inv.getValue().equals(inventory)) {
-                    idHolder = new PlayerTag(inv.getKey());
-                    return;
-                }
+            UUID owner = OfflineInventoryRegistry.getEnderChestOwner(inventory);
+            if (owner != null) {
+                idHolder = new PlayerTag(owner);
+                return;
             }
         }
         else if (getIdType().equals("script")) {
@@ -795,6 +778,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
 
     public void setContents(ItemStack[] contents) {
         inventory.setContents(contents);
+        InventoryContentIndex.markModified(inventory);
     }
 
     public void setContents(ListTag list, TagContext context) {
@@ -826,6 +810,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
             filled++;
         }
         inventory.setContents(contents);
+        InventoryContentIndex.markModified(inventory);
         if (Depends.citizens != null && idHolder instanceof NPCTag) {
             ((NPCTag) idHolder).getInventoryTrait().setContents(contents);
         }
@@ -909,6 +894,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
                 }
             }
         }
+        InventoryContentIndex.markModified(inventory);
         return this;
     }
 
@@ -974,6 +960,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
                 }
             }
         }
+        InventoryContentIndex.markModified(inventory);
         if (Depends.citizens != null && idHolder instanceof NPCTag) {
             ((NPCTag) idHolder).getInventoryTrait().setContents(inventory.getContents());
         }
@@ -984,47 +971,21 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
         if (inventory == null) {
             return 0;
         }
-        int qty = 0;
-        for (ItemStack invStack : inventory) {
-            if (invStack != null) {
-                if (invStack.getType() == material && !(new ItemTag(invStack).isItemscript())) {
-                    qty += invStack.getAmount();
-                }
-            }
-        }
-        return qty;
+        return InventoryContentIndex.get(inventory).countByMaterial(material);
     }
 
     public int countByFlag(String flag) {
         if (inventory == null) {
             return 0;
         }
-        int qty = 0;
-        for (ItemStack invStack : inventory) {
-            if (invStack != null) {
-                ItemTag item = new ItemTag(invStack);
-                if (item.getFlagTracker().hasFlag(flag)) {
-                    qty += invStack.getAmount();
-                }
-            }
-        }
-        return qty;
+        return InventoryContentIndex.get(inventory).countByFlag(flag);
     }
 
     public int countByScriptName(String scriptName) {
         if (inventory == null) {
             return 0;
         }
-        int qty = 0;
-        for (ItemStack invStack : inventory) {
-            if (invStack != null) {
-                ItemTag item = new ItemTag(invStack);
-                if (item.isItemscript() && item.getScriptName().equalsIgnoreCase(scriptName)) {
-                    qty += invStack.getAmount();
-                }
-            }
-        }
-        return qty;
+        return InventoryContentIndex.get(inventory).countByScriptName(scriptName);
     }
 
     /**
@@ -1080,6 +1041,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
             }
             NMSHandler.getItemHelper().setInventoryItem(inventory, item, slot + i);
         }
+        InventoryContentIndex.markModified(inventory);
         if (Depends.citizens != null && idHolder instanceof NPCTag) {
             ((NPCTag) idHolder).getInventoryTrait().setContents(inventory.getContents());
         }
@@ -1089,6 +1051,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
     public void clear() {
         if (inventory != null) {
             inventory.clear();
+            InventoryContentIndex.markModified(inventory);
         }
     }
 
@@ -1420,18 +1383,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
                 qty = attribute.getIntContext(2);
                 attribute.fulfill(1);
             }
-            int found_items = 0;
-            for (ItemStack item : object.getContents()) {
-                if (item != null) {
-                    if (BukkitScriptEvent.tryItem(new ItemTag(item), matcher)) {
-                        found_items += item.getAmount();
-                        if (found_items >= qty) {
-                            break;
-                        }
-                    }
-                }
-            }
-            return new ElementTag(found_items >= qty);
+            return new ElementTag(InventoryContentIndex.get(object.inventory).containsByMatcher(matcher, qty));
         });
 
         registerTag("contains", (attribute, object) -> {
@@ -1663,7 +1615,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
                     if (item != null) {
                         ItemTag itemTag = new ItemTag(item);
                         for (String flag : flags) {
-                            if (itemTag.getFlagTracker().hasFlag(flag)) {
+                            if (itemTag.hasFlagFast(flag)) {
                                 found_items += item.getAmount();
                                 break;
                             }
@@ -1818,15 +1770,8 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
                 return null;
             }
             String matcher = attribute.getContext(1);
-            for (int i = 0; i < object.inventory.getSize(); i++) {
-                ItemStack item = object.inventory.getItem(i);
-                if (item != null) {
-                    if (BukkitScriptEvent.tryItem(new ItemTag(item), matcher)) {
-                        return new ElementTag(i + 1);
-                    }
-                }
-            }
-            return new ElementTag(-1);
+            int slot = InventoryContentIndex.get(object.inventory).findByMatcher(matcher);
+            return new ElementTag(slot >= 0 ? (slot + 1) : -1);
         });
 
         registerTag("find", (attribute, object) -> {
@@ -1951,16 +1896,11 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
         // Uses the system behind <@link language Advanced Script Event Matching>.
         // -->
         registerTag("quantity_item", (attribute, object) -> {
-            String matcher = attribute.hasContext(1) ? attribute.getContext(1) : null;
-            int found_items = 0;
-            for (ItemStack item : object.getContents()) {
-                if (item != null) {
-                    if (matcher == null || BukkitScriptEvent.tryItem(new ItemTag(item), matcher)) {
-                        found_items += item.getAmount();
-                    }
-                }
+            InventoryContentIndex.Summary summary = InventoryContentIndex.get(object.inventory);
+            if (!attribute.hasContext(1)) {
+                return new ElementTag(summary.countAll());
             }
-            return new ElementTag(found_items);
+            return new ElementTag(summary.countByMatcher(attribute.getContext(1)));
         });
 
         registerTag("quantity", (attribute, object) -> {
@@ -2451,6 +2391,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
             }
             if (any) {
                 inventory.setContents(items);
+                InventoryContentIndex.markModified(inventory);
             }
         }
     }
@@ -6,6 +6,7 @@ import com.denizenscript.denizen.scripts.containers.core.BookScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizen.utilities.flags.ItemFlagCache;
 import com.denizenscript.denizen.utilities.nbt.CustomNBT;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
@@ -228,11 +229,26 @@ public class ItemTag implements ObjectTag, Notable, Adjustable, FlaggableObject
             if (value == null) {
                 return new MapTagFlagTracker();
             }
-            flagTrackerCache = new MapTagFlagTracker(value, CoreUtilities.noDebugContext);
+            flagTrackerCache = ItemFlagCache.getTracker(value);
         }
         return flagTrackerCache;
     }
 
+    /**
+     * Returns whether the item has the given flag, checking the raw flag text for the flag name before parsing it.
+     */
+    public boolean hasFlagFast(String flagName) {
+        if (flagTrackerCache != null) {
+            return flagTrackerCache.hasFlag(flagName);
+        }
+        String value = CustomNBT.getCustomNBT(getItemStack(), "flags", "Denizen");
+        if (value == null || !ItemFlagCache.mightHaveFlag(value, flagName)) {
+            return false;
+        }
+        flagTrackerCache = ItemFlagCache.getTracker(value);
+        return flagTrackerCache.hasFlag(flagName);
+    }
+
     @Override
     public void reapplyTracker(AbstractFlagTracker tracker) {
         if (tracker instanceof MapTagFlagTracker && ((MapTagFlagTracker) tracker).map.map.isEmpty()) {
@@ -264,6 +280,9 @@ public class ItemTag implements ObjectTag, Notable, Adjustable, FlaggableObject
     public void setItemMeta(ItemMeta meta) {
         this.metaCache = meta;
         item.setItemMeta(meta);
+        // The meta carries the item's NBT, including its item script ID
+        itemScriptCacheStack = null;
+        itemScriptCache = null;
     }
 
     public void setItemStack(ItemStack item) {
@@ -274,6 +293,27 @@ public class ItemTag implements ObjectTag, Notable, Adjustable, FlaggableObject
     public void resetCache() {
         metaCache = null;
         flagTrackerCache = null;
+        itemScriptCacheStack = null;
+        itemScriptCache = null;
+    }
+
+    /**
+     * The item stack instance that 'itemScriptCache' was looked up for.
+     */
+    private ItemStack itemScriptCacheStack;
+
+    private ItemScriptContainer itemScriptCache;
+
+    /**
+     * Returns the item script container for this item (or null if none).
+     * Cached by the identity of the current item stack, and cleared whenever the stack or its meta is replaced.
+     */
+    public ItemScriptContainer getItemScriptContainer() {
+        if (itemScriptCacheStack == null || itemScriptCacheStack != item) {
+            itemScriptCache = ItemScriptHelper.getItemScriptContainer(item);
+            itemScriptCacheStack = item;
+        }
+        return itemScriptCache;
     }
 
     // Compare item to item.
@@ -357,11 +397,11 @@ public class ItemTag implements ObjectTag, Notable, Adjustable, FlaggableObject
      * @return True if it does, otherwise false
      */
     public boolean isItemscript() {
-        return ItemScriptHelper.isItemscript(getItemStack());
+        return getItemScriptContainer() != null;
     }
 
     public String getScriptName() {
-        ItemScriptContainer cont = ItemScriptHelper.getItemScriptContainer(getItemStack());
+        ItemScriptContainer cont = getItemScriptContainer();
         if (cont != null) {
             return cont.getName();
         }
@@ -704,7 +744,7 @@ public class ItemTag implements ObjectTag, Notable, Adjustable, FlaggableObject
         // -->
         registerTag("recipe_ids", (attribute, object) -> {
             String type = attribute.hasContext(1) ? CoreUtilities.toLowerCase(attribute.getContext(1)) : null;
-            ItemScriptContainer container = object.isItemscript() ? ItemScriptHelper.getItemScriptContainer(object.getItemStack()) : null;
+            ItemScriptContainer container = object.getItemScriptContainer();
             ListTag list = new ListTag();
             for (Recipe recipe : Bukkit.getRecipesFor(object.getItemStack())) {
                 if (!Utilities.isRecipeOfType(recipe, type)) {
@@ -13,8 +13,10 @@ import com.denizenscript.denizen.utilities.flags.DataPersistenceFlagTracker;
 import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
 import com.denizenscript.denizen.utilities.world.PathFinder;
 import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizen.utilities.blocks.BlockCursor;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.entity.DenizenEntityType;
+import com.denizenscript.denizen.utilities.entity.NearbyEntityHelper;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
 import com.denizenscript.denizencore.objects.*;
@@ -35,8 +37,6 @@ import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.tags.TagRunnable;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.Deprecations;
-import net.citizensnpcs.api.CitizensAPI;
-import net.citizensnpcs.api.npc.NPC;
 import org.bukkit.*;
 import org.bukkit.block.*;
 import org.bukkit.block.banner.PatternType;
@@ -2251,23 +2251,27 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
         // Returns a list of entities within a radius, with an optional search parameter for the entity type.
         // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
         // -->
+        // <--[tag]
+        // @attribute <LocationTag.find_entities[(<matcher>)].within[<#.#>].limit[<#>]>
+        // @returns ListTag(EntityTag)
+        // @description
+        // Returns a list of up to the given number of the closest entities within a radius, with an optional search parameter for the entity type.
+        // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
+        // -->
         registerTag("find_entities", (attribute, object) -> {
             String matcher = attribute.hasContext(1) ? attribute.getContext(1) : null;
             if (!attribute.startsWith("within", 2) || !attribute.hasContext(2)) {
                 return null;
             }
             double radius = attribute.getDoubleContext(2);
-            attribute.fulfill(1);
+            boolean hasLimit = attribute.startsWith("limit", 3) && attribute.hasContext(3);
+            int limit = hasLimit ? attribute.getIntContext(3) : 0;
+            attribute.fulfill(hasLimit ? 2 : 1);
             ListTag found = new ListTag();
-            for (Entity entity : new WorldTag(object.getWorld()).getEntitiesForTag()) {
-                if (Utilities.checkLocationWithBoundingBox(object, entity, radius)) {
-                    EntityTag current = new EntityTag(entity);
-                    if (matcher == null || BukkitScriptEvent.tryEntity(current, matcher)) {
-                        found.addObject(current.getDenizenObject());
-                    }
-                }
+            for (Entity entity : NearbyEntityHelper.getEntitiesNear(object, radius,
+                    matcher == null ? null : (e) -> BukkitScriptEvent.tryEntity(new EntityTag(e), matcher), limit)) {
+                found.addObject(new EntityTag(entity).getDenizenObject());
             }
-            found.objectForms.sort((ent1, ent2) -> object.compare(((EntityFormObject) ent1).getLocation(), ((EntityFormObject) ent2).getLocation()));
             return found;
         });
 
@@ -2286,34 +2290,29 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             }
             double radius = attribute.getDoubleContext(2);
             attribute.fulfill(1);
-            ListTag found = new ListTag();
-            int max = Settings.blockTagsMaxBlocks();
-            int index = 0;
-            Location tstart = object.getBlockLocation();
-            double tstartY = tstart.getY();
             int radiusInt = (int) radius;
-            fullloop:
-            for (int y = -radiusInt; y <= radiusInt; y++) {
-                double newY = y + tstartY;
-                if (!Utilities.isLocationYSafe(newY, object.getWorld())) {
-                    continue;
-                }
-                for (int x = -radiusInt; x <= radiusInt; x++) {
-                    for (int z = -radiusInt; z <= radiusInt; z++) {
-                        index++;
-                        if (index > max) {
-                            break fullloop;
-                        }
-                        if (Utilities.checkLocation(object, tstart.clone().add(x + 0.5, y + 0.5, z + 0.5), radius)) {
-                            if (matcher == null || BukkitScriptEvent.tryMaterial(new LocationTag(tstart.clone().add(x, y, z)).getBlockTypeForTag(attribute), matcher)) {
-                                found.addObject(new LocationTag(tstart.clone().add(x, y, z)));
-                            }
-                        }
-                    }
+            int blockX = object.getBlockX(), blockY = object.getBlockY(), blockZ = object.getBlockZ();
+            double centerX = object.getX(), centerY = object.getY(), centerZ = object.getZ();
+            double radiusSquared = radius * radius;
+            BlockCursor cursor = new BlockCursor(object.getWorld())
+                    .addBox(blockX - radiusInt, blockY - radiusInt, blockZ - radiusInt, blockX + radiusInt, blockY + radiusInt, blockZ + radiusInt)
+                    .shape((x, y, z) -> {
+                        double xOff = x + 0.5 - centerX, yOff = y + 0.5 - centerY, zOff = z + 0.5 - centerZ;
+                        return xOff * xOff + yOff * yOff + zOff * zOff < radiusSquared;
+                    });
+            List<LocationTag> found;
+            if (matcher != null) {
+                found = CuboidTag.getBlocksMatching(cursor, matcher, attribute);
+            }
+            else {
+                int max = Settings.blockTagsMaxBlocks();
+                found = new ArrayList<>();
+                while (cursor.next() && found.size() < max) {
+                    found.add(cursor.getLocation());
                 }
             }
-            found.objectForms.sort((loc1, loc2) -> object.compare((LocationTag) loc1, (LocationTag) loc2));
-            return found;
+            found.sort(object::compare);
+            return new ListTag(found);
         });
 
         registerTag("find", (attribute, object) -> {
@@ -2438,15 +2437,22 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // Returns a list of players within a radius.
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
             // -->
+            // <--[tag]
+            // @attribute <LocationTag.find.players.within[<#.#>].limit[<#>]>
+            // @returns ListTag(PlayerTag)
+            // @description
+            // Returns a list of up to the given number of the closest players within a radius.
+            // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
+            // -->
             else if (attribute.startsWith("players", 2)) {
                 ArrayList<PlayerTag> found = new ArrayList<>();
-                attribute.fulfill(2);
-                for (Player player : Bukkit.getOnlinePlayers()) {
-                    if (!player.isDead() && Utilities.checkLocationWithBoundingBox(object, player, radius)) {
-                        found.add(new PlayerTag(player));
-                    }
+                boolean hasLimit = attribute.startsWith("limit", 4) && attribute.hasContext(4);
+                int limit = hasLimit ? attribute.getIntContext(4) : 0;
+                attribute.fulfill(hasLimit ? 3 : 2);
+                for (Entity player : NearbyEntityHelper.getEntitiesNear(object, radius,
+                        (e) -> e instanceof Player && !((Player) e).isDead() && !EntityTag.isCitizensNPC(e), limit)) {
+                    found.add(new PlayerTag((Player) player));
                 }
-                found.sort((pl1, pl2) -> object.compare(pl1.getLocation(), pl2.getLocation()));
                 return new ListTag(found);
             }
 
@@ -2457,15 +2463,21 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // Returns a list of NPCs within a radius.
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
             // -->
+            // <--[tag]
+            // @attribute <LocationTag.find.npcs.within[<#.#>].limit[<#>]>
+            // @returns ListTag(NPCTag)
+            // @description
+            // Returns a list of up to the given number of the closest NPCs within a radius.
+            // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
+            // -->
             else if (attribute.startsWith("npcs", 2)) {
                 ArrayList<NPCTag> found = new ArrayList<>();
-                attribute.fulfill(2);
-                for (NPC npc : CitizensAPI.getNPCRegistry()) {
-                    if (npc.isSpawned() && Utilities.checkLocationWithBoundingBox(object, npc.getEntity(), radius)) {
-                        found.add(new NPCTag(npc));
-                    }
+                boolean hasLimit = attribute.startsWith("limit", 4) && attribute.hasContext(4);
+                int limit = hasLimit ? attribute.getIntContext(4) : 0;
+                attribute.fulfill(hasLimit ? 3 : 2);
+                for (Entity npc : NearbyEntityHelper.getEntitiesNear(object, radius, EntityTag::isCitizensNPC, limit)) {
+                    found.add(NPCTag.fromEntity(npc));
                 }
-                found.sort((npc1, npc2) -> object.compare(npc1.getLocation(), npc2.getLocation()));
                 return new ListTag(found);
             }
 
@@ -2474,23 +2486,20 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
                 ListTag ent_list = attribute.hasContext(2) ? attribute.contextAsType(2, ListTag.class) : null;
                 ListTag found = new ListTag();
                 attribute.fulfill(2);
-                for (Entity entity : new WorldTag(object.getWorld()).getEntitiesForTag()) {
-                    if (Utilities.checkLocationWithBoundingBox(object, entity, radius)) {
-                        EntityTag current = new EntityTag(entity);
-                        if (ent_list != null) {
-                            for (String ent : ent_list) {
-                                if (current.comparedTo(ent)) {
-                                    found.addObject(current.getDenizenObject());
-                                    break;
-                                }
+                for (Entity entity : NearbyEntityHelper.getEntitiesNear(object, radius, null, 0)) {
+                    EntityTag current = new EntityTag(entity);
+                    if (ent_list != null) {
+                        for (String ent : ent_list) {
+                            if (current.comparedTo(ent)) {
+                                found.addObject(current.getDenizenObject());
+                                break;
                             }
                         }
-                        else {
-                            found.addObject(current.getDenizenObject());
-                        }
+                    }
+                    else {
+                        found.addObject(current.getDenizenObject());
                     }
                 }
-                found.objectForms.sort((ent1, ent2) -> object.compare(((EntityFormObject) ent1).getLocation(), ((EntityFormObject) ent2).getLocation()));
                 return new ListTag(found.objectForms);
             }
 
@@ -2502,16 +2511,22 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // This includes Players, mobs, NPCs, etc., but excludes dropped items, experience orbs, etc.
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
             // -->
+            // <--[tag]
+            // @attribute <LocationTag.find.living_entities.within[<#.#>].limit[<#>]>
+            // @returns ListTag(EntityTag)
+            // @description
+            // Returns a list of up to the given number of the closest living entities within a radius.
+            // This includes Players, mobs, NPCs, etc., but excludes dropped items, experience orbs, etc.
+            // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
+            // -->
             else if (attribute.startsWith("living_entities", 2)) {
                 ListTag found = new ListTag();
-                attribute.fulfill(2);
-                for (Entity entity : new WorldTag(object.getWorld()).getEntitiesForTag()) {
-                    if (entity instanceof LivingEntity
-                            && Utilities.checkLocationWithBoundingBox(object, entity, radius)) {
-                        found.addObject(new EntityTag(entity).getDenizenObject());
-                    }
+                boolean hasLimit = attribute.startsWith("limit", 4) && attribute.hasContext(4);
+                int limit = hasLimit ? attribute.getIntContext(4) : 0;
+                attribute.fulfill(hasLimit ? 3 : 2);
+                for (Entity entity : NearbyEntityHelper.getEntitiesNear(object, radius, (e) -> e instanceof LivingEntity, limit)) {
+                    found.addObject(new EntityTag(entity).getDenizenObject());
                 }
-                found.objectForms.sort((ent1, ent2) -> object.compare(((EntityFormObject) ent1).getLocation(), ((EntityFormObject) ent2).getLocation()));
                 return new ListTag(found.objectForms);
             }
 
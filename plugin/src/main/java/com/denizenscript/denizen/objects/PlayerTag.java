@@ -15,6 +15,7 @@ import com.denizenscript.denizen.utilities.entity.BossBarHelper;
 import com.denizenscript.denizen.utilities.entity.FakeEntity;
 import com.denizenscript.denizen.utilities.entity.HideEntitiesHelper;
 import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.utilities.packets.DenizenPacketHandler;
 import com.denizenscript.denizen.utilities.packets.HideParticles;
 import com.denizenscript.denizen.utilities.packets.ItemChangeMessage;
@@ -2173,14 +2174,12 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
         // @returns ListTag(LocationTag)
         // @description
         // Returns a list of locations that the player will see a fake block at, as set by <@link command showfake> or connected commands.
+        // Includes blocks from any fake block layers the player is viewing.
         // -->
         registerTag("fake_block_locations", (attribute, object) -> {
             ListTag list = new ListTag();
-            FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(object.getUUID());
-            if (map != null) {
-                for (LocationTag loc : map.byLocation.keySet()) {
-                    list.addObject(loc.clone());
-                }
+            for (LocationTag loc : FakeBlock.getFakeBlockLocationsFor(object.getUUID())) {
+                list.addObject(loc);
             }
             return list;
         });
@@ -2198,12 +2197,12 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
                 return null;
             }
             LocationTag input = attribute.contextAsType(1, LocationTag.class);
-            FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(object.getUUID());
-            if (map != null) {
-                FakeBlock block = map.byLocation.get(input);
-                if (block != null) {
-                    return block.material;
-                }
+            if (input == null) {
+                return null;
+            }
+            FakeBlock block = FakeBlock.getFakeBlockFor(object.getUUID(), input);
+            if (block != null) {
+                return block.material;
             }
             return null;
         });
@@ -2507,6 +2506,7 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
         // -->
         if (mechanism.matches("item_on_cursor") && mechanism.requireObject(ItemTag.class)) {
             getPlayerEntity().setItemOnCursor(mechanism.valueAsType(ItemTag.class).getItemStack());
+            InventoryContentIndex.markModified(getPlayerEntity());
         }
 
         // <--[mechanism]
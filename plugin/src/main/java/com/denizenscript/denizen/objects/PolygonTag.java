@@ -1,10 +1,14 @@
 package com.denizenscript.denizen.objects;
 
 import com.denizenscript.denizen.events.BukkitScriptEvent;
+import com.denizenscript.denizen.objects.notable.FlaggedNotable;
 import com.denizenscript.denizen.objects.notable.NotableManager;
+import com.denizenscript.denizen.objects.notable.NotedAreaTracker;
 import com.denizenscript.denizen.utilities.Settings;
+import com.denizenscript.denizen.utilities.blocks.BlockCursor;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.entity.NearbyEntityHelper;
 import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
@@ -19,19 +23,17 @@ import com.denizenscript.denizencore.tags.ObjectTagProcessor;
 import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.tags.TagRunnable;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
-import net.citizensnpcs.api.CitizensAPI;
-import net.citizensnpcs.api.npc.NPC;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, AreaContainmentObject, FlaggableObject {
+public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, AreaContainmentObject, FlaggableObject, FlaggedNotable {
 
     // <--[ObjectType]
     // @name PolygonTag
@@ -220,14 +222,21 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
 
     public static List<PolygonTag> getNotedPolygonsContaining(Location location) {
         List<PolygonTag> polygons = new ArrayList<>();
-        for (PolygonTag polygon : NotableManager.getAllType(PolygonTag.class)) {
-            if (polygon.doesContainLocation(location)) {
-                polygons.add(polygon);
+        for (AreaContainmentObject area : NotedAreaTracker.getCandidates(location)) {
+            if (area instanceof PolygonTag && area.doesContainLocation(location)) {
+                polygons.add((PolygonTag) area);
             }
         }
         return polygons;
     }
 
+    @Override
+    public CuboidTag getCuboidBoundary() {
+        LocationTag min = new LocationTag(Math.floor(boxMin.x), Math.floor(yMin), Math.floor(boxMin.z), world.getName());
+        LocationTag max = new LocationTag(Math.ceil(boxMax.x), Math.ceil(yMax), Math.ceil(boxMax.z), world.getName());
+        return new CuboidTag(min, max);
+    }
+
     @Override
     public boolean doesContainLocation(Location loc) {
         if (loc.getWorld() == null) {
@@ -236,15 +245,20 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         if (!loc.getWorld().getName().equals(world.getName())) {
             return false;
         }
-        double x = loc.getX();
-        double z = loc.getZ();
-        if (x < boxMin.x || x > boxMax.x || z < boxMin.z || z > boxMax.z) {
-            return false;
-        }
         double y = loc.getY();
         if (y < yMin || y > yMax) {
             return false;
         }
+        return containsXZ(loc.getX(), loc.getZ());
+    }
+
+    /**
+     * Returns whether the 2D polygon shape contains the X/Z coordinate, ignoring world and Y range.
+     */
+    public boolean containsXZ(double x, double z) {
+        if (x < boxMin.x || x > boxMax.x || z < boxMin.z || z > boxMax.z) {
+            return false;
+        }
         boolean isInside = false;
         for (int i = 0; i < corners.size(); i++) {
             Corner start = corners.get(i);
@@ -261,9 +275,8 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         ArrayList<LocationTag> toOutput = new ArrayList<>();
         for (int x = (int) Math.floor(boxMin.x); x < boxMax.x; x++) {
             for (int z = (int) Math.floor(boxMin.z); z < boxMax.z; z++) {
-                LocationTag possible = new LocationTag(x + 0.5, y, z + 0.5, world.getName());
-                if (doesContainLocation(possible)) {
-                    toOutput.add(possible);
+                if (containsXZ(x + 0.5, z + 0.5)) {
+                    toOutput.add(new LocationTag(x + 0.5, y, z + 0.5, world.getName()));
                 }
                 max--;
                 if (max <= 0) {
@@ -330,23 +343,36 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         return addTo;
     }
 
+    @Override
+    public BlockCursor getBlockCursor() {
+        int minY = (int) Math.floor(yMin);
+        return new BlockCursor(world.getWorld())
+                .addBox((int) Math.floor(boxMin.x), minY, (int) Math.floor(boxMin.z),
+                        (int) Math.ceil(boxMax.x) - 1, minY + (int) Math.ceil(yMax - yMin) - 1, (int) Math.ceil(boxMax.z) - 1)
+                .shape((x, y, z) -> containsXZ(x + 0.5, z + 0.5));
+    }
+
     public ListTag getBlocks(String matcher, Attribute attribute) {
-        int max = Settings.blockTagsMaxBlocks();
-        ListTag addTo = new ListTag();
-        List<LocationTag> flatShell = generateFlatBlockShell(yMin);
-        for (double y = yMin; y < yMax; y++) {
-            for (LocationTag loc : flatShell) {
-                LocationTag newLoc = loc.clone();
-                newLoc.setY(y);
-                if (matcher == null || BukkitScriptEvent.tryMaterial(newLoc.getBlockTypeForTag(attribute), matcher)) {
-                    addTo.addObject(newLoc);
-                }
-            }
-            max -= flatShell.size();
-            if (max <= 0) {
-                return addTo;
+        BlockCursor cursor = getBlockCursor();
+        List<LocationTag> blocks;
+        if (matcher != null) {
+            blocks = CuboidTag.getBlocksMatching(cursor, matcher, attribute);
+        }
+        else {
+            int max = Settings.blockTagsMaxBlocks();
+            blocks = new ArrayList<>();
+            cursor.positionOrder();
+            while (cursor.next() && blocks.size() < max) {
+                blocks.add(cursor.getLocation());
             }
         }
+        // Blocks are listed at their X/Z center, and at the polygon's own Y offset within the block
+        double yOffset = yMin - Math.floor(yMin);
+        ListTag addTo = new ListTag();
+        for (LocationTag loc : blocks) {
+            loc.add(0.5, yOffset, 0.5);
+            addTo.addObject(loc);
+        }
         return addTo;
     }
 
@@ -416,11 +442,16 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
     @Note("Polygons")
     public Object getSaveObject() {
         ConfigurationSection section = new YamlConfiguration();
-        section.set("object", identifyFull());
+        section.set("object", getNoteObjectText());
         section.set("flags", flagTracker.toString());
         return section;
     }
 
+    @Override
+    public String getNoteObjectText() {
+        return identifyFull();
+    }
+
     @Override
     public void makeUnique(String id) {
         PolygonTag toNote = clone();
@@ -542,9 +573,7 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         // Returns a cuboid approximately representing the maximal bounding box of the polygon (anything this cuboid does not contain, is also not contained by the polygon, but not vice versa).
         // -->
         registerTag("bounding_box", (attribute, polygon) -> {
-            LocationTag min = new LocationTag(Math.floor(polygon.boxMin.x), Math.floor(polygon.yMin), Math.floor(polygon.boxMin.z), polygon.world.getName());
-            LocationTag max = new LocationTag(Math.ceil(polygon.boxMax.x), Math.ceil(polygon.yMax), Math.ceil(polygon.boxMax.z), polygon.world.getName());
-            return new CuboidTag(min, max);
+            return polygon.getCuboidBoundary();
         });
 
         // <--[tag]
@@ -585,10 +614,8 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         // -->
         registerTag("players", (attribute, polygon) -> {
             ArrayList<PlayerTag> players = new ArrayList<>();
-            for (Player player : Bukkit.getOnlinePlayers()) {
-                if (polygon.doesContainLocation(player.getLocation())) {
-                    players.add(PlayerTag.mirrorBukkitPlayer(player));
-                }
+            for (Entity player : NearbyEntityHelper.getEntitiesInArea(polygon, (e) -> e instanceof Player && !EntityTag.isCitizensNPC(e))) {
+                players.add(PlayerTag.mirrorBukkitPlayer((Player) player));
             }
             return new ListTag(players);
         });
@@ -601,14 +628,7 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         // -->
         if (Depends.citizens != null) {
             registerTag("npcs", (attribute, polygon) -> {
-                ArrayList<NPCTag> npcs = new ArrayList<>();
-                for (NPC npc : CitizensAPI.getNPCRegistry()) {
-                    NPCTag dnpc = new NPCTag(npc);
-                    if (polygon.doesContainLocation(dnpc.getLocation())) {
-                        npcs.add(dnpc);
-                    }
-                }
-                return new ListTag(npcs);
+                return new ListTag(NearbyEntityHelper.getNPCsInArea(polygon));
             });
         }
 
@@ -621,13 +641,8 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         registerTag("entities", (attribute, polygon) -> {
             String matcher = attribute.hasContext(1) ? attribute.getContext(1) : null;
             ListTag entities = new ListTag();
-            for (Entity ent : polygon.world.getEntitiesForTag()) {
-                EntityTag current = new EntityTag(ent);
-                if (polygon.doesContainLocation(ent.getLocation())) {
-                    if (matcher == null || BukkitScriptEvent.tryEntity(current, matcher)) {
-                        entities.addObject(new EntityTag(ent).getDenizenObject());
-                    }
-                }
+            for (Entity ent : NearbyEntityHelper.getEntitiesInArea(polygon, matcher == null ? null : (e) -> BukkitScriptEvent.tryEntity(new EntityTag(e), matcher))) {
+                entities.addObject(new EntityTag(ent).getDenizenObject());
             }
             return entities;
         });
@@ -641,10 +656,8 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         // -->
         registerTag("living_entities", (attribute, polygon) -> {
             ArrayList<EntityTag> entities = new ArrayList<>();
-            for (Entity ent : polygon.world.getWorld().getLivingEntities()) {
-                if (polygon.doesContainLocation(ent.getLocation()) && !EntityTag.isCitizensNPC(ent)) {
-                    entities.add(new EntityTag(ent));
-                }
+            for (Entity ent : NearbyEntityHelper.getEntitiesInArea(polygon, (e) -> e instanceof LivingEntity && !EntityTag.isCitizensNPC(e))) {
+                entities.add(new EntityTag(ent));
             }
             return new ListTag(entities);
         });
@@ -835,6 +848,8 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         // @description
         // Returns a list of block locations within the polygon.
         // Optionally, specify a list of materials to only return locations with that block type.
+        // Without a matcher, locations are listed in X, then Z, then Y order.
+        // With a matcher, locations are listed one chunk column at a time, bottom to top.
         // -->
         registerTag("blocks", (attribute, polygon) -> {
             return polygon.getBlocks(attribute.hasContext(1) ? attribute.getContext(1) : null, attribute);
@@ -913,6 +928,9 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
             Corner newCorner = new Corner(loc.getX(), loc.getZ());
             corners.add(newCorner);
             recalculateToFit(newCorner);
+            if (noteName != null) {
+                NotedAreaTracker.refresh(this);
+            }
         }
     }
 }
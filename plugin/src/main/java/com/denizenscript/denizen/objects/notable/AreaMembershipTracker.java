@@ -0,0 +1,142 @@
+package com.denizenscript.denizen.objects.notable;
+
+import com.denizenscript.denizen.objects.AreaContainmentObject;
+import com.denizenscript.denizen.objects.CuboidTag;
+import com.denizenscript.denizen.objects.EllipsoidTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.*;
+
+/**
+ * Caches, per 16x16x16 chunk section, which noted areas fully contain the section and which ones cross its boundary.
+ * Areas that are neither are known to exclude every position within the section.
+ * This allows area membership of a moving entity to be re-evaluated by only checking the boundary areas of its current section.
+ */
+public class AreaMembershipTracker {
+
+    public static int MAX_CACHED_SECTIONS_PER_WORLD = 8192;
+
+    public static class SectionState {
+
+        public List<AreaContainmentObject> fullyInside = new ArrayList<>();
+
+        public List<AreaContainmentObject> boundary = new ArrayList<>();
+
+        public boolean isFullyInside(AreaContainmentObject area) {
+            for (AreaContainmentObject inside : fullyInside) {
+                if (inside == area) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isBoundary(AreaContainmentObject area) {
+            for (AreaContainmentObject edge : boundary) {
+                if (edge == area) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static HashMap<String, LinkedHashMap<Long, SectionState>> sectionsByWorld = new HashMap<>();
+
+    public static long cachedVersion = -1;
+
+    public static long sectionKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFF) << 42) | ((long) (z & 0x3FFFFF) << 20) | (y & 0xFFFFF);
+    }
+
+    /**
+     * Returns the cached section state for the section containing the location, building it if needed.
+     */
+    public static SectionState getSection(Location location) {
+        if (location == null || location.getWorld() == null) {
+            return null;
+        }
+        if (cachedVersion != NotedAreaTracker.version) {
+            sectionsByWorld.clear();
+            cachedVersion = NotedAreaTracker.version;
+        }
+        int x = location.getBlockX() >> 4, y = location.getBlockY() >> 4, z = location.getBlockZ() >> 4;
+        LinkedHashMap<Long, SectionState> sections = sectionsByWorld.computeIfAbsent(CoreUtilities.toLowerCase(location.getWorld().getName()), k -> new LinkedHashMap<Long, SectionState>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SectionState> eldest) {
+                return size() > MAX_CACHED_SECTIONS_PER_WORLD;
+            }
+        });
+        long key = sectionKey(x, y, z);
+        SectionState state = sections.get(key);
+        if (state == null) {
+            state = buildSection(location.getWorld(), x, y, z, NotedAreaTracker.getCandidates(location));
+            sections.put(key, state);
+        }
+        return state;
+    }
+
+    public static SectionState buildSection(World world, int sectionX, int sectionY, int sectionZ, List<AreaContainmentObject> candidates) {
+        SectionState state = new SectionState();
+        int minX = sectionX << 4, minY = sectionY << 4, minZ = sectionZ << 4;
+        int maxX = minX + 15, maxY = minY + 15, maxZ = minZ + 15;
+        for (AreaContainmentObject area : candidates) {
+            CuboidTag boundary = area.getCuboidBoundary();
+            boolean intersects = false;
+            boolean fullyInside = false;
+            for (CuboidTag.LocationPair pair : boundary.pairs) {
+                if (pair.high.getBlockX() < minX || pair.low.getBlockX() > maxX
+                        || pair.high.getBlockY() < minY || pair.low.getBlockY() > maxY
+                        || pair.high.getBlockZ() < minZ || pair.low.getBlockZ() > maxZ) {
+                    continue;
+                }
+                intersects = true;
+                if (area instanceof CuboidTag && pair.low.getBlockX() <= minX && pair.high.getBlockX() >= maxX
+                        && pair.low.getBlockY() <= minY && pair.high.getBlockY() >= maxY
+                        && pair.low.getBlockZ() <= minZ && pair.high.getBlockZ() >= maxZ) {
+                    fullyInside = true;
+                    break;
+                }
+            }
+            if (!intersects) {
+                continue;
+            }
+            if (area instanceof EllipsoidTag) {
+                // Ellipsoids are convex, so containing all 8 corners of the section means containing the whole section
+                fullyInside = true;
+                for (int corner = 0; corner < 8 && fullyInside; corner++) {
+                    Location cornerLocation = new Location(world, (corner & 1) == 0 ? minX : maxX + 1, (corner & 2) == 0 ? minY : maxY + 1, (corner & 4) == 0 ? minZ : maxZ + 1);
+                    fullyInside = area.doesContainLocation(cornerLocation);
+                }
+            }
+            if (fullyInside) {
+                state.fullyInside.add(area);
+            }
+            else {
+                state.boundary.add(area);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Returns whether the area contains the position, using the section state to skip the exact check where possible.
+     */
+    public static boolean contains(SectionState state, AreaContainmentObject area, Location pos) {
+        if (pos == null) {
+            return false;
+        }
+        if (state == null || !NotedAreaTracker.tracked.containsKey(area)) {
+            return area.doesContainLocation(pos);
+        }
+        if (state.isFullyInside(area)) {
+            return true;
+        }
+        if (state.isBoundary(area)) {
+            return area.doesContainLocation(pos);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,16 @@
+package com.denizenscript.denizen.objects.notable;
+
+import com.denizenscript.denizencore.flags.FlaggableObject;
+import com.denizenscript.denizencore.objects.notable.Notable;
+
+/**
+ * A notable that saves as its object text plus its own flags.
+ * This lets NotableManager copy the flags on the main thread, and serialize them along with the rest of the notables on the save thread.
+ */
+public interface FlaggedNotable extends Notable, FlaggableObject {
+
+    /**
+     * Returns the text to save as the 'object' of the note, from which the object is recreated on load.
+     */
+    String getNoteObjectText();
+}
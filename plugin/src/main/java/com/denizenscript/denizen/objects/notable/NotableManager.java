@@ -2,7 +2,10 @@ package com.denizenscript.denizen.objects.notable;
 
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.objects.*;
+import com.denizenscript.denizen.utilities.SavePipeline;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.flags.FlagFileHelper;
+import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.FlaggableObject;
 import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
 import com.denizenscript.denizencore.objects.ObjectFetcher;
@@ -14,14 +17,10 @@ import com.denizenscript.denizencore.utilities.CoreUtilities;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
-import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
-import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 public class NotableManager {
 
@@ -70,6 +69,9 @@ public class NotableManager {
         notableObjects.put(id, object);
         reverseObjects.put(object, id);
         notesByType.get(object.getClass()).add(object);
+        if (object instanceof AreaContainmentObject) {
+            NotedAreaTracker.add((AreaContainmentObject) object);
+        }
     }
 
     public static Notable remove(String id) {
@@ -81,6 +83,9 @@ public class NotableManager {
         notableObjects.remove(id);
         reverseObjects.remove(obj);
         notesByType.get(obj.getClass()).remove(obj);
+        if (obj instanceof AreaContainmentObject) {
+            NotedAreaTracker.remove((AreaContainmentObject) obj);
+        }
         return obj;
     }
 
@@ -89,6 +94,9 @@ public class NotableManager {
         notableObjects.remove(id);
         reverseObjects.remove(obj);
         notesByType.get(obj.getClass()).remove(obj);
+        if (obj instanceof AreaContainmentObject) {
+            NotedAreaTracker.remove((AreaContainmentObject) obj);
+        }
     }
 
     public static <T extends Notable> Set<T> getAllType(Class<T> type) {
@@ -104,6 +112,7 @@ public class NotableManager {
             set.clear();
         }
         reverseObjects.clear();
+        NotedAreaTracker.clear();
         // Find each type of notable
         for (String key : Denizen.getInstance().notableManager.getNotables().getKeys(false)) {
             Class<? extends ObjectTag> clazz = reverse_objects.get(key);
@@ -137,22 +146,46 @@ public class NotableManager {
     }
 
     /**
-     * Called on by '/denizen save'.
+     * The saved data of a flagged notable: its object text, and a private copy of its flags (serialized when the notables file is written).
      */
-    private static void _saveNotables() {
-        FileConfiguration notables = Denizen.getInstance().notableManager.getNotables();
-        for (String key : notables.getKeys(false)) {
-            notables.set(key, null);
+    private static class FlaggedNotableSnapshot {
+
+        public final String object;
+
+        public final SavableMapFlagTracker flags;
+
+        public FlaggedNotableSnapshot(String object, SavableMapFlagTracker flags) {
+            this.object = object;
+            this.flags = flags;
         }
+    }
+
+    /**
+     * Called on by '/denizen save'.
+     * Takes a snapshot of all notables, to be serialized off the main thread.
+     * Flagged notables are captured as their object text plus a copy of their flags, so that the flags aren't serialized on the main thread.
+     */
+    private static List<Map.Entry<String, Object>> _snapshotNotables() {
+        List<Map.Entry<String, Object>> snapshot = new ArrayList<>(notableObjects.size());
         for (Map.Entry<String, Notable> notable : notableObjects.entrySet()) {
             try {
-                notables.set(getClassId(getClass(notable.getValue())) + "." + EscapeTagBase.escape(CoreUtilities.toLowerCase(notable.getKey())), notable.getValue().getSaveObject());
+                String key = getClassId(getClass(notable.getValue())) + "." + EscapeTagBase.escape(CoreUtilities.toLowerCase(notable.getKey()));
+                AbstractFlagTracker flags = notable.getValue() instanceof FlaggedNotable ? ((FlaggedNotable) notable.getValue()).getFlagTracker() : null;
+                Object saveObject;
+                if (flags instanceof SavableMapFlagTracker) {
+                    saveObject = new FlaggedNotableSnapshot(((FlaggedNotable) notable.getValue()).getNoteObjectText(), FlagFileHelper.copy((SavableMapFlagTracker) flags));
+                }
+                else {
+                    saveObject = notable.getValue().getSaveObject();
+                }
+                snapshot.add(new AbstractMap.SimpleEntry<>(key, saveObject));
             }
             catch (Exception e) {
                 Debug.echoError("Notable '" + notable.getKey() + "' failed to save!");
                 Debug.echoError(e);
             }
         }
+        return snapshot;
     }
 
     private static <T extends Notable> Class<T> getClass(Notable notable) {
@@ -171,6 +204,12 @@ public class NotableManager {
      * Reloads, retrieves and saves notable information from/to 'notables.yml'.
      */
     public void reloadNotables() {
+        if (notablesSave != null && SavePipeline.hasPendingWrites()) {
+            // Read the file back once pending saves are on disk, without holding up the main thread
+            SavePipeline.whenIdle(this::reloadNotables);
+            return;
+        }
+        SavePipeline.flush(30 * 1000);
         if (notablesFile == null) {
             notablesFile = new File(Denizen.getInstance().getDataFolder(), "notables.yml");
         }
@@ -190,14 +229,23 @@ public class NotableManager {
         if (notablesSave == null || notablesFile == null) {
             return;
         }
-        try {
-            // Save notables to notables.yml
-            _saveNotables();
-            notablesSave.save(notablesFile);
-        }
-        catch (IOException ex) {
-            Logger.getLogger(JavaPlugin.class.getName()).log(Level.SEVERE, "Could not save to " + notablesFile, ex);
-        }
+        long start = System.nanoTime();
+        List<Map.Entry<String, Object>> snapshot = _snapshotNotables();
+        SavePipeline.submit("notables", notablesFile.getPath(), System.nanoTime() - start, true, () -> {
+            YamlConfiguration output = new YamlConfiguration();
+            for (Map.Entry<String, Object> entry : snapshot) {
+                if (entry.getValue() instanceof FlaggedNotableSnapshot) {
+                    FlaggedNotableSnapshot flagged = (FlaggedNotableSnapshot) entry.getValue();
+                    ConfigurationSection section = output.createSection(entry.getKey());
+                    section.set("object", flagged.object);
+                    section.set("flags", flagged.flags.toString());
+                }
+                else {
+                    output.set(entry.getKey(), entry.getValue());
+                }
+            }
+            return output.saveToString();
+        });
     }
 
     ///////////////////
@@ -0,0 +1,187 @@
+package com.denizenscript.denizen.objects.notable;
+
+import com.denizenscript.denizen.objects.AreaContainmentObject;
+import com.denizenscript.denizen.objects.CuboidTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Location;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Spatial index of all noted areas (cuboids, ellipsoids, polygons), bucketed by chunk column per world.
+ * Kept up to date by NotableManager, and by the area objects themselves when a noted area is adjusted.
+ */
+public class NotedAreaTracker {
+
+    /**
+     * Areas that would cover more than this many chunk columns are stored in a per-world list that is always checked, rather than in every chunk bucket.
+     */
+    public static int MAX_CHUNKS_PER_AREA = 4096;
+
+    public static class PerWorldSet {
+
+        public HashMap<Long, List<AreaContainmentObject>> byChunk = new HashMap<>();
+
+        public List<AreaContainmentObject> largeAreas = new ArrayList<>();
+
+        public boolean isEmpty() {
+            return byChunk.isEmpty() && largeAreas.isEmpty();
+        }
+    }
+
+    public static HashMap<String, PerWorldSet> worlds = new HashMap<>();
+
+    public static class TrackedArea {
+
+        public String worldName;
+
+        public long[] chunkKeys;
+    }
+
+    public static IdentityHashMap<AreaContainmentObject, TrackedArea> tracked = new IdentityHashMap<>();
+
+    /**
+     * Incremented whenever any area is added, removed, or changed, to allow dependent caches to invalidate.
+     */
+    public static long version = 0;
+
+    public static long chunkKey(int x, int z) {
+        return (((long) x) << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    public static void add(AreaContainmentObject area) {
+        version++;
+        if (tracked.containsKey(area)) {
+            remove(area);
+        }
+        CuboidTag boundary = area.getCuboidBoundary();
+        if (boundary == null || boundary.pairs.isEmpty()) {
+            return;
+        }
+        String worldName = boundary.pairs.get(0).low.getWorldName();
+        if (worldName == null) {
+            return;
+        }
+        worldName = CoreUtilities.toLowerCase(worldName);
+        PerWorldSet set = worlds.computeIfAbsent(worldName, k -> new PerWorldSet());
+        TrackedArea trackedArea = new TrackedArea();
+        trackedArea.worldName = worldName;
+        tracked.put(area, trackedArea);
+        long chunkCount = 0;
+        for (CuboidTag.LocationPair pair : boundary.pairs) {
+            chunkCount += (long) ((pair.high.getBlockX() >> 4) - (pair.low.getBlockX() >> 4) + 1) * ((pair.high.getBlockZ() >> 4) - (pair.low.getBlockZ() >> 4) + 1);
+        }
+        if (chunkCount > MAX_CHUNKS_PER_AREA) {
+            set.largeAreas.add(area);
+            return;
+        }
+        List<Long> keys = new ArrayList<>();
+        for (CuboidTag.LocationPair pair : boundary.pairs) {
+            int maxX = pair.high.getBlockX() >> 4, maxZ = pair.high.getBlockZ() >> 4;
+            for (int x = pair.low.getBlockX() >> 4; x <= maxX; x++) {
+                for (int z = pair.low.getBlockZ() >> 4; z <= maxZ; z++) {
+                    long key = chunkKey(x, z);
+                    List<AreaContainmentObject> list = set.byChunk.computeIfAbsent(key, k -> new ArrayList<>());
+                    if (list.isEmpty() || list.get(list.size() - 1) != area) {
+                        list.add(area);
+                        keys.add(key);
+                    }
+                }
+            }
+        }
+        trackedArea.chunkKeys = new long[keys.size()];
+        for (int i = 0; i < trackedArea.chunkKeys.length; i++) {
+            trackedArea.chunkKeys[i] = keys.get(i);
+        }
+    }
+
+    public static void remove(AreaContainmentObject area) {
+        TrackedArea trackedArea = tracked.remove(area);
+        if (trackedArea == null) {
+            return;
+        }
+        version++;
+        PerWorldSet set = worlds.get(trackedArea.worldName);
+        if (set == null) {
+            return;
+        }
+        if (trackedArea.chunkKeys == null) {
+            set.largeAreas.removeIf(a -> a == area);
+        }
+        else {
+            for (long key : trackedArea.chunkKeys) {
+                List<AreaContainmentObject> list = set.byChunk.get(key);
+                if (list != null && list.removeIf(a -> a == area) && list.isEmpty()) {
+                    set.byChunk.remove(key);
+                }
+            }
+        }
+        if (set.isEmpty()) {
+            worlds.remove(trackedArea.worldName);
+        }
+    }
+
+    /**
+     * Re-indexes an area if it is currently tracked, for use after its shape has been changed.
+     */
+    public static void refresh(AreaContainmentObject area) {
+        if (tracked.containsKey(area)) {
+            add(area);
+        }
+    }
+
+    public static void clear() {
+        version++;
+        worlds.clear();
+        tracked.clear();
+    }
+
+    public static PerWorldSet getSetFor(Location location) {
+        if (location == null || location.getWorld() == null) {
+            return null;
+        }
+        return worlds.get(CoreUtilities.toLowerCase(location.getWorld().getName()));
+    }
+
+    /**
+     * Returns a new list of all noted areas whose bounding box could contain the location. Candidates still need an exact containment check.
+     */
+    public static List<AreaContainmentObject> getCandidates(Location location) {
+        PerWorldSet set = getSetFor(location);
+        if (set == null) {
+            return new ArrayList<>(0);
+        }
+        List<AreaContainmentObject> chunkList = set.byChunk.get(chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+        List<AreaContainmentObject> result = new ArrayList<>((chunkList == null ? 0 : chunkList.size()) + set.largeAreas.size());
+        if (chunkList != null) {
+            result.addAll(chunkList);
+        }
+        result.addAll(set.largeAreas);
+        return result;
+    }
+
+    /**
+     * Returns true if any noted area contains the location and passes the filter (if non-null).
+     */
+    public static boolean anyAreaContains(Location location, Predicate<AreaContainmentObject> filter) {
+        PerWorldSet set = getSetFor(location);
+        if (set == null) {
+            return false;
+        }
+        List<AreaContainmentObject> chunkList = set.byChunk.get(chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+        if (chunkList != null) {
+            for (AreaContainmentObject area : chunkList) {
+                if ((filter == null || filter.test(area)) && area.doesContainLocation(location)) {
+                    return true;
+                }
+            }
+        }
+        for (AreaContainmentObject area : set.largeAreas) {
+            if ((filter == null || filter.test(area)) && area.doesContainLocation(location)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,6 +1,7 @@
 package com.denizenscript.denizen.objects.properties.entity;
 
 import com.denizenscript.denizen.objects.EntityTag;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.objects.InventoryTag;
 import com.denizenscript.denizen.objects.ItemTag;
 import com.denizenscript.denizencore.objects.Mechanism;
@@ -192,6 +193,7 @@ public class EntityEquipment implements Property {
                 }
                 equip.setArmorContents(stacks);
             }
+            InventoryContentIndex.markModified(entity.getBukkitEntity());
         }
     }
 }
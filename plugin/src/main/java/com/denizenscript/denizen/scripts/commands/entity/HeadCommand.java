@@ -2,6 +2,7 @@ package com.denizenscript.denizen.scripts.commands.entity;
 
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.objects.EntityTag;
 import com.denizenscript.denizen.objects.MaterialTag;
 import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
@@ -90,6 +91,7 @@ public class HeadCommand extends AbstractCommand {
             }
             else if (entity.isPlayer()) {
                 entity.getPlayer().getInventory().setHelmet(item);
+                InventoryContentIndex.markModified(entity.getPlayer().getInventory());
             }
             else {
                 if (entity.isLivingEntity() && entity.getLivingEntity().getEquipment() != null) {
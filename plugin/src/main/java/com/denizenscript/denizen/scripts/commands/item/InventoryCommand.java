@@ -7,6 +7,7 @@ import com.denizenscript.denizen.scripts.containers.core.InventoryScriptHelper;
 import com.denizenscript.denizen.utilities.Conversion;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.utilities.inventory.SlotHelper;
 import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
 import com.denizenscript.denizencore.objects.*;
@@ -366,6 +367,7 @@ public class InventoryCommand extends AbstractCommand {
                             }
                         }
                     }
+                    InventoryContentIndex.markModified(destination.getInventory());
                     break;
                 }
                 // Exclude all items from the origin's contents in the destination
@@ -414,6 +416,7 @@ public class InventoryCommand extends AbstractCommand {
                     ItemTag toAdjust = new ItemTag(destination.getInventory().getItem(slotId));
                     toAdjust.safeAdjust(new Mechanism(mechanism.asString(), mechanismValue, scriptEntry.entryData.getTagContext()));
                     NMSHandler.getItemHelper().setInventoryItem(destination.getInventory(), toAdjust.getItemStack(), slotId);
+                    InventoryContentIndex.markModified(destination.getInventory());
                     break;
                 case FLAG:
                     ItemTag toFlag = new ItemTag(destination.getInventory().getItem(slotId));
@@ -423,6 +426,7 @@ public class InventoryCommand extends AbstractCommand {
                     flagAction.execute(scriptEntry.context);
                     toFlag.reapplyTracker(provider.tracker);
                     NMSHandler.getItemHelper().setInventoryItem(destination.getInventory(), toFlag.getItemStack(), slotId);
+                    InventoryContentIndex.markModified(destination.getInventory());
                     break;
             }
         }
@@ -445,5 +449,6 @@ public class InventoryCommand extends AbstractCommand {
                 inventory.removeItem(item.clone());
             }
         }
+        InventoryContentIndex.markModified(inventory);
     }
 }
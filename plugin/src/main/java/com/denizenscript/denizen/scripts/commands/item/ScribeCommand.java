@@ -4,6 +4,7 @@ import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.scripts.containers.core.BookScriptContainer;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.objects.ItemTag;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
@@ -111,6 +112,7 @@ public class ScribeCommand extends AbstractCommand {
         int emptySpot = inv.firstEmpty();
         if (emptySpot != -1) {
             player.getInventory().addItem(book.clone());
+            InventoryContentIndex.markModified(inv);
         }
         else {
             player.getWorld().dropItem(player.getLocation(), book);
@@ -126,6 +128,7 @@ public class ScribeCommand extends AbstractCommand {
         // if player isn't holding anything
         if (currItem == null || currItem.getType() == Material.AIR) {
             player.setItemInHand(book);
+            InventoryContentIndex.markModified(inv);
             return;
         }
         // drop it if inventory has no empty slots
@@ -140,6 +143,7 @@ public class ScribeCommand extends AbstractCommand {
             NMSHandler.getItemHelper().setInventoryItem(inv, currItem, emptySpot);
             inv.setItem(emptySpot, currItem);
             player.setItemInHand(book);
+            InventoryContentIndex.markModified(inv);
             Debug.log("...added book to player hand, moved original item");
         }
     }
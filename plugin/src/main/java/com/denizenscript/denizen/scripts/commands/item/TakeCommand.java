@@ -7,6 +7,7 @@ import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.utilities.inventory.SlotHelper;
 import com.denizenscript.denizen.utilities.nbt.CustomNBT;
 import com.denizenscript.denizen.objects.InventoryTag;
@@ -309,6 +310,7 @@ public class TakeCommand extends AbstractCommand {
                         player.updateInventory();
                     }
                 }
+                InventoryContentIndex.markModified(player.getInventory());
                 break;
             }
             case CURSORITEM: {
@@ -396,7 +398,7 @@ public class TakeCommand extends AbstractCommand {
                     return;
                 }
                 for (String flag : flagList) {
-                    takeByMatcher(inventory, (item) -> new ItemTag(item).getFlagTracker().hasFlag(flag), quantity.asInt());
+                    takeByMatcher(inventory, (item) -> new ItemTag(item).hasFlagFast(flag), quantity.asInt());
                 }
                 break;
             }
@@ -488,6 +490,7 @@ public class TakeCommand extends AbstractCommand {
                 }
             }
         }
+        InventoryContentIndex.markModified(inventory.getInventory());
     }
 
     public boolean removeItem(Inventory inventory, ItemTag item, int amount) {
@@ -510,6 +513,7 @@ public class TakeCommand extends AbstractCommand {
             if (myItem.equals(newItem)) {
                 if (count <= amount) {
                     NMSHandler.getItemHelper().setInventoryItem(inventory, null, i);
+                    InventoryContentIndex.markModified(inventory);
                     amount -= count;
                     if (amount == 0) {
                         return true;
@@ -518,6 +522,7 @@ public class TakeCommand extends AbstractCommand {
                 else {
                     is.setAmount(count - amount);
                     NMSHandler.getItemHelper().setInventoryItem(inventory, is, i);
+                    InventoryContentIndex.markModified(inventory);
                     return true;
                 }
             }
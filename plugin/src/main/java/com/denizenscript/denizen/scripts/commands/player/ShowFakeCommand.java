@@ -2,6 +2,7 @@ package com.denizenscript.denizen.scripts.commands.player;
 
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
+import com.denizenscript.denizen.utilities.blocks.FakeBlockLayer;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.objects.MaterialTag;
@@ -24,16 +25,16 @@ public class ShowFakeCommand extends AbstractCommand {
 
     public ShowFakeCommand() {
         setName("showfake");
-        setSyntax("showfake [<material>|.../cancel] [<location>|...] (players:<player>|...) (d:<duration>{10s})");
-        setRequiredArguments(2, 4);
+        setSyntax("showfake [<material>|.../cancel] [<location>|...] (players:<player>|...) (d:<duration>{10s}) (layer:<name>)");
+        setRequiredArguments(2, 5);
         isProcedural = false;
     }
 
     // <--[command]
     // @Name ShowFake
-    // @Syntax showfake [<material>|.../cancel] [<location>|...] (players:<player>|...) (d:<duration>{10s})
+    // @Syntax showfake [<material>|.../cancel] [<location>|...] (players:<player>|...) (d:<duration>{10s}) (layer:<name>)
     // @Required 2
-    // @Maximum 4
+    // @Maximum 5
     // @Short Makes the player see a block change that didn't actually happen.
     // @Synonyms FakeBlock
     // @Group player
@@ -53,6 +54,13 @@ public class ShowFakeCommand extends AbstractCommand {
     // If unspecified, will default to 10 seconds.
     // After the duration is up, the block will revert back to whatever it really is (on the server-side).
     //
+    // Optionally, specify a layer name to store the fake blocks in a named shared layer, rather than separately for each player.
+    // The blocks are stored only once no matter how many players view the layer, which is much cheaper for large builds shown to many players.
+    // The listed players are added as viewers of the layer, and will see every block in it (including blocks added to it before or after they were added).
+    // Using 'cancel' with a layer removes the listed locations from the layer for all of its viewers.
+    // Using 'cancel' with a layer and no locations instead stops the listed players from viewing the layer.
+    // A player's own (non-layer) fake blocks take priority over blocks from layers they view.
+    //
     // Note that while the player will see the block as though it were real, the server will have no knowledge of this.
     // This means that if the player, for example, stands atop a fake block that the server sees as air, that player will be seen as flying.
     // The reverse applies as well: if a player walks through fake air (that is actually solid), the server will see a player walking through walls.
@@ -77,6 +85,14 @@ public class ShowFakeCommand extends AbstractCommand {
     // @Usage
     // Use to place fake lava that the player is standing in, for all the server to see
     // - showfake lava <player.location> players:<server.online_players>
+    //
+    // @Usage
+    // Use to show a large fake build to every online player, storing the blocks only once.
+    // - showfake stone <[build_locations]> players:<server.online_players> d:0 layer:my_build
+    //
+    // @Usage
+    // Use to stop the player from seeing the 'my_build' layer.
+    // - showfake cancel layer:my_build
     // -->
 
     @Override
@@ -99,6 +115,10 @@ public class ShowFakeCommand extends AbstractCommand {
                     && arg.matchesArgumentType(DurationTag.class)) {
                 scriptEntry.addObject("duration", arg.asType(DurationTag.class));
             }
+            else if (!scriptEntry.hasObject("layer")
+                    && arg.matchesPrefix("layer")) {
+                scriptEntry.addObject("layer", arg.asElement());
+            }
             else if (arg.matches("cancel")) {
                 scriptEntry.addObject("cancel", new ElementTag(true));
             }
@@ -117,7 +137,7 @@ public class ShowFakeCommand extends AbstractCommand {
         if (!scriptEntry.hasObject("players") && Utilities.entryHasPlayer(scriptEntry)) {
             scriptEntry.defaultObject("players", Collections.singletonList(Utilities.getEntryPlayer(scriptEntry)));
         }
-        if (!scriptEntry.hasObject("locations")) {
+        if (!scriptEntry.hasObject("locations") && !(scriptEntry.hasObject("layer") && scriptEntry.hasObject("cancel"))) {
             throw new InvalidArgumentsException("Must specify at least one valid location!");
         }
         if (!scriptEntry.hasObject("players")) {
@@ -138,13 +158,31 @@ public class ShowFakeCommand extends AbstractCommand {
         List<MaterialTag> materials = (List<MaterialTag>) scriptEntry.getObject("materials");
         List<LocationTag> locations = (List<LocationTag>) scriptEntry.getObject("locations");
         List<PlayerTag> players = (List<PlayerTag>) scriptEntry.getObject("players");
+        ElementTag layer = scriptEntry.getElement("layer");
         if (scriptEntry.dbCallShouldDebug()) {
             Debug.report(scriptEntry, getName(), duration.debug() + cancel.debug()
                     + (materials != null ? ArgumentHelper.debugList("materials", materials) : "")
-                    + ArgumentHelper.debugList("locations", locations)
-                    + ArgumentHelper.debugList("players", players));
+                    + (locations != null ? ArgumentHelper.debugList("locations", locations) : "")
+                    + ArgumentHelper.debugList("players", players)
+                    + (layer != null ? layer.debug() : ""));
         }
         boolean shouldCancel = cancel.asBoolean();
+        if (layer != null) {
+            if (locations == null) {
+                FakeBlockLayer fakeLayer = FakeBlock.getNamedLayer(layer.asString());
+                if (fakeLayer != null) {
+                    FakeBlock.removeViewers(fakeLayer, players);
+                }
+                return;
+            }
+            if (!shouldCancel) {
+                FakeBlock.showFakeBlocksTo(players, locations, materials, duration, layer.asString());
+            }
+            else {
+                FakeBlock.stopShowing(layer.asString(), locations);
+            }
+            return;
+        }
         int i = 0;
         for (LocationTag loc : locations) {
             if (!shouldCancel) {
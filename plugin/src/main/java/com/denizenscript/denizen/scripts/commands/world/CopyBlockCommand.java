@@ -3,6 +3,7 @@ package com.denizenscript.denizen.scripts.commands.world;
 import com.denizenscript.denizen.utilities.AdvancedTextImpl;
 import com.denizenscript.denizen.utilities.blocks.FullBlockData;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
 import com.denizenscript.denizencore.objects.Argument;
@@ -105,6 +106,7 @@ public class CopyBlockCommand extends AbstractCommand {
             if (sourceState instanceof InventoryHolder) {
                 ((InventoryHolder) updateState).getInventory()
                         .setContents(((InventoryHolder) sourceState).getInventory().getContents());
+                InventoryContentIndex.markModified(((InventoryHolder) updateState).getInventory());
             }
             else if (sourceState instanceof Sign) {
                 int n = 0;
@@ -3,8 +3,10 @@ package com.denizenscript.denizen.scripts.commands.world;
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.objects.*;
 import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizen.utilities.blocks.BlockCursor;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.abstracts.BulkBlockWriter;
 import com.denizenscript.denizen.nms.interfaces.WorldHelper;
 import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
 import com.denizenscript.denizencore.objects.*;
@@ -45,8 +47,8 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
 
     public ModifyBlockCommand() {
         setName("modifyblock");
-        setSyntax("modifyblock [<location>|.../<ellipsoid>/<cuboid>] [<material>|...] (no_physics/naturally:<tool>) (delayed) (<script>) (<percent chance>|...) (source:<player>) (max_delay_ms:<#>)");
-        setRequiredArguments(2, 8);
+        setSyntax("modifyblock [<location>|.../<area>] [<material>|...] (no_physics/naturally:<tool>) (delayed) (<script>) (<percent chance>|...) (source:<player>) (max_delay_ms:<#>) (fast)");
+        setRequiredArguments(2, 9);
         Bukkit.getPluginManager().registerEvents(this, Denizen.getInstance());
         // Keep the list empty automatically - we don't want to still block physics so much later that something else edited the block!
         Bukkit.getScheduler().scheduleSyncRepeatingTask(Denizen.getInstance(), () -> {
@@ -60,9 +62,9 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
 
     // <--[command]
     // @Name ModifyBlock
-    // @Syntax modifyblock [<location>|.../<ellipsoid>/<cuboid>] [<material>|...] (no_physics/naturally:<tool>) (delayed) (<script>) (<percent chance>|...) (source:<player>) (max_delay_ms:<#>)
+    // @Syntax modifyblock [<location>|.../<area>] [<material>|...] (no_physics/naturally:<tool>) (delayed) (<script>) (<percent chance>|...) (source:<player>) (max_delay_ms:<#>) (fast)
     // @Required 2
-    // @Maximum 8
+    // @Maximum 9
     // @Short Modifies blocks.
     // @Synonyms SetBlock,ChangeBlock,PlaceBlock,BreakBlock
     // @Group world
@@ -70,6 +72,9 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
     // @Description
     // Changes blocks in the world based on the criteria given.
     //
+    // Specify a list of locations, or an area object (a cuboid, ellipsoid, or polygon) to change every block within.
+    // Areas are processed block-by-block as the edit runs, so large areas don't need every location to be built up front.
+    //
     // Use 'no_physics' to place the blocks without physics taking over the modified blocks.
     // This is useful for block types such as portals or water. This does NOT control physics for an extended period of time.
     //
@@ -84,6 +89,10 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
     //
     // Optionally, specify a script to be ran after the delayed edits finish. (Doesn't fire if delayed is not set.)
     //
+    // Use 'fast' to write blocks directly into the world's chunk data, which is much faster for large edits.
+    // This skips physics and neighbor updates entirely. Lighting and points of interest (like beds and workstations) are still updated,
+    // and each changed chunk is resent to players once its blocks are all placed. Cannot be used with 'source' or 'naturally'.
+    //
     // Optionally, specify a source player. When set, Bukkit events will fire that identify that player as the source of a change, and potentially cancel the change.
     // The source argument might cause weird interoperation with other plugins, use with caution.
     //
@@ -122,19 +131,25 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
     public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
         for (Argument arg : scriptEntry.getProcessedArgs()) {
             if (arg.matchesArgumentType(CuboidTag.class)
-                    && !scriptEntry.hasObject("locations")
+                    && !scriptEntry.hasObject("area")
                     && !scriptEntry.hasObject("location_list")
                     && (arg.startsWith("cu@") || !arg.getRawValue().contains("|"))) {
-                scriptEntry.addObject("locations", arg.asType(CuboidTag.class).getBlockLocationsUnfiltered(false));
+                scriptEntry.addObject("area", arg.asType(CuboidTag.class));
             }
             else if (arg.matchesArgumentType(EllipsoidTag.class)
-                    && !scriptEntry.hasObject("locations")
+                    && !scriptEntry.hasObject("area")
                     && !scriptEntry.hasObject("location_list")
                     && (arg.startsWith("ellipsoid@") || !arg.getRawValue().contains("|"))) {
-                scriptEntry.addObject("locations", arg.asType(EllipsoidTag.class).getBlockLocationsUnfiltered(false));
+                scriptEntry.addObject("area", arg.asType(EllipsoidTag.class));
+            }
+            else if (arg.startsWith("polygon@")
+                    && arg.matchesArgumentType(PolygonTag.class)
+                    && !scriptEntry.hasObject("area")
+                    && !scriptEntry.hasObject("location_list")) {
+                scriptEntry.addObject("area", arg.asType(PolygonTag.class));
             }
             else if (arg.matchesArgumentList(LocationTag.class)
-                    && !scriptEntry.hasObject("locations")
+                    && !scriptEntry.hasObject("area")
                     && !scriptEntry.hasObject("location_list")) {
                 scriptEntry.addObject("location_list", arg.asType(ListTag.class));
             }
@@ -180,6 +195,10 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
                     && arg.matchesInteger()) {
                 scriptEntry.addObject("max_delay_ms", arg.asElement());
             }
+            else if (!scriptEntry.hasObject("fast")
+                    && arg.matches("fast")) {
+                scriptEntry.addObject("fast", new ElementTag(true));
+            }
             else if (!scriptEntry.hasObject("delayed")
                     && arg.matches("delayed")) {
                 scriptEntry.addObject("delayed", new ElementTag(true));
@@ -200,7 +219,7 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
         if (!scriptEntry.hasObject("materials")) {
             throw new InvalidArgumentsException("Missing material argument!");
         }
-        if (!scriptEntry.hasObject("locations") && !scriptEntry.hasObject("location_list")) {
+        if (!scriptEntry.hasObject("area") && !scriptEntry.hasObject("location_list")) {
             throw new InvalidArgumentsException("Missing location argument!");
         }
         scriptEntry.defaultObject("radius", new ElementTag(0))
@@ -208,7 +227,8 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
                 .defaultObject("height", new ElementTag(0))
                 .defaultObject("depth", new ElementTag(0))
                 .defaultObject("physics", new ElementTag(true))
-                .defaultObject("delayed", new ElementTag(false));
+                .defaultObject("delayed", new ElementTag(false))
+                .defaultObject("fast", new ElementTag(false));
     }
 
     public static LocationTag getLocAt(ListTag list, int index, ScriptEntry entry) {
@@ -222,11 +242,12 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
     @Override
     public void execute(final ScriptEntry scriptEntry) {
         final ListTag materials = scriptEntry.getObjectTag("materials");
-        final List<LocationTag> locations = (List<LocationTag>) scriptEntry.getObject("locations");
+        final AreaContainmentObject area = (AreaContainmentObject) scriptEntry.getObject("area");
         final ListTag location_list = scriptEntry.getObjectTag("location_list");
         final ElementTag physics = scriptEntry.getElement("physics");
         final ItemTag natural = scriptEntry.getObjectTag("natural");
         final ElementTag delayed = scriptEntry.getElement("delayed");
+        final ElementTag fast = scriptEntry.getElement("fast");
         final ElementTag maxDelayMs = scriptEntry.getElement("max_delay_ms");
         final ElementTag radiusElement = scriptEntry.getElement("radius");
         final ElementTag heightElement = scriptEntry.getElement("height");
@@ -247,11 +268,12 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
                     + depthElement.debug()
                     + (natural == null ? "" : natural.debug())
                     + delayed.debug()
+                    + fast.debug()
                     + maxDelayMs.debug()
                     + (script != null ? script.debug() : "")
                     + (percents != null ? percents.debug() : "")
                     + (source != null ? source.debug() : "")
-                    +  (locations == null ? location_list.debug() : ArgumentHelper.debugList("locations", locations)));
+                    + (area == null ? location_list.debug() : area.debug()));
         }
         Player sourcePlayer = source == null ? null : source.getPlayerEntity();
         final boolean doPhysics = physics.asBoolean();
@@ -266,50 +288,76 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
             }
         }
         final List<Float> percs = percentages;
-        if (locations == null && location_list == null) {
+        if (area == null && location_list == null) {
             Debug.echoError("Must specify a valid location!");
             return;
         }
-        if ((location_list != null && location_list.isEmpty()) || (locations != null && locations.isEmpty())) {
+        // Walk areas in the same order their block lists have always used, so material lists cycle through them the same way
+        final BlockCursor cursor = area == null ? null : area.getBlockCursor().positionOrder();
+        if ((location_list != null && location_list.isEmpty()) || (cursor != null && (cursor.world == null || cursor.boxes.isEmpty()))) {
             return;
         }
         if (materialList.isEmpty()) {
             Debug.echoError("Must specify a valid material!");
             return;
         }
+        final World world = cursor != null ? cursor.world : getLocAt(location_list, 0, scriptEntry).getWorld();
+        BulkBlockWriter bulkWriter = null;
+        if (fast.asBoolean()) {
+            if (sourcePlayer != null || natural != null) {
+                Debug.echoError(scriptEntry.getResidingQueue(), "Cannot use 'fast' with 'source' or 'naturally', ignoring 'fast'.");
+            }
+            else {
+                bulkWriter = NMSHandler.getBlockHelper().createBulkBlockWriter(world);
+            }
+        }
+        final BulkBlockWriter writer = bulkWriter;
         no_physics = !doPhysics;
         if (delayed.asBoolean()) {
             final long maxDelay = maxDelayMs.asLong();
             new BukkitRunnable() {
                 int index = 0;
+                boolean done = false;
                 @Override
                 public void run() {
                     try {
                         long start = System.currentTimeMillis();
-                        LocationTag loc;
-                        if (locations != null) {
-                            loc = locations.get(0);
-                        }
-                        else {
-                            loc = getLocAt(location_list, 0, scriptEntry);
-                        }
-                        boolean was_static = preSetup(loc);
-                        while ((locations != null && locations.size() > index) || (location_list != null && location_list.size() > index)) {
-                            LocationTag nLoc;
-                            if (locations != null) {
-                                nLoc = locations.get(index);
+                        boolean was_static = preSetup(world);
+                        while (true) {
+                            if (cursor != null) {
+                                if (!cursor.next()) {
+                                    done = true;
+                                    break;
+                                }
+                                handleBlock(cursor.world, cursor.x, cursor.y, cursor.z, index, materialList, doPhysics, natural, radius, height, depth, percs, sourcePlayer, scriptEntry, writer);
                             }
                             else {
-                                nLoc = getLocAt(location_list, index, scriptEntry);
+                                if (index >= location_list.size()) {
+                                    done = true;
+                                    break;
+                                }
+                                handleLocation(getLocAt(location_list, index, scriptEntry), index, materialList, doPhysics, natural, radius, height, depth, percs, sourcePlayer, scriptEntry, writer);
                             }
-                            handleLocation(nLoc, index, materialList, doPhysics, natural, radius, height, depth, percs, sourcePlayer, scriptEntry);
                             index++;
                             if (System.currentTimeMillis() - start > maxDelay) {
                                 break;
                             }
                         }
-                        postComplete(loc, was_static);
-                        if ((locations != null && locations.size() == index) || (location_list != null && location_list.size() == index)) {
+                        if (writer != null) {
+                            if (done) {
+                                writer.finish();
+                            }
+                            else if (cursor != null) {
+                                // Areas are walked in increasing X order (per box), so only chunks behind the cursor are complete
+                                writer.finishBelowX(cursor.x);
+                            }
+                            else {
+                                // Location lists can come in any order, so chunks are only resent once the whole list is done
+                                writer.applyTileData();
+                            }
+                        }
+                        postComplete(world, was_static);
+                        if (done) {
                             if (script != null) {
                                 ScriptUtilities.createAndStartQueue(script.getContainer(), null, scriptEntry.entryData, null, null, null, null, null, scriptEntry);
                             }
@@ -324,36 +372,31 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
             }.runTaskTimer(Denizen.getInstance(), 1, 1);
         }
         else {
-            LocationTag loc;
-            if (locations != null) {
-                loc = locations.get(0);
-            }
-            else {
-                loc = getLocAt(location_list, 0, scriptEntry);
-            }
-            boolean was_static = preSetup(loc);
+            boolean was_static = preSetup(world);
             int index = 0;
-            if (locations != null) {
-                for (ObjectTag obj : locations) {
-                    handleLocation((LocationTag) obj, index, materialList, doPhysics, natural, radius, height, depth, percentages, sourcePlayer, scriptEntry);
+            if (cursor != null) {
+                while (cursor.next()) {
+                    handleBlock(cursor.world, cursor.x, cursor.y, cursor.z, index, materialList, doPhysics, natural, radius, height, depth, percentages, sourcePlayer, scriptEntry, writer);
                     index++;
                 }
             }
             else {
                 for (int i = 0; i < location_list.size(); i++) {
-                    handleLocation(getLocAt(location_list, i, scriptEntry), index, materialList, doPhysics, natural, radius, height, depth, percentages, sourcePlayer, scriptEntry);
+                    handleLocation(getLocAt(location_list, i, scriptEntry), index, materialList, doPhysics, natural, radius, height, depth, percentages, sourcePlayer, scriptEntry, writer);
                     index++;
                 }
             }
-            postComplete(loc, was_static);
+            if (writer != null) {
+                writer.finish();
+            }
+            postComplete(world, was_static);
             scriptEntry.setFinished(true);
         }
     }
 
-    boolean preSetup(LocationTag loc0) {
+    boolean preSetup(World world) {
         // Freeze the first world in the list.
         WorldHelper worldHelper = NMSHandler.getWorldHelper();
-        World world = loc0.getWorld();
         boolean was_static = worldHelper.isStatic(world);
         if (no_physics) {
             worldHelper.setStatic(world, true);
@@ -361,33 +404,64 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
         return was_static;
     }
 
-    void postComplete(Location loc, boolean was_static) {
+    void postComplete(World world, boolean was_static) {
         // Unfreeze the first world in the list.
         if (no_physics) {
-            NMSHandler.getWorldHelper().setStatic(loc.getWorld(), was_static);
+            NMSHandler.getWorldHelper().setStatic(world, was_static);
         }
         no_physics = false;
     }
 
-    void handleLocation(LocationTag location, int index, List<MaterialTag> materialList, boolean doPhysics,
-                        ItemTag natural, int radius, int height, int depth, List<Float> percents, Player source, ScriptEntry entry) {
-        MaterialTag material;
+    public static MaterialTag pickMaterial(int index, List<MaterialTag> materialList, List<Float> percents) {
         if (percents == null) {
-            material = materialList.get(index % materialList.size());
+            return materialList.get(index % materialList.size());
         }
-        else {
-            material = null;
-            for (int i = 0; i < materialList.size(); i++) {
-                float perc = percents.get(i) / 100f;
-                if (CoreUtilities.getRandom().nextDouble() <= perc) {
-                    material = materialList.get(i);
-                    break;
-                }
-            }
-            if (material == null) {
-                return;
+        for (int i = 0; i < materialList.size(); i++) {
+            float perc = percents.get(i) / 100f;
+            if (CoreUtilities.getRandom().nextDouble() <= perc) {
+                return materialList.get(i);
             }
         }
+        return null;
+    }
+
+    /**
+     * Handles a single block position from an area. The common case (no source player, no radius/height/depth, physics enabled)
+     * sets the block directly, without building any location objects.
+     */
+    void handleBlock(World world, int x, int y, int z, int index, List<MaterialTag> materialList, boolean doPhysics,
+                     ItemTag natural, int radius, int height, int depth, List<Float> percents, Player source, ScriptEntry entry, BulkBlockWriter writer) {
+        if (source != null || radius != 0 || height != 0 || depth != 0 || (!doPhysics && writer == null)) {
+            handleLocation(new LocationTag(world, x, y, z), index, materialList, doPhysics, natural, radius, height, depth, percents, source, entry, writer);
+            return;
+        }
+        MaterialTag material = pickMaterial(index, materialList, percents);
+        if (material == null) {
+            return;
+        }
+        if (writer != null) {
+            writer.setBlock(x, y, z, material.getModernData());
+            return;
+        }
+        if (!block_physics.isEmpty()) {
+            // Entries are added as LocationTags (see 'setBlock'), which only equal other LocationTags
+            block_physics.remove(new LocationTag(world, x, y, z));
+        }
+        Block block = world.getBlockAt(x, y, z);
+        if (natural != null && material.getMaterial() == Material.AIR) {
+            block.breakNaturally(natural.getItemStack());
+        }
+        else {
+            block.setBlockData(material.getModernData(), true);
+        }
+    }
+
+    void handleLocation(LocationTag location, int index, List<MaterialTag> materialList, boolean doPhysics,
+                        ItemTag natural, int radius, int height, int depth, List<Float> percents, Player source, ScriptEntry entry, BulkBlockWriter writer) {
+        MaterialTag material = pickMaterial(index, materialList, percents);
+        if (material == null) {
+            return;
+        }
         World world = location.getWorld();
         location.setX(location.getBlockX());
         location.setY(location.getBlockY());
@@ -411,11 +485,11 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
                 return;
             }
         }
-        setBlock(location, material, doPhysics, natural);
+        setBlock(location, material, doPhysics, natural, writer);
         if (radius != 0) {
             for (int x = 0; x < 2 * radius + 1; x++) {
                 for (int z = 0; z < 2 * radius + 1; z++) {
-                    setBlock(new Location(world, location.getX() + x - radius, location.getY(), location.getZ() + z - radius), material, doPhysics, natural);
+                    setBlock(new Location(world, location.getX() + x - radius, location.getY(), location.getZ() + z - radius), material, doPhysics, natural, writer);
                 }
             }
         }
@@ -423,7 +497,7 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
             for (int x = 0; x < 2 * radius + 1; x++) {
                 for (int z = 0; z < 2 * radius + 1; z++) {
                     for (int y = 1; y < height + 1; y++) {
-                        setBlock(new Location(world, location.getX() + x - radius, location.getY() + y, location.getZ() + z - radius), material, doPhysics, natural);
+                        setBlock(new Location(world, location.getX() + x - radius, location.getY() + y, location.getZ() + z - radius), material, doPhysics, natural, writer);
                     }
                 }
             }
@@ -432,13 +506,25 @@ public class ModifyBlockCommand extends AbstractCommand implements Listener, Hol
             for (int x = 0; x < 2 * radius + 1; x++) {
                 for (int z = 0; z < 2 * radius + 1; z++) {
                     for (int y = 1; y < depth + 1; y++) {
-                        setBlock(new Location(world, location.getX() + x - radius, location.getY() - y, location.getZ() + z - radius), material, doPhysics, natural);
+                        setBlock(new Location(world, location.getX() + x - radius, location.getY() - y, location.getZ() + z - radius), material, doPhysics, natural, writer);
                     }
                 }
             }
         }
     }
 
+    public static void setBlock(Location location, MaterialTag material, boolean physics, ItemTag natural, BulkBlockWriter writer) {
+        if (writer == null || writer.world != location.getWorld()) {
+            setBlock(location, material, physics, natural);
+            return;
+        }
+        if (!Utilities.isLocationYSafe(location)) {
+            Debug.echoError("Invalid modifyblock location: " + new LocationTag(location).toString());
+            return;
+        }
+        writer.setBlock(location.getBlockX(), location.getBlockY(), location.getBlockZ(), material.getModernData());
+    }
+
     public static void setBlock(Location location, MaterialTag material, boolean physics, ItemTag natural) {
         if (physics) {
             block_physics.remove(location);
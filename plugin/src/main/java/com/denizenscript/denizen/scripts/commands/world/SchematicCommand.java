@@ -1,6 +1,7 @@
 package com.denizenscript.denizen.scripts.commands.world;
 
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.blocks.*;
@@ -40,8 +41,8 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
 
     public SchematicCommand() {
         setName("schematic");
-        setSyntax("schematic [create/load/unload/rotate (angle:<#>)/paste (fake_to:<player>|... fake_duration:<duration>)/save/flip_x/flip_y/flip_z) (noair) (mask:<material>|...)] [name:<name>] (filename:<name>) (<location>) (<cuboid>) (delayed) (max_delay_ms:<#>) (entities) (flags)");
-        setRequiredArguments(2, 13);
+        setSyntax("schematic [create/load/unload/rotate (angle:<#>)/paste (fake_to:<player>|... fake_duration:<duration>)/save/flip_x/flip_y/flip_z) (noair) (mask:<material>|...) (fast)] [name:<name>] (filename:<name>) (<location>) (<cuboid>) (delayed) (max_delay_ms:<#>) (entities) (flags)");
+        setRequiredArguments(2, 14);
         TagManager.registerTagHandler(new TagRunnable.RootForm() {
             @Override
             public void run(ReplaceableTagEvent event) {
@@ -56,10 +57,10 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
 
     // <--[command]
     // @Name Schematic
-    // @Syntax schematic [create/load/unload/rotate (angle:<#>)/paste (fake_to:<player>|... fake_duration:<duration>)/save/flip_x/flip_y/flip_z) (noair) (mask:<material>|...)] [name:<name>] (filename:<name>) (<location>) (<cuboid>) (delayed) (max_delay_ms:<#>) (entities) (flags)
+    // @Syntax schematic [create/load/unload/rotate (angle:<#>)/paste (fake_to:<player>|... fake_duration:<duration>)/save/flip_x/flip_y/flip_z) (noair) (mask:<material>|...) (fast)] [name:<name>] (filename:<name>) (<location>) (<cuboid>) (delayed) (max_delay_ms:<#>) (entities) (flags)
     // @Group world
     // @Required 2
-    // @Maximum 13
+    // @Maximum 14
     // @Short Creates, loads, pastes, and saves schematics (Sets of blocks).
     //
     // @Description
@@ -78,7 +79,8 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
     //
     // The "delayed" option makes the command non-instant. This is recommended for large schematics.
     // For 'save', 'load', and 'rotate', this processes async to prevent server lockup.
-    // For 'paste' and 'create', this delays how many blocks can be processed at once, spread over many ticks.
+    // For 'paste', this delays how many blocks can be processed at once, spread over many ticks.
+    // For 'create', this captures chunks over many ticks, then processes the captured blocks async.
     // Optionally, specify 'max_delay_ms' to control how many milliseconds the 'delayed' set can run for in any given tick (defaults to 50) (for create/paste only).
     //
     // The "load" option by default will load '.schem' files. If no '.schem' file is available, will attempt to load a legacy '.schematic' file instead.
@@ -90,6 +92,10 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
     //
     // The "mask" option can be specified to limit what block types the schematic will be pasted over.
     //
+    // The "fast" option can be specified to paste by writing blocks directly into the world's chunk data, which is much faster for large schematics.
+    // This skips physics and neighbor updates entirely. Lighting and points of interest (like beds and workstations) are still updated,
+    // and each changed chunk is resent to players once its blocks are all placed. Cannot be used with "fake_to".
+    //
     // The "fake_to" option can be specified to cause the schematic paste to be a fake (packet-based, see <@link command showfake>)
     // block set, instead of actually modifying the blocks in the world.
     // This takes an optional duration as "fake_duration" for how long the fake blocks should remain.
@@ -188,6 +194,10 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                     && arg.matches("noair")) {
                 scriptEntry.addObject("noair", new ElementTag("true"));
             }
+            else if (!scriptEntry.hasObject("fast")
+                    && arg.matches("fast")) {
+                scriptEntry.addObject("fast", new ElementTag("true"));
+            }
             else if (!scriptEntry.hasObject("entities")
                     && arg.matches("entities")) {
                 scriptEntry.addObject("entities", new ElementTag("true"));
@@ -242,6 +252,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         ElementTag name = scriptEntry.getElement("name");
         ElementTag filename = scriptEntry.getElement("filename");
         ElementTag noair = scriptEntry.getElement("noair");
+        ElementTag fast = scriptEntry.getElement("fast");
         ElementTag delayed = scriptEntry.getElement("delayed");
         ElementTag maxDelayMs = scriptEntry.getElement("max_delay_ms");
         ElementTag copyEntities = scriptEntry.getElement("entities");
@@ -252,7 +263,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         DurationTag fakeDuration = scriptEntry.getObjectTag("fake_duration");
         CuboidTag cuboid = scriptEntry.getObjectTag("cuboid");
         if (scriptEntry.dbCallShouldDebug()) {
-            Debug.report(scriptEntry, getName(), type, name, location, filename, cuboid, angle, noair, delayed, maxDelayMs, fakeDuration, flags,
+            Debug.report(scriptEntry, getName(), type, name, location, filename, cuboid, angle, noair, fast, delayed, maxDelayMs, fakeDuration, flags,
                     (mask != null ? ArgumentHelper.debugList("mask", mask) : ""), (fakeTo != null ? ArgumentHelper.debugList("fake_to", fakeTo) : ""));
         }
         CuboidBlockSet set;
@@ -284,6 +295,9 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                             }
                             schematics.put(name.asString().toUpperCase(), set);
                             scriptEntry.setFinished(true);
+                        }, () -> {
+                            Debug.echoError(scriptEntry.getResidingQueue(), "Error creating schematic object " + name.asString() + ".");
+                            scriptEntry.setFinished(true);
                         }, maxDelayMs.asLong(), flags != null && flags.asBoolean());
                     }
                     else {
@@ -470,6 +484,14 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                         fakeDuration = new DurationTag(0);
                     }
                     input.fakeDuration = fakeDuration;
+                    if (fast != null && fast.asBoolean()) {
+                        if (fakeTo != null) {
+                            Debug.echoError(scriptEntry.getResidingQueue(), "Cannot fast paste to fake blocks, ignoring 'fast'.");
+                        }
+                        else {
+                            input.fastWriter = NMSHandler.getBlockHelper().createBulkBlockWriter(location.getWorld());
+                        }
+                    }
                     if (mask != null) {
                         input.mask = new HashSet<>();
                         for (MaterialTag material : mask) {
@@ -661,7 +683,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         // Returns the number of blocks in the schematic.
         // -->
         if (attribute.startsWith("blocks")) {
-            event.setReplaced(new ElementTag(set.blocks.length)
+            event.setReplaced(new ElementTag(set.getBlockCount())
                     .getAttribute(attribute.fulfill(1)));
             return;
         }
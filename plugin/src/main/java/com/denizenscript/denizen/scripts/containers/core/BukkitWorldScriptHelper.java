@@ -9,6 +9,7 @@ import com.denizenscript.denizen.utilities.ScoreboardHelper;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.Settings;
 import com.denizenscript.denizen.utilities.flags.DataPersistenceFlagTracker;
+import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
 import com.denizenscript.denizencore.flags.MapTagBasedFlagTracker;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -22,6 +23,7 @@ import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
 import org.bukkit.scoreboard.Scoreboard;
 
 import java.util.HashMap;
@@ -118,6 +120,11 @@ public class BukkitWorldScriptHelper implements Listener {
         new DataPersistenceFlagTracker(event.getChunk()).doTotalClean();
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void chunkUnloadEvent(ChunkUnloadEvent event) {
+        LocationFlagSearchHelper.onChunkUnload(event.getChunk());
+    }
+
     public static void cleanAllWorldChunkFlags() {
         for (World world : Bukkit.getWorlds()) {
             for (Chunk chunk : world.getLoadedChunks()) {
@@ -1,10 +1,8 @@
 package com.denizenscript.denizen.scripts.containers.core;
 
 import com.denizenscript.denizen.Denizen;
-import com.denizenscript.denizen.nms.NMSHandler;
-import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
-import com.denizenscript.denizen.nms.interfaces.PlayerHelper;
 import com.denizenscript.denizen.objects.InventoryTag;
+import com.denizenscript.denizen.utilities.inventory.OfflineInventoryRegistry;
 import com.denizenscript.denizencore.objects.core.ScriptTag;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -16,7 +14,6 @@ import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.PlayerInventory;
 
 import java.util.*;
 
@@ -31,27 +28,16 @@ public class InventoryScriptHelper implements Listener {
     }
 
     public static void _savePlayerInventories() {
-        PlayerHelper playerHelper = NMSHandler.getPlayerHelper();
-        for (Map.Entry<UUID, PlayerInventory> offlineInv : ImprovedOfflinePlayer.offlineInventories.entrySet()) {
-            playerHelper.getOfflineData(offlineInv.getKey()).setInventory(offlineInv.getValue());
-        }
-        for (Map.Entry<UUID, Inventory> offlineEnderChest : ImprovedOfflinePlayer.offlineEnderChests.entrySet()) {
-            playerHelper.getOfflineData(offlineEnderChest.getKey()).setEnderChest(offlineEnderChest.getValue());
-        }
+        OfflineInventoryRegistry.saveAll();
     }
 
     @EventHandler
     public void onPlayerLogin(PlayerLoginEvent event) {
         UUID uuid = event.getPlayer().getUniqueId();
-        PlayerHelper playerHelper = NMSHandler.getPlayerHelper();
-        if (ImprovedOfflinePlayer.offlineInventories.containsKey(uuid)) {
-            playerHelper.getOfflineData(uuid).setInventory(ImprovedOfflinePlayer.offlineInventories.get(uuid));
-            ImprovedOfflinePlayer.offlineInventories.remove(uuid);
-        }
-        if (ImprovedOfflinePlayer.offlineEnderChests.containsKey(uuid)) {
-            playerHelper.getOfflineData(uuid).setEnderChest(ImprovedOfflinePlayer.offlineEnderChests.get(uuid));
-            ImprovedOfflinePlayer.offlineEnderChests.remove(uuid);
-        }
+        OfflineInventoryRegistry.saveInventory(uuid);
+        OfflineInventoryRegistry.removeInventory(uuid);
+        OfflineInventoryRegistry.saveEnderChest(uuid);
+        OfflineInventoryRegistry.removeEnderChest(uuid);
     }
 
     public static HashSet<ClickType> allowedClicks = new HashSet<>(Arrays.asList(ClickType.CONTROL_DROP, ClickType.CREATIVE, ClickType.DROP, ClickType.LEFT,
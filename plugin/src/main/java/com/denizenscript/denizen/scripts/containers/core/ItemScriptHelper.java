@@ -2,7 +2,6 @@ package com.denizenscript.denizen.scripts.containers.core;
 
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.events.BukkitScriptEvent;
-import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.events.bukkit.ScriptReloadEvent;
@@ -335,13 +334,12 @@ public class ItemScriptHelper implements Listener {
         if (item == null) {
             return null;
         }
-        CompoundTag tag = NMSHandler.getItemHelper().getNbtData(item);
-        String scriptName = tag.getString("DenizenItemScript");
+        String scriptName = NMSHandler.getItemHelper().getStringTagDirect(item, "DenizenItemScript");
         if (scriptName != null && !scriptName.equals("")) {
             return item_scripts.get(scriptName);
         }
         // TODO: Legacy hashed format
-        String nbt = tag.getString("Denizen Item Script");
+        String nbt = NMSHandler.getItemHelper().getStringTagDirect(item, "Denizen Item Script");
         if (nbt != null && !nbt.equals("")) {
             return item_scripts_by_hash_id.get(nbt);
         }
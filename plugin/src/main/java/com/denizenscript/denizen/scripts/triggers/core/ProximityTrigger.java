@@ -1,18 +1,27 @@
 package com.denizenscript.denizen.scripts.triggers.core;
 
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.events.bukkit.ScriptReloadEvent;
+import com.denizenscript.denizen.scripts.containers.core.AssignmentScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.InteractScriptContainer;
+import com.denizenscript.denizen.scripts.containers.core.InteractScriptHelper;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.npc.traits.AssignmentTrait;
 import com.denizenscript.denizen.npc.traits.TriggerTrait;
 import com.denizenscript.denizen.objects.NPCTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.scripts.triggers.AbstractTrigger;
+import com.denizenscript.denizen.utilities.entity.ProximityEngine;
 import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.event.NPCDespawnEvent;
+import net.citizensnpcs.api.event.NPCRemoveEvent;
 import net.citizensnpcs.api.npc.NPC;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
 
 import java.util.*;
 
@@ -34,14 +43,11 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     //
     // The radius that the proximity trigger detects at is set by <@link command trigger>.
     //
-    // -->
-
-    //
-    // Default to 75, but dynamically set by checkMaxProximities().
-    // If a Player is further than this distance from an NPC, less
-    // logic is run in checking.
+    // How often proximity is checked is set by the "Triggers.Proximity.Check interval" config option.
+    // The "Movement threshold" option can be set to skip re-checking a player and NPC until one of them moves at least that far,
+    // which makes checks cheaper on busy servers, but means 'move' only fires when the player or NPC actually moves.
     //
-    private static int maxProximityDistance = 75; // TODO: is this reasonable to have?
+    // -->
 
     // <--[action]
     // @Actions
@@ -86,167 +92,247 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     // -->
     int taskID = -1;
 
+    int ticksSinceCheck = 0;
+
+    /**
+     * The radius overrides in an interact script, per (uppercase) step name, as {entry, exit, move}. NaN means no override.
+     */
+    public static class ScriptRadii {
+
+        public InteractScriptContainer script;
+
+        public Map<String, double[]> byStep = new HashMap<>();
+
+        public double maxRadius = -1;
+    }
+
+    public static class CachedRadii {
+
+        public AssignmentScriptContainer assignment;
+
+        public ScriptRadii radii;
+    }
+
+    private static final String[] RADIUS_OPTIONS = new String[] {"ENTRY RADIUS", "EXIT RADIUS", "MOVE RADIUS"};
+
+    /**
+     * Per-NPC cache of the interact script radius overrides, cleared on script reload, dropped when the NPC despawns or is removed, and rebuilt if the NPC's assignment changes.
+     */
+    public static Map<Integer, CachedRadii> radiiCache = new HashMap<>();
+
+    public static Map<String, ScriptRadii> scriptRadiiCache = new HashMap<>();
+
+    public ProximityEngine.MovementTracker npcMovement = new ProximityEngine.MovementTracker();
+
+    @EventHandler
+    public void onScriptReload(ScriptReloadEvent event) {
+        radiiCache.clear();
+        scriptRadiiCache.clear();
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        ProximityEngine.playerMovement.forget(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler
+    public void onNPCDespawn(NPCDespawnEvent event) {
+        forgetNPC(event.getNPC());
+    }
+
+    @EventHandler
+    public void onNPCRemove(NPCRemoveEvent event) {
+        forgetNPC(event.getNPC());
+    }
+
+    public void forgetNPC(NPC npc) {
+        radiiCache.remove(npc.getId());
+        npcMovement.forget(npc.getUniqueId());
+    }
+
+    public ScriptRadii getRadiiFor(NPCTag npc) {
+        // Don't use getAssignmentTrait, as that would add the trait to every NPC checked
+        AssignmentTrait trait = npc.getCitizen().getTraitNullable(AssignmentTrait.class);
+        AssignmentScriptContainer assignment = trait == null ? null : trait.getAssignment();
+        CachedRadii cached = radiiCache.get(npc.getId());
+        if (cached != null && cached.assignment == assignment) {
+            return cached.radii;
+        }
+        cached = new CachedRadii();
+        cached.assignment = assignment;
+        InteractScriptContainer script = assignment == null ? null : InteractScriptHelper.getInteractScript(npc);
+        if (script != null) {
+            cached.radii = scriptRadiiCache.computeIfAbsent(script.getName(), k -> buildRadii(script));
+        }
+        radiiCache.put(npc.getId(), cached);
+        return cached.radii;
+    }
+
+    public ScriptRadii buildRadii(InteractScriptContainer script) {
+        ScriptRadii radii = new ScriptRadii();
+        radii.script = script;
+        for (String step : script.getStepNames()) {
+            String keyBase = "steps." + step + "." + name + " trigger.";
+            double[] values = new double[] {Double.NaN, Double.NaN, Double.NaN};
+            for (int i = 0; i < RADIUS_OPTIONS.length; i++) {
+                if (script.contains(keyBase + RADIUS_OPTIONS[i])) {
+                    try {
+                        values[i] = Integer.parseInt(script.getString(keyBase + RADIUS_OPTIONS[i]));
+                        radii.maxRadius = Math.max(radii.maxRadius, values[i]);
+                    }
+                    catch (NumberFormatException nfe) {
+                        Debug.echoDebug(script, RADIUS_OPTIONS[i] + " in step '" + step + "' was not an integer. Assuming the default radius.");
+                    }
+                }
+            }
+            radii.byStep.put(step.toUpperCase(), values);
+        }
+        return radii;
+    }
+
+    private static Map<Integer, Set<UUID>> npcProximityTracker = new HashMap<>();
+
     @Override
     public void onEnable() {
         Bukkit.getServer().getPluginManager().registerEvents(this, Denizen.getInstance());
-
-        final ProximityTrigger trigger = this;
-
         taskID = Bukkit.getScheduler().scheduleSyncRepeatingTask(Denizen.getInstance(), () -> {
+            if (++ticksSinceCheck < ProximityEngine.checkInterval) {
+                return;
+            }
+            ticksSinceCheck = 0;
+            checkProximities();
+        }, 1, 1);
+    }
 
-            Collection<? extends Player> allPlayers = Bukkit.getOnlinePlayers();
+    public void checkProximities() {
+        ProximityEngine.updatePlayers();
+        Set<Player> candidates = new LinkedHashSet<>();
+        //
+        // Iterate over all of the NPCs
+        //
+        for (NPC citizensNPC : CitizensAPI.getNPCRegistry()) {
+            if (citizensNPC == null || !citizensNPC.isSpawned()) {
+                continue;
+            }
             //
-            // Iterate over all of the NPCs
+            // If the NPC doesn't have triggers, or the Proximity Trigger is not enabled,
+            // then just return.
             //
-            for (NPC citizensNPC : CitizensAPI.getNPCRegistry()) {
-                if (citizensNPC == null || !citizensNPC.isSpawned()) {
-                    continue;
+            if (!citizensNPC.hasTrait(TriggerTrait.class) || !citizensNPC.getOrAddTrait(TriggerTrait.class).isEnabled(name)) {
+                continue;
+            }
+            NPCTag npc = new NPCTag(citizensNPC);
+            TriggerTrait triggerTrait = npc.getTriggerTrait();
+            Location npcLocation = npc.getLocation();
+            boolean npcMoved = npcMovement.hasMoved(citizensNPC.getUniqueId(), npcLocation);
+            //
+            // Set default ranges with information from the TriggerTrait. This allows per-npc overrides and will
+            // automatically check the config for defaults. The NPC's interact script might have custom ranges per step.
+            //
+            double defaultRadius = triggerTrait.getRadius(name);
+            ScriptRadii radii = getRadiiFor(npc);
+            double maxRadius = radii == null ? defaultRadius : Math.max(defaultRadius, radii.maxRadius);
+            //
+            // Only players near enough to possibly enter range need checking, plus any players that
+            // haven't yet triggered an 'Exit Proximity' after entering.
+            //
+            candidates.clear();
+            ProximityEngine.getPlayersNear(npcLocation, maxRadius, candidates);
+            Set<UUID> inProximity = npcProximityTracker.get(npc.getId());
+            if (inProximity != null) {
+                for (UUID id : inProximity) {
+                    Player player = Bukkit.getPlayer(id);
+                    if (player != null) {
+                        candidates.add(player);
+                    }
                 }
+            }
+            for (Player bukkitPlayer : candidates) {
                 //
-                // If the NPC doesn't have triggers, or the Proximity Trigger is not enabled,
-                // then just return.
+                // If neither the player nor the NPC has moved far enough since they were last checked, nothing can have changed.
                 //
-                if (!citizensNPC.hasTrait(TriggerTrait.class) || !citizensNPC.getOrAddTrait(TriggerTrait.class).isEnabled(name)) {
+                if (!npcMoved && !ProximityEngine.movedPlayers.contains(bukkitPlayer.getUniqueId())) {
                     continue;
                 }
-                NPCTag npc = new NPCTag(citizensNPC);
-                TriggerTrait triggerTrait = npc.getTriggerTrait();
-
-                // Loop through all players
-                for (Player bukkitPlayer : allPlayers) {
-
-                    //
-                    // If this NPC is not spawned or in a different world, no need to check,
-                    // unless the Player hasn't yet triggered an Exit Proximity after Entering
-                    //
-                    if (!npc.getWorld().equals(bukkitPlayer.getWorld())
-                            && hasExitedProximityOf(bukkitPlayer, npc)) {
-                        continue;
-                    }
-
-                    //
-                    // If this NPC is more than the maxProximityDistance, skip it, unless
-                    // the Player hasn't yet triggered an 'Exit Proximity' after entering.
-                    //
-                    if (!isCloseEnough(bukkitPlayer, npc)
-                            && hasExitedProximityOf(bukkitPlayer, npc)) {
-                        continue;
-                    }
+                checkPlayer(npc, triggerTrait, npcLocation, bukkitPlayer, radii, defaultRadius);
+            }
+        }
+    }
 
-                    // Get the player
-                    PlayerTag player = PlayerTag.mirrorBukkitPlayer(bukkitPlayer);
-
-                    //
-                    // Check to make sure the NPC has an assignment. If no assignment, a script doesn't need to be parsed,
-                    // but it does still need to trigger for cooldown and action purposes.
-                    //
-                    InteractScriptContainer script = npc.getInteractScriptQuietly(player, ProximityTrigger.class);
-
-                    //
-                    // Set default ranges with information from the TriggerTrait. This allows per-npc overrides and will
-                    // automatically check the config for defaults.
-                    //
-                    double entryRadius = triggerTrait.getRadius(name);
-                    double exitRadius = triggerTrait.getRadius(name);
-                    double moveRadius = triggerTrait.getRadius(name);
-
-                    //
-                    // If a script was found, it might have custom ranges.
-                    //
-                    if (script != null) {
-                        try {
-                            if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "ENTRY RADIUS")) {
-                                entryRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "ENTRY RADIUS"));
-                            }
-                        }
-                        catch (NumberFormatException nfe) {
-                            Debug.echoDebug(script, "Entry Radius was not an integer.  Assuming " + entryRadius + " as the radius.");
-                        }
-                        try {
-                            if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "EXIT RADIUS")) {
-                                exitRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "EXIT RADIUS"));
-                            }
-                        }
-                        catch (NumberFormatException nfe) {
-                            Debug.echoDebug(script, "Exit Radius was not an integer.  Assuming " + exitRadius + " as the radius.");
-                        }
-                        try {
-                            if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "MOVE RADIUS")) {
-                                moveRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "MOVE RADIUS"));
-                            }
-                        }
-                        catch (NumberFormatException nfe) {
-                            Debug.echoDebug(script, "Move Radius was not an integer.  Assuming " + moveRadius + " as the radius.");
-                        }
-                    }
+    public void checkPlayer(NPCTag npc, TriggerTrait triggerTrait, Location npcLocation, Player bukkitPlayer, ScriptRadii radii, double defaultRadius) {
+        PlayerTag player = PlayerTag.mirrorBukkitPlayer(bukkitPlayer);
+        double entryRadius = defaultRadius;
+        double exitRadius = defaultRadius;
+        double moveRadius = defaultRadius;
+        if (radii != null) {
+            double[] stepRadii = radii.byStep.get(InteractScriptHelper.getCurrentStep(player, radii.script.getName()));
+            if (stepRadii != null) {
+                entryRadius = Double.isNaN(stepRadii[0]) ? defaultRadius : stepRadii[0];
+                exitRadius = Double.isNaN(stepRadii[1]) ? defaultRadius : stepRadii[1];
+                moveRadius = Double.isNaN(stepRadii[2]) ? defaultRadius : stepRadii[2];
+            }
+        }
 
-                    Location npcLocation = npc.getLocation();
-
-                    //
-                    // If the Player switches worlds while in range of an NPC, trigger still needs to
-                    // fire since technically they have exited proximity. Let's check that before
-                    // trying to calculate a distance between the Player and NPC, which will throw
-                    // an exception if worlds do not match.
-                    //
-                    boolean playerChangedWorlds = false;
-                    if (npcLocation.getWorld() != player.getWorld()) {
-                        playerChangedWorlds = true;
-                    }
+        //
+        // If the Player switches worlds while in range of an NPC, trigger still needs to
+        // fire since technically they have exited proximity. Let's check that before
+        // trying to calculate a distance between the Player and NPC, which will throw
+        // an exception if worlds do not match.
+        //
+        Location playerLocation = bukkitPlayer.getLocation();
+        boolean playerChangedWorlds = npcLocation.getWorld() != playerLocation.getWorld();
 
-                    //
-                    // If the user is outside the range, and was previously within the
-                    // range, then execute the "Exit" script.
-                    //
-                    // If the user entered the range and were not previously within the
-                    // range, then execute the "Entry" script.
-                    //
-                    // If the user was previously within the range and moved, then execute
-                    // the "Move" script.
-                    //
-                    boolean exitedProximity = hasExitedProximityOf(bukkitPlayer, npc);
-                    double distance = 0;
-                    if (!playerChangedWorlds) {
-                        distance = npcLocation.distance(player.getLocation());
-                    }
+        //
+        // If the user is outside the range, and was previously within the
+        // range, then execute the "Exit" script.
+        //
+        // If the user entered the range and were not previously within the
+        // range, then execute the "Entry" script.
+        //
+        // If the user was previously within the range and moved, then execute
+        // the "Move" script.
+        //
+        boolean exitedProximity = hasExitedProximityOf(bukkitPlayer, npc);
+        double distance = 0;
+        if (!playerChangedWorlds) {
+            distance = npcLocation.distance(playerLocation);
+        }
 
-                    if (!exitedProximity
-                            && (playerChangedWorlds || distance >= exitRadius)) {
-                        if (!triggerTrait.triggerCooldownOnly(trigger, player)) {
-                            continue;
-                        }
-                        // Remember that NPC has exited proximity.
-                        exitProximityOf(bukkitPlayer, npc);
-                        // Exit Proximity Action
-                        npc.action("exit proximity", player);
-                        // Parse Interact Script
-                        parse(npc, player, script, "EXIT");
-                    }
-                    else if (exitedProximity && distance <= entryRadius) {
-                        // Cooldown
-                        if (!triggerTrait.triggerCooldownOnly(trigger, player)) {
-                            continue;
-                        }
-                        // Remember that Player has entered proximity of the NPC
-                        enterProximityOf(bukkitPlayer, npc);
-                        // Enter Proximity Action
-                        npc.action("enter proximity", player);
-                        // Parse Interact Script
-                        parse(npc, player, script, "ENTRY");
-                    }
-                    else if (!exitedProximity && distance <= moveRadius) {
-                        // TODO: Remove this? Constantly cooling down on move may make
-                        // future entry/exit proximities 'lag' behind.  Temporarily removing
-                        // cooldown on 'move proximity'.
-                        // if (!npc.getTriggerTrait().triggerCooldownOnly(this, event.getPlayer()))
-                        //     continue;
-                        // Move Proximity Action
-                        npc.action("move proximity", player);
-                        // Parse Interact Script
-                        parse(npc, player, script, "MOVE");
-                    }
-                }
+        if (!exitedProximity
+                && (playerChangedWorlds || distance >= exitRadius)) {
+            if (!triggerTrait.triggerCooldownOnly(this, player)) {
+                return;
             }
-        }, 5, 5);
+            // Remember that NPC has exited proximity.
+            exitProximityOf(bukkitPlayer, npc);
+            // Exit Proximity Action
+            npc.action("exit proximity", player);
+            // Parse Interact Script
+            parse(npc, player, npc.getInteractScriptQuietly(player, ProximityTrigger.class), "EXIT");
+        }
+        else if (exitedProximity && distance <= entryRadius) {
+            // Cooldown
+            if (!triggerTrait.triggerCooldownOnly(this, player)) {
+                return;
+            }
+            // Remember that Player has entered proximity of the NPC
+            enterProximityOf(bukkitPlayer, npc);
+            // Enter Proximity Action
+            npc.action("enter proximity", player);
+            // Parse Interact Script
+            parse(npc, player, npc.getInteractScriptQuietly(player, ProximityTrigger.class), "ENTRY");
+        }
+        else if (!exitedProximity && distance <= moveRadius) {
+            // TODO: Remove this? Constantly cooling down on move may make
+            // future entry/exit proximities 'lag' behind.  Temporarily removing
+            // cooldown on 'move proximity'.
+            // if (!npc.getTriggerTrait().triggerCooldownOnly(this, event.getPlayer()))
+            //     continue;
+            // Move Proximity Action
+            npc.action("move proximity", player);
+            // Parse Interact Script
+            parse(npc, player, npc.getInteractScriptQuietly(player, ProximityTrigger.class), "MOVE");
+        }
     }
 
     @Override
@@ -254,28 +340,6 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
         Bukkit.getScheduler().cancelTask(taskID);
     }
 
-    /**
-     * Checks if the Player in Proximity is close enough to be calculated.
-     *
-     * @param player the Player
-     * @param npc    the NPC
-     * @return true if within maxProximityDistance in all directions
-     */
-    private boolean isCloseEnough(Player player, NPCTag npc) {
-        Location pLoc = player.getLocation();
-        Location nLoc = npc.getLocation();
-        if (Math.abs(pLoc.getX() - nLoc.getX()) > maxProximityDistance) {
-            return false;
-        }
-        if (Math.abs(pLoc.getY() - nLoc.getY()) > maxProximityDistance) {
-            return false;
-        }
-        if (Math.abs(pLoc.getZ() - nLoc.getZ()) > maxProximityDistance) {
-            return false;
-        }
-        return true;
-    }
-
     private static Map<UUID, Set<Integer>> proximityTracker = new HashMap<>();
 
     //
@@ -305,6 +369,7 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     private void enterProximityOf(Player player, NPCTag npc) {
         Set<Integer> npcs = proximityTracker.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
         npcs.add(npc.getId());
+        npcProximityTracker.computeIfAbsent(npc.getId(), k -> new HashSet<>()).add(player.getUniqueId());
     }
 
     /**
@@ -317,5 +382,12 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     private void exitProximityOf(Player player, NPCTag npc) {
         Set<Integer> npcs = proximityTracker.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
         npcs.remove(npc.getId());
+        Set<UUID> players = npcProximityTracker.get(npc.getId());
+        if (players != null) {
+            players.remove(player.getUniqueId());
+            if (players.isEmpty()) {
+                npcProximityTracker.remove(npc.getId());
+            }
+        }
     }
 }
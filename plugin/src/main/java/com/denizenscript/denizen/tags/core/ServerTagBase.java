@@ -11,6 +11,8 @@ import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.VanillaTagHelper;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
+import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
 import com.denizenscript.denizen.utilities.inventory.SlotHelper;
 import com.denizenscript.denizencore.events.core.TickScriptEvent;
 import com.denizenscript.denizencore.objects.*;
@@ -1682,12 +1684,11 @@ public class ServerTagBase {
             listDeprecateWarn(attribute);
             String flag = attribute.getContext(1);
             ListTag players = new ListTag();
-            for (Map.Entry<String, UUID> entry : PlayerTag.getAllPlayers().entrySet()) {
-                PlayerTag plTag = new PlayerTag(entry.getValue());
-                if (plTag.getFlagTracker().hasFlag(flag)) {
-                    players.addObject(plTag);
+            PlayerFlagHandler.forEachTracker(new ArrayList<>(PlayerTag.getAllPlayers().values()), (id, tracker) -> {
+                if (tracker.hasFlag(flag)) {
+                    players.addObject(new PlayerTag(id));
                 }
-            }
+            });
             event.setReplacedObject(players.getObjectAttribute(attribute.fulfill(1)));
             return;
         }
@@ -1847,11 +1848,14 @@ public class ServerTagBase {
         if (attribute.startsWith("offline_players") || attribute.startsWith("list_offline_players")) {
             listDeprecateWarn(attribute);
             ListTag players = new ListTag();
+            List<UUID> ids = new ArrayList<>();
             for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
                 if (!player.isOnline()) {
                     players.addObject(PlayerTag.mirrorBukkitPlayer(player));
+                    ids.add(player.getUniqueId());
                 }
             }
+            OfflinePlayerDataCache.setReadAheadList(ids);
             event.setReplacedObject(players.getObjectAttribute(attribute.fulfill(1)));
             return;
         }
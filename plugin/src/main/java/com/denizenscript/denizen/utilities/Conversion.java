@@ -2,6 +2,7 @@ package com.denizenscript.denizen.utilities;
 
 import com.denizenscript.denizen.objects.*;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
 import com.denizenscript.denizencore.objects.Argument;
 import com.denizenscript.denizencore.objects.ArgumentHelper;
 import com.denizenscript.denizencore.objects.ObjectTag;
@@ -82,6 +83,7 @@ public class Conversion {
                 }
                 inventory.getInventory().setItem(slot - 1, item.getItemStack());
             }
+            InventoryContentIndex.markModified(inventory.getInventory());
             return new AbstractMap.SimpleEntry<>(maxSlot, inventory);
         }
         else if (arg.object instanceof LocationTag || (isElement && LocationTag.matches(arg.getValue()))) {
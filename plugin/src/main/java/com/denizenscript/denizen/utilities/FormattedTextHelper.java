@@ -10,7 +10,10 @@ import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.chat.*;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 public class FormattedTextHelper {
 
@@ -372,17 +375,147 @@ public class FormattedTextHelper {
         return new BaseComponent[] { root };
     }
 
+    public static class ParseKey {
+
+        public final String text;
+
+        public final ChatColor baseColor;
+
+        public final boolean cleanBase;
+
+        public final int hash;
+
+        public ParseKey(String text, ChatColor baseColor, boolean cleanBase) {
+            this.text = text;
+            this.baseColor = baseColor;
+            this.cleanBase = cleanBase;
+            this.hash = (text.hashCode() * 31 + Objects.hashCode(baseColor)) * 31 + (cleanBase ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ParseKey)) {
+                return false;
+            }
+            ParseKey key = (ParseKey) other;
+            return hash == key.hash && cleanBase == key.cleanBase && text.equals(key.text) && Objects.equals(baseColor, key.baseColor);
+        }
+    }
+
+    /**
+     * Text longer than this is parsed directly rather than cached, to keep the cache's memory usage bounded.
+     */
+    public static int MAX_CACHED_TEXT_LENGTH = 1024;
+
+    public static int PARSE_CACHE_SIZE = 1024;
+
+    /**
+     * Recently parsed text, as component templates that are never modified or handed out directly (see 'parse' and 'parseShared').
+     */
+    public static final LinkedHashMap<ParseKey, BaseComponent[]> parseCache = new LinkedHashMap<ParseKey, BaseComponent[]>(128, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ParseKey, BaseComponent[]> eldest) {
+            return size() > PARSE_CACHE_SIZE;
+        }
+    };
+
+    public static long parseCacheHits = 0, parseCacheMisses = 0;
+
+    public static int getParseCacheSize() {
+        synchronized (parseCache) {
+            return parseCache.size();
+        }
+    }
+
+    public static BaseComponent[] duplicate(BaseComponent[] components) {
+        BaseComponent[] result = new BaseComponent[components.length];
+        for (int i = 0; i < components.length; i++) {
+            result[i] = components[i].duplicate();
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the parse result for the text depends only on the text itself.
+     * Item and entity hovers read current server state, so text containing them is never cached.
+     */
+    public static boolean isCacheable(String str) {
+        if (str.length() > MAX_CACHED_TEXT_LENGTH) {
+            return false;
+        }
+        if (str.contains(ChatColor.COLOR_CHAR + "[hover=")) {
+            String lowered = CoreUtilities.toLowerCase(str);
+            return !lowered.contains("show_item") && !lowered.contains("show_entity");
+        }
+        return true;
+    }
+
+    /**
+     * Equivalent to 'parse', but may return a cached instance shared with other callers.
+     * The result must not be modified in any way, and is only suitable for reading (eg sending or converting to another format).
+     */
+    public static BaseComponent[] parseShared(String str, ChatColor baseColor) {
+        return parseShared(str, baseColor, true);
+    }
+
+    public static BaseComponent[] parseShared(String str, ChatColor baseColor, boolean cleanBase) {
+        if (str == null) {
+            return null;
+        }
+        str = CoreUtilities.clearNBSPs(str);
+        if (str.indexOf(ChatColor.COLOR_CHAR) == -1) {
+            return parsePlain(str);
+        }
+        if (!isCacheable(str)) {
+            return parseUncached(str, baseColor, cleanBase);
+        }
+        ParseKey key = new ParseKey(str, baseColor, cleanBase);
+        BaseComponent[] result;
+        synchronized (parseCache) {
+            result = parseCache.get(key);
+            if (result != null) {
+                parseCacheHits++;
+                return result;
+            }
+            parseCacheMisses++;
+        }
+        result = parseUncached(str, baseColor, cleanBase);
+        synchronized (parseCache) {
+            parseCache.put(key, result);
+        }
+        return result;
+    }
+
+    public static BaseComponent[] parsePlain(String str) {
+        TextComponent base = new TextComponent();
+        base.addExtra(new TextComponent(str)); // This is for compat with how Spigot does parsing of plaintext.
+        return new BaseComponent[] { base };
+    }
+
     public static BaseComponent[] parse(String str, ChatColor baseColor, boolean cleanBase) {
         if (str == null) {
             return null;
         }
         str = CoreUtilities.clearNBSPs(str);
-        int firstChar = str.indexOf(ChatColor.COLOR_CHAR);
-        if (firstChar == -1) {
-            TextComponent base = new TextComponent();
-            base.addExtra(new TextComponent(str)); // This is for compat with how Spigot does parsing of plaintext.
-            return new BaseComponent[] { base };
+        if (str.indexOf(ChatColor.COLOR_CHAR) == -1) {
+            return parsePlain(str);
+        }
+        if (!isCacheable(str)) {
+            return parseUncached(str, baseColor, cleanBase);
         }
+        return duplicate(parseShared(str, baseColor, cleanBase));
+    }
+
+    /**
+     * Parses text that contains at least one color code, without using the cache. Prefer 'parse' or 'parseShared'.
+     */
+    public static BaseComponent[] parseUncached(String str, ChatColor baseColor, boolean cleanBase) {
+        int firstChar = str.indexOf(ChatColor.COLOR_CHAR);
         str = cleanRedundantCodes(str);
         if (cleanBase && str.length() < 512 && !str.contains(ChatColor.COLOR_CHAR + "[") && !str.contains("://")) {
             return parseSimpleColorsOnly(str);
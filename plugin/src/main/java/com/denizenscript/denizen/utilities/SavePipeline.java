@@ -0,0 +1,202 @@
+package com.denizenscript.denizen.utilities;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs save-file serialization and journalled writes on a dedicated I/O thread.
+ * Callers take a cheap snapshot of their data on the main thread, then hand it over here.
+ * All writes go through a single thread, so writes to the same file always land in submission order.
+ */
+public class SavePipeline {
+
+    public static class StoreMetrics {
+
+        public final String name;
+
+        public volatile long lastSnapshotNanos, lastWriteNanos, lastSaveTimeMillis;
+
+        public volatile long saves, skipped;
+
+        public StoreMetrics(String name) {
+            this.name = name;
+        }
+    }
+
+    public static final Map<String, StoreMetrics> metrics = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public static StoreMetrics getMetrics(String storeName) {
+        return metrics.computeIfAbsent(storeName, StoreMetrics::new);
+    }
+
+    public static ExecutorService ioExecutor;
+
+    /**
+     * Number of submitted saves that haven't completed yet.
+     */
+    public static final AtomicInteger pendingWrites = new AtomicInteger();
+
+    /**
+     * The last text written to each path, for stores that opt into content-based dirty tracking. Only accessed from the I/O thread.
+     */
+    public static HashMap<String, String> lastWrittenContent = new HashMap<>();
+
+    public static synchronized ExecutorService getExecutor() {
+        if (ioExecutor == null || ioExecutor.isShutdown()) {
+            ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Denizen Save I/O");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return ioExecutor;
+    }
+
+    /**
+     * Serializes (via the supplier, on the I/O thread) and writes a file.
+     * If skipUnchanged is true, the write is skipped when the serialized text is identical to the last text written to the same path.
+     */
+    public static Future<?> submit(String storeName, String path, long snapshotNanos, boolean skipUnchanged, Supplier<String> serializer) {
+        StoreMetrics storeMetrics = getMetrics(storeName);
+        storeMetrics.lastSnapshotNanos = snapshotNanos;
+        pendingWrites.incrementAndGet();
+        return getExecutor().submit(() -> {
+            try {
+                long start = System.nanoTime();
+                String text = serializer.get();
+                if (text == null) {
+                    return;
+                }
+                if (skipUnchanged) {
+                    if (text.equals(lastWrittenContent.get(path))) {
+                        storeMetrics.skipped++;
+                        return;
+                    }
+                    lastWrittenContent.put(path, text);
+                }
+                CoreUtilities.journallingFileSave(path, text);
+                storeMetrics.lastWriteNanos = System.nanoTime() - start;
+                storeMetrics.lastSaveTimeMillis = System.currentTimeMillis();
+                storeMetrics.saves++;
+            }
+            catch (Throwable ex) {
+                Debug.echoError("Failed to save '" + path + "' for store '" + storeName + "':");
+                Debug.echoError(ex);
+            }
+            finally {
+                pendingWrites.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Runs a custom write on the I/O thread, recording its time under the given store's metrics.
+     */
+    public static Future<?> submitWrite(String storeName, long snapshotNanos, Runnable writer) {
+        StoreMetrics storeMetrics = getMetrics(storeName);
+        storeMetrics.lastSnapshotNanos = snapshotNanos;
+        pendingWrites.incrementAndGet();
+        return getExecutor().submit(() -> {
+            try {
+                long start = System.nanoTime();
+                writer.run();
+                recordWrite(storeName, System.nanoTime() - start);
+            }
+            catch (Throwable ex) {
+                Debug.echoError("Failed to save for store '" + storeName + "':");
+                Debug.echoError(ex);
+            }
+            finally {
+                pendingWrites.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the I/O thread, counting it as a pending save until it completes.
+     */
+    public static void execute(Runnable task) {
+        pendingWrites.incrementAndGet();
+        getExecutor().execute(() -> {
+            try {
+                task.run();
+            }
+            finally {
+                pendingWrites.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Records a write that was performed directly on the I/O thread.
+     */
+    public static void recordWrite(String storeName, long writeNanos) {
+        StoreMetrics storeMetrics = getMetrics(storeName);
+        storeMetrics.lastWriteNanos = writeNanos;
+        storeMetrics.lastSaveTimeMillis = System.currentTimeMillis();
+        storeMetrics.saves++;
+    }
+
+    /**
+     * Marks a store as skipped for this save round (nothing changed since last save).
+     */
+    public static void markSkipped(String storeName) {
+        getMetrics(storeName).skipped++;
+    }
+
+    public static boolean hasPendingWrites() {
+        return pendingWrites.get() > 0;
+    }
+
+    /**
+     * Runs the task on the main thread once all currently submitted saves have completed.
+     * Runs it immediately if nothing is pending, otherwise on a later tick, so the main thread never waits on the disk.
+     * Used before reading save files back from disk.
+     */
+    public static void whenIdle(Runnable task) {
+        if (!hasPendingWrites()) {
+            task.run();
+            return;
+        }
+        getExecutor().execute(() -> {
+            if (Denizen.getInstance().isEnabled()) {
+                Bukkit.getScheduler().runTask(Denizen.getInstance(), task);
+            }
+        });
+    }
+
+    /**
+     * Blocks until all currently submitted saves have completed, or the timeout is reached.
+     * Used on shutdown, and where a file must be read back immediately.
+     */
+    public static void flush(long timeoutMillis) {
+        if (ioExecutor == null || !hasPendingWrites()) {
+            return;
+        }
+        try {
+            getExecutor().submit(() -> { }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            Debug.echoError("Timed out waiting for pending saves to complete.");
+        }
+        catch (Throwable ex) {
+            Debug.echoError(ex);
+        }
+    }
+
+    public static void shutdown() {
+        if (ioExecutor == null) {
+            return;
+        }
+        flush(60 * 1000);
+        ioExecutor.shutdown();
+        lastWrittenContent.clear();
+    }
+}
@@ -3,7 +3,12 @@ package com.denizenscript.denizen.utilities;
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.scripts.commands.entity.RemoveCommand;
 import com.denizenscript.denizen.tags.core.CustomColorTagBase;
+import com.denizenscript.denizen.utilities.debugging.DebugOutputBuffer;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
+import com.denizenscript.denizen.utilities.entity.ProximityEngine;
+import com.denizenscript.denizen.utilities.flags.FlagFileHelper;
 import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
+import com.denizenscript.denizen.utilities.inventory.OfflineInventoryRegistry;
 import com.denizenscript.denizencore.flags.MapTagBasedFlagTracker;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.objects.core.DurationTag;
@@ -47,6 +52,7 @@ public class Settings {
         cache_defaultDebugMode = config.getBoolean("Debug.Container default", true);
         cache_debugLimitPerTick = config.getInt("Debug.Limit per tick", 5000);
         cache_debugPrefix = config.getString("Debug.Prefix", "");
+        DebugOutputBuffer.configure(config.getBoolean("Debug.Async output", true), config.getInt("Debug.Async output buffer size", 16384));
         FutureWarning.futureWarningsEnabled = config.getBoolean("Debug.Show future warnings", false);
         cache_warnOnAsyncPackets = config.getBoolean("Debug.Warn on async packets", false);
         cache_scriptQueueSpeed = config.getString("Scripts.Queue speed", "instant");
@@ -82,6 +88,8 @@ public class Settings {
         cache_chatGloballyIfFailedChatTriggers = config.getBoolean("Triggers.Chat.Appears globally.If triggers failed", false);
         cache_chatGloballyIfNoChatTriggers = config.getBoolean("Triggers.Chat.Appears globally.If triggers missing", true);
         cache_chatGloballyIfUninteractable = config.getBoolean("Triggers.Chat.Appears globally.If NPC uninteractable", true);
+        ProximityEngine.checkInterval = Math.max(1, (int) DurationTag.valueOf(config.getString("Triggers.Proximity.Check interval", "5t"), CoreUtilities.basicContext).getTicks());
+        ProximityEngine.movementThreshold = config.getDouble("Triggers.Proximity.Movement threshold", 0);
         cache_worldScriptChatEventAsynchronous = config.getBoolean("Scripts.World.Events.On player chats.Use asynchronous event", false);
         cache_worldScriptTimeEventFrequency = DurationTag.valueOf(config.getString("Scripts.World.Events.On time changes.Frequency of check", "250t"), CoreUtilities.basicContext);
         cache_blockTagsMaxBlocks = config.getInt("Tags.Block tags.Max blocks", 1000000);
@@ -95,6 +103,16 @@ public class Settings {
         cache_commandScriptAutoInit = config.getBoolean("Scripts.Command.Auto init", false);
         PlayerFlagHandler.cacheTimeoutSeconds = config.getLong("Saves.Offline player cache timeout", 300);
         PlayerFlagHandler.asyncPreload = config.getBoolean("Saves.Load async on login", true);
+        FlagFileHelper.useBinaryFormat = config.getBoolean("Saves.Binary flag format", false);
+        PlayerFlagHandler.maxCacheEntries = config.getInt("Saves.Offline player cache max entries", 2000);
+        PlayerFlagHandler.maxCacheBytes = config.getLong("Saves.Offline player cache max megabytes", 128) * 1024 * 1024;
+        PlayerFlagHandler.loadThreads = Math.max(1, config.getInt("Saves.Player flag load threads", 2));
+        PlayerFlagHandler.mainThreadBudgetMillis = config.getLong("Saves.Player flag main thread wait budget", 50);
+        PlayerFlagHandler.batchPrefetchWindow = config.getInt("Saves.Player flag batch prefetch", 16);
+        OfflinePlayerDataCache.cacheTimeoutSeconds = config.getLong("Saves.Offline player data cache timeout", 300);
+        OfflinePlayerDataCache.maxCacheEntries = config.getInt("Saves.Offline player data cache max entries", 200);
+        OfflinePlayerDataCache.writeDelayTicks = config.getInt("Saves.Offline player data write delay", 20);
+        OfflineInventoryRegistry.idleTimeoutSeconds = config.getLong("Saves.Offline player inventory timeout", 300);
         MapTagBasedFlagTracker.skipAllCleanings = config.getBoolean("Saves.Skip flag cleaning", false);
         RemoveCommand.alwaysWarnOnMassRemove = config.getBoolean("Commands.Remove.Always warn on mass delete", false);
         ConfigurationSection colorSection = config.getConfigurationSection("Colors");
@@ -0,0 +1,321 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.NMSVersion;
+import com.denizenscript.denizen.objects.LocationTag;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Walks the block positions of an area (one or more boxes, optionally limited to a shape) without allocating anything per block.
+ * Positions are visited one chunk column at a time, bottom to top, so that each chunk is only looked up once.
+ * Blocks are read from a ChunkSnapshot when enough of the chunk is visited to be worth one (see 'SNAPSHOT_MIN_VOLUME'), and directly from the chunk otherwise.
+ * Cursors that don't read blocks can instead visit positions in plain x, z, y order (see 'positionOrder').
+ * With a material filter, the filter only runs once per distinct material, and chunk sections that are entirely air are skipped when air can't match.
+ * Usage is: while (cursor.next()) { ... cursor.x, cursor.y, cursor.z ... }
+ */
+public class BlockCursor {
+
+    @FunctionalInterface
+    public interface Shape {
+
+        boolean contains(int x, int y, int z);
+    }
+
+    /**
+     * The minimum number of positions a cursor must visit in a chunk for that chunk's blocks to be read from a snapshot rather than directly.
+     */
+    public static int SNAPSHOT_MIN_VOLUME = 4096;
+
+    public static long packPosition(int x, int y, int z) {
+        return (((long) y) << 8) | ((x & 15) << 4) | (z & 15);
+    }
+
+    public final World world;
+
+    public final int minWorldY, maxWorldY;
+
+    /**
+     * Boxes to walk, each as {minX, minY, minZ, maxX, maxY, maxZ} (inclusive, already limited to the world's height range).
+     */
+    public final List<int[]> boxes = new ArrayList<>();
+
+    public Shape shape;
+
+    public Predicate<Material> materialFilter;
+
+    /**
+     * Cached material filter results, by material ordinal: 0 = not yet checked, 1 = matches, 2 = doesn't match.
+     */
+    public byte[] materialResults;
+
+    public boolean readSnapshots, loadChunks, trackTileEntities, positionOrder;
+
+    /**
+     * The current position, valid after 'next' returns true.
+     */
+    public int x, y, z;
+
+    /**
+     * How many chunks were skipped because they weren't loaded (only when reading blocks without loading chunks).
+     */
+    public int skippedChunks = 0;
+
+    /**
+     * The snapshot of the current chunk, or null if blocks are being read directly from 'chunk'.
+     */
+    public ChunkSnapshot snapshot;
+
+    public Chunk chunk;
+
+    public Set<Long> tileEntities;
+
+    private int boxIndex = -1;
+
+    private int[] box;
+
+    private int chunkX, chunkZ, chunkMinX, chunkMaxX, chunkMinZ, chunkMaxZ;
+
+    private boolean inChunk = false;
+
+    public BlockCursor(World world) {
+        this.world = world;
+        if (world == null || NMSHandler.getVersion().isAtMost(NMSVersion.v1_16)) {
+            minWorldY = 0;
+            maxWorldY = 255;
+        }
+        else {
+            minWorldY = world.getMinHeight();
+            maxWorldY = world.getMaxHeight() - 1;
+        }
+    }
+
+    public BlockCursor addBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        minY = Math.max(minY, minWorldY);
+        maxY = Math.min(maxY, maxWorldY);
+        if (minX <= maxX && minY <= maxY && minZ <= maxZ) {
+            boxes.add(new int[] {minX, minY, minZ, maxX, maxY, maxZ});
+        }
+        return this;
+    }
+
+    public BlockCursor shape(Shape shape) {
+        this.shape = shape;
+        return this;
+    }
+
+    /**
+     * Only visits blocks whose material matches the filter. Chunks that aren't loaded are skipped (and counted in 'skippedChunks').
+     */
+    public BlockCursor filter(Predicate<Material> materialFilter) {
+        this.materialFilter = materialFilter;
+        this.materialResults = new byte[Material.values().length];
+        this.readSnapshots = true;
+        return this;
+    }
+
+    /**
+     * Makes block data available through 'getBlockData' and 'hasTileEntity'. If 'loadChunks' is false, unloaded chunks are skipped.
+     */
+    public BlockCursor withSnapshots(boolean loadChunks) {
+        this.readSnapshots = true;
+        this.loadChunks = loadChunks;
+        this.trackTileEntities = true;
+        return this;
+    }
+
+    /**
+     * Visits positions box by box, in x, then z, then y order (y changing fastest), rather than one chunk column at a time.
+     * This is the order area block lists have always used. Can't be combined with reading blocks.
+     */
+    public BlockCursor positionOrder() {
+        this.positionOrder = true;
+        return this;
+    }
+
+    /**
+     * Returns the total volume of the boxes, which is the maximum number of positions this cursor can visit.
+     */
+    public long volume() {
+        long total = 0;
+        for (int[] box : boxes) {
+            total += (long) (box[3] - box[0] + 1) * (box[4] - box[1] + 1) * (box[5] - box[2] + 1);
+        }
+        return total;
+    }
+
+    public boolean matches(Material material) {
+        int ordinal = material.ordinal();
+        byte result = materialResults[ordinal];
+        if (result == 0) {
+            result = materialFilter.test(material) ? (byte) 1 : (byte) 2;
+            materialResults[ordinal] = result;
+        }
+        return result == 1;
+    }
+
+    public Material getMaterial() {
+        if (snapshot == null) {
+            return chunk.getBlock(x & 15, y, z & 15).getType();
+        }
+        return snapshot.getBlockType(x & 15, y, z & 15);
+    }
+
+    public BlockData getBlockData() {
+        if (snapshot == null) {
+            return chunk.getBlock(x & 15, y, z & 15).getBlockData();
+        }
+        return snapshot.getBlockData(x & 15, y, z & 15);
+    }
+
+    public boolean hasTileEntity() {
+        return tileEntities != null && tileEntities.contains(packPosition(x, y, z));
+    }
+
+    public LocationTag getLocation() {
+        return new LocationTag(world, x, y, z);
+    }
+
+    public boolean next() {
+        if (positionOrder) {
+            return nextInPositionOrder();
+        }
+        while (true) {
+            if (!inChunk) {
+                if (!nextChunk()) {
+                    return false;
+                }
+                inChunk = true;
+                x = chunkMinX - 1;
+                z = chunkMinZ;
+                y = box[1];
+            }
+            if (++x > chunkMaxX) {
+                x = chunkMinX;
+                if (++z > chunkMaxZ) {
+                    z = chunkMinZ;
+                    if (++y > box[4]) {
+                        inChunk = false;
+                        continue;
+                    }
+                }
+            }
+            if (materialFilter != null && x == chunkMinX && z == chunkMinZ && ((y & 15) == 0 || y == box[1]) && canSkipSection()) {
+                // Jump to the last position of the section, so the next step moves on to the next section
+                y = Math.min(box[4], (y & ~15) + 15);
+                x = chunkMaxX;
+                z = chunkMaxZ;
+                continue;
+            }
+            if (shape != null && !shape.contains(x, y, z)) {
+                continue;
+            }
+            if (materialFilter != null && !matches(getMaterial())) {
+                continue;
+            }
+            return true;
+        }
+    }
+
+    private boolean nextInPositionOrder() {
+        while (true) {
+            if (box == null) {
+                if (++boxIndex >= boxes.size()) {
+                    return false;
+                }
+                box = boxes.get(boxIndex);
+                x = box[0];
+                z = box[2];
+                y = box[1] - 1;
+            }
+            if (++y > box[4]) {
+                y = box[1];
+                if (++z > box[5]) {
+                    z = box[2];
+                    if (++x > box[3]) {
+                        box = null;
+                        continue;
+                    }
+                }
+            }
+            if (shape != null && !shape.contains(x, y, z)) {
+                continue;
+            }
+            return true;
+        }
+    }
+
+    private boolean canSkipSection() {
+        if (snapshot == null || !snapshot.isSectionEmpty((y >> 4) - (minWorldY >> 4))) {
+            return false;
+        }
+        return !matches(Material.AIR) && !matches(Material.CAVE_AIR) && !matches(Material.VOID_AIR);
+    }
+
+    private boolean nextChunk() {
+        while (true) {
+            if (box != null) {
+                if (++chunkZ > (box[5] >> 4)) {
+                    chunkZ = box[2] >> 4;
+                    if (++chunkX > (box[3] >> 4)) {
+                        box = null;
+                    }
+                }
+            }
+            if (box == null) {
+                if (++boxIndex >= boxes.size()) {
+                    return false;
+                }
+                box = boxes.get(boxIndex);
+                chunkX = box[0] >> 4;
+                chunkZ = box[2] >> 4;
+            }
+            chunkMinX = Math.max(box[0], chunkX << 4);
+            chunkMaxX = Math.min(box[3], (chunkX << 4) + 15);
+            chunkMinZ = Math.max(box[2], chunkZ << 4);
+            chunkMaxZ = Math.min(box[5], (chunkZ << 4) + 15);
+            if (readSnapshots && !loadSnapshot()) {
+                skippedChunks++;
+                continue;
+            }
+            return true;
+        }
+    }
+
+    private boolean loadSnapshot() {
+        if (world == null) {
+            return false;
+        }
+        NMSHandler.getChunkHelper().changeChunkServerThread(world);
+        try {
+            if (!loadChunks && !world.isChunkLoaded(chunkX, chunkZ)) {
+                snapshot = null;
+                chunk = null;
+                return false;
+            }
+            chunk = world.getChunkAt(chunkX, chunkZ);
+            long chunkVolume = (long) (chunkMaxX - chunkMinX + 1) * (chunkMaxZ - chunkMinZ + 1) * (box[4] - box[1] + 1);
+            snapshot = chunkVolume >= SNAPSHOT_MIN_VOLUME ? chunk.getChunkSnapshot(false, false, false) : null;
+            if (trackTileEntities) {
+                tileEntities = new HashSet<>();
+                for (BlockState state : chunk.getTileEntities()) {
+                    tileEntities.add(packPosition(state.getX(), state.getY(), state.getZ()));
+                }
+            }
+            return true;
+        }
+        finally {
+            NMSHandler.getChunkHelper().restoreServerThread(world);
+        }
+    }
+}
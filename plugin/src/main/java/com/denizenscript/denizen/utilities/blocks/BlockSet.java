@@ -1,5 +1,6 @@
 package com.denizenscript.denizen.utilities.blocks;
 
+import com.denizenscript.denizen.nms.abstracts.BulkBlockWriter;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizencore.objects.core.DurationTag;
 import org.bukkit.Location;
@@ -21,6 +22,11 @@ public interface BlockSet {
         public List<PlayerTag> fakeTo;
 
         public DurationTag fakeDuration;
+
+        /**
+         * If set, blocks are written through this bulk writer instead of normal block changes.
+         */
+        public BulkBlockWriter fastWriter;
     }
 
     FullBlockData[] getBlocks();
@@ -1,27 +1,37 @@
 package com.denizenscript.denizen.utilities.blocks;
 
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.objects.*;
 import com.denizenscript.denizen.scripts.commands.world.SchematicCommand;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
 import com.denizenscript.denizencore.objects.Mechanism;
 import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.util.Vector;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CuboidBlockSet implements BlockSet {
 
@@ -38,18 +48,43 @@ public class CuboidBlockSet implements BlockSet {
         center_x = (int) (center.getX() - low.getX());
         center_y = (int) (center.getY() - low.getY());
         center_z = (int) (center.getZ() - low.getZ());
-        blocks = new FullBlockData[(x_width * y_length * z_height)];
-        int index = 0;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = 0; z < z_height; z++) {
-                    blocks[index++] = new FullBlockData(low.clone().add(x, y, z).getBlock(), copyFlags);
-                }
-            }
+        initBlocks(x_width * y_length * z_height);
+        BlockCursor cursor = createCursor(low);
+        while (cursor.next()) {
+            readBlock(cursor, low, copyFlags);
+        }
+    }
+
+    public BlockCursor createCursor(Location low) {
+        return new BlockCursor(low.getWorld())
+                .addBox(low.getBlockX(), low.getBlockY(), low.getBlockZ(), low.getBlockX() + x_width - 1, low.getBlockY() + y_length - 1, low.getBlockZ() + z_height - 1)
+                .withSnapshots(true);
+    }
+
+    /**
+     * Reads the block at the cursor's position. Plain blocks are read straight from the chunk snapshot,
+     * and only blocks with a tile entity (or any block when flags are copied) need a live block lookup.
+     */
+    public void readBlock(BlockCursor cursor, Location low, boolean copyFlags) {
+        int index = ((cursor.x - low.getBlockX()) * y_length + (cursor.y - low.getBlockY())) * z_height + (cursor.z - low.getBlockZ());
+        if (copyFlags || cursor.hasTileEntity()) {
+            setBlock(index, new FullBlockData(cursor.world.getBlockAt(cursor.x, cursor.y, cursor.z), copyFlags));
+        }
+        else {
+            blockIndices[index] = paletteIdFor(cursor.getBlockData());
         }
     }
 
-    public void buildDelayed(CuboidTag cuboid, Location center, Runnable runme, long maxDelayMs, boolean copyFlags) {
+    /**
+     * Maximum number of captured batches of chunks waiting to be read off the main thread, at which point capturing pauses so snapshots don't pile up.
+     */
+    public static int maxPendingCaptureBatches = 2;
+
+    /**
+     * Copies the area a few chunks per tick. Each tick's chunks are read off the main thread as soon as they're captured, then their snapshots are dropped.
+     * Runs 'runme' on the main thread when done, or 'onFailure' (after reporting the error) if reading the area failed.
+     */
+    public void buildDelayed(CuboidTag cuboid, Location center, Runnable runme, Runnable onFailure, long maxDelayMs, boolean copyFlags) {
         hasFlags = copyFlags;
         Location low = cuboid.pairs.get(0).low;
         Location high = cuboid.pairs.get(0).high;
@@ -59,34 +94,175 @@ public class CuboidBlockSet implements BlockSet {
         center_x = (int) (center.getX() - low.getX());
         center_y = (int) (center.getY() - low.getY());
         center_z = (int) (center.getZ() - low.getZ());
-        final long goal = (long) (x_width * y_length * z_height);
-        blocks = new FullBlockData[(x_width * y_length * z_height)];
+        initBlocks(x_width * y_length * z_height);
+        // Only used for its box, which is the area limited to the world's height range
+        BlockCursor bounds = createCursor(low);
+        if (bounds.boxes.isEmpty()) {
+            if (runme != null) {
+                Bukkit.getScheduler().runTask(Denizen.getInstance(), runme);
+            }
+            return;
+        }
+        int[] box = bounds.boxes.get(0);
+        Executor async = task -> Bukkit.getScheduler().runTaskAsynchronously(Denizen.getInstance(), task);
+        AtomicInteger pendingBatches = new AtomicInteger();
         new BukkitRunnable() {
-            int index = 0;
+            int chunkX = box[0] >> 4;
+            int chunkZ = box[2] >> 4;
+            // Batches are chained, as the set can only be filled by one thread at a time
+            CompletableFuture<Void> reading = CompletableFuture.completedFuture(null);
             @Override
             public void run() {
+                if (pendingBatches.get() >= maxPendingCaptureBatches) {
+                    return;
+                }
                 long start = System.currentTimeMillis();
-                while (index < goal) {
-                    long z = index % ((long) (z_height));
-                    long y = ((index - z) % ((long) (y_length * z_height))) / ((long) z_height);
-                    long x = (index - y - z) / ((long) (y_length * z_height));
-                    blocks[index] = new FullBlockData(low.clone().add(x, y, z).getBlock(), copyFlags);
-                    index++;
+                List<CapturedChunk> batch = new ArrayList<>();
+                while (chunkX <= (box[3] >> 4)) {
+                    batch.add(captureChunk(low.getWorld(), chunkX, chunkZ, box, low, copyFlags));
+                    if (++chunkZ > (box[5] >> 4)) {
+                        chunkZ = box[2] >> 4;
+                        chunkX++;
+                    }
                     if (System.currentTimeMillis() - start > maxDelayMs) {
-                        SchematicCommand.noPhys = false;
-                        return;
+                        break;
                     }
                 }
-                if (runme != null) {
-                    runme.run();
+                pendingBatches.incrementAndGet();
+                reading = reading.thenRunAsync(() -> {
+                    try {
+                        for (CapturedChunk chunk : batch) {
+                            readCapturedChunk(chunk, box, low);
+                        }
+                    }
+                    finally {
+                        batch.clear();
+                        pendingBatches.decrementAndGet();
+                    }
+                }, async);
+                if (chunkX <= (box[3] >> 4)) {
+                    return;
                 }
                 cancel();
-
+                reading.whenComplete((result, ex) -> Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> {
+                    if (ex != null) {
+                        Debug.echoError(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                        if (onFailure != null) {
+                            onFailure.run();
+                        }
+                    }
+                    else if (runme != null) {
+                        runme.run();
+                    }
+                }));
             }
         }.runTaskTimer(Denizen.getInstance(), 1, 1);
     }
 
-    public FullBlockData[] blocks = null;
+    /**
+     * The part of a chunk within the area being copied, as captured on the main thread for reading off the main thread.
+     */
+    public static class CapturedChunk {
+
+        public final ChunkSnapshot snapshot;
+
+        public final int minX, minZ, maxX, maxZ;
+
+        /**
+         * Blocks that need more than the snapshot has (tile entity data or flags), by block index.
+         */
+        public final Map<Integer, FullBlockData> specialBlocks = new HashMap<>();
+
+        public CapturedChunk(ChunkSnapshot snapshot, int minX, int minZ, int maxX, int maxZ) {
+            this.snapshot = snapshot;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+        }
+
+        public boolean contains(int x, int y, int z, int[] box) {
+            return x >= minX && x <= maxX && z >= minZ && z <= maxZ && y >= box[1] && y <= box[4];
+        }
+    }
+
+    /**
+     * Takes a snapshot of the chunk, and reads the few blocks that can't be read from a snapshot (those with tile entities, or with flags when copying flags).
+     * Must be called on the main thread.
+     */
+    public CapturedChunk captureChunk(World world, int chunkX, int chunkZ, int[] box, Location low, boolean copyFlags) {
+        Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+        CapturedChunk captured = new CapturedChunk(chunk.getChunkSnapshot(false, false, false),
+                Math.max(box[0], chunkX << 4), Math.max(box[2], chunkZ << 4), Math.min(box[3], (chunkX << 4) + 15), Math.min(box[5], (chunkZ << 4) + 15));
+        for (BlockState state : chunk.getTileEntities()) {
+            if (captured.contains(state.getX(), state.getY(), state.getZ(), box)) {
+                captured.specialBlocks.put(getIndex(state.getX() - low.getBlockX(), state.getY() - low.getBlockY(), state.getZ() - low.getBlockZ()), new FullBlockData(state.getBlock(), copyFlags));
+            }
+        }
+        if (copyFlags) {
+            for (HashSet<Long> positions : LocationFlagSearchHelper.getIndex(chunk).values()) {
+                for (long pos : positions) {
+                    int x = (chunkX << 4) + (int) ((pos >> 4) & 15);
+                    int y = (int) (pos >> 8);
+                    int z = (chunkZ << 4) + (int) (pos & 15);
+                    if (captured.contains(x, y, z, box)) {
+                        int index = getIndex(x - low.getBlockX(), y - low.getBlockY(), z - low.getBlockZ());
+                        if (!captured.specialBlocks.containsKey(index)) {
+                            captured.specialBlocks.put(index, new FullBlockData(world.getBlockAt(x, y, z), true));
+                        }
+                    }
+                }
+            }
+        }
+        return captured;
+    }
+
+    /**
+     * Fills in the blocks from a captured chunk. Can be called off the main thread, as long as nothing else is using this set.
+     */
+    public void readCapturedChunk(CapturedChunk chunk, int[] box, Location low) {
+        int lowX = low.getBlockX(), lowY = low.getBlockY(), lowZ = low.getBlockZ();
+        BlockData lastData = null;
+        short lastId = 0;
+        for (int x = chunk.minX; x <= chunk.maxX; x++) {
+            for (int y = box[1]; y <= box[4]; y++) {
+                for (int z = chunk.minZ; z <= chunk.maxZ; z++) {
+                    BlockData data = chunk.snapshot.getBlockData(x & 15, y, z & 15);
+                    // Neighboring blocks are usually the same, so skip the palette lookup for repeats
+                    if (lastData == null || !lastData.equals(data)) {
+                        lastData = data;
+                        lastId = paletteIdFor(data);
+                    }
+                    blockIndices[getIndex(x - lowX, y - lowY, z - lowZ)] = lastId;
+                }
+            }
+        }
+        for (Map.Entry<Integer, FullBlockData> block : chunk.specialBlocks.entrySet()) {
+            setBlock(block.getKey(), block.getValue());
+        }
+    }
+
+    /**
+     * Every distinct block data in the set. Blocks are stored as an index into this list.
+     */
+    public List<BlockData> palette = new ArrayList<>();
+
+    public Map<BlockData, Short> paletteIds = new HashMap<>();
+
+    /**
+     * The palette index of each block (as an unsigned short), ordered as X, then Y, then Z (see 'getIndex').
+     */
+    public short[] blockIndices = null;
+
+    /**
+     * Tile entity data, for only the blocks that have any, by block index.
+     */
+    public Map<Integer, CompoundTag> tileEntities = new HashMap<>();
+
+    /**
+     * Flags, for only the blocks that have any, by block index.
+     */
+    public Map<Integer, MapTag> flags = new HashMap<>();
 
     public boolean hasFlags = false;
 
@@ -104,8 +280,72 @@ public class CuboidBlockSet implements BlockSet {
 
     public ListTag entities = null;
 
+    /**
+     * Resets the set to the given number of blocks, all air.
+     */
+    public void initBlocks(int count) {
+        palette.clear();
+        paletteIds.clear();
+        tileEntities.clear();
+        flags.clear();
+        blockIndices = new short[count];
+        paletteIdFor(Material.AIR.createBlockData());
+    }
+
+    public short paletteIdFor(BlockData data) {
+        Short id = paletteIds.get(data);
+        if (id == null) {
+            if (palette.size() > 0xFFFF) {
+                throw new IllegalStateException("Too many distinct block types in one schematic.");
+            }
+            id = (short) palette.size();
+            palette.add(data);
+            paletteIds.put(data, id);
+        }
+        return id;
+    }
+
+    public int getBlockCount() {
+        return blockIndices.length;
+    }
+
+    public int getIndex(int x, int y, int z) {
+        return z + y * z_height + x * z_height * y_length;
+    }
+
+    public BlockData getBlockData(int index) {
+        return palette.get(blockIndices[index] & 0xFFFF);
+    }
+
+    /**
+     * Returns a view of the block at the index. Changes to the returned object don't affect the set (use 'setBlock' for that).
+     */
+    public FullBlockData getBlock(int index) {
+        return new FullBlockData(getBlockData(index), tileEntities.isEmpty() ? null : tileEntities.get(index), flags.isEmpty() ? null : flags.get(index));
+    }
+
+    public void setBlock(int index, FullBlockData block) {
+        blockIndices[index] = paletteIdFor(block.data);
+        if (block.tileEntityData != null) {
+            tileEntities.put(index, block.tileEntityData);
+        }
+        else {
+            tileEntities.remove(index);
+        }
+        if (block.flags != null) {
+            flags.put(index, block.flags);
+        }
+        else {
+            flags.remove(index);
+        }
+    }
+
     @Override
     public FullBlockData[] getBlocks() {
+        FullBlockData[] blocks = new FullBlockData[blockIndices.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = getBlock(i);
+        }
         return blocks;
     }
 
@@ -200,26 +440,41 @@ public class CuboidBlockSet implements BlockSet {
         }
     }
 
-    public void setBlockSingle(FullBlockData block, int x, int y, int z, InputParams input) {
-        if (input.noAir && block.data.getMaterial() == Material.AIR) {
+    public void setBlockSingle(int index, int x, int y, int z, InputParams input) {
+        BlockData data = getBlockData(index);
+        if (input.noAir && data.getMaterial() == Material.AIR) {
             return;
         }
-        if (block.data.getMaterial() == Material.STRUCTURE_VOID) {
+        if (data.getMaterial() == Material.STRUCTURE_VOID) {
             return;
         }
         int finalY = input.centerLocation.getBlockY() + y - center_y;
         if (!Utilities.isLocationYSafe(finalY, input.centerLocation.getWorld())) {
             return;
         }
+        if (input.fastWriter != null) {
+            int finalX = input.centerLocation.getBlockX() + x - center_x;
+            int finalZ = input.centerLocation.getBlockZ() + z - center_z;
+            if (input.mask != null && !input.mask.contains(input.fastWriter.world.getBlockAt(finalX, finalY, finalZ).getType())) {
+                return;
+            }
+            if (tileEntities.containsKey(index) || flags.containsKey(index)) {
+                getBlock(index).set(input.fastWriter, finalX, finalY, finalZ);
+            }
+            else {
+                input.fastWriter.setBlock(finalX, finalY, finalZ, data);
+            }
+            return;
+        }
         Block destBlock = input.centerLocation.clone().add(x - center_x, y - center_y, z - center_z).getBlock();
         if (input.mask != null && !input.mask.contains(destBlock.getType())) {
             return;
         }
         if (input.fakeTo == null) {
-            block.set(destBlock, false);
+            getBlock(index).set(destBlock, false);
         }
         else {
-            FakeBlock.showFakeBlockTo(input.fakeTo, new LocationTag(destBlock.getLocation()), new MaterialTag(block.data), input.fakeDuration);
+            FakeBlock.showFakeBlockTo(input.fakeTo, new LocationTag(destBlock.getLocation()), new MaterialTag(data), input.fakeDuration);
         }
     }
 
@@ -230,20 +485,27 @@ public class CuboidBlockSet implements BlockSet {
             int index = 0;
             @Override
             public void run() {
-                SchematicCommand.noPhys = true;
+                SchematicCommand.noPhys = input.fastWriter == null;
                 long start = System.currentTimeMillis();
                 while (index < goal) {
                     int z = index % (z_height);
                     int y = ((index - z) % (y_length * z_height)) / z_height;
                     int x = (index - y - z) / (y_length * z_height);
-                    setBlockSingle(blocks[index], x, y, z, input);
+                    setBlockSingle(index, x, y, z, input);
                     index++;
                     if (System.currentTimeMillis() - start > maxDelayMs) {
                         SchematicCommand.noPhys = false;
+                        if (input.fastWriter != null) {
+                            // Blocks are placed in increasing X order, so only chunks behind the current X are complete
+                            input.fastWriter.finishBelowX(input.centerLocation.getBlockX() + x - center_x);
+                        }
                         return;
                     }
                 }
                 SchematicCommand.noPhys = false;
+                if (input.fastWriter != null) {
+                    input.fastWriter.finish();
+                }
                 cancel();
                 if (runme != null) {
                     runme.run();
@@ -254,17 +516,20 @@ public class CuboidBlockSet implements BlockSet {
 
     @Override
     public void setBlocks(InputParams input) {
-        SchematicCommand.noPhys = true;
+        SchematicCommand.noPhys = input.fastWriter == null;
         int index = 0;
         for (int x = 0; x < x_width; x++) {
             for (int y = 0; y < y_length; y++) {
                 for (int z = 0; z < z_height; z++) {
-                    setBlockSingle(blocks[index], x, y, z, input);
+                    setBlockSingle(index, x, y, z, input);
                     index++;
                 }
             }
         }
         SchematicCommand.noPhys = false;
+        if (input.fastWriter != null) {
+            input.fastWriter.finish();
+        }
     }
 
     public void rotateEntitiesOne() {
@@ -288,9 +553,44 @@ public class CuboidBlockSet implements BlockSet {
         entities = outEntities;
     }
 
+    /**
+     * Moves each block from its old index to the new index given by the mapping, along with any tile entity data and flags.
+     */
+    public void remapBlocks(int[] newIndexFor) {
+        short[] newIndices = new short[blockIndices.length];
+        for (int i = 0; i < blockIndices.length; i++) {
+            newIndices[newIndexFor[i]] = blockIndices[i];
+        }
+        blockIndices = newIndices;
+        tileEntities = remapSparse(tileEntities, newIndexFor);
+        flags = remapSparse(flags, newIndexFor);
+    }
+
+    public static <T> Map<Integer, T> remapSparse(Map<Integer, T> map, int[] newIndexFor) {
+        if (map.isEmpty()) {
+            return map;
+        }
+        Map<Integer, T> result = new HashMap<>(map.size() * 2);
+        for (Map.Entry<Integer, T> entry : map.entrySet()) {
+            result.put(newIndexFor[entry.getKey()], entry.getValue());
+        }
+        return result;
+    }
+
     public void rotateOne() {
         rotateEntitiesOne();
-        FullBlockData[] bd = new FullBlockData[blocks.length];
+        // Rotate each distinct block type once, rather than once per block
+        List<BlockData> oldPalette = palette;
+        short[] rotatedIds = new short[oldPalette.size()];
+        palette = new ArrayList<>(oldPalette.size());
+        paletteIds = new HashMap<>();
+        for (int i = 0; i < oldPalette.size(); i++) {
+            rotatedIds[i] = paletteIdFor(FullBlockData.rotateDataOne(oldPalette.get(i)));
+        }
+        for (int i = 0; i < blockIndices.length; i++) {
+            blockIndices[i] = rotatedIds[blockIndices[i] & 0xFFFF];
+        }
+        int[] newIndexFor = new int[blockIndices.length];
         int index = 0;
         int cx = center_x;
         center_x = center_z;
@@ -298,60 +598,60 @@ public class CuboidBlockSet implements BlockSet {
         for (int x = 0; x < z_height; x++) {
             for (int y = 0; y < y_length; y++) {
                 for (int z = x_width - 1; z >= 0; z--) {
-                    bd[index++] = blockAt(z, y, x).rotateOne();
+                    newIndexFor[getIndex(z, y, x)] = index++;
                 }
             }
         }
         int xw = x_width;
         x_width = z_height;
         z_height = xw;
-        blocks = bd;
+        remapBlocks(newIndexFor);
     }
 
     public void flipX() {
-        FullBlockData[] bd = new FullBlockData[blocks.length];
+        int[] newIndexFor = new int[blockIndices.length];
         int index = 0;
         center_x = x_width - center_x;
         for (int x = x_width - 1; x >= 0; x--) {
             for (int y = 0; y < y_length; y++) {
                 for (int z = 0; z < z_height; z++) {
-                    bd[index++] = blockAt(x, y, z);
+                    newIndexFor[getIndex(x, y, z)] = index++;
                 }
             }
         }
-        blocks = bd;
+        remapBlocks(newIndexFor);
     }
 
     public void flipY() {
-        FullBlockData[] bd = new FullBlockData[blocks.length];
+        int[] newIndexFor = new int[blockIndices.length];
         int index = 0;
         center_x = x_width - center_x;
         for (int x = 0; x < x_width; x++) {
             for (int y = y_length - 1; y >= 0; y--) {
                 for (int z = 0; z < z_height; z++) {
-                    bd[index++] = blockAt(x, y, z);
+                    newIndexFor[getIndex(x, y, z)] = index++;
                 }
             }
         }
-        blocks = bd;
+        remapBlocks(newIndexFor);
     }
 
     public void flipZ() {
-        FullBlockData[] bd = new FullBlockData[blocks.length];
+        int[] newIndexFor = new int[blockIndices.length];
         int index = 0;
         center_x = x_width - center_x;
         for (int x = 0; x < x_width; x++) {
             for (int y = 0; y < y_length; y++) {
                 for (int z = z_height - 1; z >= 0; z--) {
-                    bd[index++] = blockAt(x, y, z);
+                    newIndexFor[getIndex(x, y, z)] = index++;
                 }
             }
         }
-        blocks = bd;
+        remapBlocks(newIndexFor);
     }
 
     public FullBlockData blockAt(double X, double Y, double Z) {
-        return blocks[(int) (Z + Y * z_height + X * z_height * y_length)];
+        return getBlock(getIndex((int) X, (int) Y, (int) Z));
         // This calculation should produce the same result as the below nonsense:
         /*
         int index = 0;
@@ -1,156 +1,473 @@
 package com.denizenscript.denizen.utilities.blocks;
 
-import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.objects.MaterialTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptHelper;
 import com.denizenscript.denizencore.objects.core.DurationTag;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.scheduler.BukkitTask;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
 
 import java.util.*;
 
 /**
  * Creates a temporary fake block and shows it to a PlayerTag.
+ * Fake blocks are stored in layers (see FakeBlockLayer): each player has a private layer, and named layers can be shared by any number of viewers.
+ * FakeBlock instances are just views of a single block in a layer, created on demand.
  */
 public class FakeBlock {
 
-    public static class FakeBlockMap {
+    /**
+     * Private per-player layers, for blocks shown directly to specific players.
+     */
+    public final static Map<UUID, FakeBlockLayer> playerLayers = new HashMap<>();
 
-        public Map<LocationTag, FakeBlock> byLocation = new HashMap<>();
+    /**
+     * Named shared layers, by lowercase name.
+     */
+    public final static Map<String, FakeBlockLayer> namedLayers = new HashMap<>();
 
-        public Map<ChunkCoordinate, List<FakeBlock>> byChunk = new HashMap<>();
+    /**
+     * The named layers each player is currently viewing.
+     */
+    public final static Map<UUID, List<FakeBlockLayer>> viewedLayers = new HashMap<>();
 
-        public FakeBlock getOrAdd(PlayerTag player, LocationTag location) {
-            location = new LocationTag(location.getBlockX(), location.getBlockY(), location.getBlockZ(), location.getWorldName());
-            FakeBlock block = byLocation.get(location);
-            if (block != null) {
-                return block;
-            }
-            block = new FakeBlock(player, location);
-            byLocation.put(location, block);
-            List<FakeBlock> chunkBlocks = byChunk.computeIfAbsent(block.chunkCoord, k -> new ArrayList<>());
-            chunkBlocks.add(block);
-            return block;
+    /**
+     * If more than this many blocks are reverted or sent in one chunk at once, the chunk is resent rather than sending each block individually.
+     */
+    public static int MAX_INDIVIDUAL_REVERTS = 64;
+
+    public static boolean hasAnyFakeBlocks() {
+        return !playerLayers.isEmpty() || !viewedLayers.isEmpty();
+    }
+
+    /**
+     * Returns the layers visible to a player, in priority order (the player's private layer first), or null if there are none.
+     */
+    public static List<FakeBlockLayer> getLayersFor(UUID id) {
+        FakeBlockLayer privateLayer = playerLayers.get(id);
+        List<FakeBlockLayer> viewed = viewedLayers.get(id);
+        if (privateLayer == null) {
+            return viewed;
         }
+        if (viewed == null) {
+            return Collections.singletonList(privateLayer);
+        }
+        List<FakeBlockLayer> result = new ArrayList<>(viewed.size() + 1);
+        result.add(privateLayer);
+        result.addAll(viewed);
+        return result;
+    }
 
-        public void remove(FakeBlock block) {
-            if (byLocation.remove(block.location) != null) {
-                List<FakeBlock> chunkBlocks = byChunk.get(block.chunkCoord);
-                if (chunkBlocks != null) {
-                    chunkBlocks.remove(block);
-                    if (chunkBlocks.isEmpty()) {
-                        byChunk.remove(block.chunkCoord);
-                    }
-                }
+    public static boolean hasFakeBlocksInChunk(UUID id, ChunkCoordinate chunkCoord) {
+        List<FakeBlockLayer> layers = getLayersFor(id);
+        if (layers == null) {
+            return false;
+        }
+        for (FakeBlockLayer layer : layers) {
+            if (layer.chunks.containsKey(chunkCoord)) {
+                return true;
             }
         }
+        return false;
     }
 
-    public final static Map<UUID, FakeBlockMap> blocks = new HashMap<>();
-
     public static FakeBlock getFakeBlockFor(UUID id, LocationTag location) {
-        FakeBlockMap map = blocks.get(id);
-        if (map == null) {
+        List<FakeBlockLayer> layers = getLayersFor(id);
+        if (layers == null) {
             return null;
         }
-        return map.byLocation.get(location);
+        String worldName = location.getWorldName();
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        for (FakeBlockLayer layer : layers) {
+            MaterialTag material = layer.getBlock(worldName, x, y, z);
+            if (material != null) {
+                return new FakeBlock(new PlayerTag(id), new LocationTag(x, y, z, worldName), material, layer);
+            }
+        }
+        return null;
     }
 
+    /**
+     * Returns all fake blocks a player can see in a chunk, with higher priority layers overriding lower ones, or null if there are none.
+     */
     public static List<FakeBlock> getFakeBlocksFor(UUID id, ChunkCoordinate chunkCoord) {
-        FakeBlockMap map = blocks.get(id);
-        if (map == null) {
+        List<FakeBlockLayer> layers = getLayersFor(id);
+        if (layers == null) {
             return null;
         }
-        return map.byChunk.get(chunkCoord);
+        List<FakeBlock> result = null;
+        Set<Long> seen = layers.size() > 1 ? new HashSet<>() : null;
+        PlayerTag player = null;
+        for (FakeBlockLayer layer : layers) {
+            Map<Integer, FakeBlockLayer.Section> sections = layer.chunks.get(chunkCoord);
+            if (sections == null) {
+                continue;
+            }
+            if (result == null) {
+                result = new ArrayList<>();
+                player = new PlayerTag(id);
+            }
+            for (Map.Entry<Integer, FakeBlockLayer.Section> sectionEntry : sections.entrySet()) {
+                int sectionY = sectionEntry.getKey();
+                FakeBlockLayer.Section section = sectionEntry.getValue();
+                for (int index = 0; index < 4096; index++) {
+                    if (section.blocks[index] == 0) {
+                        continue;
+                    }
+                    if (seen != null && !seen.add(((long) sectionY << 12) | index)) {
+                        continue;
+                    }
+                    LocationTag location = new LocationTag((chunkCoord.x << 4) + (index & 15), (sectionY << 4) + (index >> 8), (chunkCoord.z << 4) + ((index >> 4) & 15), chunkCoord.worldName);
+                    result.add(new FakeBlock(player, location, section.get(index), layer));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all fake blocks a player can see in a chunk, indexed by section and position, or null if there are none.
+     */
+    public static FakeChunkBlocks getChunkBlocksFor(UUID id, ChunkCoordinate chunkCoord) {
+        List<FakeBlock> blocks = getFakeBlocksFor(id, chunkCoord);
+        if (blocks == null || blocks.isEmpty()) {
+            return null;
+        }
+        return new FakeChunkBlocks(blocks);
+    }
+
+    public static List<LocationTag> getFakeBlockLocationsFor(UUID id) {
+        List<LocationTag> result = new ArrayList<>();
+        List<FakeBlockLayer> layers = getLayersFor(id);
+        if (layers == null) {
+            return result;
+        }
+        Set<ChunkCoordinate> chunks = new HashSet<>();
+        for (FakeBlockLayer layer : layers) {
+            chunks.addAll(layer.chunks.keySet());
+        }
+        for (ChunkCoordinate chunk : chunks) {
+            List<FakeBlock> blocks = getFakeBlocksFor(id, chunk);
+            if (blocks != null) {
+                for (FakeBlock block : blocks) {
+                    result.add(block.location);
+                }
+            }
+        }
+        return result;
     }
 
     public final PlayerTag player;
     public final LocationTag location;
     public final ChunkCoordinate chunkCoord;
-    public MaterialTag material;
-    public BukkitTask currentTask = null;
+    public final MaterialTag material;
+    public final FakeBlockLayer layer;
 
-    private FakeBlock(PlayerTag player, LocationTag location) {
+    private FakeBlock(PlayerTag player, LocationTag location, MaterialTag material, FakeBlockLayer layer) {
         this.player = player;
         this.location = location;
-        this.chunkCoord = new ChunkCoordinate(location);
+        this.chunkCoord = new ChunkCoordinate(location.getBlockX() >> 4, location.getBlockZ() >> 4, location.getWorldName());
+        this.material = material;
+        this.layer = layer;
+    }
+
+    public static FakeBlockLayer getNamedLayer(String name) {
+        return namedLayers.get(CoreUtilities.toLowerCase(name));
+    }
+
+    public static FakeBlockLayer getOrCreateNamedLayer(String name) {
+        return namedLayers.computeIfAbsent(CoreUtilities.toLowerCase(name), FakeBlockLayer::new);
     }
 
     public static void showFakeBlockTo(List<PlayerTag> players, LocationTag location, MaterialTag material, DurationTag duration) {
         NetworkInterceptHelper.enable();
+        long ticks = duration == null ? 0 : duration.getTicks();
         for (PlayerTag player : players) {
             if (!player.isOnline() || !player.isValid()) {
                 continue;
             }
             UUID uuid = player.getPlayerEntity().getUniqueId();
-            FakeBlockMap playerBlocks = blocks.get(uuid);
-            if (playerBlocks == null) {
-                playerBlocks = new FakeBlockMap();
-                blocks.put(uuid, playerBlocks);
+            FakeBlockLayer layer = playerLayers.get(uuid);
+            if (layer == null) {
+                layer = new FakeBlockLayer(null);
+                layer.viewers.add(uuid);
+                playerLayers.put(uuid, layer);
+            }
+            layer.setBlock(location, material, ticks);
+            sendBlock(player.getPlayerEntity(), location, material);
+        }
+        lastChunkRefresh.clear();
+    }
+
+    /**
+     * Adds a block to a named shared layer (creating the layer if needed), and makes the given players view that layer.
+     * The block data is stored once, regardless of how many players view it.
+     */
+    public static void showFakeBlockTo(List<PlayerTag> players, LocationTag location, MaterialTag material, DurationTag duration, String layerName) {
+        NetworkInterceptHelper.enable();
+        FakeBlockLayer layer = getOrCreateNamedLayer(layerName);
+        addViewers(layer, players);
+        layer.setBlock(location, material, duration == null ? 0 : duration.getTicks());
+        for (Player player : layer.getOnlineViewers()) {
+            sendBlock(player, location, material);
+        }
+        lastChunkRefresh.clear();
+    }
+
+    /**
+     * Adds many blocks to a named shared layer at once (materials are used in order, repeating as needed), and makes the given players view that layer.
+     * All blocks are added before anything is sent, so each affected chunk is only sent (or resent, if it has many of the blocks) once per viewer.
+     */
+    public static void showFakeBlocksTo(List<PlayerTag> players, List<LocationTag> locations, List<MaterialTag> materials, DurationTag duration, String layerName) {
+        NetworkInterceptHelper.enable();
+        FakeBlockLayer layer = getOrCreateNamedLayer(layerName);
+        addViewers(layer, players);
+        long ticks = duration == null ? 0 : duration.getTicks();
+        Map<ChunkCoordinate, List<LocationTag>> byChunk = new LinkedHashMap<>();
+        Map<ChunkCoordinate, List<MaterialTag>> materialsByChunk = new HashMap<>();
+        int i = 0;
+        for (LocationTag location : locations) {
+            MaterialTag material = materials.get(i++ % materials.size());
+            layer.setBlock(location, material, ticks);
+            ChunkCoordinate chunk = new ChunkCoordinate(location);
+            byChunk.computeIfAbsent(chunk, k -> new ArrayList<>()).add(location);
+            materialsByChunk.computeIfAbsent(chunk, k -> new ArrayList<>()).add(material);
+        }
+        List<Player> viewers = layer.getOnlineViewers();
+        for (Map.Entry<ChunkCoordinate, List<LocationTag>> chunkEntry : byChunk.entrySet()) {
+            ChunkCoordinate chunk = chunkEntry.getKey();
+            World world = Bukkit.getWorld(chunk.worldName);
+            if (world == null || !world.isChunkLoaded(chunk.x, chunk.z)) {
+                continue;
+            }
+            List<LocationTag> chunkLocations = chunkEntry.getValue();
+            List<MaterialTag> chunkMaterials = materialsByChunk.get(chunk);
+            for (Player player : viewers) {
+                if (!player.getWorld().equals(world)) {
+                    continue;
+                }
+                if (chunkLocations.size() > MAX_INDIVIDUAL_REVERTS) {
+                    NMSHandler.getChunkHelper().refreshChunkSectionsFor(player, world.getChunkAt(chunk.x, chunk.z));
+                    continue;
+                }
+                for (int index = 0; index < chunkLocations.size(); index++) {
+                    sendBlock(player, chunkLocations.get(index), chunkMaterials.get(index));
+                }
             }
-            FakeBlock block = playerBlocks.getOrAdd(player, location);
-            block.updateBlock(material, duration);
         }
         lastChunkRefresh.clear();
     }
 
+    public static void addViewers(FakeBlockLayer layer, List<PlayerTag> players) {
+        for (PlayerTag player : players) {
+            if (!player.isOnline() || !player.isValid()) {
+                continue;
+            }
+            UUID uuid = player.getUUID();
+            if (layer.viewers.add(uuid)) {
+                viewedLayers.computeIfAbsent(uuid, k -> new ArrayList<>()).add(layer);
+                sendLayer(player.getPlayerEntity(), layer);
+            }
+        }
+    }
+
+    public static void removeViewers(FakeBlockLayer layer, List<PlayerTag> players) {
+        for (PlayerTag player : players) {
+            UUID uuid = player.getUUID();
+            if (!layer.viewers.remove(uuid)) {
+                continue;
+            }
+            List<FakeBlockLayer> viewed = viewedLayers.get(uuid);
+            if (viewed != null) {
+                viewed.remove(layer);
+                if (viewed.isEmpty()) {
+                    viewedLayers.remove(uuid);
+                }
+            }
+            if (player.isOnline()) {
+                World world = player.getPlayerEntity().getWorld();
+                for (ChunkCoordinate chunk : layer.chunks.keySet()) {
+                    if (chunk.worldName.equals(world.getName())) {
+                        refreshChunk(world, chunk);
+                    }
+                }
+            }
+        }
+        cleanupLayer(layer);
+    }
+
+    /**
+     * Stops a player viewing all named layers, without sending anything to them (for players that are leaving).
+     */
+    public static void removeFromAllLayers(UUID id) {
+        List<FakeBlockLayer> viewed = viewedLayers.remove(id);
+        if (viewed == null) {
+            return;
+        }
+        for (FakeBlockLayer layer : viewed) {
+            layer.viewers.remove(id);
+            cleanupLayer(layer);
+        }
+    }
+
+    public static class ViewerListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPlayerQuit(PlayerQuitEvent event) {
+            removeFromAllLayers(event.getPlayer().getUniqueId());
+        }
+    }
+
     public static void stopShowingTo(List<PlayerTag> players, final LocationTag location) {
         for (PlayerTag player : players) {
-            FakeBlockMap playerBlocks = blocks.get(player.getPlayerEntity().getUniqueId());
-            if (playerBlocks != null) {
-                FakeBlock block = playerBlocks.byLocation.get(location);
-                if (block != null) {
-                    block.cancelBlock();
+            FakeBlockLayer layer = playerLayers.get(player.getUUID());
+            if (layer != null) {
+                removeAndRevert(layer, location);
+            }
+        }
+    }
+
+    /**
+     * Removes a block from a named layer, for all viewers of that layer.
+     */
+    public static void stopShowing(String layerName, LocationTag location) {
+        FakeBlockLayer layer = getNamedLayer(layerName);
+        if (layer != null) {
+            removeAndRevert(layer, location);
+        }
+    }
+
+    /**
+     * Removes many blocks from a named layer at once, reverting them for all viewers a chunk at a time.
+     */
+    public static void stopShowing(String layerName, List<LocationTag> locations) {
+        FakeBlockLayer layer = getNamedLayer(layerName);
+        if (layer == null) {
+            return;
+        }
+        Map<ChunkCoordinate, List<LocationTag>> removed = new LinkedHashMap<>();
+        for (LocationTag location : locations) {
+            if (layer.removeBlock(location.getWorldName(), location.getBlockX(), location.getBlockY(), location.getBlockZ())) {
+                LocationTag blockLocation = new LocationTag(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+                removed.computeIfAbsent(new ChunkCoordinate(blockLocation), k -> new ArrayList<>()).add(blockLocation);
+            }
+        }
+        for (Map.Entry<ChunkCoordinate, List<LocationTag>> chunkEntry : removed.entrySet()) {
+            revertForViewers(layer, chunkEntry.getKey(), chunkEntry.getValue());
+        }
+        cleanupLayer(layer);
+    }
+
+    public static void removeAndRevert(FakeBlockLayer layer, LocationTag location) {
+        if (layer.removeBlock(location.getWorldName(), location.getBlockX(), location.getBlockY(), location.getBlockZ())) {
+            LocationTag blockLocation = new LocationTag(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+            revertForViewers(layer, new ChunkCoordinate(blockLocation), Collections.singletonList(blockLocation));
+            cleanupLayer(layer);
+        }
+    }
+
+    /**
+     * Removes an empty layer from tracking. Named layers stay registered while they still have viewers.
+     */
+    public static void cleanupLayer(FakeBlockLayer layer) {
+        if (!layer.isEmpty()) {
+            return;
+        }
+        if (layer.name == null) {
+            for (UUID id : layer.viewers) {
+                if (playerLayers.get(id) == layer) {
+                    playerLayers.remove(id);
                 }
             }
         }
+        else if (layer.viewers.isEmpty()) {
+            namedLayers.remove(layer.name);
+        }
     }
 
     public static HashMap<ChunkCoordinate, Long> lastChunkRefresh = new HashMap<>();
 
-    public void cancelBlock() {
-        if (currentTask != null) {
-            currentTask.cancel();
-            currentTask = null;
+    public static void refreshChunk(World world, ChunkCoordinate chunkCoord) {
+        Long l = lastChunkRefresh.get(chunkCoord);
+        if (l == null || l < world.getFullTime()) {
+            lastChunkRefresh.put(chunkCoord, world.getFullTime());
+            world.refreshChunk(chunkCoord.x, chunkCoord.z);
         }
-        material = null;
-        if (player.isOnline()) {
-            location.getBlock().getState().update();
-            Long l = lastChunkRefresh.get(chunkCoord);
-            if (l == null || l < location.getWorld().getFullTime()) {
-                lastChunkRefresh.put(chunkCoord, location.getWorld().getFullTime());
-                location.getWorld().refreshChunk(chunkCoord.x, chunkCoord.z);
-            }
+    }
+
+    /**
+     * Reverts the given (already removed) block locations for every online viewer of a layer.
+     * Any fake block from another layer that the viewer can still see at a location will be reapplied by the packet handler.
+     */
+    public static void revertForViewers(FakeBlockLayer layer, ChunkCoordinate chunkCoord, List<LocationTag> locations) {
+        World world = Bukkit.getWorld(chunkCoord.worldName);
+        if (world == null) {
+            return;
+        }
+        if (locations.size() > MAX_INDIVIDUAL_REVERTS) {
+            refreshChunk(world, chunkCoord);
+            return;
         }
-        FakeBlockMap mapping = blocks.get(player.getUUID());
-        mapping.remove(this);
-        if (mapping.byChunk.isEmpty()) {
-            blocks.remove(player.getUUID());
+        for (Player player : layer.getOnlineViewers()) {
+            if (!player.getWorld().equals(world)) {
+                continue;
+            }
+            for (LocationTag location : locations) {
+                player.sendBlockChange(location, location.getBlock().getBlockData());
+            }
         }
     }
 
-    private void updateBlock(MaterialTag material, DurationTag duration) {
-        if (currentTask != null) {
-            currentTask.cancel();
+    public static void sendBlock(Player player, LocationTag location, MaterialTag material) {
+        if (!player.getWorld().getName().equals(location.getWorldName()) || !location.getWorld().isChunkLoaded(location.getBlockX() >> 4, location.getBlockZ() >> 4)) {
+            return;
         }
-        this.material = material;
-        if (player.hasChunkLoaded(location.getChunk())) {
-            player.getPlayerEntity().sendBlockChange(location, material.getModernData());
-            if (material.getMaterial().name().endsWith("_BANNER")) { // Banners are weird
-                location.getWorld().refreshChunk(chunkCoord.x, chunkCoord.z);
-            }
-        }
-        if (duration != null && duration.getTicks() > 0) {
-            currentTask = new BukkitRunnable() {
-                @Override
-                public void run() {
-                    currentTask = null;
-                    cancelBlock();
+        player.sendBlockChange(location, material.getModernData());
+        if (material.getMaterial().name().endsWith("_BANNER")) { // Banners are weird
+            location.getWorld().refreshChunk(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        }
+    }
+
+    /**
+     * Sends every block in a layer to a player that just started viewing it.
+     * Chunks with many blocks in the layer are resent to the player as a whole (with the fake blocks applied by the packet handler), rather than block by block.
+     */
+    public static void sendLayer(Player player, FakeBlockLayer layer) {
+        World world = player.getWorld();
+        for (Map.Entry<ChunkCoordinate, Map<Integer, FakeBlockLayer.Section>> chunkEntry : layer.chunks.entrySet()) {
+            ChunkCoordinate chunk = chunkEntry.getKey();
+            if (!chunk.worldName.equals(world.getName()) || !world.isChunkLoaded(chunk.x, chunk.z)) {
+                continue;
+            }
+            int count = 0;
+            for (FakeBlockLayer.Section section : chunkEntry.getValue().values()) {
+                count += section.count;
+            }
+            if (count > MAX_INDIVIDUAL_REVERTS) {
+                NMSHandler.getChunkHelper().refreshChunkSectionsFor(player, world.getChunkAt(chunk.x, chunk.z));
+                continue;
+            }
+            for (Map.Entry<Integer, FakeBlockLayer.Section> sectionEntry : chunkEntry.getValue().entrySet()) {
+                int sectionY = sectionEntry.getKey();
+                FakeBlockLayer.Section section = sectionEntry.getValue();
+                for (int index = 0; index < 4096; index++) {
+                    if (section.blocks[index] != 0) {
+                        player.sendBlockChange(new LocationTag(world, (chunk.x << 4) + (index & 15), (sectionY << 4) + (index >> 8), (chunk.z << 4) + ((index >> 4) & 15)), section.get(index).getModernData());
+                    }
                 }
-            }.runTaskLater(Denizen.getInstance(), duration.getTicks());
+            }
         }
     }
-}
 
+    public void cancelBlock() {
+        removeAndRevert(layer, location);
+    }
+}
@@ -0,0 +1,259 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.objects.MaterialTag;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+
+/**
+ * A set of fake blocks, stored once per chunk section as a palette of materials plus a palette index per block, shown to a set of viewers.
+ * Each player has a private layer (for blocks shown directly to them), and may also view any number of named shared layers.
+ */
+public class FakeBlockLayer {
+
+    public static class Section {
+
+        /**
+         * Palette of materials used in this section. Index 0 is always null, and means "no fake block".
+         */
+        public List<MaterialTag> palette = new ArrayList<>(Collections.singletonList(null));
+
+        public short[] blocks = new short[4096];
+
+        /**
+         * Expiry wheel tick that each block expires at, or 0 for never. Null if no block in the section has ever had a duration.
+         */
+        public long[] expiresAt;
+
+        public long lastScheduledExpiry = -1;
+
+        public int count = 0;
+
+        public static int index(int x, int y, int z) {
+            return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        }
+
+        public MaterialTag get(int index) {
+            return palette.get(blocks[index]);
+        }
+
+        public short paletteIdFor(MaterialTag material) {
+            for (int i = 1; i < palette.size(); i++) {
+                if (palette.get(i).getModernData().equals(material.getModernData())) {
+                    return (short) i;
+                }
+            }
+            palette.add(material);
+            return (short) (palette.size() - 1);
+        }
+    }
+
+    public final String name;
+
+    public final Set<UUID> viewers = new HashSet<>();
+
+    public final Map<ChunkCoordinate, Map<Integer, Section>> chunks = new HashMap<>();
+
+    /**
+     * A version number per chunk, changed whenever any block in the chunk changes. Used to key cached chunk packet rewrites.
+     */
+    public final Map<ChunkCoordinate, Long> chunkVersions = new HashMap<>();
+
+    public static long nextVersion = 1;
+
+    public void markChanged(ChunkCoordinate chunk) {
+        chunkVersions.put(chunk, nextVersion++);
+    }
+
+    public FakeBlockLayer(String name) {
+        this.name = name;
+    }
+
+    public boolean isEmpty() {
+        return chunks.isEmpty();
+    }
+
+    public Section getSection(ChunkCoordinate chunk, int sectionY) {
+        Map<Integer, Section> sections = chunks.get(chunk);
+        return sections == null ? null : sections.get(sectionY);
+    }
+
+    public MaterialTag getBlock(String worldName, int x, int y, int z) {
+        Section section = getSection(new ChunkCoordinate(x >> 4, z >> 4, worldName), y >> 4);
+        return section == null ? null : section.get(Section.index(x, y, z));
+    }
+
+    public void setBlock(LocationTag location, MaterialTag material, long durationTicks) {
+        ChunkCoordinate chunk = new ChunkCoordinate(location);
+        int sectionY = location.getBlockY() >> 4;
+        Section section = chunks.computeIfAbsent(chunk, k -> new HashMap<>()).computeIfAbsent(sectionY, k -> new Section());
+        int index = Section.index(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        if (section.blocks[index] == 0) {
+            section.count++;
+        }
+        section.blocks[index] = section.paletteIdFor(material);
+        markChanged(chunk);
+        if (durationTicks > 0) {
+            if (section.expiresAt == null) {
+                section.expiresAt = new long[4096];
+            }
+            long expireTime = ExpiryWheel.currentTick + durationTicks;
+            section.expiresAt[index] = expireTime;
+            if (section.lastScheduledExpiry != expireTime) {
+                section.lastScheduledExpiry = expireTime;
+                ExpiryWheel.schedule(this, chunk, sectionY, durationTicks);
+            }
+        }
+        else if (section.expiresAt != null) {
+            section.expiresAt[index] = 0;
+        }
+    }
+
+    /**
+     * Removes a fake block from the layer, returning true if there was one.
+     */
+    public boolean removeBlock(String worldName, int x, int y, int z) {
+        ChunkCoordinate chunk = new ChunkCoordinate(x >> 4, z >> 4, worldName);
+        Map<Integer, Section> sections = chunks.get(chunk);
+        if (sections == null) {
+            return false;
+        }
+        Section section = sections.get(y >> 4);
+        if (section == null) {
+            return false;
+        }
+        int index = Section.index(x, y, z);
+        if (section.blocks[index] == 0) {
+            return false;
+        }
+        section.blocks[index] = 0;
+        if (section.expiresAt != null) {
+            section.expiresAt[index] = 0;
+        }
+        markChanged(chunk);
+        if (--section.count <= 0) {
+            sections.remove(y >> 4);
+            if (sections.isEmpty()) {
+                chunks.remove(chunk);
+                chunkVersions.remove(chunk);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes any blocks in the section that have expired as of the given expiry wheel tick, and reverts them for viewers.
+     */
+    public void expireSection(ChunkCoordinate chunk, int sectionY, long tick) {
+        Section section = getSection(chunk, sectionY);
+        if (section == null || section.expiresAt == null) {
+            return;
+        }
+        World world = Bukkit.getWorld(chunk.worldName);
+        if (world == null) {
+            return;
+        }
+        List<LocationTag> removed = new ArrayList<>();
+        for (int index = 0; index < 4096; index++) {
+            long expire = section.expiresAt[index];
+            if (expire != 0 && expire <= tick && section.blocks[index] != 0) {
+                removed.add(new LocationTag(world, (chunk.x << 4) + (index & 15), (sectionY << 4) + (index >> 8), (chunk.z << 4) + ((index >> 4) & 15)));
+            }
+        }
+        for (LocationTag location : removed) {
+            removeBlock(chunk.worldName, location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        }
+        if (!removed.isEmpty()) {
+            FakeBlock.revertForViewers(this, chunk, removed);
+        }
+    }
+
+    public List<Player> getOnlineViewers() {
+        List<Player> players = new ArrayList<>(viewers.size());
+        for (UUID id : viewers) {
+            Player player = Bukkit.getPlayer(id);
+            if (player != null) {
+                players.add(player);
+            }
+        }
+        return players;
+    }
+
+    /**
+     * A hashed timing wheel (one slot per tick) that expires fake block sections, replacing a separate scheduled task per block.
+     * The wheel keeps its own tick clock, which only advances while there are pending entries.
+     * Entries are per (layer, section, expire time), so a large batch of blocks shown with one duration only schedules one entry per section.
+     */
+    public static class ExpiryWheel {
+
+        public static final int WHEEL_SIZE = 512;
+
+        public static class Entry {
+
+            public FakeBlockLayer layer;
+
+            public ChunkCoordinate chunk;
+
+            public int sectionY;
+
+            public long expireTick;
+        }
+
+        public static List<Entry>[] slots = new List[WHEEL_SIZE];
+
+        public static long currentTick = 0;
+
+        public static int pending = 0;
+
+        public static BukkitTask task;
+
+        public static void schedule(FakeBlockLayer layer, ChunkCoordinate chunk, int sectionY, long delayTicks) {
+            Entry entry = new Entry();
+            entry.layer = layer;
+            entry.chunk = chunk;
+            entry.sectionY = sectionY;
+            entry.expireTick = currentTick + Math.max(1, delayTicks);
+            int slot = (int) (entry.expireTick % WHEEL_SIZE);
+            if (slots[slot] == null) {
+                slots[slot] = new ArrayList<>();
+            }
+            slots[slot].add(entry);
+            pending++;
+            if (task == null) {
+                task = Bukkit.getScheduler().runTaskTimer(Denizen.getInstance(), ExpiryWheel::tick, 1, 1);
+            }
+        }
+
+        public static void tick() {
+            currentTick++;
+            int slot = (int) (currentTick % WHEEL_SIZE);
+            List<Entry> entries = slots[slot];
+            if (entries != null && !entries.isEmpty()) {
+                List<Entry> due = new ArrayList<>();
+                Iterator<Entry> iterator = entries.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (entry.expireTick <= currentTick) {
+                        iterator.remove();
+                        due.add(entry);
+                    }
+                }
+                pending -= due.size();
+                for (Entry entry : due) {
+                    entry.layer.expireSection(entry.chunk, entry.sectionY, currentTick);
+                    FakeBlock.cleanupLayer(entry.layer);
+                }
+            }
+            if (pending <= 0 && task != null) {
+                task.cancel();
+                task = null;
+                pending = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import java.util.*;
+
+/**
+ * Caches rewritten chunk packet data for fake blocks, so that players viewing the same fake block layers in the same chunk share one rewrite.
+ * Entries are keyed by the chunk coordinate, the version of each contributing layer in that chunk, and a cheap stamp of the original chunk data.
+ * The full chunk data is only compared when the stamp matches, so entries never go stale: any change to the chunk or its fake blocks simply produces a new key.
+ */
+public class FakeBlockRewriteCache {
+
+    public static int MAX_SIZE = 128;
+
+    /**
+     * How many bytes of the chunk data are sampled into the content stamp.
+     */
+    public static int STAMP_SAMPLES = 64;
+
+    public static long hits = 0, misses = 0, hitNanos = 0, rewriteNanos = 0;
+
+    public static class Key {
+
+        public final ChunkCoordinate chunk;
+
+        public final byte[] data;
+
+        public final List<?> blockEntities;
+
+        public final FakeBlockLayer[] layers;
+
+        public final long[] versions;
+
+        public final int hash;
+
+        public Key(ChunkCoordinate chunk, byte[] data, List<?> blockEntities, FakeBlockLayer[] layers, long[] versions) {
+            this.chunk = chunk;
+            this.data = data;
+            this.blockEntities = blockEntities;
+            this.layers = layers;
+            this.versions = versions;
+            this.hash = ((chunk.hashCode() * 31 + stamp(data)) * 31 + blockEntities.size()) * 31 + Arrays.hashCode(versions);
+        }
+
+        /**
+         * Returns a cheap stamp of the chunk data: its length plus an evenly spaced sample of its bytes.
+         */
+        public static int stamp(byte[] data) {
+            int result = data.length;
+            int step = Math.max(1, data.length / STAMP_SAMPLES);
+            for (int i = data.length - 1; i >= 0; i -= step) {
+                result = result * 31 + data[i];
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash && chunk.equals(key.chunk) && Arrays.equals(versions, key.versions) && Arrays.equals(layers, key.layers)
+                    && blockEntities.size() == key.blockEntities.size() && Arrays.equals(data, key.data) && blockEntities.equals(key.blockEntities);
+        }
+    }
+
+    public static class Result {
+
+        public final byte[] data;
+
+        public final List<?> blockEntities;
+
+        public Result(byte[] data, List<?> blockEntities) {
+            this.data = data;
+            this.blockEntities = blockEntities;
+        }
+
+        /**
+         * Returns a copy of the block entity list for a single packet, as the cached list is shared between packets that may be modified independently.
+         */
+        public List<?> copyBlockEntities() {
+            return new ArrayList<>(blockEntities);
+        }
+    }
+
+    public static final LinkedHashMap<Key, Result> cache = new LinkedHashMap<Key, Result>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * Creates a cache key for a chunk packet sent to the given player, or returns null if the player has no fake blocks in the chunk.
+     * The block entity list is copied, as some packet handlers modify it in place.
+     */
+    public static Key createKey(UUID id, ChunkCoordinate chunk, byte[] data, List<?> blockEntities) {
+        List<FakeBlockLayer> layers = FakeBlock.getLayersFor(id);
+        if (layers == null) {
+            return null;
+        }
+        int count = 0;
+        FakeBlockLayer[] contributing = new FakeBlockLayer[layers.size()];
+        long[] versions = new long[layers.size()];
+        for (FakeBlockLayer layer : layers) {
+            Long version = layer.chunkVersions.get(chunk);
+            if (version != null) {
+                contributing[count] = layer;
+                versions[count] = version;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return new Key(chunk, data, new ArrayList<>(blockEntities), Arrays.copyOf(contributing, count), Arrays.copyOf(versions, count));
+    }
+
+    public static synchronized Result get(Key key) {
+        return cache.get(key);
+    }
+
+    public static synchronized void put(Key key, Result result) {
+        cache.put(key, result);
+    }
+
+    public static synchronized int size() {
+        return cache.size();
+    }
+
+    public static synchronized void recordHit(long nanos) {
+        hits++;
+        hitNanos += nanos;
+    }
+
+    public static synchronized void recordRewrite(long nanos) {
+        misses++;
+        rewriteNanos += nanos;
+    }
+}
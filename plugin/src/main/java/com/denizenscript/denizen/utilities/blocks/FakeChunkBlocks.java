@@ -0,0 +1,39 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import java.util.*;
+
+/**
+ * The fake blocks a player can see in one chunk, indexed by chunk section and by position, for use when rewriting chunk packets.
+ */
+public class FakeChunkBlocks {
+
+    public static long packPosition(int x, int y, int z) {
+        return (((long) y) << 8) | ((x & 15) << 4) | (z & 15);
+    }
+
+    public final List<FakeBlock> blocks;
+
+    public final Map<Integer, List<FakeBlock>> bySection = new HashMap<>();
+
+    public final Set<Long> positions = new HashSet<>();
+
+    public FakeChunkBlocks(List<FakeBlock> blocks) {
+        this.blocks = blocks;
+        for (FakeBlock block : blocks) {
+            int x = block.location.getBlockX(), y = block.location.getBlockY(), z = block.location.getBlockZ();
+            bySection.computeIfAbsent(y >> 4, k -> new ArrayList<>()).add(block);
+            positions.add(packPosition(x, y, z));
+        }
+    }
+
+    /**
+     * Returns the fake blocks within the given chunk section, or null if there are none.
+     */
+    public List<FakeBlock> getSection(int sectionY) {
+        return bySection.get(sectionY);
+    }
+
+    public boolean hasBlockAt(int x, int y, int z) {
+        return positions.contains(packPosition(x, y, z));
+    }
+}
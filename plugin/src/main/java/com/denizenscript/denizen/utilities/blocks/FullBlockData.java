@@ -1,6 +1,7 @@
 package com.denizenscript.denizen.utilities.blocks;
 
 import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.abstracts.BulkBlockWriter;
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizencore.flags.MapTagBasedFlagTracker;
@@ -110,7 +111,10 @@ public class FullBlockData {
         return shape;
     }
 
-    public FullBlockData rotateOne() {
+    /**
+     * Returns the block data rotated by 90 degrees, or the same instance if rotating doesn't change it.
+     */
+    public static BlockData rotateDataOne(BlockData data) {
         if (data instanceof Orientable) {
             BlockData newData = data.clone();
             switch (((Orientable) data).getAxis()) {
@@ -121,25 +125,32 @@ public class FullBlockData {
                     ((Orientable) newData).setAxis(Axis.X);
                     break;
             }
-            return new FullBlockData(newData, tileEntityData, flags);
+            return newData;
         }
         else if (data instanceof Rotatable) {
             BlockData newData = data.clone();
             ((Rotatable) newData).setRotation(rotateFaceOne(((Rotatable) data).getRotation()));
-            return new FullBlockData(newData, tileEntityData, flags);
+            return newData;
         }
         else if (data instanceof Directional) {
             BlockData newData = data.clone();
             ((Directional) newData).setFacing(rotateFaceOne(((Directional) data).getFacing()));
-            return new FullBlockData(newData, tileEntityData, flags);
-
+            return newData;
         }
         else if (data instanceof Rail) {
             BlockData newData = data.clone();
             ((Rail) newData).setShape(rotateRailShapeOne(((Rail) data).getShape()));
-            return new FullBlockData(newData, tileEntityData, flags);
+            return newData;
         }
-        return this;
+        return data;
+    }
+
+    public FullBlockData rotateOne() {
+        BlockData newData = rotateDataOne(data);
+        if (newData == data) {
+            return this;
+        }
+        return new FullBlockData(newData, tileEntityData, flags);
     }
 
     public BlockData data;
@@ -153,6 +164,23 @@ public class FullBlockData {
         if (tileEntityData != null) {
             NMSHandler.getBlockHelper().setNbtData(block, tileEntityData);
         }
+        applyFlags(block);
+    }
+
+    /**
+     * Sets the block through a bulk writer. Tile entity data is applied when the writer finishes.
+     */
+    public void set(BulkBlockWriter writer, int x, int y, int z) {
+        writer.setBlock(x, y, z, data);
+        if (tileEntityData != null) {
+            writer.setTileEntityData(x, y, z, tileEntityData);
+        }
+        if (flags != null) {
+            applyFlags(writer.world.getBlockAt(x, y, z));
+        }
+    }
+
+    public void applyFlags(Block block) {
         if (flags != null) {
             MapTagBasedFlagTracker flagMap = (MapTagBasedFlagTracker) new LocationTag(block.getLocation()).getFlagTracker();
             for (Map.Entry<StringHolder, ObjectTag> entry : flags.map.entrySet()) {
@@ -10,206 +10,363 @@ import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import org.bukkit.Material;
 import org.bukkit.block.data.BlockData;
-import org.bukkit.util.BlockVector;
-
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+
+import java.io.*;
+import java.util.*;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public class SpongeSchematicHelper {
 
-    // Referenced from WorldEdit source and Sponge schematic format v2 documentation
-    // Some values are custom and specific to Denizen
-    public static CuboidBlockSet fromSpongeStream(InputStream is) {
-        CuboidBlockSet cbs = new CuboidBlockSet();
-        try {
-            NBTInputStream nbtStream = new NBTInputStream(new GZIPInputStream(is));
-            NamedTag rootTag = nbtStream.readNamedTag();
-            nbtStream.close();
-            if (!rootTag.getName().equals("Schematic")) {
-                throw new Exception("Tag 'Schematic' does not exist or is not first!");
-            }
-            CompoundTag schematicTag = (CompoundTag) rootTag.getTag();
-            Map<String, Tag> schematic = schematicTag.getValue();
-            if (schematic.containsKey("DenizenEntities")) {
-                String entities = getChildTag(schematic, "DenizenEntities", StringTag.class).getValue();
-                cbs.entities = ListTag.valueOf(entities, CoreUtilities.errorButNoDebugContext);
-            }
-            short width = getChildTag(schematic, "Width", ShortTag.class).getValue();
-            short length = getChildTag(schematic, "Length", ShortTag.class).getValue();
-            short height = getChildTag(schematic, "Height", ShortTag.class).getValue();
-            int originX = 0;
-            int originY = 0;
-            int originZ = 0;
-            if (schematic.containsKey("DenizenOffset")) {
-                // Note: "Offset" contains complete nonsense from WE, so just don't touch it.
-                int[] offsetArr = getChildTag(schematic, "DenizenOffset", IntArrayTag.class).getValue();
-                originX = offsetArr[0];
-                originY = offsetArr[1];
-                originZ = offsetArr[2];
+    /**
+     * Reads the tags of a schematic one at a time, decoding block data straight into the block set's palette storage.
+     * Tags can come in any order, so anything that depends on a tag that hasn't been read yet is held until 'finish'.
+     */
+    public static class SpongeReader {
+
+        public final CuboidBlockSet cbs;
+
+        public int width = -1, length = -1, height = -1;
+
+        public HashMap<Integer, BlockData> palette;
+
+        /**
+         * Schematic palette ID to block set palette ID (or -1 if not in the palette), available once the size and palette are known.
+         */
+        public int[] paletteIds;
+
+        /**
+         * Raw block data, only kept if it came before the size or palette.
+         */
+        public byte[] pendingBlockData;
+
+        public boolean hasBlockData = false;
+
+        public List<CompoundTag> pendingTileEntities = new ArrayList<>();
+
+        public Map<String, Tag> pendingFlags;
+
+        public SpongeReader(CuboidBlockSet cbs) {
+            this.cbs = cbs;
+        }
+
+        public void readEntry(NBTInputStream stream, int type, String name) throws Exception {
+            switch (name) {
+                case "Width":
+                    width = ((ShortTag) readExpected(stream, type, NBTConstants.TYPE_SHORT, name)).getValue();
+                    break;
+                case "Length":
+                    length = ((ShortTag) readExpected(stream, type, NBTConstants.TYPE_SHORT, name)).getValue();
+                    break;
+                case "Height":
+                    height = ((ShortTag) readExpected(stream, type, NBTConstants.TYPE_SHORT, name)).getValue();
+                    break;
+                case "DenizenOffset":
+                    // Note: "Offset" contains complete nonsense from WE, so just don't touch it.
+                    int[] offsetArr = ((IntArrayTag) readExpected(stream, type, NBTConstants.TYPE_INT_ARRAY, name)).getValue();
+                    cbs.center_x = offsetArr[0];
+                    cbs.center_y = offsetArr[1];
+                    cbs.center_z = offsetArr[2];
+                    break;
+                case "DenizenEntities":
+                    String entities = ((StringTag) readExpected(stream, type, NBTConstants.TYPE_STRING, name)).getValue();
+                    cbs.entities = ListTag.valueOf(entities, CoreUtilities.errorButNoDebugContext);
+                    break;
+                case "Palette":
+                    readPalette(((CompoundTag) readExpected(stream, type, NBTConstants.TYPE_COMPOUND, name)).getValue());
+                    break;
+                case "BlockData":
+                    checkType(type, NBTConstants.TYPE_BYTE_ARRAY, name);
+                    hasBlockData = true;
+                    int byteLength = stream.getDataInput().readInt();
+                    if (prepareBlocks()) {
+                        readBlockData(stream.getDataInput(), byteLength);
+                    }
+                    else {
+                        pendingBlockData = new byte[byteLength];
+                        stream.getDataInput().readFully(pendingBlockData);
+                    }
+                    break;
+                case "BlockEntities":
+                    for (Tag tag : ((JNBTListTag) readExpected(stream, type, NBTConstants.TYPE_LIST, name)).getValue()) {
+                        if (tag instanceof CompoundTag) {
+                            pendingTileEntities.add((CompoundTag) tag);
+                        }
+                    }
+                    break;
+                case "DenizenFlags":
+                    pendingFlags = ((CompoundTag) readExpected(stream, type, NBTConstants.TYPE_COMPOUND, name)).getValue();
+                    break;
+                default:
+                    stream.skipTagPayload(type);
+                    break;
             }
-            cbs.x_width = width;
-            cbs.z_height = length;
-            cbs.y_length = height;
-            cbs.center_x = originX;
-            cbs.center_y = originY;
-            cbs.center_z = originZ;
-            cbs.blocks = new FullBlockData[width * length * height];
-            Map<String, Tag> paletteMap = getChildTag(schematic, "Palette", CompoundTag.class).getValue();
-            HashMap<Integer, BlockData> palette = new HashMap<>(256);
-            for (String key : paletteMap.keySet()) {
-                int id = getChildTag(paletteMap, key, IntTag.class).getValue();
+        }
+
+        public void readPalette(Map<String, Tag> paletteMap) throws Exception {
+            palette = new HashMap<>(paletteMap.size() * 2);
+            for (Map.Entry<String, Tag> entry : paletteMap.entrySet()) {
+                if (!(entry.getValue() instanceof IntTag)) {
+                    throw new Exception(entry.getKey() + " tag is not of tag type " + IntTag.class.getName());
+                }
+                int id = ((IntTag) entry.getValue()).getValue();
                 BlockData data;
                 try {
-                    data = NMSHandler.getBlockHelper().parseBlockData(key);
+                    data = NMSHandler.getBlockHelper().parseBlockData(entry.getKey());
                 }
                 catch (Exception ex) {
                     Debug.echoError(ex);
-                    MaterialTag material = MaterialTag.valueOf(BlockHelper.getMaterialNameFromBlockData(key), CoreUtilities.noDebugContext);
+                    MaterialTag material = MaterialTag.valueOf(BlockHelper.getMaterialNameFromBlockData(entry.getKey()), CoreUtilities.noDebugContext);
                     data = (material == null ? new MaterialTag(Material.AIR) : material).getModernData();
                 }
                 palette.put(id, data);
             }
-            Map<BlockVector, Map<String, Tag>> tileEntitiesMap = new HashMap<>();
-            if (schematic.containsKey("BlockEntities")) {
-                List<Tag> tileEntities = getChildTag(schematic, "BlockEntities", JNBTListTag.class).getValue();
-                for (Tag tag : tileEntities) {
-                    if (!(tag instanceof CompoundTag)) {
-                        continue;
-                    }
-                    CompoundTag t = (CompoundTag) tag;
-                    int[] pos = getChildTag(t.getValue(), "Pos", IntArrayTag.class).getValue();
-                    int x = pos[0];
-                    int y = pos[1];
-                    int z = pos[2];
-                    BlockVector vec = new BlockVector(x, y, z);
-                    tileEntitiesMap.put(vec, t.getValue());
+        }
+
+        /**
+         * Sets up the block set's storage and palette mapping, if the size and palette are known. Returns whether blocks can be read now.
+         */
+        public boolean prepareBlocks() {
+            if (paletteIds != null) {
+                return true;
+            }
+            if (width < 0 || length < 0 || height < 0 || palette == null) {
+                return false;
+            }
+            cbs.x_width = width;
+            cbs.z_height = length;
+            cbs.y_length = height;
+            cbs.initBlocks(width * length * height);
+            int maxId = 0;
+            for (int id : palette.keySet()) {
+                maxId = Math.max(maxId, id);
+            }
+            paletteIds = new int[maxId + 1];
+            Arrays.fill(paletteIds, -1);
+            for (Map.Entry<Integer, BlockData> entry : palette.entrySet()) {
+                if (entry.getKey() >= 0) {
+                    paletteIds[entry.getKey()] = cbs.paletteIdFor(entry.getValue());
                 }
             }
-            byte[] blocks = getChildTag(schematic, "BlockData", ByteArrayTag.class).getValue();
-            int i = 0;
+            return true;
+        }
+
+        /**
+         * Decodes the varint-packed block data, a buffer at a time.
+         */
+        public void readBlockData(DataInput input, int byteLength) throws Exception {
+            byte[] buffer = new byte[Math.max(1, Math.min(byteLength, 8192))];
+            int remaining = byteLength;
             int index = 0;
-            while (i < blocks.length) {
-                int value = 0;
-                int varintLength = 0;
-                while (true) {
-                    value |= (blocks[i] & 127) << (varintLength++ * 7);
+            int value = 0;
+            int varintLength = 0;
+            int layerSize = width * length;
+            int total = layerSize * height;
+            while (remaining > 0) {
+                int count = Math.min(remaining, buffer.length);
+                input.readFully(buffer, 0, count);
+                remaining -= count;
+                for (int i = 0; i < count; i++) {
+                    value |= (buffer[i] & 127) << (varintLength++ * 7);
                     if (varintLength > 5) {
                         throw new Exception("Schem file blocks tag data corrupted");
                     }
-                    if ((blocks[i] & 128) != 128) {
-                        i++;
-                        break;
+                    if ((buffer[i] & 128) == 128) {
+                        continue;
+                    }
+                    if (index >= total) {
+                        throw new Exception("Schem file blocks tag data is longer than the schematic size");
+                    }
+                    if (value < 0 || value >= paletteIds.length || paletteIds[value] == -1) {
+                        throw new Exception("Schem file blocks tag data references unknown palette ID " + value);
                     }
-                    i++;
+                    int y = index / layerSize;
+                    int z = (index % layerSize) / width;
+                    int x = (index % layerSize) % width;
+                    cbs.blockIndices[cbs.getIndex(x, y, z)] = (short) paletteIds[value];
+                    index++;
+                    value = 0;
+                    varintLength = 0;
                 }
-                FullBlockData block = new FullBlockData(palette.get(value));
-                int y = index / (width * length);
-                int z = (index % (width * length)) / width;
-                int x = (index % (width * length)) % width;
-                int cbsIndex = z + y * cbs.z_height + x * cbs.z_height * cbs.y_length;
-                BlockVector pt = new BlockVector(x, y, z);
-                if (tileEntitiesMap.containsKey(pt)) {
-                    CompoundTag otag = NMSHandler.getInstance().createCompoundTag(tileEntitiesMap.get(pt));
-                    block.tileEntityData = otag;
+            }
+            if (varintLength != 0) {
+                throw new Exception("Schem file blocks tag data ends partway through a block");
+            }
+            if (index != total) {
+                throw new Exception("Schem file blocks tag data has " + index + " blocks, but the schematic size needs " + total);
+            }
+        }
+
+        public void finish() throws Exception {
+            if (width < 0) {
+                throw new Exception("Schem file is missing a 'Width' tag");
+            }
+            if (length < 0) {
+                throw new Exception("Schem file is missing a 'Length' tag");
+            }
+            if (height < 0) {
+                throw new Exception("Schem file is missing a 'Height' tag");
+            }
+            if (palette == null) {
+                throw new Exception("Schem file is missing a 'Palette' tag");
+            }
+            if (!hasBlockData) {
+                throw new Exception("Schem file is missing a 'BlockData' tag");
+            }
+            prepareBlocks();
+            if (pendingBlockData != null) {
+                readBlockData(new DataInputStream(new ByteArrayInputStream(pendingBlockData)), pendingBlockData.length);
+                pendingBlockData = null;
+            }
+            for (CompoundTag tileEntity : pendingTileEntities) {
+                Tag posTag = tileEntity.getValue().get("Pos");
+                if (!(posTag instanceof IntArrayTag)) {
+                    throw new Exception("Schem file is missing a 'Pos' tag");
                 }
-                cbs.blocks[cbsIndex] = block;
-                index++;
+                int[] pos = ((IntArrayTag) posTag).getValue();
+                // Out-of-bounds positions would land on the wrong block, or break rotating and flipping later
+                if (pos.length < 3 || pos[0] < 0 || pos[0] >= width || pos[1] < 0 || pos[1] >= height || pos[2] < 0 || pos[2] >= length) {
+                    Debug.echoError("Schem file has a tile entity at invalid position " + Arrays.toString(pos) + ", ignoring it");
+                    continue;
+                }
+                cbs.tileEntities.put(cbs.getIndex(pos[0], pos[1], pos[2]), tileEntity);
             }
-            if (schematic.containsKey("DenizenFlags")) {
-                Map<String, Tag> flags = getChildTag(schematic, "DenizenFlags", CompoundTag.class).getValue();
-                for (Map.Entry<String, Tag> flagData : flags.entrySet()) {
+            if (pendingFlags != null) {
+                int total = width * length * height;
+                for (Map.Entry<String, Tag> flagData : pendingFlags.entrySet()) {
                     int flagIndex = Integer.valueOf(flagData.getKey());
-                    cbs.blocks[flagIndex].flags = MapTag.valueOf(((StringTag) flagData.getValue()).getValue(), CoreUtilities.noDebugContext);
+                    if (flagIndex < 0 || flagIndex >= total) {
+                        Debug.echoError("Schem file has flags for invalid block index " + flagIndex + ", ignoring them");
+                        continue;
+                    }
+                    cbs.flags.put(flagIndex, MapTag.valueOf(((StringTag) flagData.getValue()).getValue(), CoreUtilities.noDebugContext));
                 }
             }
         }
+    }
+
+    private static Tag readExpected(NBTInputStream stream, int type, int expected, String key) throws Exception {
+        checkType(type, expected, key);
+        return stream.readTagPayload(type);
+    }
+
+    private static void checkType(int type, int expected, String key) throws Exception {
+        if (type != expected) {
+            throw new Exception(key + " tag is not of tag type " + NBTUtils.getTypeClass(expected).getName());
+        }
+    }
+
+    // Referenced from WorldEdit source and Sponge schematic format v2 documentation
+    // Some values are custom and specific to Denizen
+    public static CuboidBlockSet fromSpongeStream(InputStream is) {
+        CuboidBlockSet cbs = new CuboidBlockSet();
+        try (NBTInputStream nbtStream = new NBTInputStream(new BufferedInputStream(new GZIPInputStream(is)))) {
+            if (nbtStream.readTagType() != NBTConstants.TYPE_COMPOUND || !nbtStream.readTagName().equals("Schematic")) {
+                throw new Exception("Tag 'Schematic' does not exist or is not first!");
+            }
+            SpongeReader reader = new SpongeReader(cbs);
+            int type;
+            while ((type = nbtStream.readTagType()) != NBTConstants.TYPE_END) {
+                reader.readEntry(nbtStream, type, nbtStream.readTagName());
+            }
+            reader.finish();
+        }
         catch (Exception e) {
             Debug.echoError(e);
         }
         return cbs;
     }
 
-    private static <T extends Tag> T getChildTag(Map<String, Tag> items, String key, Class<T> expected) throws Exception {
-        if (!items.containsKey(key)) {
-            throw new Exception("Schem file is missing a '" + key + "' tag");
-        }
-        Tag tag = items.get(key);
-        if (!expected.isInstance(tag)) {
-            throw new Exception(key + " tag is not of tag type " + expected.getName());
+    public static int getVarIntSize(int value) {
+        int size = 1;
+        while ((value & -128) != 0) {
+            size++;
+            value >>>= 7;
         }
-        return expected.cast(tag);
+        return size;
     }
 
     public static void saveToSpongeStream(CuboidBlockSet blockSet, OutputStream os) {
         try {
-            HashMap<String, Tag> schematic = new HashMap<>();
-            schematic.put("Width", new ShortTag((short) (blockSet.x_width)));
-            schematic.put("Length", new ShortTag((short) (blockSet.z_height)));
-            schematic.put("Height", new ShortTag((short) (blockSet.y_length)));
-            schematic.put("DenizenOffset", new IntArrayTag(new int[] {blockSet.center_x, blockSet.center_y, blockSet.center_z}));
+            NBTOutputStream stream = new NBTOutputStream(new BufferedOutputStream(new GZIPOutputStream(os)));
+            stream.writeTagHeader(NBTConstants.TYPE_COMPOUND, "Schematic");
+            stream.writeNamedTag("Width", new ShortTag((short) (blockSet.x_width)));
+            stream.writeNamedTag("Length", new ShortTag((short) (blockSet.z_height)));
+            stream.writeNamedTag("Height", new ShortTag((short) (blockSet.y_length)));
+            stream.writeNamedTag("DenizenOffset", new IntArrayTag(new int[] {blockSet.center_x, blockSet.center_y, blockSet.center_z}));
             if (blockSet.entities != null) {
-                schematic.put("DenizenEntities", new StringTag(blockSet.entities.toString()));
+                stream.writeNamedTag("DenizenEntities", new StringTag(blockSet.entities.toString()));
+            }
+            // Count each block type first, so the palette and the exact block data length are known before any block data is written
+            int[] counts = new int[blockSet.palette.size()];
+            for (short paletteId : blockSet.blockIndices) {
+                counts[paletteId & 0xFFFF]++;
             }
             Map<String, Tag> palette = new HashMap<>();
-            ByteArrayOutputStream blocksBuffer = new ByteArrayOutputStream((blockSet.x_width) * (blockSet.y_length) * (blockSet.z_height));
-            ArrayList<Tag> tileEntities = new ArrayList<>();
+            int[] schematicIds = new int[counts.length];
             int paletteMax = 0;
+            long dataLength = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                String dataStr = blockSet.palette.get(i).getAsString();
+                Tag blockIdTag = palette.get(dataStr);
+                if (blockIdTag == null) {
+                    blockIdTag = new IntTag(paletteMax++);
+                    palette.put(dataStr, blockIdTag);
+                }
+                schematicIds[i] = ((IntTag) blockIdTag).getValue();
+                dataLength += (long) counts[i] * getVarIntSize(schematicIds[i]);
+            }
+            if (dataLength > Integer.MAX_VALUE) {
+                throw new Exception("Schematic is too large to save");
+            }
+            stream.writeNamedTag("PaletteMax", new IntTag(paletteMax));
+            stream.writeNamedTag("Palette", NMSHandler.getInstance().createCompoundTag(palette));
+            stream.writeTagHeader(NBTConstants.TYPE_BYTE_ARRAY, "BlockData");
+            DataOutputStream output = stream.getDataOutput();
+            output.writeInt((int) dataLength);
+            byte[] buffer = new byte[8192];
+            int bufferPos = 0;
             for (int y = 0; y < blockSet.y_length; y++) {
                 for (int z = 0; z < blockSet.z_height; z++) {
                     for (int x = 0; x < blockSet.x_width; x++) {
-                        int cbsIndex = z + y * blockSet.z_height + x * blockSet.z_height * blockSet.y_length;
-                        FullBlockData bd = blockSet.blocks[cbsIndex];
-                        String dataStr = bd.data.getAsString();
-                        Tag blockIdTag = palette.get(dataStr);
-                        if (blockIdTag == null) {
-                            blockIdTag = new IntTag(paletteMax++);
-                            palette.put(dataStr, blockIdTag);
+                        if (bufferPos > buffer.length - 5) {
+                            output.write(buffer, 0, bufferPos);
+                            bufferPos = 0;
                         }
-                        int blockId = ((IntTag) blockIdTag).getValue();
+                        int blockId = schematicIds[blockSet.blockIndices[blockSet.getIndex(x, y, z)] & 0xFFFF];
                         while ((blockId & -128) != 0) {
-                            blocksBuffer.write(blockId & 127 | 128);
+                            buffer[bufferPos++] = (byte) (blockId & 127 | 128);
                             blockId >>>= 7;
                         }
-                        blocksBuffer.write(blockId);
-                        CompoundTag rawTag = bd.tileEntityData;
-                        if (rawTag != null) {
-                            HashMap<String, Tag> values = new HashMap<>();
-                            for (Map.Entry<String, Tag> entry : rawTag.getValue().entrySet()) {
-                                values.put(entry.getKey(), entry.getValue());
-                            }
-                            values.put("Pos", new IntArrayTag(new int[] { x, y, z }));
-                            CompoundTag tileEntityTag = NMSHandler.getInstance().createCompoundTag(values);
-                            tileEntities.add(tileEntityTag);
-                        }
+                        buffer[bufferPos++] = (byte) blockId;
                     }
                 }
             }
-            schematic.put("PaletteMax", new IntTag(paletteMax));
-            schematic.put("Palette", NMSHandler.getInstance().createCompoundTag(palette));
-            schematic.put("BlockData", new ByteArrayTag(blocksBuffer.toByteArray()));
-            schematic.put("BlockEntities", new JNBTListTag(CompoundTag.class, tileEntities));
+            output.write(buffer, 0, bufferPos);
+            ArrayList<Tag> tileEntities = new ArrayList<>(blockSet.tileEntities.size());
+            for (Map.Entry<Integer, CompoundTag> tileEntity : blockSet.tileEntities.entrySet()) {
+                int cbsIndex = tileEntity.getKey();
+                int z = cbsIndex % blockSet.z_height;
+                int y = (cbsIndex / blockSet.z_height) % blockSet.y_length;
+                int x = cbsIndex / (blockSet.z_height * blockSet.y_length);
+                HashMap<String, Tag> values = new HashMap<>(tileEntity.getValue().getValue());
+                values.put("Pos", new IntArrayTag(new int[] { x, y, z }));
+                tileEntities.add(NMSHandler.getInstance().createCompoundTag(values));
+            }
+            stream.writeNamedTag("BlockEntities", new JNBTListTag(CompoundTag.class, tileEntities));
             if (blockSet.hasFlags) {
                 Map<String, Tag> flagMap = new HashMap<>();
-                for (int i = 0; i < blockSet.blocks.length; i++) {
-                    if (blockSet.blocks[i].flags != null) {
-                        flagMap.put(String.valueOf(i), new StringTag(blockSet.blocks[i].flags.toString()));
-                    }
+                for (Map.Entry<Integer, MapTag> flags : blockSet.flags.entrySet()) {
+                    flagMap.put(String.valueOf(flags.getKey()), new StringTag(flags.getValue().toString()));
                 }
                 if (!flagMap.isEmpty()) {
-                    schematic.put("DenizenFlags", NMSHandler.getInstance().createCompoundTag(flagMap));
+                    stream.writeNamedTag("DenizenFlags", NMSHandler.getInstance().createCompoundTag(flagMap));
                 }
             }
-            CompoundTag schematicTag = NMSHandler.getInstance().createCompoundTag(schematic);
-            NBTOutputStream stream = new NBTOutputStream(new GZIPOutputStream(os));
-            stream.writeNamedTag("Schematic", schematicTag);
-            os.flush();
+            stream.writeEndTag();
             stream.close();
         }
         catch (Exception ex) {
@@ -2,20 +2,38 @@ package com.denizenscript.denizen.utilities.command;
 
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
+import com.denizenscript.denizen.utilities.FormattedTextHelper;
+import com.denizenscript.denizen.utilities.SavePipeline;
+import com.denizenscript.denizen.utilities.blocks.FakeBlockRewriteCache;
 import com.denizenscript.denizen.utilities.command.manager.Command;
 import com.denizenscript.denizen.utilities.command.manager.CommandContext;
 import com.denizenscript.denizen.utilities.command.manager.Paginator;
 import com.denizenscript.denizen.utilities.command.manager.exceptions.CommandException;
 import com.denizenscript.denizen.utilities.command.manager.messaging.Messaging;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.debugging.DebugOutputBuffer;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
+import com.denizenscript.denizen.utilities.flags.FlagFileHelper;
+import com.denizenscript.denizen.utilities.flags.ItemFlagCache;
+import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
+import com.denizenscript.denizen.utilities.flags.WorldFlagHandler;
+import com.denizenscript.denizen.utilities.inventory.InventoryContentIndex;
+import com.denizenscript.denizen.utilities.inventory.OfflineInventoryRegistry;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptHelper;
+import com.denizenscript.denizen.utilities.packets.PacketDispatchTable;
 import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.scripts.ScriptHelper;
 import com.denizenscript.denizencore.scripts.ScriptRegistry;
 import com.denizenscript.denizencore.scripts.containers.ScriptContainer;
 import com.denizenscript.denizencore.utilities.debugging.FutureWarning;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 public class DenizenCommandHandler {
@@ -166,7 +184,9 @@ public class DenizenCommandHandler {
                 Debug.toggle();
             }
             Debug.record = !Debug.record;
-            Debug.recording = new StringBuilder();
+            synchronized (Debug.recordingLock) {
+                Debug.recording = new StringBuilder();
+            }
             Messaging.sendInfo(sender, (Debug.record ? "Denizen debugger is now recording. Use /denizen " +
                     "submit to finish." : "Denizen debugger recording disabled."));
         }
@@ -265,6 +285,89 @@ public class DenizenCommandHandler {
         Messaging.send(sender, "Denizen save data saved to disk from memory.");
     }
 
+    /*
+     * DENIZEN METRICS
+     */
+    @Command(
+            aliases = {"denizen"}, usage = "metrics",
+            desc = "Shows performance metrics for Denizen's internal systems.", modifiers = {"metrics"},
+            min = 1, max = 3, permission = "denizen.basic")
+    public void metrics(CommandContext args, CommandSender sender) throws CommandException {
+        Messaging.sendInfo(sender, "<2>DENIZEN<7>: save pipeline metrics");
+        synchronized (SavePipeline.metrics) {
+            for (SavePipeline.StoreMetrics store : SavePipeline.metrics.values()) {
+                String lastSave = store.lastSaveTimeMillis == 0 ? "never" : ((System.currentTimeMillis() - store.lastSaveTimeMillis) / 1000) + "s ago";
+                Messaging.send(sender, "<7>" + store.name + "<f>: " + store.saves + " saves, " + store.skipped + " skipped, last snapshot "
+                        + (store.lastSnapshotNanos / 1000) + "us, last write " + (store.lastWriteNanos / 1000) + "us, last saved " + lastSave);
+            }
+        }
+        Messaging.send(sender, "<7>player flag loads<f>: " + PlayerFlagHandler.mainThreadStalls + " main thread stalls, "
+                + (PlayerFlagHandler.mainThreadStallNanos / 1000000) + "ms total stall time, " + PlayerFlagHandler.mainThreadBudgetOverruns + " over budget");
+        Messaging.send(sender, "<7>player flag cache<f>: " + PlayerFlagHandler.getCacheSize() + " entries, "
+                + (PlayerFlagHandler.getResidentBytes() / 1024) + "KB resident, " + PlayerFlagHandler.cacheHits + " hits, " + PlayerFlagHandler.cacheMisses + " misses, "
+                + PlayerFlagHandler.cacheLoads + " loads, " + PlayerFlagHandler.cacheEvictions + " evictions");
+        long textLoads = FlagFileHelper.textLoads.sum(), binaryLoads = FlagFileHelper.binaryLoads.sum();
+        Messaging.send(sender, "<7>flag file loads<f>: " + textLoads + " text (" + (FlagFileHelper.textLoadNanos.sum() / Math.max(1, textLoads) / 1000) + "us avg), "
+                + binaryLoads + " binary (" + (FlagFileHelper.binaryLoadNanos.sum() / Math.max(1, binaryLoads) / 1000) + "us avg)");
+        Messaging.send(sender, "<7>offline player data cache<f>: " + OfflinePlayerDataCache.size() + " entries, " + OfflinePlayerDataCache.cacheHits + " hits, "
+                + OfflinePlayerDataCache.cacheMisses + " misses, " + OfflinePlayerDataCache.cacheEvictions + " evictions, " + OfflinePlayerDataCache.mainThreadStalls + " main thread stalls ("
+                + (OfflinePlayerDataCache.mainThreadStallNanos / 1000000) + "ms total), " + ImprovedOfflinePlayer.writes + " writes, " + ImprovedOfflinePlayer.coalescedChanges + " coalesced changes");
+        Messaging.send(sender, "<7>offline player inventories<f>: " + OfflineInventoryRegistry.inventories.size() + " inventories, "
+                + OfflineInventoryRegistry.enderChests.size() + " ender chests loaded, " + OfflineInventoryRegistry.evictions + " evictions");
+        Messaging.send(sender, "<7>inventory content summaries<f>: " + InventoryContentIndex.hits + " hits, " + InventoryContentIndex.misses + " misses");
+        Messaging.send(sender, "<7>item flag cache<f>: " + ItemFlagCache.parsedFlags.size() + " entries, " + ItemFlagCache.parsedFlags.hits + " hits, " + ItemFlagCache.parsedFlags.misses + " misses");
+        Messaging.send(sender, "<7>formatted text cache<f>: " + FormattedTextHelper.getParseCacheSize() + " entries, " + FormattedTextHelper.parseCacheHits + " hits, " + FormattedTextHelper.parseCacheMisses + " misses");
+        Messaging.send(sender, "<7>fake block chunk rewrites<f>: " + FakeBlockRewriteCache.size() + " cached, " + FakeBlockRewriteCache.hits + " hits ("
+                + (FakeBlockRewriteCache.hitNanos / Math.max(1, FakeBlockRewriteCache.hits) / 1000) + "us avg), " + FakeBlockRewriteCache.misses + " rewrites ("
+                + (FakeBlockRewriteCache.rewriteNanos / Math.max(1, FakeBlockRewriteCache.misses) / 1000) + "us avg)");
+        DebugOutputBuffer debugBuffer = DebugOutputBuffer.instance;
+        Messaging.send(sender, "<7>debug output<f>: " + (debugBuffer == null ? "sent directly" : (debugBuffer.writeIndex.get() - debugBuffer.readIndex) + " pending of "
+                + debugBuffer.capacity + " buffer size") + ", " + DebugOutputBuffer.droppedLines + " lines dropped");
+        PacketDispatchTable<?, ?, ?> packetHandlers = PacketDispatchTable.instance;
+        if (packetHandlers != null) {
+            Messaging.send(sender, "<7>packet handlers<f>:" + (NMSHandler.debugPackets ? "" : " (time is only tracked while packet debug is enabled via '/denizen debug -p')"));
+            for (PacketDispatchTable.Handler<?, ?, ?> handler : packetHandlers.handlers) {
+                Messaging.send(sender, "<7>  " + handler.name + "<f>: " + handler.calls.sum() + " calls, " + handler.consumed.sum() + " consumed, "
+                        + (handler.nanos.sum() / 1000) + "us total");
+            }
+        }
+    }
+
+    /*
+     * DENIZEN MIGRATEFLAGS
+     */
+    @Command(
+            aliases = {"denizen"}, usage = "migrateflags [binary|text]",
+            desc = "Rewrites all server, world, and player flag files into the specified format.", modifiers = {"migrateflags"},
+            min = 1, max = 3, permission = "denizen.basic")
+    public void migrateflags(CommandContext args, CommandSender sender) throws CommandException {
+        if (args.length() <= 2 || !(args.getString(1).equalsIgnoreCase("binary") || args.getString(1).equalsIgnoreCase("text"))) {
+            Messaging.sendError(sender, "Must specify a format: /denizen migrateflags [binary|text]");
+            return;
+        }
+        FlagFileHelper.useBinaryFormat = args.getString(1).equalsIgnoreCase("binary");
+        denizen.saveSaves(true);
+        List<String> paths = new ArrayList<>();
+        paths.add(new File(denizen.getDataFolder(), "server_flags").getPath());
+        for (World world : Bukkit.getWorlds()) {
+            paths.add(WorldFlagHandler.flagPathFor(world.getName()));
+        }
+        File[] playerFiles = PlayerFlagHandler.dataFolder.listFiles((dir, name) -> name.endsWith(".dat"));
+        if (playerFiles != null) {
+            for (File file : playerFiles) {
+                paths.add(file.getPath().substring(0, file.getPath().length() - ".dat".length()));
+            }
+        }
+        Messaging.send(sender, "Migrating up to " + paths.size() + " flag files in the background...");
+        SavePipeline.execute(() -> {
+            int count = FlagFileHelper.migrate(paths);
+            Bukkit.getScheduler().runTask(denizen, () -> {
+                Messaging.send(sender, "Migrated " + count + " flag files to " + (FlagFileHelper.useBinaryFormat ? "binary" : "text")
+                        + " format. Set 'Saves.Binary flag format' in the config to match, to keep this format after a restart.");
+            });
+        });
+    }
+
     /*
      * DENIZEN RELOAD
      */
@@ -36,9 +36,14 @@ public class Debug {
     public static boolean showSources = false;
 
     public static boolean shouldTrim = true;
-    public static boolean record = false;
+    public static volatile boolean record = false;
     public static StringBuilder recording = new StringBuilder();
 
+    /**
+     * Held while appending to or replacing 'recording', as lines may be recorded from the debug output thread.
+     */
+    public static final Object recordingLock = new Object();
+
     public static void toggle() {
         showDebug = !showDebug;
     }
@@ -486,20 +491,44 @@ public class Debug {
         outputThisTick++;
         if (outputThisTick >= Settings.debugLimitPerTick()) {
             if (outputThisTick == Settings.debugLimitPerTick()) {
-                ConsoleSender.sendMessage("... Debug rate limit per-tick hit, edit config.yml to adjust this limit...", true);
+                String notice = "... Debug rate limit per-tick hit, edit config.yml to adjust this limit...";
+                DebugOutputBuffer buffer = DebugOutputBuffer.instance;
+                if (buffer != null && !DenizenCore.logInterceptor.redirected) {
+                    buffer.add(notice, true);
+                }
+                else {
+                    outputToConsole(notice, true, System.currentTimeMillis(), true);
+                }
+            }
+            return;
+        }
+        Consumer<String> additional = getDebugSender(caller);
+        DebugOutputBuffer buffer = DebugOutputBuffer.instance;
+        // Console output redirected to scripts has to fire a script event, so can't be moved off-thread
+        if (buffer != null && !DenizenCore.logInterceptor.redirected) {
+            buffer.add(message, reformat);
+            if (additional != null) {
+                additional.accept(cleanTextForDebugOutput(message));
             }
             return;
         }
         // These colors are used a lot in the debugging of commands/etc, so having a few shortcuts is nicer
         // than having a bunch of ChatColor.XXXX
         message = cleanTextForDebugOutput(message);
-        ConsoleSender.sendMessage(message, reformat);
-        Consumer<String> additional = getDebugSender(caller);
+        outputToConsole(message, reformat, System.currentTimeMillis(), true);
         if (additional != null) {
             additional.accept(message);
         }
     }
 
+    /**
+     * Sends a (cleaned) debug line to the console and the debug recording, if any.
+     * If 'allowEvents' is false, the line can't be cancelled by a script, as happens for lines output from the debug output thread.
+     */
+    static void outputToConsole(String message, boolean reformat, long time, boolean allowEvents) {
+        ConsoleSender.sendMessage(message, reformat, time, allowEvents);
+    }
+
     private static class ConsoleSender {
 
         // Bukkit CommandSender sends color nicely to the logger, so we'll use that.
@@ -507,7 +536,7 @@ public class Debug {
         public static SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
         static boolean skipFooter = false;
 
-        public static void sendMessage(String string, boolean reformat) {
+        public static synchronized void sendMessage(String string, boolean reformat, long time, boolean allowEvents) {
             if (commandSender == null) {
                 commandSender = Bukkit.getServer().getConsoleSender();
             }
@@ -554,11 +583,14 @@ public class Debug {
 
             // Record current buffer to the to-be-submitted buffer
             if (Debug.record) {
-                Debug.recording.append(URLEncoder.encode(dateFormat.format(new Date())
-                        + " [INFO] " + string.replace(ChatColor.COLOR_CHAR, (char) 0x01) + "\n"));
+                String recorded = URLEncoder.encode(dateFormat.format(new Date(time))
+                        + " [INFO] " + string.replace(ChatColor.COLOR_CHAR, (char) 0x01) + "\n");
+                synchronized (Debug.recordingLock) {
+                    Debug.recording.append(recorded);
+                }
             }
             string = Settings.debugPrefix() + string;
-            if (DenizenCore.logInterceptor.redirected) {
+            if (allowEvents && DenizenCore.logInterceptor.redirected) {
                 if (!DenizenCore.logInterceptor.antiLoop) {
                     DenizenCore.logInterceptor.antiLoop = true;
                     try {
@@ -575,7 +607,7 @@ public class Debug {
                 }
             }
             if (showColor) {
-                commandSender.spigot().sendMessage(FormattedTextHelper.parse(string, net.md_5.bungee.api.ChatColor.WHITE));
+                commandSender.spigot().sendMessage(FormattedTextHelper.parseShared(string, net.md_5.bungee.api.ChatColor.WHITE));
             }
             else {
                 commandSender.sendMessage(ChatColor.stripColor(string));
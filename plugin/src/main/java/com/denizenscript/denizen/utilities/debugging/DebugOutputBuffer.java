@@ -0,0 +1,204 @@
+package com.denizenscript.denizen.utilities.debugging;
+
+import com.denizenscript.denizen.Denizen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Hands console debug output off to a dedicated thread, so that cleaning, word-wrapping, recording, and console formatting
+ * of debug lines doesn't run on the thread that generated them.
+ * Lines go through a fixed-size lock-free ring buffer: any thread can add lines, and only the output thread reads them.
+ * If the output thread falls far enough behind that the buffer wraps around, the oldest lines are dropped, and a note of how many were dropped is output in their place.
+ */
+public class DebugOutputBuffer {
+
+    public static class Line {
+
+        public final long sequence;
+
+        public final String message;
+
+        public final boolean reformat;
+
+        public final long time;
+
+        public Line(long sequence, String message, boolean reformat, long time) {
+            this.sequence = sequence;
+            this.message = message;
+            this.reformat = reformat;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The active buffer, or null if debug output is sent directly.
+     */
+    public static volatile DebugOutputBuffer instance;
+
+    /**
+     * Total lines dropped because the buffer was full, across all buffers.
+     */
+    public static volatile long droppedLines = 0;
+
+    public static synchronized void configure(boolean enabled, int size) {
+        DebugOutputBuffer current = instance;
+        if (!enabled) {
+            instance = null;
+            if (current != null) {
+                current.stop();
+            }
+            return;
+        }
+        int capacity = 64;
+        while (capacity < size && capacity < (1 << 24)) {
+            capacity <<= 1;
+        }
+        if (current != null && current.capacity == capacity) {
+            return;
+        }
+        DebugOutputBuffer buffer = new DebugOutputBuffer(capacity);
+        buffer.start();
+        instance = buffer;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    /**
+     * Outputs all pending lines (on the output thread) and stops it.
+     */
+    public static void shutdown() {
+        configure(false, 0);
+    }
+
+    /**
+     * Waits (up to the timeout) for all lines added so far to be output.
+     */
+    public static void flushInstance(long timeoutMillis) {
+        DebugOutputBuffer buffer = instance;
+        if (buffer != null) {
+            buffer.flush(timeoutMillis);
+        }
+    }
+
+    public final int capacity, mask;
+
+    public final AtomicReferenceArray<Line> lines;
+
+    public final AtomicLong writeIndex = new AtomicLong();
+
+    /**
+     * The sequence number of the next line to output. Only changed by the output thread.
+     */
+    public volatile long readIndex = 0;
+
+    /**
+     * Lines dropped since the last line was output. Only used by the output thread.
+     */
+    public long pendingDropped = 0;
+
+    public volatile boolean running = false;
+
+    public Thread thread;
+
+    public DebugOutputBuffer(int capacity) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.lines = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void add(String message, boolean reformat) {
+        long sequence = writeIndex.getAndIncrement();
+        lines.set((int) (sequence & mask), new Line(sequence, message, reformat, System.currentTimeMillis()));
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "Denizen Debug Output");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(10 * 1000);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void flush(long timeoutMillis) {
+        long target = writeIndex.get();
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (readIndex < target && running && System.currentTimeMillis() < end) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(1000000);
+        }
+    }
+
+    public void run() {
+        while (true) {
+            boolean wasRunning = running;
+            if (!outputPending() && !wasRunning) {
+                return;
+            }
+            LockSupport.parkNanos(2000000);
+        }
+    }
+
+    /**
+     * Outputs all lines that are ready. Returns true if there were any lines waiting (including any not yet fully added).
+     */
+    public boolean outputPending() {
+        long read = readIndex;
+        while (true) {
+            long write = writeIndex.get();
+            if (read >= write) {
+                return false;
+            }
+            if (write - read > capacity) {
+                drop(write - capacity - read);
+                read = write - capacity;
+                readIndex = read;
+            }
+            int slot = (int) (read & mask);
+            Line line = lines.get(slot);
+            if (line == null || line.sequence < read) {
+                // Claimed by a thread that hasn't finished adding it yet
+                return true;
+            }
+            if (line.sequence > read) {
+                // Overwritten after the capacity check above
+                drop(1);
+                read++;
+                readIndex = read;
+                continue;
+            }
+            lines.compareAndSet(slot, line, null);
+            try {
+                if (pendingDropped > 0) {
+                    Debug.outputToConsole("... " + pendingDropped + " debug lines dropped (debug output fell behind) ...", true, line.time, false);
+                    pendingDropped = 0;
+                }
+                Debug.outputToConsole(Debug.cleanTextForDebugOutput(line.message), line.reformat, line.time, false);
+            }
+            catch (Throwable ex) {
+                // Not echoError, as that would feed the error back into this buffer
+                Denizen.getInstance().getLogger().log(Level.SEVERE, "Failed to output a debug line", ex);
+            }
+            read++;
+            readIndex = read;
+        }
+    }
+
+    private void drop(long count) {
+        pendingDropped += count;
+        droppedLines += count;
+    }
+}
@@ -0,0 +1,157 @@
+package com.denizenscript.denizen.utilities.entity;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.objects.AreaContainmentObject;
+import com.denizenscript.denizen.objects.CuboidTag;
+import com.denizenscript.denizen.objects.EntityTag;
+import com.denizenscript.denizen.objects.NPCTag;
+import com.denizenscript.denizen.utilities.Utilities;
+import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.npc.NPC;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.util.BoundingBox;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Finds entities near a location or within an area, looking only at the chunks that overlap the query bounds
+ * (via the server's bounded entity lookup, which Paper further optimizes), rather than every entity in the world.
+ * Boxes that span more chunks than the world has loaded instead check every entity in the world, as that's then the smaller set.
+ */
+public class NearbyEntityHelper {
+
+    /**
+     * Boxes spanning fewer chunks than this always use the bounded lookup, without checking how many chunks the world has loaded.
+     */
+    public static int MIN_CHUNKS_FOR_FALLBACK = 256;
+
+    public static class Candidate {
+
+        public final Entity entity;
+
+        public final double distanceSquared;
+
+        public Candidate(Entity entity, double distanceSquared) {
+            this.entity = entity;
+            this.distanceSquared = distanceSquared;
+        }
+    }
+
+    /**
+     * Returns all entities whose bounding box intersects the box (expanded by a block on each side), matching the filter.
+     * The filter runs before Bukkit wraps the results into a list, so should be a cheap check (eg an instanceof check), or null for all entities.
+     */
+    public static Collection<Entity> getEntitiesInBox(World world, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, Predicate<Entity> filter) {
+        BoundingBox box = new BoundingBox(minX - 1, minY - 1, minZ - 1, maxX + 1, maxY + 1, maxZ + 1);
+        long boxChunks = (long) ((((int) Math.floor(box.getMaxX())) >> 4) - (((int) Math.floor(box.getMinX())) >> 4) + 1)
+                * ((((int) Math.floor(box.getMaxZ())) >> 4) - (((int) Math.floor(box.getMinZ())) >> 4) + 1);
+        NMSHandler.getChunkHelper().changeChunkServerThread(world);
+        try {
+            if (boxChunks >= MIN_CHUNKS_FOR_FALLBACK && boxChunks > world.getLoadedChunks().length) {
+                List<Entity> result = new ArrayList<>();
+                for (Entity entity : world.getEntities()) {
+                    if (entity.getBoundingBox().overlaps(box) && (filter == null || filter.test(entity))) {
+                        result.add(entity);
+                    }
+                }
+                return result;
+            }
+            return world.getNearbyEntities(box, filter);
+        }
+        finally {
+            NMSHandler.getChunkHelper().restoreServerThread(world);
+        }
+    }
+
+    /**
+     * Returns all entities whose location is inside the area, matching the filter.
+     * The filter is only checked for entities inside the area, so can be an expensive check (eg a script matcher), or null for all entities.
+     */
+    public static List<Entity> getEntitiesInArea(AreaContainmentObject area, Predicate<Entity> filter) {
+        CuboidTag boundary = area.getCuboidBoundary();
+        // Cuboids with multiple pairs can overlap themselves, so need de-duplicating
+        Collection<Entity> result = boundary.pairs.size() > 1 ? new LinkedHashSet<>() : new ArrayList<>();
+        for (CuboidTag.LocationPair pair : boundary.pairs) {
+            World world = pair.low.getWorld();
+            if (world == null) {
+                continue;
+            }
+            for (Entity entity : getEntitiesInBox(world, pair.low.getX(), pair.low.getY(), pair.low.getZ(), pair.high.getX() + 1, pair.high.getY() + 1, pair.high.getZ() + 1, null)) {
+                if (area.doesContainLocation(entity.getLocation()) && (filter == null || filter.test(entity))) {
+                    result.add(entity);
+                }
+            }
+        }
+        return result instanceof List ? (List<Entity>) result : new ArrayList<>(result);
+    }
+
+    /**
+     * Returns all NPCs inside the area. Spawned NPCs are found through the area's chunks, and only despawned NPCs are checked by their stored location.
+     */
+    public static List<NPCTag> getNPCsInArea(AreaContainmentObject area) {
+        List<NPCTag> npcs = new ArrayList<>();
+        for (Entity entity : getEntitiesInArea(area, EntityTag::isCitizensNPC)) {
+            npcs.add(NPCTag.fromEntity(entity));
+        }
+        for (NPC npc : CitizensAPI.getNPCRegistry()) {
+            if (!npc.isSpawned() && npc.getStoredLocation() != null && area.doesContainLocation(npc.getStoredLocation())) {
+                npcs.add(new NPCTag(npc));
+            }
+        }
+        return npcs;
+    }
+
+    /**
+     * Returns all entities whose bounding box is within the radius of the center, matching the filter, sorted by the distance of their location from the center (closest first).
+     * The filter is only checked for entities within range, so can be an expensive check (eg a script matcher), or null for all entities.
+     * If the limit is above 0, only that many of the closest matching entities are returned.
+     */
+    public static List<Entity> getEntitiesNear(Location center, double radius, Predicate<Entity> filter, int limit) {
+        Collection<Entity> entities = getEntitiesInBox(center.getWorld(), center.getX() - radius, center.getY() - radius, center.getZ() - radius,
+                center.getX() + radius, center.getY() + radius, center.getZ() + radius, null);
+        Comparator<Candidate> comparator = Comparator.comparingDouble(c -> c.distanceSquared);
+        Collection<Candidate> candidates;
+        if (limit > 0 && entities.size() > limit) {
+            // Keep only the closest 'limit' entities, with the farthest of those at the head to be replaced.
+            PriorityQueue<Candidate> nearest = new PriorityQueue<>(limit + 1, comparator.reversed());
+            for (Entity entity : entities) {
+                if (!Utilities.checkLocationWithBoundingBox(center, entity, radius)) {
+                    continue;
+                }
+                double distanceSquared = entity.getLocation().distanceSquared(center);
+                if (nearest.size() >= limit && distanceSquared >= nearest.peek().distanceSquared) {
+                    continue;
+                }
+                if (filter != null && !filter.test(entity)) {
+                    continue;
+                }
+                if (nearest.size() < limit) {
+                    nearest.add(new Candidate(entity, distanceSquared));
+                }
+                else {
+                    nearest.poll();
+                    nearest.add(new Candidate(entity, distanceSquared));
+                }
+            }
+            candidates = nearest;
+        }
+        else {
+            candidates = new ArrayList<>(entities.size());
+            for (Entity entity : entities) {
+                if (Utilities.checkLocationWithBoundingBox(center, entity, radius) && (filter == null || filter.test(entity))) {
+                    candidates.add(new Candidate(entity, entity.getLocation().distanceSquared(center)));
+                }
+            }
+        }
+        Candidate[] sorted = candidates.toArray(new Candidate[0]);
+        Arrays.sort(sorted, comparator);
+        List<Entity> result = new ArrayList<>(sorted.length);
+        for (Candidate candidate : sorted) {
+            result.add(candidate.entity);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,414 @@
+package com.denizenscript.denizen.utilities.entity;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
+import com.denizenscript.denizen.utilities.SavePipeline;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Caches loaded offline player data (the player's '.dat' file), so that repeated reads of the same offline player don't reload and decompress the file each time.
+ * Files are loaded on a background thread (or directly by the thread that needs them, if their load hasn't started yet), and changes are written behind on the save pipeline's I/O thread, with several changes in a row written only once.
+ * A player's entry is written out (if needed) and dropped when they log in, and dropped again when they join or quit, as the server owns their data while they're online.
+ */
+public class OfflinePlayerDataCache implements Listener {
+
+    public static long cacheTimeoutSeconds = 300;
+
+    public static int maxCacheEntries = 200;
+
+    /**
+     * How long (in ticks) to wait after a change before writing it, so that following changes are written together with it.
+     */
+    public static int writeDelayTicks = 20;
+
+    public static long loadTimeoutMillis = 15 * 1000;
+
+    /**
+     * How many players ahead to load in the background during batch operations (see 'forEachPrefetched').
+     */
+    public static int batchPrefetchWindow = 16;
+
+    public static long cacheHits = 0, cacheMisses = 0, cacheEvictions = 0;
+
+    /**
+     * Number of times the main thread had to wait on a load, and the total time spent waiting.
+     */
+    public static long mainThreadStalls = 0, mainThreadStallNanos = 0;
+
+    public static class CachedData {
+
+        public final ImprovedOfflinePlayer data;
+
+        public long lastAccessed;
+
+        /**
+         * Completes when the data has been loaded from disk.
+         */
+        public final CompletableFuture<ImprovedOfflinePlayer> loadFuture = new CompletableFuture<>();
+
+        /**
+         * Set by whichever thread runs the load, so that a load still waiting in the loader queue can be taken over by a thread that needs it now.
+         */
+        public final AtomicBoolean loadClaimed = new AtomicBoolean();
+
+        public CachedData(ImprovedOfflinePlayer data) {
+            this.data = data;
+        }
+
+        public boolean canEvict() {
+            return loadFuture.isDone() && !data.hasPendingWrite();
+        }
+    }
+
+    /**
+     * A list of offline players that scripts are likely to read through in order, with each player's position in it.
+     */
+    public static class ReadAheadList {
+
+        public final List<UUID> ids;
+
+        public final Map<UUID, Integer> positions;
+
+        /**
+         * The end (exclusive) of the range of the list that has been prefetched so far.
+         */
+        public int prefetchedUpTo = 0;
+
+        public ReadAheadList(List<UUID> ids) {
+            this.ids = ids;
+            this.positions = new HashMap<>(ids.size() * 2);
+            for (int i = 0; i < ids.size(); i++) {
+                positions.put(ids.get(i), i);
+            }
+        }
+    }
+
+    public static volatile ReadAheadList readAhead;
+
+    /**
+     * Records the list of offline players most recently handed to scripts (such as by 'server.offline_players').
+     * Reading a player from the list then also loads the next players in the list in the background,
+     * so that scripts reading data across the list (such as a leaderboard) don't wait on each player's file in turn.
+     */
+    public static void setReadAheadList(List<UUID> ids) {
+        readAhead = ids.isEmpty() ? null : new ReadAheadList(ids);
+    }
+
+    /**
+     * If the player is in the read-ahead list, makes sure the players following them are loading.
+     */
+    public static void readAheadFrom(UUID id) {
+        ReadAheadList list = readAhead;
+        if (list == null) {
+            return;
+        }
+        Integer position = list.positions.get(id);
+        if (position == null) {
+            return;
+        }
+        int window = Math.max(1, batchPrefetchWindow);
+        int start, end;
+        synchronized (list) {
+            // Top up once half the window has been read, rather than on every read
+            if (list.prefetchedUpTo > position + window / 2) {
+                return;
+            }
+            start = Math.max(list.prefetchedUpTo, position + 1);
+            end = Math.min(list.ids.size(), position + 1 + window);
+            list.prefetchedUpTo = end;
+        }
+        for (int i = start; i < end; i++) {
+            NMSHandler.getPlayerHelper().prefetchOfflineData(list.ids.get(i));
+        }
+    }
+
+    /**
+     * Access-ordered (least recently used first) cache of offline player data. Only accessed while synchronized on the map.
+     */
+    public static final LinkedHashMap<UUID, CachedData> cache = new LinkedHashMap<>(64, 0.75f, true);
+
+    private static ExecutorService loadExecutor;
+
+    public static synchronized ExecutorService getLoadExecutor() {
+        if (loadExecutor == null || loadExecutor.isShutdown()) {
+            loadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Denizen Offline Player Loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return loadExecutor;
+    }
+
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Runs the entry's load on the calling thread, unless another thread has already started it.
+     * Returns true if the load was run here.
+     */
+    public static boolean claimAndLoad(CachedData entry, List<File> files) {
+        if (!entry.loadClaimed.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            entry.data.load(files);
+        }
+        catch (Throwable ex) {
+            Debug.echoError(ex);
+        }
+        finally {
+            entry.loadFuture.complete(entry.data);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the cache entry for a player, creating an unloaded entry if it is not already cached.
+     * The boolean array is set to true when a new entry was created, in which case the caller is responsible for loading it.
+     */
+    public static CachedData getOrCreate(UUID id, Function<UUID, ImprovedOfflinePlayer> constructor, boolean[] created) {
+        synchronized (cache) {
+            CachedData entry = cache.get(id);
+            if (entry != null) {
+                cacheHits++;
+                entry.lastAccessed = System.currentTimeMillis();
+                return entry;
+            }
+            cacheMisses++;
+            entry = new CachedData(constructor.apply(id));
+            entry.lastAccessed = System.currentTimeMillis();
+            cache.put(id, entry);
+            created[0] = true;
+            return entry;
+        }
+    }
+
+    /**
+     * Gets the cache entry for a player, starting a background load if it is not already cached.
+     */
+    public static CachedData getOrStartLoad(UUID id, Function<UUID, ImprovedOfflinePlayer> constructor) {
+        boolean[] created = new boolean[1];
+        CachedData entry = getOrCreate(id, constructor, created);
+        if (created[0]) {
+            List<File> files = ImprovedOfflinePlayer.getPlayerDataFiles(id);
+            try {
+                getLoadExecutor().execute(() -> claimAndLoad(entry, files));
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+                claimAndLoad(entry, files);
+            }
+            enforceLimits();
+        }
+        return entry;
+    }
+
+    /**
+     * Starts loading a player's data in the background if it is not already cached, to avoid a later wait.
+     */
+    public static CompletableFuture<ImprovedOfflinePlayer> prefetch(UUID id, Function<UUID, ImprovedOfflinePlayer> constructor) {
+        return getOrStartLoad(id, constructor).loadFuture;
+    }
+
+    /**
+     * Calls the consumer for each player in order, loading the data of the next players in the list in the background while earlier ones are handled.
+     * For batch operations that read or write many offline players' data in a row.
+     */
+    public static void forEachPrefetched(List<UUID> ids, Consumer<UUID> consumer) {
+        int window = Math.max(1, batchPrefetchWindow);
+        int prefetched = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            while (prefetched < ids.size() && prefetched < i + window) {
+                NMSHandler.getPlayerHelper().prefetchOfflineData(ids.get(prefetched++));
+            }
+            consumer.accept(ids.get(i));
+        }
+    }
+
+    /**
+     * Returns the (shared) data for an offline player, loading it if needed.
+     * A load that hasn't started yet (including a cache miss) is run on the calling thread, rather than handed to the loader thread and waited on.
+     */
+    public static ImprovedOfflinePlayer get(UUID id, Function<UUID, ImprovedOfflinePlayer> constructor) {
+        boolean[] created = new boolean[1];
+        CachedData entry = getOrCreate(id, constructor, created);
+        readAheadFrom(id);
+        if (entry.loadFuture.isDone()) {
+            return entry.data;
+        }
+        boolean isMainThread = Bukkit.isPrimaryThread();
+        long start = System.nanoTime();
+        try {
+            if (claimAndLoad(entry, ImprovedOfflinePlayer.getPlayerDataFiles(id))) {
+                return entry.data;
+            }
+            // Another thread is partway through reading this player's file, which is still faster than starting over
+            return entry.loadFuture.get(loadTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            Debug.echoError("Offline player data loading timeout for " + id + ", loading it again directly");
+            return loadReplacement(id, constructor, entry);
+        }
+        catch (Throwable ex) {
+            Debug.echoError(ex);
+            return entry.data;
+        }
+        finally {
+            if (isMainThread) {
+                mainThreadStalls++;
+                mainThreadStallNanos += System.nanoTime() - start;
+            }
+            if (created[0]) {
+                enforceLimits();
+            }
+        }
+    }
+
+    /**
+     * Loads a player's data on the calling thread into a new entry, which replaces the given (stuck) entry in the cache if it's still there.
+     */
+    public static ImprovedOfflinePlayer loadReplacement(UUID id, Function<UUID, ImprovedOfflinePlayer> constructor, CachedData stuck) {
+        CachedData replacement = new CachedData(constructor.apply(id));
+        replacement.lastAccessed = System.currentTimeMillis();
+        claimAndLoad(replacement, ImprovedOfflinePlayer.getPlayerDataFiles(id));
+        synchronized (cache) {
+            cache.replace(id, stuck, replacement);
+        }
+        return replacement.data;
+    }
+
+    /**
+     * Marks the data as changed, and schedules a write if one isn't already scheduled.
+     */
+    public static void queueWrite(ImprovedOfflinePlayer data) {
+        if (!data.markDirty()) {
+            return;
+        }
+        Runnable submit = () -> SavePipeline.submitWrite("offline_player_data", 0, data::runScheduledWrite);
+        if (writeDelayTicks > 0 && Denizen.getInstance().isEnabled()) {
+            Bukkit.getScheduler().runTaskLater(Denizen.getInstance(), submit, writeDelayTicks);
+        }
+        else {
+            submit.run();
+        }
+    }
+
+    /**
+     * Queues any unwritten changes to be written immediately, for use on shutdown (when delayed writes won't run).
+     */
+    public static void flushAll() {
+        List<CachedData> entries;
+        synchronized (cache) {
+            entries = new ArrayList<>(cache.values());
+        }
+        for (CachedData entry : entries) {
+            if (entry.data.hasPendingWrite()) {
+                SavePipeline.submitWrite("offline_player_data", 0, entry.data::writeIfDirty);
+            }
+        }
+    }
+
+    /**
+     * Removes a player's entry from the cache, first writing any unwritten changes on the calling thread.
+     */
+    public static void writeAndRemove(UUID id) {
+        CachedData entry;
+        synchronized (cache) {
+            entry = cache.remove(id);
+        }
+        if (entry != null && entry.loadFuture.isDone()) {
+            entry.data.writeIfDirty();
+        }
+    }
+
+    public static void remove(UUID id) {
+        synchronized (cache) {
+            cache.remove(id);
+        }
+    }
+
+    /**
+     * Removes expired entries, then least recently used entries until the cache is within its entry limit.
+     * Entries that are still loading or have unwritten changes are kept until a later cleanup.
+     */
+    public static void cleanCache() {
+        long expireBefore = System.currentTimeMillis() - cacheTimeoutSeconds * 1000;
+        synchronized (cache) {
+            Iterator<CachedData> iterator = cache.values().iterator();
+            while (iterator.hasNext()) {
+                CachedData entry = iterator.next();
+                if (entry.lastAccessed < expireBefore && entry.canEvict()) {
+                    iterator.remove();
+                    cacheEvictions++;
+                }
+            }
+        }
+        enforceLimits();
+    }
+
+    public static void enforceLimits() {
+        synchronized (cache) {
+            if (cache.size() <= maxCacheEntries) {
+                return;
+            }
+            Iterator<CachedData> iterator = cache.values().iterator();
+            while (cache.size() > maxCacheEntries && iterator.hasNext()) {
+                if (iterator.next().canEvict()) {
+                    iterator.remove();
+                    cacheEvictions++;
+                }
+            }
+        }
+    }
+
+    public OfflinePlayerDataCache() {
+        ImprovedOfflinePlayer.updatePlayerDataFolders(null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        ImprovedOfflinePlayer.updatePlayerDataFolders(null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        ImprovedOfflinePlayer.updatePlayerDataFolders(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        // The server reads the player's file right after login, so any changes must be on disk by then
+        writeAndRemove(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        remove(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        remove(event.getPlayer().getUniqueId());
+    }
+}
@@ -0,0 +1,123 @@
+package com.denizenscript.denizen.utilities.entity;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+/**
+ * Shared spatial lookup for proximity checks (proximity triggers and the mobprox trait).
+ * Online players are bucketed by world and chunk once per check, so each NPC only needs to look at the players in chunks near it.
+ * Positions can also be tracked between checks, so that checks can be skipped for anything that hasn't moved far enough to matter.
+ */
+public class ProximityEngine {
+
+    /**
+     * How often (in ticks) proximity triggers are checked.
+     */
+    public static int checkInterval = 5;
+
+    /**
+     * How far (in blocks) something must move before a proximity check involving it is run again. 0 or less disables movement gating.
+     */
+    public static double movementThreshold = 0;
+
+    /**
+     * Tracks the last checked position of a set of entities, to gate checks by how far they've moved.
+     */
+    public static class MovementTracker {
+
+        public final Map<UUID, Location> lastPositions = new HashMap<>();
+
+        /**
+         * Returns true if the entity has moved at least the movement threshold since the last time this returned true for it
+         * (or if it changed worlds, has never been seen, or movement gating is disabled).
+         */
+        public boolean hasMoved(UUID id, Location location) {
+            if (movementThreshold <= 0) {
+                return true;
+            }
+            Location last = lastPositions.get(id);
+            if (last != null && last.getWorld() == location.getWorld() && last.distanceSquared(location) < movementThreshold * movementThreshold) {
+                return false;
+            }
+            lastPositions.put(id, location);
+            return true;
+        }
+
+        public void forget(UUID id) {
+            lastPositions.remove(id);
+        }
+    }
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return (((long) chunkX) << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Online players, bucketed by world ID then by chunk key. Rebuilt by 'updatePlayers'.
+     */
+    public static final Map<UUID, Map<Long, List<Player>>> playerGrid = new HashMap<>();
+
+    public static final MovementTracker playerMovement = new MovementTracker();
+
+    /**
+     * The players that moved past the movement threshold as of the last 'updatePlayers' call.
+     */
+    public static final Set<UUID> movedPlayers = new HashSet<>();
+
+    /**
+     * Rebuilds the player grid and the set of moved players. Should be called once at the start of each proximity check.
+     */
+    public static void updatePlayers() {
+        playerGrid.clear();
+        movedPlayers.clear();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Location location = player.getLocation();
+            playerGrid.computeIfAbsent(location.getWorld().getUID(), k -> new HashMap<>())
+                    .computeIfAbsent(chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4), k -> new ArrayList<>()).add(player);
+            if (playerMovement.hasMoved(player.getUniqueId(), location)) {
+                movedPlayers.add(player.getUniqueId());
+            }
+        }
+    }
+
+    /**
+     * Adds all players from the last grid update that are within the radius of the center to the output collection.
+     */
+    public static void getPlayersNear(Location center, double radius, Collection<Player> output) {
+        if (radius < 0) {
+            return;
+        }
+        Map<Long, List<Player>> chunks = playerGrid.get(center.getWorld().getUID());
+        if (chunks == null) {
+            return;
+        }
+        double radiusSquared = radius * radius;
+        int minX = ((int) Math.floor(center.getX() - radius)) >> 4, maxX = ((int) Math.floor(center.getX() + radius)) >> 4;
+        int minZ = ((int) Math.floor(center.getZ() - radius)) >> 4, maxZ = ((int) Math.floor(center.getZ() + radius)) >> 4;
+        if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > chunks.size()) {
+            for (List<Player> players : chunks.values()) {
+                addWithin(players, center, radiusSquared, output);
+            }
+            return;
+        }
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                List<Player> players = chunks.get(chunkKey(x, z));
+                if (players != null) {
+                    addWithin(players, center, radiusSquared, output);
+                }
+            }
+        }
+    }
+
+    private static void addWithin(List<Player> players, Location center, double radiusSquared, Collection<Player> output) {
+        for (Player player : players) {
+            if (player.getLocation().distanceSquared(center) <= radiusSquared) {
+                output.add(player);
+            }
+        }
+    }
+}
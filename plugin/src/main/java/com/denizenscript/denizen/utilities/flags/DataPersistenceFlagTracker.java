@@ -8,6 +8,7 @@ import com.denizenscript.denizencore.objects.ObjectTag;
 import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.AsciiMatcher;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Chunk;
 import org.bukkit.NamespacedKey;
 import org.bukkit.persistence.PersistentDataHolder;
 import org.bukkit.persistence.PersistentDataType;
@@ -42,14 +43,21 @@ public class DataPersistenceFlagTracker extends MapTagBasedFlagTracker {
 
     @Override
     public void setRootMap(String key, MapTag map) {
+        String fullKey = keyPrefix + cleanKeyName(key);
         if (map == null) {
-            DataPersistenceHelper.removeDenizenKey(holder, keyPrefix + cleanKeyName(key));
+            DataPersistenceHelper.removeDenizenKey(holder, fullKey);
+            if (holder instanceof Chunk) {
+                LocationFlagSearchHelper.onChunkKeyChanged((Chunk) holder, fullKey, false);
+            }
             return;
         }
         if (map.map.containsKey(expirationString) || map.map.get(valueString) instanceof MapTag) {
             holder.getPersistentDataContainer().set(expireNeededKey, PersistentDataType.STRING, "true");
         }
-        DataPersistenceHelper.setDenizenKey(holder, keyPrefix + cleanKeyName(key), map);
+        DataPersistenceHelper.setDenizenKey(holder, fullKey, map);
+        if (holder instanceof Chunk) {
+            LocationFlagSearchHelper.onChunkKeyChanged((Chunk) holder, fullKey, true);
+        }
     }
 
     @Override
@@ -77,6 +85,9 @@ public class DataPersistenceFlagTracker extends MapTagBasedFlagTracker {
             }
             if (isExpired(((MapTag) map).map.get(expirationString))) {
                 holder.getPersistentDataContainer().remove(key);
+                if (holder instanceof Chunk) {
+                    LocationFlagSearchHelper.onChunkKeyChanged((Chunk) holder, key.getKey(), false);
+                }
                 containsAnyToCheck = true;
                 continue;
             }
@@ -0,0 +1,382 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizen.utilities.SavePipeline;
+import com.denizenscript.denizencore.flags.MapTagBasedFlagTracker;
+import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.objects.ObjectFetcher;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.DurationTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.objects.core.TimeTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads and writes flag files for SavableMapFlagTracker-backed stores (server, world, and player flags).
+ * Files may be in either the original text format, or a compact binary format, which is detected by its header.
+ * The binary format is: magic, format version, a string table, then the flags as typed values referencing the string table.
+ */
+public class FlagFileHelper {
+
+    public static volatile boolean useBinaryFormat = false;
+
+    public static final byte[] MAGIC = new byte[] { 0, 'D', 'Z', 'F' };
+
+    public static final int FORMAT_VERSION = 1;
+
+    public static final byte TYPE_ELEMENT = 1, TYPE_LIST = 2, TYPE_MAP = 3, TYPE_OBJECT = 4;
+
+    /**
+     * Load counts and times, added to by the main thread, flag loader threads and the save thread alike.
+     */
+    public static final LongAdder textLoads = new LongAdder(), textLoadNanos = new LongAdder(), binaryLoads = new LongAdder(), binaryLoadNanos = new LongAdder();
+
+    /**
+     * A flag value that was identified when a snapshot was taken, so that it can be serialized on another thread without touching the original object.
+     */
+    public static class FrozenObjectTag extends ElementTag {
+
+        public FrozenObjectTag(String identity) {
+            super(identity);
+        }
+    }
+
+    /**
+     * A copy of a flag tracker's data that no other code holds, to be serialized (in whichever format was configured when it was taken) off the main thread.
+     */
+    public static class Snapshot {
+
+        public final SavableMapFlagTracker flags;
+
+        public final boolean binary;
+
+        /**
+         * The serialized size, or -1 until it has been written.
+         */
+        public volatile long size = -1;
+
+        public Snapshot(SavableMapFlagTracker flags, boolean binary) {
+            this.flags = flags;
+            this.binary = binary;
+        }
+    }
+
+    /**
+     * Copies the given flag value. Maps and lists are copied, element, time, and duration values are immutable and shared,
+     * and any other object is replaced by its identity (which is all that gets saved of it anyway).
+     */
+    public static ObjectTag freeze(ObjectTag value) {
+        if (value instanceof MapTag) {
+            MapTag copy = new MapTag();
+            for (Map.Entry<StringHolder, ObjectTag> entry : ((MapTag) value).map.entrySet()) {
+                copy.map.put(entry.getKey(), freeze(entry.getValue()));
+            }
+            return copy;
+        }
+        else if (value instanceof ListTag) {
+            ListTag list = (ListTag) value;
+            ListTag copy = new ListTag();
+            for (int i = 0; i < list.size(); i++) {
+                copy.addObject(freeze(list.getObject(i)));
+            }
+            return copy;
+        }
+        else if (value == null || value instanceof ElementTag || value instanceof TimeTag || value instanceof DurationTag) {
+            return value;
+        }
+        return new FrozenObjectTag(value.identify());
+    }
+
+    /**
+     * Returns a copy of the tracker's data that can be serialized on any thread. Must be called on the main thread.
+     */
+    public static SavableMapFlagTracker copy(SavableMapFlagTracker tracker) {
+        SavableMapFlagTracker copy = new SavableMapFlagTracker();
+        for (String flag : tracker.listAllFlags()) {
+            MapTag map = tracker.getRootMap(flag);
+            if (map != null) {
+                copy.setRootMap(flag, (MapTag) freeze(map));
+            }
+        }
+        copy.modified = false;
+        return copy;
+    }
+
+    /**
+     * Takes a snapshot of the tracker and marks it as unmodified. Must be called on the main thread.
+     * This only copies the data: serializing it is left to 'write', which can run on any thread.
+     */
+    public static Snapshot snapshot(SavableMapFlagTracker tracker) {
+        Snapshot snapshot = new Snapshot(copy(tracker), useBinaryFormat);
+        tracker.modified = false;
+        return snapshot;
+    }
+
+    /**
+     * Serializes and writes a snapshot to the given path (without the '.dat' extension).
+     */
+    public static void write(String path, Snapshot snapshot) {
+        if (snapshot.binary) {
+            byte[] data = encode(snapshot.flags);
+            snapshot.size = data.length;
+            journallingBinarySave(path + ".dat", data);
+        }
+        else {
+            String text = snapshot.flags.toString();
+            snapshot.size = text.length();
+            CoreUtilities.journallingFileSave(path + ".dat", text);
+        }
+    }
+
+    public static void journallingBinarySave(String path, byte[] data) {
+        File file = new File(path);
+        File tempFile = new File(path + "~2");
+        try {
+            try (FileOutputStream output = new FileOutputStream(tempFile)) {
+                output.write(data);
+                output.getFD().sync();
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException ex) {
+            Debug.echoError("Failed to save flag file '" + path + "':");
+            Debug.echoError(ex);
+        }
+    }
+
+    /**
+     * Snapshots the tracker (if modified) and queues it to be written to the given path (without the '.dat' extension) by the save pipeline.
+     * Returns the queued write, or null if the tracker had nothing to save.
+     */
+    public static Future<?> saveAsync(String storeName, String path, SavableMapFlagTracker tracker) {
+        if (!tracker.modified) {
+            SavePipeline.markSkipped(storeName);
+            return null;
+        }
+        long start = System.nanoTime();
+        Snapshot snapshot = snapshot(tracker);
+        return SavePipeline.submitWrite(storeName, System.nanoTime() - start, () -> write(path, snapshot));
+    }
+
+    public static boolean isBinaryFile(File file) {
+        if (!file.exists() || file.length() < MAGIC.length) {
+            return false;
+        }
+        try (FileInputStream input = new FileInputStream(file)) {
+            byte[] header = new byte[MAGIC.length];
+            return input.read(header) == MAGIC.length && Arrays.equals(header, MAGIC);
+        }
+        catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads a flag file from the given path (without the '.dat' extension), in either format.
+     */
+    public static SavableMapFlagTracker load(String path) {
+        long start = System.nanoTime();
+        File file = new File(path + ".dat");
+        if (isBinaryFile(file)) {
+            try {
+                SavableMapFlagTracker tracker = decode(Files.readAllBytes(file.toPath()));
+                binaryLoads.increment();
+                binaryLoadNanos.add(System.nanoTime() - start);
+                return tracker;
+            }
+            catch (Throwable ex) {
+                Debug.echoError("Failed to read binary flag file '" + file.getPath() + "':");
+                Debug.echoError(ex);
+                return new SavableMapFlagTracker();
+            }
+        }
+        SavableMapFlagTracker tracker = SavableMapFlagTracker.loadFlagFile(path);
+        textLoads.increment();
+        textLoadNanos.add(System.nanoTime() - start);
+        return tracker;
+    }
+
+    public static byte[] encode(MapTagBasedFlagTracker tracker) {
+        try {
+            LinkedHashMap<String, Integer> stringTable = new LinkedHashMap<>();
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+            Collection<String> flags = tracker.listAllFlags();
+            writeVarInt(body, flags.size());
+            for (String flag : flags) {
+                writeString(body, stringTable, flag);
+                writeValue(body, stringTable, tracker.getRootMap(flag));
+            }
+            ByteArrayOutputStream outputBytes = new ByteArrayOutputStream(bodyBytes.size() + 64);
+            DataOutputStream output = new DataOutputStream(outputBytes);
+            output.write(MAGIC);
+            writeVarInt(output, FORMAT_VERSION);
+            writeVarInt(output, stringTable.size());
+            for (String str : stringTable.keySet()) {
+                byte[] strBytes = str.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(output, strBytes.length);
+                output.write(strBytes);
+            }
+            bodyBytes.writeTo(output);
+            output.flush();
+            return outputBytes.toByteArray();
+        }
+        catch (IOException ex) {
+            // Cannot happen with in-memory streams
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public static SavableMapFlagTracker decode(byte[] data) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        byte[] header = new byte[MAGIC.length];
+        input.readFully(header);
+        if (!Arrays.equals(header, MAGIC)) {
+            throw new IOException("Not a binary flag file");
+        }
+        int version = readVarInt(input);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary flag file version " + version);
+        }
+        String[] stringTable = new String[readVarInt(input)];
+        for (int i = 0; i < stringTable.length; i++) {
+            byte[] strBytes = new byte[readVarInt(input)];
+            input.readFully(strBytes);
+            stringTable[i] = new String(strBytes, StandardCharsets.UTF_8);
+        }
+        SavableMapFlagTracker tracker = new SavableMapFlagTracker();
+        int flagCount = readVarInt(input);
+        for (int i = 0; i < flagCount; i++) {
+            String flag = stringTable[readVarInt(input)];
+            ObjectTag value = readValue(input, stringTable);
+            if (value instanceof MapTag) {
+                tracker.setRootMap(flag, (MapTag) value);
+            }
+        }
+        tracker.modified = false;
+        return tracker;
+    }
+
+    public static void writeValue(DataOutputStream output, Map<String, Integer> stringTable, ObjectTag value) throws IOException {
+        if (value instanceof FrozenObjectTag) {
+            output.writeByte(TYPE_OBJECT);
+            writeString(output, stringTable, ((FrozenObjectTag) value).asString());
+        }
+        else if (value instanceof MapTag) {
+            output.writeByte(TYPE_MAP);
+            MapTag map = (MapTag) value;
+            writeVarInt(output, map.map.size());
+            for (Map.Entry<StringHolder, ObjectTag> entry : map.map.entrySet()) {
+                writeString(output, stringTable, entry.getKey().str);
+                writeValue(output, stringTable, entry.getValue());
+            }
+        }
+        else if (value instanceof ListTag) {
+            output.writeByte(TYPE_LIST);
+            ListTag list = (ListTag) value;
+            writeVarInt(output, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                writeValue(output, stringTable, list.getObject(i));
+            }
+        }
+        else if (value instanceof ElementTag) {
+            output.writeByte(TYPE_ELEMENT);
+            writeString(output, stringTable, ((ElementTag) value).asString());
+        }
+        else {
+            output.writeByte(TYPE_OBJECT);
+            writeString(output, stringTable, value == null ? "" : value.identify());
+        }
+    }
+
+    public static ObjectTag readValue(DataInputStream input, String[] stringTable) throws IOException {
+        byte type = input.readByte();
+        switch (type) {
+            case TYPE_MAP: {
+                MapTag map = new MapTag();
+                int size = readVarInt(input);
+                for (int i = 0; i < size; i++) {
+                    String key = stringTable[readVarInt(input)];
+                    map.putObject(key, readValue(input, stringTable));
+                }
+                return map;
+            }
+            case TYPE_LIST: {
+                ListTag list = new ListTag();
+                int size = readVarInt(input);
+                for (int i = 0; i < size; i++) {
+                    list.addObject(readValue(input, stringTable));
+                }
+                return list;
+            }
+            case TYPE_ELEMENT:
+                return new ElementTag(stringTable[readVarInt(input)]);
+            case TYPE_OBJECT:
+                return ObjectFetcher.pickObjectFor(stringTable[readVarInt(input)], CoreUtilities.noDebugContext);
+            default:
+                throw new IOException("Invalid value type " + type + " in binary flag file");
+        }
+    }
+
+    public static void writeString(DataOutputStream output, Map<String, Integer> stringTable, String str) throws IOException {
+        Integer index = stringTable.get(str);
+        if (index == null) {
+            index = stringTable.size();
+            stringTable.put(str, index);
+        }
+        writeVarInt(output, index);
+    }
+
+    public static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    public static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = input.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt too long in binary flag file");
+    }
+
+    /**
+     * Rewrites every flag file in the given list of paths (without the '.dat' extension) into the currently configured format.
+     * Returns the number of files rewritten.
+     */
+    public static int migrate(List<String> paths) {
+        int count = 0;
+        for (String path : paths) {
+            File file = new File(path + ".dat");
+            if (!file.exists() || isBinaryFile(file) == useBinaryFormat) {
+                continue;
+            }
+            SavableMapFlagTracker tracker = load(path);
+            write(path, snapshot(tracker));
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,171 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizen.utilities.matchers.MatcherCache;
+import com.denizenscript.denizencore.flags.MapTagFlagTracker;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.objects.core.TimeTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+
+import java.util.Map;
+
+/**
+ * Caches parsed item flag data by raw flag text, so that identical items don't re-parse the same flags every time a new ItemTag is made.
+ * Cached maps are shared between trackers, and are never modified: trackers copy the map before their first change,
+ * and values read out of a tracker that is still sharing its map are copies.
+ */
+public class ItemFlagCache {
+
+    /**
+     * Flag text longer than this is parsed directly rather than cached, to keep the cache's memory usage bounded.
+     */
+    public static int MAX_CACHED_TEXT_LENGTH = 16 * 1024;
+
+    public static MatcherCache<MapTag> parsedFlags = new MatcherCache<>(ItemFlagCache::parse, 1024);
+
+    public static MapTag parse(String flagText) {
+        return new MapTagFlagTracker(flagText, CoreUtilities.noDebugContext).map;
+    }
+
+    /**
+     * A flag tracker backed by a shared cached map, that switches to its own copy of the map before any change.
+     */
+    public static class SharedItemFlagTracker extends MapTagFlagTracker {
+
+        public boolean shared = true;
+
+        /**
+         * True while the tracker is reading its own map for a check that doesn't hand any value out, so reads don't need copying.
+         */
+        public boolean internalRead = false;
+
+        public SharedItemFlagTracker(MapTag sharedMap) {
+            super();
+            map = sharedMap;
+        }
+
+        public void ensureOwned() {
+            if (shared) {
+                map = deepCopy(map);
+                shared = false;
+            }
+        }
+
+        @Override
+        public void setRootMap(String key, MapTag value) {
+            ensureOwned();
+            super.setRootMap(key, value);
+        }
+
+        @Override
+        public void setFlag(String key, ObjectTag value, TimeTag expiration) {
+            ensureOwned();
+            super.setFlag(key, value, expiration);
+        }
+
+        @Override
+        public MapTag getRootMap(String key) {
+            MapTag result = super.getRootMap(key);
+            if (shared && !internalRead && result != null) {
+                return deepCopy(result);
+            }
+            return result;
+        }
+
+        @Override
+        public ObjectTag getFlagValue(String key) {
+            if (!shared || internalRead) {
+                return super.getFlagValue(key);
+            }
+            internalRead = true;
+            try {
+                return copyValue(super.getFlagValue(key));
+            }
+            finally {
+                internalRead = false;
+            }
+        }
+
+        @Override
+        public boolean hasFlag(String key) {
+            boolean wasInternal = internalRead;
+            internalRead = true;
+            try {
+                return super.hasFlag(key);
+            }
+            finally {
+                internalRead = wasInternal;
+            }
+        }
+
+        @Override
+        public TimeTag getFlagExpirationTime(String key) {
+            boolean wasInternal = internalRead;
+            internalRead = true;
+            try {
+                return super.getFlagExpirationTime(key);
+            }
+            finally {
+                internalRead = wasInternal;
+            }
+        }
+    }
+
+    public static MapTagFlagTracker getTracker(String flagText) {
+        if (flagText.length() > MAX_CACHED_TEXT_LENGTH) {
+            return new MapTagFlagTracker(flagText, CoreUtilities.noDebugContext);
+        }
+        return new SharedItemFlagTracker(parsedFlags.get(flagText));
+    }
+
+    public static MapTag deepCopy(MapTag map) {
+        MapTag result = new MapTag();
+        for (Map.Entry<StringHolder, ObjectTag> entry : map.map.entrySet()) {
+            result.map.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return result;
+    }
+
+    public static ObjectTag copyValue(ObjectTag value) {
+        if (value instanceof MapTag) {
+            return deepCopy((MapTag) value);
+        }
+        if (value instanceof ListTag) {
+            ListTag list = (ListTag) value;
+            ListTag result = new ListTag();
+            for (int i = 0; i < list.size(); i++) {
+                result.addObject(copyValue(list.getObject(i)));
+            }
+            return result;
+        }
+        return value;
+    }
+
+    /**
+     * Returns false if the raw flag text definitely does not contain the given flag, by checking for the root flag name as text.
+     * Returns true if the flag might be present, in which case the text must be parsed to know for sure.
+     */
+    public static boolean mightHaveFlag(String flagText, String flagName) {
+        int dot = flagName.indexOf('.');
+        String rootName = dot == -1 ? flagName : flagName.substring(0, dot);
+        if (rootName.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < rootName.length(); i++) {
+            char c = rootName.charAt(i);
+            // Names with any symbols might be escaped in the raw text, so can't be checked this way
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+                return true;
+            }
+        }
+        int max = flagText.length() - rootName.length();
+        for (int i = 0; i <= max; i++) {
+            if (flagText.regionMatches(true, i, rootName, 0, rootName.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
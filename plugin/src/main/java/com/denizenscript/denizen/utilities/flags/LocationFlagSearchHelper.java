@@ -1,17 +1,90 @@
 package com.denizenscript.denizen.utilities.flags;
 
 import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.utilities.blocks.ChunkCoordinate;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.NamespacedKey;
-import org.bukkit.persistence.PersistentDataContainer;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.function.Consumer;
 
 public class LocationFlagSearchHelper {
 
+    /**
+     * In-memory index of block flags per loaded chunk, as a map of flag name to packed chunk-local block positions.
+     * Built lazily on first search within a chunk, kept up to date by DataPersistenceFlagTracker, and dropped on chunk unload.
+     */
+    public static HashMap<ChunkCoordinate, HashMap<String, HashSet<Long>>> chunkFlagIndex = new HashMap<>();
+
+    public static long packPosition(int x, int y, int z) {
+        return (((long) y) << 8) | ((x & 15) << 4) | (z & 15);
+    }
+
+    public static HashMap<String, HashSet<Long>> getIndex(Chunk chunk) {
+        ChunkCoordinate coord = new ChunkCoordinate(chunk);
+        HashMap<String, HashSet<Long>> index = chunkFlagIndex.get(coord);
+        if (index == null) {
+            index = new HashMap<>();
+            for (NamespacedKey key : chunk.getPersistentDataContainer().getKeys()) {
+                if (key.getNamespace().equals("denizen")) {
+                    updateIndex(index, key.getKey(), true);
+                }
+            }
+            chunkFlagIndex.put(coord, index);
+        }
+        return index;
+    }
+
+    public static void updateIndex(HashMap<String, HashSet<Long>> index, String key, boolean isSet) {
+        if (!key.startsWith("flag_tracker_")) {
+            return;
+        }
+        List<String> split = CoreUtilities.split(key, '_', 6);
+        if (split.size() != 6) {
+            return;
+        }
+        long pos;
+        try {
+            pos = packPosition(Integer.parseInt(split.get(2)), Integer.parseInt(split.get(3)), Integer.parseInt(split.get(4)));
+        }
+        catch (NumberFormatException ex) {
+            return;
+        }
+        String flagName = split.get(5);
+        if (isSet) {
+            index.computeIfAbsent(flagName, k -> new HashSet<>()).add(pos);
+        }
+        else {
+            HashSet<Long> positions = index.get(flagName);
+            if (positions != null && positions.remove(pos) && positions.isEmpty()) {
+                index.remove(flagName);
+            }
+        }
+    }
+
+    /**
+     * Called when a denizen-namespaced key is set or removed on a chunk, to keep the index current (if one exists for that chunk).
+     */
+    public static void onChunkKeyChanged(Chunk chunk, String key, boolean isSet) {
+        if (chunkFlagIndex.isEmpty() || !key.startsWith("flag_tracker_")) {
+            return;
+        }
+        HashMap<String, HashSet<Long>> index = chunkFlagIndex.get(new ChunkCoordinate(chunk));
+        if (index != null) {
+            updateIndex(index, key, isSet);
+        }
+    }
+
+    public static void onChunkUnload(Chunk chunk) {
+        if (!chunkFlagIndex.isEmpty()) {
+            chunkFlagIndex.remove(new ChunkCoordinate(chunk));
+        }
+    }
+
     public static void getFlaggedLocations(Chunk chunk, String flagName, Consumer<Location> handleLocation) {
         int subKeyIndex = flagName.indexOf('.');
         String fullPath = null;
@@ -19,19 +92,18 @@ public class LocationFlagSearchHelper {
             fullPath = flagName;
             flagName = flagName.substring(0, subKeyIndex);
         }
-        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        HashSet<Long> positions = getIndex(chunk).get(flagName);
+        if (positions == null) {
+            return;
+        }
+        int baseX = chunk.getX() << 4, baseZ = chunk.getZ() << 4;
         Location ref = new Location(chunk.getWorld(), 0, 0, 0);
-        for (NamespacedKey key : container.getKeys()) {
-            if (key.getNamespace().equals("denizen") && key.getKey().startsWith("flag_tracker_") && key.getKey().endsWith(flagName)) {
-                List<String> split = CoreUtilities.split(key.getKey(), '_', 6);
-                if (split.size() == 6 && split.get(5).equals(flagName)) {
-                    ref.setX(Integer.parseInt(split.get(2)));
-                    ref.setY(Integer.parseInt(split.get(3)));
-                    ref.setZ(Integer.parseInt(split.get(4)));
-                    if (fullPath == null || new LocationTag(ref).getFlagTracker().hasFlag(fullPath)) {
-                        handleLocation.accept(ref);
-                    }
-                }
+        for (long pos : positions.toArray(new Long[0])) {
+            ref.setX(baseX + ((pos >> 4) & 15));
+            ref.setY(pos >> 8);
+            ref.setZ(baseZ + (pos & 15));
+            if (fullPath == null || new LocationTag(ref).getFlagTracker().hasFlag(fullPath)) {
+                handleLocation.accept(ref);
             }
         }
     }
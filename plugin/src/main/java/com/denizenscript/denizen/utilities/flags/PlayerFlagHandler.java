@@ -1,6 +1,7 @@
 package com.denizenscript.denizen.utilities.flags;
 
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.utilities.SavePipeline;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
 import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
@@ -12,14 +13,10 @@ import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.File;
-import java.lang.ref.SoftReference;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 public class PlayerFlagHandler implements Listener {
 
@@ -27,15 +24,44 @@ public class PlayerFlagHandler implements Listener {
 
     public static boolean asyncPreload = false;
 
+    /**
+     * Limits for the offline player flag cache. Online players are never evicted, but do count towards the limits.
+     */
+    public static int maxCacheEntries = 2000;
+
+    public static long maxCacheBytes = 128L * 1024 * 1024;
+
+    public static long cacheHits = 0, cacheMisses = 0, cacheLoads = 0, cacheEvictions = 0;
+
     public static class CachedPlayerFlag {
 
         public long lastAccessed;
 
-        public SavableMapFlagTracker tracker;
+        public volatile SavableMapFlagTracker tracker;
+
+        public volatile boolean savingNow = false;
+
+        public volatile boolean loadingNow = false;
 
-        public boolean savingNow = false;
+        /**
+         * Set by whichever thread (a loader, or a waiting caller) runs the load, so that it only runs once.
+         */
+        public final AtomicBoolean loadClaimed = new AtomicBoolean();
 
-        public boolean loadingNow = false;
+        /**
+         * True while this entry is being saved prior to eviction. Cleared if the entry is accessed again before the save completes.
+         */
+        public boolean evicting = false;
+
+        /**
+         * Estimated in-memory size, based on the serialized size of the flag data.
+         */
+        public volatile long estimatedBytes;
+
+        /**
+         * Completes when the tracker has been loaded from disk (already complete for caches that were not loaded from disk).
+         */
+        public CompletableFuture<SavableMapFlagTracker> loadFuture;
 
         public boolean shouldExpire() {
             if (cacheTimeoutSeconds == -1) {
@@ -50,45 +76,159 @@ public class PlayerFlagHandler implements Listener {
 
     public static File dataFolder;
 
-    public static HashMap<UUID, CachedPlayerFlag> playerFlagTrackerCache = new HashMap<>();
+    public static int loadThreads = 2;
 
-    public static HashMap<UUID, SoftReference<CachedPlayerFlag>> secondaryPlayerFlagTrackerCache = new HashMap<>();
+    public static long loadTimeoutMillis = 15 * 1000;
 
-    private static ArrayList<UUID> toClearCache = new ArrayList<>();
+    /**
+     * How long the main thread waits on a load that another thread is already running before it counts as a budget overrun.
+     */
+    public static long mainThreadBudgetMillis = 50;
 
-    public static void cleanSecondaryCache() {
-        toClearCache.clear();
-        for (Map.Entry<UUID, SoftReference<CachedPlayerFlag>> entry : secondaryPlayerFlagTrackerCache.entrySet()) {
-            // NOTE: This call will make the GC think the value is still needed, thus the 10 minute cleanup timer to allow the GC to know these are unimportant
-            if (entry.getValue().get() == null) {
-                toClearCache.add(entry.getKey());
-            }
+    /**
+     * How many players to load ahead of the current one in batch lookups.
+     */
+    public static int batchPrefetchWindow = 16;
+
+    /**
+     * Number of times the main thread had to wait on a player flag load, the total time spent waiting, and how many waits went over budget.
+     */
+    public static long mainThreadStalls = 0, mainThreadStallNanos = 0, mainThreadBudgetOverruns = 0;
+
+    private static ExecutorService loadExecutor;
+
+    public static synchronized ExecutorService getLoadExecutor() {
+        if (loadExecutor == null || loadExecutor.isShutdown()) {
+            loadExecutor = Executors.newFixedThreadPool(loadThreads, runnable -> {
+                Thread thread = new Thread(runnable, "Denizen Player Flag Loader");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
-        for (UUID id : toClearCache) {
-            secondaryPlayerFlagTrackerCache.remove(id);
+        return loadExecutor;
+    }
+
+    /**
+     * Access-ordered (least recently used first) cache of player flag trackers.
+     * As reads reorder the map, every access (including reads) must be synchronized on the map.
+     */
+    public static final LinkedHashMap<UUID, CachedPlayerFlag> playerFlagTrackerCache = new LinkedHashMap<>(256, 0.75f, true);
+
+    public static int getCacheSize() {
+        synchronized (playerFlagTrackerCache) {
+            return playerFlagTrackerCache.size();
         }
     }
 
-    private static int secondaryCleanTicker = 0;
+    public static long getResidentBytes() {
+        long total = 0;
+        synchronized (playerFlagTrackerCache) {
+            for (CachedPlayerFlag cache : playerFlagTrackerCache.values()) {
+                total += cache.estimatedBytes;
+            }
+        }
+        return total;
+    }
+
+    public static void removeFromCache(UUID id, CachedPlayerFlag cache) {
+        synchronized (playerFlagTrackerCache) {
+            playerFlagTrackerCache.remove(id, cache);
+        }
+    }
 
     public static void cleanCache() {
-        if (cacheTimeoutSeconds == -1) {
-            return;
+        if (cacheTimeoutSeconds != -1) {
+            long timeNow = System.currentTimeMillis();
+            List<Map.Entry<UUID, CachedPlayerFlag>> expired = new ArrayList<>();
+            synchronized (playerFlagTrackerCache) {
+                for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entrySet()) {
+                    if (entry.getValue().shouldExpire()) {
+                        expired.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue()));
+                    }
+                }
+            }
+            for (Map.Entry<UUID, CachedPlayerFlag> entry : expired) {
+                if (Bukkit.getPlayer(entry.getKey()) != null) {
+                    entry.getValue().lastAccessed = timeNow;
+                    continue;
+                }
+                saveThenExpire(entry.getKey(), entry.getValue());
+            }
         }
-        if (secondaryCleanTicker++ > 10) {
-            cleanSecondaryCache();
+        enforceLimits();
+    }
+
+    /**
+     * True while an off-thread call to enforceLimits is waiting to run on the main thread.
+     */
+    public static final AtomicBoolean enforceLimitsQueued = new AtomicBoolean();
+
+    /**
+     * Evicts least recently used offline player entries until the cache is within its entry count and size limits.
+     * Eviction snapshots flag trackers, so calls from other threads are passed to the main thread.
+     */
+    public static void enforceLimits() {
+        if (!Bukkit.isPrimaryThread()) {
+            if (Denizen.getInstance().isEnabled() && enforceLimitsQueued.compareAndSet(false, true)) {
+                Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> {
+                    enforceLimitsQueued.set(false);
+                    enforceLimits();
+                });
+            }
+            return;
         }
-        long timeNow = System.currentTimeMillis();
-        for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entrySet()) {
-            if (cacheTimeoutSeconds > 0 && entry.getValue().lastAccessed + (cacheTimeoutSeconds * 1000) < timeNow) {
-                continue;
+        List<Map.Entry<UUID, CachedPlayerFlag>> toEvict = new ArrayList<>();
+        synchronized (playerFlagTrackerCache) {
+            int entries = playerFlagTrackerCache.size();
+            long bytes = getResidentBytes();
+            if (entries <= maxCacheEntries && bytes <= maxCacheBytes) {
+                return;
             }
-            if (Bukkit.getPlayer(entry.getKey()) != null) {
-                entry.getValue().lastAccessed = timeNow;
-                continue;
+            for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entrySet()) {
+                if (entries <= maxCacheEntries && bytes <= maxCacheBytes) {
+                    break;
+                }
+                CachedPlayerFlag cache = entry.getValue();
+                if (cache.loadingNow || cache.savingNow || cache.evicting || Bukkit.getPlayer(entry.getKey()) != null) {
+                    continue;
+                }
+                toEvict.add(new AbstractMap.SimpleEntry<>(entry.getKey(), cache));
+                entries--;
+                bytes -= cache.estimatedBytes;
             }
-            saveThenExpire(entry.getKey(), entry.getValue());
         }
+        for (Map.Entry<UUID, CachedPlayerFlag> entry : toEvict) {
+            evict(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes an entry from the cache, saving it first if it has unsaved changes.
+     */
+    public static void evict(UUID id, CachedPlayerFlag cache) {
+        cacheEvictions++;
+        if (cache.tracker == null || !cache.tracker.modified) {
+            removeFromCache(id, cache);
+            return;
+        }
+        cache.evicting = true;
+        FlagFileHelper.Snapshot snapshot = FlagFileHelper.snapshot(cache.tracker);
+        cache.savingNow = true;
+        SavePipeline.execute(() -> {
+            try {
+                saveFlags(id, snapshot);
+                cache.estimatedBytes = snapshot.size;
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+            cache.savingNow = false;
+            Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> {
+                if (cache.evicting) {
+                    removeFromCache(id, cache);
+                }
+            });
+        });
     }
 
     public static void saveThenExpire(UUID id, CachedPlayerFlag cache) {
@@ -96,8 +236,7 @@ public class PlayerFlagHandler implements Listener {
             @Override
             public void run() {
                 if (cache.shouldExpire()) {
-                    playerFlagTrackerCache.remove(id);
-                    secondaryPlayerFlagTrackerCache.put(id, new SoftReference<>(cache));
+                    removeFromCache(id, cache);
                 }
             }
         };
@@ -105,7 +244,10 @@ public class PlayerFlagHandler implements Listener {
             new BukkitRunnable() {
                 @Override
                 public void run() {
-                    CachedPlayerFlag newCache = playerFlagTrackerCache.get(id);
+                    CachedPlayerFlag newCache;
+                    synchronized (playerFlagTrackerCache) {
+                        newCache = playerFlagTrackerCache.get(id);
+                    }
                     if (newCache != null) {
                         saveThenExpire(id, newCache);
                     }
@@ -113,119 +255,194 @@ public class PlayerFlagHandler implements Listener {
             }.runTaskLater(Denizen.getInstance(), 10);
             return;
         }
-        if (!cache.tracker.modified) {
+        if (cache.tracker == null || !cache.tracker.modified) {
             expireTask.runTaskLater(Denizen.getInstance(), 1);
             return;
         }
-        cache.tracker.modified = false;
-        String text = cache.tracker.toString();
+        FlagFileHelper.Snapshot snapshot = FlagFileHelper.snapshot(cache.tracker);
         cache.savingNow = true;
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                try {
-                    saveFlags(id, text);
-                }
-                catch (Throwable ex) {
-                    Debug.echoError(ex);
-                }
-                cache.savingNow = false;
-                expireTask.runTaskLater(Denizen.getInstance(), 1);
+        SavePipeline.execute(() -> {
+            try {
+                saveFlags(id, snapshot);
+                cache.estimatedBytes = snapshot.size;
             }
-        }.runTaskAsynchronously(Denizen.getInstance());
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+            cache.savingNow = false;
+            expireTask.runTaskLater(Denizen.getInstance(), 1);
+        });
     }
 
     public static void loadFlags(UUID id, CachedPlayerFlag cache) {
         try {
-            cache.tracker = SavableMapFlagTracker.loadFlagFile(new File(dataFolder, id.toString()).getPath());
+            cache.estimatedBytes = new File(dataFolder, id.toString() + ".dat").length();
+            cache.tracker = FlagFileHelper.load(new File(dataFolder, id.toString()).getPath());
         }
         finally {
             cache.loadingNow = false;
+            cache.loadFuture.complete(cache.tracker);
         }
     }
 
-    public static AbstractFlagTracker getTrackerFor(UUID id) {
-        CachedPlayerFlag cache = playerFlagTrackerCache.get(id);
-        if (cache == null) {
-            SoftReference<CachedPlayerFlag> softRef = secondaryPlayerFlagTrackerCache.get(id);
-            if (softRef != null) {
-                cache = softRef.get();
-                if (cache != null) {
-                    cache.lastAccessed = System.currentTimeMillis();
-                    if (Debug.verbose) {
-                        Debug.echoError("Verbose - flag tracker updated for " + id);
-                    }
-                    playerFlagTrackerCache.put(id, cache);
-                    secondaryPlayerFlagTrackerCache.remove(id);
-                    return cache.tracker;
-                }
-            }
-            cache = new CachedPlayerFlag();
-            cache.lastAccessed = System.currentTimeMillis();
-            cache.loadingNow = true;
-            if (Debug.verbose) {
-                Debug.echoError("Verbose - flag tracker updated for " + id);
-            }
-            playerFlagTrackerCache.put(id, cache);
+    /**
+     * Runs the entry's load on the calling thread, unless another thread has already started it.
+     * Returns true if the load was run here.
+     */
+    public static boolean claimAndLoad(UUID id, CachedPlayerFlag cache) {
+        if (!cache.loadClaimed.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
             loadFlags(id, cache);
         }
-        else {
-            if (cache.loadingNow) {
-                long start = System.currentTimeMillis();
-                while (cache.loadingNow) {
-                    if (System.currentTimeMillis() - start > 15 * 1000) {
-                        Debug.echoError("Flag loading timeout, errors may follow");
-                        playerFlagTrackerCache.remove(id);
-                        return null;
-                    }
-                    try {
-                        Thread.sleep(1);
-                    }
-                    catch (InterruptedException ex) {
-                        Debug.echoError(ex);
-                        return cache.tracker;
-                    }
-                }
-            }
+        catch (Throwable ex) {
+            Debug.echoError(ex);
         }
-        return cache.tracker;
+        return true;
     }
 
-    public static Future loadAsync(UUID id) { // Note: this method is called sync, but triggers an async load
-        try {
+    /**
+     * Gets the cache entry for a player, creating an unloaded entry if it is not already cached.
+     * The boolean array (if given) is set to true when a new entry was created, in which case the caller is responsible for starting its load.
+     */
+    public static CachedPlayerFlag getOrCreate(UUID id, boolean[] created) {
+        synchronized (playerFlagTrackerCache) {
             CachedPlayerFlag cache = playerFlagTrackerCache.get(id);
             if (cache != null) {
-                return null;
-            }
-            SoftReference<CachedPlayerFlag> softRef = secondaryPlayerFlagTrackerCache.get(id);
-            if (softRef != null) {
-                cache = softRef.get();
-                if (cache != null) {
-                    cache.lastAccessed = System.currentTimeMillis();
-                    if (Debug.verbose) {
-                        Debug.echoError("Verbose - flag tracker updated for " + id);
-                    }
-                    playerFlagTrackerCache.put(id, cache);
-                    secondaryPlayerFlagTrackerCache.remove(id);
-                    return null;
-                }
+                cacheHits++;
+                cache.lastAccessed = System.currentTimeMillis();
+                cache.evicting = false;
+                return cache;
             }
+            cacheMisses++;
+            cacheLoads++;
             CachedPlayerFlag newCache = new CachedPlayerFlag();
             newCache.lastAccessed = System.currentTimeMillis();
             newCache.loadingNow = true;
+            newCache.loadFuture = new CompletableFuture<>();
             if (Debug.verbose) {
                 Debug.echoError("Verbose - flag tracker updated for " + id);
             }
             playerFlagTrackerCache.put(id, newCache);
-            CompletableFuture future = new CompletableFuture();
-            new BukkitRunnable() {
-                @Override
-                public void run() {
-                    loadFlags(id, newCache);
-                    future.complete(null);
-                }
-            }.runTaskAsynchronously(Denizen.getInstance());
-            return future;
+            created[0] = true;
+            return newCache;
+        }
+    }
+
+    /**
+     * Gets the cache entry for a player, starting a background load on the loader pool if it is not already cached.
+     */
+    public static CachedPlayerFlag getOrStartLoad(UUID id) {
+        boolean[] created = new boolean[1];
+        CachedPlayerFlag cache = getOrCreate(id, created);
+        if (created[0]) {
+            try {
+                getLoadExecutor().execute(() -> claimAndLoad(id, cache));
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+                claimAndLoad(id, cache);
+            }
+            enforceLimits();
+        }
+        return cache;
+    }
+
+    /**
+     * Starts loading a player's flags in the background if they are not already cached, to avoid a later main-thread wait.
+     * Returns a future that completes when the tracker is available.
+     * Only use this where the player's flags are known to be needed soon (such as batch lookups), as every prefetch takes a loader thread and a cache slot.
+     */
+    public static CompletableFuture<SavableMapFlagTracker> prefetch(UUID id) {
+        CachedPlayerFlag cache = getOrStartLoad(id);
+        if (cache.loadFuture == null) {
+            return CompletableFuture.completedFuture(cache.tracker);
+        }
+        return cache.loadFuture;
+    }
+
+    /**
+     * Calls the consumer with the flag tracker of each player in order, loading the next players in the list on the loader pool while earlier ones are handled.
+     */
+    public static void forEachTracker(List<UUID> ids, BiConsumer<UUID, AbstractFlagTracker> consumer) {
+        int window = Math.max(1, batchPrefetchWindow);
+        int prefetched = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            while (prefetched < ids.size() && prefetched < i + window) {
+                prefetch(ids.get(prefetched++));
+            }
+            UUID id = ids.get(i);
+            AbstractFlagTracker tracker = getTrackerFor(id);
+            if (tracker != null) {
+                consumer.accept(id, tracker);
+            }
+        }
+    }
+
+    /**
+     * Returns the player's flag tracker, waiting at most the given number of milliseconds for it to load.
+     * Returns null if the tracker is not available within the budget (the load continues in the background).
+     * If the load is still queued, it is run on the calling thread instead of waiting behind other queued loads.
+     */
+    public static SavableMapFlagTracker awaitTracker(UUID id, long budgetMillis) {
+        boolean[] created = new boolean[1];
+        CachedPlayerFlag cache = getOrCreate(id, created);
+        if (!cache.loadingNow) {
+            return cache.tracker;
+        }
+        boolean isMainThread = Bukkit.isPrimaryThread();
+        long start = System.nanoTime();
+        try {
+            if (claimAndLoad(id, cache)) {
+                return cache.tracker;
+            }
+            return cache.loadFuture.get(budgetMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            return null;
+        }
+        catch (Throwable ex) {
+            Debug.echoError(ex);
+            return cache.tracker;
+        }
+        finally {
+            if (isMainThread) {
+                mainThreadStalls++;
+                mainThreadStallNanos += System.nanoTime() - start;
+            }
+            if (created[0]) {
+                enforceLimits();
+            }
+        }
+    }
+
+    public static AbstractFlagTracker getTrackerFor(UUID id) {
+        SavableMapFlagTracker tracker;
+        if (Bukkit.isPrimaryThread()) {
+            tracker = awaitTracker(id, mainThreadBudgetMillis);
+            if (tracker == null) {
+                // Another thread is partway through reading this player's file, which is still faster than starting over
+                mainThreadBudgetOverruns++;
+                tracker = awaitTracker(id, Math.max(0, loadTimeoutMillis - mainThreadBudgetMillis));
+            }
+        }
+        else {
+            tracker = awaitTracker(id, loadTimeoutMillis);
+        }
+        if (tracker == null) {
+            Debug.echoError("Flag loading timeout, errors may follow");
+            synchronized (playerFlagTrackerCache) {
+                playerFlagTrackerCache.remove(id);
+            }
+        }
+        return tracker;
+    }
+
+    public static Future loadAsync(UUID id) { // Note: this method is called sync, but triggers an async load
+        try {
+            CachedPlayerFlag cache = getOrStartLoad(id);
+            return cache.loadingNow ? cache.loadFuture : null;
         }
         catch (Throwable ex) {
             Debug.echoError(ex);
@@ -233,28 +450,43 @@ public class PlayerFlagHandler implements Listener {
         }
     }
 
-    public static void saveAllNow(boolean canSleep) {
-        for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entrySet()) {
-            if (entry.getValue().tracker.modified) {
-                if (!canSleep && entry.getValue().savingNow || entry.getValue().loadingNow) {
-                    continue;
-                }
-                while (entry.getValue().savingNow || entry.getValue().loadingNow) {
-                    try {
-                        Thread.sleep(10);
-                    }
-                    catch (InterruptedException ex) {
-                        Debug.echoError(ex);
-                    }
-                }
-                entry.getValue().tracker.modified = false;
-                saveFlags(entry.getKey(), entry.getValue().tracker.toString());
+    /**
+     * Snapshots all modified player flag trackers and queues them to be written by the save pipeline.
+     * All player flag writes go through the same single I/O thread, so they never need to wait on each other.
+     */
+    public static void saveAllNow() {
+        List<Map.Entry<UUID, CachedPlayerFlag>> entries;
+        synchronized (playerFlagTrackerCache) {
+            entries = new ArrayList<>(playerFlagTrackerCache.entrySet());
+        }
+        for (Map.Entry<UUID, CachedPlayerFlag> entry : entries) {
+            CachedPlayerFlag cache = entry.getValue();
+            if (cache.loadingNow || cache.tracker == null) {
+                continue;
             }
+            if (!cache.tracker.modified) {
+                SavePipeline.markSkipped("player_flags");
+                continue;
+            }
+            UUID id = entry.getKey();
+            FlagFileHelper.Snapshot snapshot = FlagFileHelper.snapshot(cache.tracker);
+            SavePipeline.execute(() -> {
+                saveFlags(id, snapshot);
+                cache.estimatedBytes = snapshot.size;
+            });
         }
     }
 
     public static void saveFlags(UUID id, String flagData) {
+        long start = System.nanoTime();
         CoreUtilities.journallingFileSave(new File(dataFolder, id.toString() + ".dat").getPath(), flagData);
+        SavePipeline.recordWrite("player_flags", System.nanoTime() - start);
+    }
+
+    public static void saveFlags(UUID id, FlagFileHelper.Snapshot snapshot) {
+        long start = System.nanoTime();
+        FlagFileHelper.write(new File(dataFolder, id.toString()).getPath(), snapshot);
+        SavePipeline.recordWrite("player_flags", System.nanoTime() - start);
     }
 
     @EventHandler
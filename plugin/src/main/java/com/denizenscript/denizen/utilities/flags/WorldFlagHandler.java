@@ -2,6 +2,7 @@ package com.denizenscript.denizen.utilities.flags;
 
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.event.EventHandler;
@@ -12,11 +13,19 @@ import org.bukkit.event.world.WorldUnloadEvent;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class WorldFlagHandler implements Listener {
 
     public static HashMap<String, SavableMapFlagTracker> worldFlagTrackers = new HashMap<>();
 
+    /**
+     * The most recently queued flag write for each world, so a world that loads again can wait for just its own write.
+     */
+    public static HashMap<String, Future<?>> pendingSaves = new HashMap<>();
+
     public WorldFlagHandler() {
         Bukkit.getPluginManager().registerEvents(this, Denizen.getInstance());
     }
@@ -29,10 +38,14 @@ public class WorldFlagHandler implements Listener {
 
     public void saveAll() {
         for (Map.Entry<String, SavableMapFlagTracker> flagTracker : worldFlagTrackers.entrySet()) {
-            if (flagTracker.getValue().modified) {
-                flagTracker.getValue().saveToFile(flagPathFor(flagTracker.getKey()));
-                flagTracker.getValue().modified = false;
-            }
+            saveAsync(flagTracker.getKey(), flagTracker.getValue());
+        }
+    }
+
+    public static void saveAsync(String worldName, SavableMapFlagTracker tracker) {
+        Future<?> save = FlagFileHelper.saveAsync("world_flags", flagPathFor(worldName), tracker);
+        if (save != null) {
+            pendingSaves.put(worldName, save);
         }
     }
 
@@ -49,7 +62,20 @@ public class WorldFlagHandler implements Listener {
         if (worldFlagTrackers.containsKey(world.getName())) {
             return;
         }
-        worldFlagTrackers.put(world.getName(), SavableMapFlagTracker.loadFlagFile(flagPathFor(world.getName())));
+        // Only waits if this world's save is still pending (such as when a world is reloaded right after unloading)
+        Future<?> pendingSave = pendingSaves.remove(world.getName());
+        if (pendingSave != null && !pendingSave.isDone()) {
+            try {
+                pendingSave.get(30, TimeUnit.SECONDS);
+            }
+            catch (TimeoutException ex) {
+                Debug.echoError("Timed out waiting for the flags of world '" + world.getName() + "' to save.");
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        }
+        worldFlagTrackers.put(world.getName(), FlagFileHelper.load(flagPathFor(world.getName())));
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -60,9 +86,8 @@ public class WorldFlagHandler implements Listener {
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onWorldUnload(WorldUnloadEvent event) {
         SavableMapFlagTracker flags = worldFlagTrackers.remove(event.getWorld().getName());
-        if (flags != null && flags.modified) {
-            flags.modified = false;
-            flags.saveToFile(flagPathFor(event.getWorld().getName()));
+        if (flags != null) {
+            saveAsync(event.getWorld().getName(), flags);
         }
     }
 }
@@ -9,8 +9,10 @@ import com.denizenscript.denizen.scripts.containers.core.*;
 import com.denizenscript.denizen.tags.BukkitTagContext;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.debugging.DebugOutputBuffer;
 import com.denizenscript.denizen.utilities.debugging.DebugSubmit;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.matchers.MatcherCache;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.utilities.maps.DenizenMapManager;
 import com.denizenscript.denizencore.DenizenImplementation;
@@ -136,6 +138,8 @@ public class DenizenCoreImplementation implements DenizenImplementation {
         }
         // Give map image downloads a new chance
         DenizenMapManager.failedUrls.clear();
+        // Drop cached compiled matchers
+        MatcherCache.clearAll();
     }
 
     @Override
@@ -431,13 +435,17 @@ public class DenizenCoreImplementation implements DenizenImplementation {
     @Override
     public void startRecording() {
         Debug.record = true;
-        Debug.recording = new StringBuilder();
+        synchronized (Debug.recordingLock) {
+            Debug.recording = new StringBuilder();
+        }
     }
 
     @Override
     public void stopRecording() {
         Debug.record = false;
-        Debug.recording = new StringBuilder();
+        synchronized (Debug.recordingLock) {
+            Debug.recording = new StringBuilder();
+        }
     }
 
     @Override
@@ -446,10 +454,14 @@ public class DenizenCoreImplementation implements DenizenImplementation {
             processResult.accept("disabled");
             return;
         }
+        // Make sure lines still waiting on the debug output thread make it into the recording
+        DebugOutputBuffer.flushInstance(1000);
         Debug.record = false;
         final DebugSubmit submit = new DebugSubmit();
-        submit.recording = Debug.recording.toString();
-        Debug.recording = new StringBuilder();
+        synchronized (Debug.recordingLock) {
+            submit.recording = Debug.recording.toString();
+            Debug.recording = new StringBuilder();
+        }
         submit.start();
         BukkitRunnable task = new BukkitRunnable() {
             public void run() {
@@ -0,0 +1,291 @@
+package com.denizenscript.denizen.utilities.inventory;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.events.BukkitScriptEvent;
+import com.denizenscript.denizen.objects.ItemTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.*;
+import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Caches a summary of each queried inventory's contents (the parsed items, and item counts by material, script, flag, and matcher),
+ * so that repeated count/contains/find queries against the same inventory don't re-parse every item each time.
+ * Summaries only live for the current tick, as many inventory changes (from the server itself or other plugins) fire no event.
+ * Within a tick, a summary is dropped whenever Denizen changes the inventory or an entity's equipment (see 'markModified').
+ * Inventory events are handled before the server applies the change, so inventories they affect aren't cached again for the rest of the tick.
+ */
+public class InventoryContentIndex implements Listener {
+
+    public static class Summary {
+
+        /**
+         * The item in each slot, or null for empty slots.
+         */
+        public final ItemTag[] items;
+
+        /**
+         * Total amounts of items that aren't item scripts, by material.
+         */
+        public final HashMap<Material, Integer> plainMaterialCounts = new HashMap<>();
+
+        /**
+         * Total amounts of item script items, by lowercased script name.
+         */
+        public final HashMap<String, Integer> scriptCounts = new HashMap<>();
+
+        // Filled in as queries come in
+        public HashMap<String, Integer> flagCounts, matcherCounts, matcherFirstSlots, identifyCounts;
+
+        public Summary(ItemStack[] contents) {
+            items = new ItemTag[contents.length];
+            for (int i = 0; i < contents.length; i++) {
+                ItemStack stack = contents[i];
+                if (stack == null || stack.getType() == Material.AIR) {
+                    continue;
+                }
+                ItemTag item = new ItemTag(stack);
+                items[i] = item;
+                String scriptName = item.getScriptName();
+                if (scriptName == null) {
+                    plainMaterialCounts.merge(stack.getType(), stack.getAmount(), Integer::sum);
+                }
+                else {
+                    scriptCounts.merge(CoreUtilities.toLowerCase(scriptName), stack.getAmount(), Integer::sum);
+                }
+            }
+        }
+
+        public int countByMaterial(Material material) {
+            return plainMaterialCounts.getOrDefault(material, 0);
+        }
+
+        public int countByScriptName(String scriptName) {
+            return scriptCounts.getOrDefault(CoreUtilities.toLowerCase(scriptName), 0);
+        }
+
+        public int countByFlag(String flag) {
+            if (flagCounts == null) {
+                flagCounts = new HashMap<>();
+            }
+            Integer result = flagCounts.get(flag);
+            if (result == null) {
+                int total = 0;
+                for (ItemTag item : items) {
+                    if (item != null && item.hasFlagFast(flag)) {
+                        total += item.getAmount();
+                    }
+                }
+                result = total;
+                flagCounts.put(flag, result);
+            }
+            return result;
+        }
+
+        /**
+         * Returns the total amount of items that match the given item matcher.
+         */
+        public int countByMatcher(String matcher) {
+            if (matcherCounts == null) {
+                matcherCounts = new HashMap<>();
+                matcherFirstSlots = new HashMap<>();
+            }
+            Integer result = matcherCounts.get(matcher);
+            if (result == null) {
+                int total = 0;
+                int firstSlot = -1;
+                for (int i = 0; i < items.length; i++) {
+                    ItemTag item = items[i];
+                    if (item != null && BukkitScriptEvent.tryItem(item, matcher)) {
+                        total += item.getAmount();
+                        if (firstSlot == -1) {
+                            firstSlot = i;
+                        }
+                    }
+                }
+                result = total;
+                matcherCounts.put(matcher, result);
+                matcherFirstSlots.put(matcher, firstSlot);
+            }
+            return result;
+        }
+
+        /**
+         * Returns whether the inventory holds at least the given amount of items that match the given item matcher.
+         * If the matcher hasn't been counted yet, this stops scanning as soon as enough items are found.
+         */
+        public boolean containsByMatcher(String matcher, int quantity) {
+            if (quantity <= 0) {
+                return true;
+            }
+            if (matcherCounts != null) {
+                Integer result = matcherCounts.get(matcher);
+                if (result != null) {
+                    return result >= quantity;
+                }
+            }
+            int total = 0;
+            for (ItemTag item : items) {
+                if (item != null && BukkitScriptEvent.tryItem(item, matcher)) {
+                    total += item.getAmount();
+                    if (total >= quantity) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the first slot (zero-based) that contains an item matching the given item matcher, or -1 if none do.
+         */
+        public int findByMatcher(String matcher) {
+            countByMatcher(matcher);
+            return matcherFirstSlots.get(matcher);
+        }
+
+        /**
+         * Returns the total amount of items that are the same as the given item (ignoring amount), as compared by their lowercased identity with an amount of 1.
+         */
+        public int countByIdentity(String identify) {
+            if (identifyCounts == null) {
+                identifyCounts = new HashMap<>();
+                for (ItemTag item : items) {
+                    if (item != null) {
+                        int amount = item.getAmount();
+                        ItemTag single = new ItemTag(item.getItemStack());
+                        single.setAmount(1);
+                        identifyCounts.merge(CoreUtilities.toLowerCase(single.identify()), amount, Integer::sum);
+                    }
+                }
+            }
+            return identifyCounts.getOrDefault(identify, 0);
+        }
+
+        public int countAll() {
+            int total = 0;
+            for (ItemTag item : items) {
+                if (item != null) {
+                    total += item.getAmount();
+                }
+            }
+            return total;
+        }
+    }
+
+    public static final HashMap<Inventory, Summary> summaries = new HashMap<>();
+
+    /**
+     * Inventories with a change from an event that the server hasn't applied yet, which can't be cached until next tick.
+     */
+    public static final HashSet<Inventory> pendingChanges = new HashSet<>();
+
+    public static long hits = 0, misses = 0;
+
+    /**
+     * Returns the content summary of the inventory, computing it if it isn't cached.
+     */
+    public static Summary get(Inventory inventory) {
+        if (!Bukkit.isPrimaryThread() || pendingChanges.contains(inventory)) {
+            return new Summary(inventory.getContents());
+        }
+        Summary summary = summaries.get(inventory);
+        if (summary != null) {
+            hits++;
+            return summary;
+        }
+        misses++;
+        summary = new Summary(inventory.getContents());
+        summaries.put(inventory, summary);
+        return summary;
+    }
+
+    /**
+     * Drops the cached summary of an inventory that was just changed.
+     */
+    public static void markModified(Inventory inventory) {
+        if (inventory != null && !summaries.isEmpty() && Bukkit.isPrimaryThread()) {
+            summaries.remove(inventory);
+        }
+    }
+
+    /**
+     * Drops the cached summary of the inventory of an entity whose inventory or equipment was just changed.
+     * Entities without an inventory are ignored.
+     */
+    public static void markModified(Entity entity) {
+        if (entity instanceof InventoryHolder) {
+            markModified(((InventoryHolder) entity).getInventory());
+        }
+    }
+
+    /**
+     * Drops the cached summary of an inventory that an event is about to change, and stops it being cached again this tick.
+     */
+    public static void markPendingChange(Inventory inventory) {
+        if (inventory != null) {
+            summaries.remove(inventory);
+            pendingChanges.add(inventory);
+        }
+    }
+
+    public static void setup() {
+        Bukkit.getScheduler().scheduleSyncRepeatingTask(Denizen.getInstance(), () -> {
+            if (!summaries.isEmpty()) {
+                summaries.clear();
+            }
+            if (!pendingChanges.isEmpty()) {
+                pendingChanges.clear();
+            }
+        }, 1, 1);
+        Bukkit.getPluginManager().registerEvents(new InventoryContentIndex(), Denizen.getInstance());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryClick(InventoryClickEvent event) {
+        markPendingChange(event.getView().getTopInventory());
+        markPendingChange(event.getView().getBottomInventory());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        markPendingChange(event.getView().getTopInventory());
+        markPendingChange(event.getView().getBottomInventory());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryMoveItem(InventoryMoveItemEvent event) {
+        markPendingChange(event.getSource());
+        markPendingChange(event.getDestination());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryPickupItem(InventoryPickupItemEvent event) {
+        markPendingChange(event.getInventory());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityPickupItem(EntityPickupItemEvent event) {
+        if (event.getEntity() instanceof HumanEntity) {
+            markPendingChange(((HumanEntity) event.getEntity()).getInventory());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerDropItem(PlayerDropItemEvent event) {
+        markPendingChange(event.getPlayer().getInventory());
+    }
+}
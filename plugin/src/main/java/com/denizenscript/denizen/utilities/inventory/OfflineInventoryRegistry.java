@@ -0,0 +1,228 @@
+package com.denizenscript.denizen.utilities.inventory;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import java.util.*;
+
+/**
+ * Tracks the live inventory and ender chest objects of offline players, so every script that edits an offline player's inventory sees the same object.
+ * Lookups work both ways: by player UUID, and from an inventory back to its owner.
+ * Reverse lookups key on the inventory itself, which in CraftBukkit is equal (and hashes the same) for every wrapper of the same underlying container.
+ * Inventories that nobody is viewing and that haven't been used for a while are written back into the player's data (if changed) and dropped.
+ */
+public class OfflineInventoryRegistry {
+
+    public static class Entry<T extends Inventory> {
+
+        public final UUID owner;
+
+        public final T inventory;
+
+        public long lastAccessed;
+
+        /**
+         * A copy of the contents as they were when loaded or last saved, to tell whether the inventory needs saving.
+         * Compared by content rather than tracked through edits, as an inventory can be changed by many things that Denizen doesn't see (like a player clicking in it).
+         */
+        public ItemStack[] savedContents;
+
+        public Entry(UUID owner, T inventory) {
+            this.owner = owner;
+            this.inventory = inventory;
+            this.lastAccessed = System.currentTimeMillis();
+            markSaved();
+        }
+
+        public boolean isChanged() {
+            return !Arrays.equals(savedContents, inventory.getContents());
+        }
+
+        public void markSaved() {
+            ItemStack[] contents = inventory.getContents();
+            savedContents = new ItemStack[contents.length];
+            for (int i = 0; i < contents.length; i++) {
+                // Contents can be live views of the inventory's items, so must be copied
+                savedContents[i] = contents[i] == null ? null : contents[i].clone();
+            }
+        }
+    }
+
+    /**
+     * How long (in seconds) an inventory with no viewers stays registered after it was last used.
+     */
+    public static long idleTimeoutSeconds = 300;
+
+    public static long evictions = 0;
+
+    public static final HashMap<UUID, Entry<PlayerInventory>> inventories = new HashMap<>();
+
+    public static final HashMap<UUID, Entry<Inventory>> enderChests = new HashMap<>();
+
+    public static final HashMap<Inventory, UUID> inventoryOwners = new HashMap<>();
+
+    public static final HashMap<Inventory, UUID> enderChestOwners = new HashMap<>();
+
+    public static PlayerInventory getInventory(UUID owner) {
+        Entry<PlayerInventory> entry = inventories.get(owner);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccessed = System.currentTimeMillis();
+        return entry.inventory;
+    }
+
+    public static Inventory getEnderChest(UUID owner) {
+        Entry<Inventory> entry = enderChests.get(owner);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccessed = System.currentTimeMillis();
+        return entry.inventory;
+    }
+
+    public static void putInventory(UUID owner, PlayerInventory inventory) {
+        Entry<PlayerInventory> old = inventories.put(owner, new Entry<>(owner, inventory));
+        if (old != null) {
+            inventoryOwners.remove(old.inventory);
+        }
+        inventoryOwners.put(inventory, owner);
+    }
+
+    public static void putEnderChest(UUID owner, Inventory inventory) {
+        Entry<Inventory> old = enderChests.put(owner, new Entry<>(owner, inventory));
+        if (old != null) {
+            enderChestOwners.remove(old.inventory);
+        }
+        enderChestOwners.put(inventory, owner);
+    }
+
+    /**
+     * Returns the UUID of the offline player that owns the inventory, or null if it isn't a registered offline player inventory.
+     */
+    public static UUID getInventoryOwner(Inventory inventory) {
+        return inventoryOwners.get(inventory);
+    }
+
+    public static UUID getEnderChestOwner(Inventory inventory) {
+        return enderChestOwners.get(inventory);
+    }
+
+    public static PlayerInventory removeInventory(UUID owner) {
+        Entry<PlayerInventory> entry = inventories.remove(owner);
+        if (entry == null) {
+            return null;
+        }
+        inventoryOwners.remove(entry.inventory);
+        return entry.inventory;
+    }
+
+    public static Inventory removeEnderChest(UUID owner) {
+        Entry<Inventory> entry = enderChests.remove(owner);
+        if (entry == null) {
+            return null;
+        }
+        enderChestOwners.remove(entry.inventory);
+        return entry.inventory;
+    }
+
+    /**
+     * Writes the player's registered inventory (if any, and if changed since it was loaded or last saved) back into their offline data.
+     */
+    public static void saveInventory(UUID owner) {
+        Entry<PlayerInventory> entry = inventories.get(owner);
+        if (entry != null && entry.isChanged()) {
+            NMSHandler.getPlayerHelper().getOfflineData(owner).setInventory(entry.inventory);
+            entry.markSaved();
+        }
+    }
+
+    public static void saveEnderChest(UUID owner) {
+        Entry<Inventory> entry = enderChests.get(owner);
+        if (entry != null && entry.isChanged()) {
+            NMSHandler.getPlayerHelper().getOfflineData(owner).setEnderChest(entry.inventory);
+            entry.markSaved();
+        }
+    }
+
+    /**
+     * Returns the owners of the given entries whose contents changed since they were loaded or last saved.
+     */
+    public static List<UUID> getChangedOwners(Collection<? extends Entry<?>> entries) {
+        List<UUID> owners = new ArrayList<>();
+        for (Entry<?> entry : entries) {
+            if (entry.isChanged()) {
+                owners.add(entry.owner);
+            }
+        }
+        return owners;
+    }
+
+    public static void saveAll() {
+        OfflinePlayerDataCache.forEachPrefetched(getChangedOwners(inventories.values()), OfflineInventoryRegistry::saveInventory);
+        OfflinePlayerDataCache.forEachPrefetched(getChangedOwners(enderChests.values()), OfflineInventoryRegistry::saveEnderChest);
+    }
+
+    public static boolean isIdle(Entry<?> entry, long idleBefore) {
+        return entry.lastAccessed < idleBefore && entry.inventory.getViewers().isEmpty();
+    }
+
+    /**
+     * Saves (if changed) and removes all inventories that have no viewers and haven't been used within the idle timeout.
+     */
+    public static void evictIdle() {
+        if (idleTimeoutSeconds < 0) {
+            return;
+        }
+        long idleBefore = System.currentTimeMillis() - idleTimeoutSeconds * 1000;
+        // Unchanged inventories are dropped right away, without loading their owner's data
+        List<UUID> idleInventories = new ArrayList<>();
+        for (Entry<PlayerInventory> entry : new ArrayList<>(inventories.values())) {
+            if (isIdle(entry, idleBefore)) {
+                if (entry.isChanged()) {
+                    idleInventories.add(entry.owner);
+                }
+                else {
+                    removeInventory(entry.owner);
+                    evictions++;
+                }
+            }
+        }
+        List<UUID> idleEnderChests = new ArrayList<>();
+        for (Entry<Inventory> entry : new ArrayList<>(enderChests.values())) {
+            if (isIdle(entry, idleBefore)) {
+                if (entry.isChanged()) {
+                    idleEnderChests.add(entry.owner);
+                }
+                else {
+                    removeEnderChest(entry.owner);
+                    evictions++;
+                }
+            }
+        }
+        OfflinePlayerDataCache.forEachPrefetched(idleInventories, owner -> {
+            try {
+                saveInventory(owner);
+                removeInventory(owner);
+                evictions++;
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        });
+        OfflinePlayerDataCache.forEachPrefetched(idleEnderChests, owner -> {
+            try {
+                saveEnderChest(owner);
+                removeEnderChest(owner);
+                evictions++;
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        });
+    }
+}
@@ -0,0 +1,144 @@
+package com.denizenscript.denizen.utilities.matchers;
+
+import com.denizenscript.denizen.objects.EntityTag;
+import com.denizenscript.denizencore.events.ScriptEvent;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.entity.*;
+
+/**
+ * A precompiled form of an entity matcher, as used by BukkitScriptEvent.tryEntity.
+ * Special entity categories (like "living" or "monster") compile to a simple class check.
+ */
+public abstract class EntityMatcher {
+
+    public static final MatcherCache<EntityMatcher> cache = new MatcherCache<>(EntityMatcher::compile);
+
+    public static EntityMatcher get(String raw) {
+        return cache.get(raw);
+    }
+
+    public abstract boolean matches(EntityTag entity);
+
+    public static class AlwaysEntityMatcher extends EntityMatcher {
+
+        @Override
+        public boolean matches(EntityTag entity) {
+            return true;
+        }
+    }
+
+    public static class NPCEntityMatcher extends EntityMatcher {
+
+        @Override
+        public boolean matches(EntityTag entity) {
+            return entity.isCitizensNPC();
+        }
+    }
+
+    public static class PlayerEntityMatcher extends EntityMatcher {
+
+        @Override
+        public boolean matches(EntityTag entity) {
+            return entity.isPlayer();
+        }
+    }
+
+    public static class ClassEntityMatcher extends EntityMatcher {
+
+        public Class<?> entityClass;
+
+        public ClassEntityMatcher(Class<?> entityClass) {
+            this.entityClass = entityClass;
+        }
+
+        @Override
+        public boolean matches(EntityTag entity) {
+            return entityClass.isInstance(entity.getBukkitEntity());
+        }
+    }
+
+    public static class FlaggedEntityMatcher extends EntityMatcher {
+
+        public String flag;
+
+        public boolean requirePlayer, requireNPC;
+
+        @Override
+        public boolean matches(EntityTag entity) {
+            if (requirePlayer && !entity.isPlayer()) {
+                return false;
+            }
+            if (requireNPC && !entity.isCitizensNPC()) {
+                return false;
+            }
+            return entity.getFlagTracker().hasFlag(flag);
+        }
+    }
+
+    public static class GeneralEntityMatcher extends EntityMatcher {
+
+        public ScriptEvent.MatchHelper matcher;
+
+        public boolean inverse;
+
+        @Override
+        public boolean matches(EntityTag entity) {
+            boolean found = (entity.getEntityScript() != null && matcher.doesMatch(entity.getEntityScript()))
+                    || matcher.doesMatch(entity.getEntityType().getLowercaseName());
+            return found != inverse;
+        }
+    }
+
+    public static EntityMatcher compile(String raw) {
+        String lower = CoreUtilities.toLowerCase(raw);
+        switch (lower) {
+            case "entity":
+                return new AlwaysEntityMatcher();
+            case "npc":
+                return new NPCEntityMatcher();
+            case "player":
+                return new PlayerEntityMatcher();
+            case "living":
+                return new ClassEntityMatcher(LivingEntity.class);
+            case "vehicle":
+                return new ClassEntityMatcher(Vehicle.class);
+            case "fish":
+                return new ClassEntityMatcher(Fish.class);
+            case "projectile":
+                return new ClassEntityMatcher(Projectile.class);
+            case "hanging":
+                return new ClassEntityMatcher(Hanging.class);
+            case "monster":
+                return new ClassEntityMatcher(Monster.class);
+            case "mob":
+                return new ClassEntityMatcher(Mob.class);
+            case "animal":
+                return new ClassEntityMatcher(Animals.class);
+        }
+        if (lower.contains(":")) {
+            FlaggedEntityMatcher flagged = new FlaggedEntityMatcher();
+            if (lower.startsWith("entity_flagged:")) {
+                flagged.flag = lower.substring("entity_flagged:".length());
+                return flagged;
+            }
+            else if (lower.startsWith("player_flagged:")) {
+                flagged.flag = lower.substring("player_flagged:".length());
+                flagged.requirePlayer = true;
+                return flagged;
+            }
+            else if (lower.startsWith("npc_flagged:")) {
+                flagged.flag = lower.substring("npc_flagged:".length());
+                flagged.requireNPC = true;
+                return flagged;
+            }
+        }
+        GeneralEntityMatcher general = new GeneralEntityMatcher();
+        ScriptEvent.MatchHelper matcher = ScriptEvent.createMatcher(lower);
+        if (matcher instanceof ScriptEvent.InverseMatchHelper) {
+            general.inverse = true;
+            matcher = ((ScriptEvent.InverseMatchHelper) matcher).matcher;
+        }
+        general.matcher = matcher;
+        return general;
+    }
+}
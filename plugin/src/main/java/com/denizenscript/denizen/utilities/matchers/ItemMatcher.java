@@ -0,0 +1,150 @@
+package com.denizenscript.denizen.utilities.matchers;
+
+import com.denizenscript.denizen.objects.ItemTag;
+import com.denizenscript.denizencore.events.ScriptEvent;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A precompiled form of an item matcher, as used by BukkitScriptEvent.tryItem.
+ */
+public abstract class ItemMatcher {
+
+    public static final MatcherCache<ItemMatcher> cache = new MatcherCache<>(ItemMatcher::compile);
+
+    public static ItemMatcher get(String raw) {
+        return cache.get(raw);
+    }
+
+    public abstract boolean matches(ItemTag item);
+
+    public static class AlwaysItemMatcher extends ItemMatcher {
+
+        @Override
+        public boolean matches(ItemTag item) {
+            return true;
+        }
+    }
+
+    public static class FlaggedItemMatcher extends ItemMatcher {
+
+        public List<String> flags;
+
+        @Override
+        public boolean matches(ItemTag item) {
+            for (String flag : flags) {
+                if (!item.hasFlagFast(flag)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static class EnchantedItemMatcher extends ItemMatcher {
+
+        public HashSet<Enchantment> enchantments = new HashSet<>();
+
+        @Override
+        public boolean matches(ItemTag item) {
+            if (!item.getItemMeta().hasEnchants()) {
+                return false;
+            }
+            for (Enchantment enchant : item.getItemMeta().getEnchants().keySet()) {
+                if (enchantments.contains(enchant)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static class RawExactItemMatcher extends ItemMatcher {
+
+        public String itemText;
+
+        @Override
+        public boolean matches(ItemTag item) {
+            ItemTag compareItem = ItemTag.valueOf(itemText, CoreUtilities.errorButNoDebugContext);
+            return compareItem != null && compareItem.matchesRawExact(item);
+        }
+    }
+
+    public static class MaterialItemMatcher extends ItemMatcher {
+
+        public EnumSet<Material> materials;
+
+        @Override
+        public boolean matches(ItemTag item) {
+            return materials.contains(item.getItemStack().getType());
+        }
+    }
+
+    public static class GeneralItemMatcher extends ItemMatcher {
+
+        public ScriptEvent.MatchHelper scriptMatcher;
+
+        public EnumSet<Material> materials;
+
+        public boolean allowPotions;
+
+        @Override
+        public boolean matches(ItemTag item) {
+            Material material = item.getBukkitMaterial();
+            if (allowPotions && CoreUtilities.toLowerCase(material.name()).contains("potion")) {
+                return true;
+            }
+            if (item.isItemscript()) {
+                return scriptMatcher.doesMatch(item.getScriptName());
+            }
+            return materials.contains(material);
+        }
+    }
+
+    public static ItemMatcher compile(String raw) {
+        String lower = CoreUtilities.toLowerCase(raw);
+        if (lower.startsWith("item_flagged:")) {
+            FlaggedItemMatcher matcher = new FlaggedItemMatcher();
+            matcher.flags = CoreUtilities.split(raw.substring("item_flagged:".length()), '|');
+            return matcher;
+        }
+        if (lower.startsWith("item_enchanted:")) {
+            EnchantedItemMatcher matcher = new EnchantedItemMatcher();
+            String enchMatcher = lower.substring("item_enchanted:".length());
+            for (Enchantment enchantment : Enchantment.values()) {
+                if (ScriptEvent.runGenericCheck(enchMatcher, enchantment.getKey().getKey())) {
+                    matcher.enchantments.add(enchantment);
+                }
+            }
+            return matcher;
+        }
+        if (lower.startsWith("raw_exact:")) {
+            RawExactItemMatcher matcher = new RawExactItemMatcher();
+            matcher.itemText = raw.substring("raw_exact:".length());
+            return matcher;
+        }
+        if (lower.startsWith("vanilla_tagged:")) {
+            MaterialItemMatcher matcher = new MaterialItemMatcher();
+            matcher.materials = MaterialMatcher.getVanillaTagged(lower.substring("vanilla_tagged:".length()));
+            return matcher;
+        }
+        if (lower.equals("item")) {
+            return new AlwaysItemMatcher();
+        }
+        GeneralItemMatcher matcher = new GeneralItemMatcher();
+        matcher.allowPotions = lower.equals("potion");
+        matcher.scriptMatcher = ScriptEvent.createMatcher(lower);
+        matcher.materials = EnumSet.noneOf(Material.class);
+        for (Material material : Material.values()) {
+            if (matcher.scriptMatcher.doesMatch(CoreUtilities.toLowerCase(material.name()))) {
+                matcher.materials.add(material);
+            }
+        }
+        return matcher;
+    }
+}
@@ -0,0 +1,67 @@
+package com.denizenscript.denizen.utilities.matchers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded, least-recently-used interning cache of compiled matchers, keyed by the raw matcher string.
+ */
+public class MatcherCache<T> {
+
+    public static List<MatcherCache<?>> allCaches = new ArrayList<>();
+
+    /**
+     * Clears all matcher caches, for use when scripts or other matchable data are reloaded.
+     */
+    public static void clearAll() {
+        for (MatcherCache<?> cache : allCaches) {
+            cache.clear();
+        }
+    }
+
+    public static int DEFAULT_MAX_SIZE = 2048;
+
+    public final Function<String, T> compiler;
+
+    public final LinkedHashMap<String, T> cache;
+
+    public long hits = 0, misses = 0;
+
+    public MatcherCache(Function<String, T> compiler) {
+        this(compiler, DEFAULT_MAX_SIZE);
+    }
+
+    public MatcherCache(Function<String, T> compiler, int maxSize) {
+        this.compiler = compiler;
+        this.cache = new LinkedHashMap<String, T>(128, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > maxSize;
+            }
+        };
+        allCaches.add(this);
+    }
+
+    public synchronized T get(String raw) {
+        T result = cache.get(raw);
+        if (result != null) {
+            hits++;
+            return result;
+        }
+        misses++;
+        result = compiler.apply(raw);
+        cache.put(raw, result);
+        return result;
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,74 @@
+package com.denizenscript.denizen.utilities.matchers;
+
+import com.denizenscript.denizen.objects.MaterialTag;
+import com.denizenscript.denizen.utilities.VanillaTagHelper;
+import com.denizenscript.denizencore.events.ScriptEvent;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Material;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * A precompiled form of a material matcher, as used by BukkitScriptEvent.tryMaterial.
+ * All matchers other than the catch-alls are resolved into a set of matching materials at compile time.
+ */
+public class MaterialMatcher {
+
+    public static final MaterialMatcher ALWAYS = new MaterialMatcher(null);
+
+    public static final MatcherCache<MaterialMatcher> cache = new MatcherCache<>(MaterialMatcher::compile);
+
+    public static MaterialMatcher get(String raw) {
+        return cache.get(raw);
+    }
+
+    public static MaterialMatcher compile(String raw) {
+        String lower = CoreUtilities.toLowerCase(raw);
+        if (lower.equals("block") || lower.equals("material")) {
+            return ALWAYS;
+        }
+        EnumSet<Material> materials = EnumSet.noneOf(Material.class);
+        if (lower.startsWith("vanilla_tagged:")) {
+            materials.addAll(getVanillaTagged(lower.substring("vanilla_tagged:".length())));
+            return new MaterialMatcher(materials);
+        }
+        MaterialTag quickOf = MaterialTag.quickOfNamed(lower);
+        if (quickOf != null) {
+            materials.add(quickOf.getMaterial());
+            return new MaterialMatcher(materials);
+        }
+        ScriptEvent.MatchHelper matcher = ScriptEvent.createMatcher(lower);
+        for (Material material : Material.values()) {
+            if (matcher.doesMatch(material.name())) {
+                materials.add(material);
+            }
+        }
+        return new MaterialMatcher(materials);
+    }
+
+    public static EnumSet<Material> getVanillaTagged(String tagMatcher) {
+        EnumSet<Material> materials = EnumSet.noneOf(Material.class);
+        ScriptEvent.MatchHelper matcher = ScriptEvent.createMatcher(tagMatcher);
+        for (Map.Entry<String, HashSet<Material>> tag : VanillaTagHelper.tagsByKey.entrySet()) {
+            if (matcher.doesMatch(tag.getKey())) {
+                materials.addAll(tag.getValue());
+            }
+        }
+        return materials;
+    }
+
+    public final EnumSet<Material> materials;
+
+    public MaterialMatcher(EnumSet<Material> materials) {
+        this.materials = materials;
+    }
+
+    public boolean matches(Material material) {
+        if (material == null) {
+            return false;
+        }
+        return materials == null || materials.contains(material);
+    }
+}
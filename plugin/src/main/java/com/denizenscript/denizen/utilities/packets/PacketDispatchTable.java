@@ -0,0 +1,125 @@
+package com.denizenscript.denizen.utilities.packets;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Routes outgoing packets to only the interception handlers registered for that packet's class.
+ * Each handler declares the packet types it handles and an 'active' check, so packets that no feature cares about skip straight through,
+ * and idle features are skipped without running any of their own packet checks.
+ * Handlers run in registration order, and a handler returning true consumes the packet (no later handler runs, and the original isn't sent).
+ */
+public class PacketDispatchTable<T, P, L> {
+
+    @FunctionalInterface
+    public interface Processor<T, P, L> {
+
+        boolean process(T manager, P packet, L listener);
+    }
+
+    public static class Handler<T, P, L> {
+
+        public final String name;
+
+        public final Class<?>[] packetTypes;
+
+        public final BooleanSupplier isActive;
+
+        public final Processor<T, P, L> processor;
+
+        public final LongAdder calls = new LongAdder(), consumed = new LongAdder(), nanos = new LongAdder();
+
+        public Handler(String name, Class<?>[] packetTypes, BooleanSupplier isActive, Processor<T, P, L> processor) {
+            this.name = name;
+            this.packetTypes = packetTypes;
+            this.isActive = isActive;
+            this.processor = processor;
+        }
+
+        public boolean handles(Class<?> packetClass) {
+            for (Class<?> type : packetTypes) {
+                if (type.isAssignableFrom(packetClass)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The dispatch table used by the current server version's network manager, for metrics output.
+     */
+    public static PacketDispatchTable<?, ?, ?> instance;
+
+    public final List<Handler<T, P, L>> handlers = new ArrayList<>();
+
+    /**
+     * The handlers for each packet class seen so far. The lists are never modified once added, so can be read from any thread.
+     */
+    public final Map<Class<?>, List<Handler<T, P, L>>> handlersByClass = new ConcurrentHashMap<>();
+
+    public PacketDispatchTable() {
+        instance = this;
+    }
+
+    /**
+     * Registers a handler for the given packet types (and their subclasses).
+     * The active check should be a cheap test for whether the feature is in use at all (eg an 'isEmpty' check on its tracking map), or null if the handler is always active.
+     */
+    public void register(String name, BooleanSupplier isActive, Processor<T, P, L> processor, Class<?>... packetTypes) {
+        handlers.add(new Handler<>(name, packetTypes, isActive, processor));
+        handlersByClass.clear();
+    }
+
+    public List<Handler<T, P, L>> getHandlers(Class<?> packetClass) {
+        List<Handler<T, P, L>> result = handlersByClass.get(packetClass);
+        if (result == null) {
+            List<Handler<T, P, L>> matching = new ArrayList<>();
+            for (Handler<T, P, L> handler : handlers) {
+                if (handler.handles(packetClass)) {
+                    matching.add(handler);
+                }
+            }
+            result = matching.isEmpty() ? Collections.emptyList() : matching;
+            handlersByClass.put(packetClass, result);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the active handlers for the packet, returning true if any of them consumed it.
+     * Call counts are always tracked, and time spent per handler is tracked while packet debugging is enabled.
+     */
+    public boolean dispatch(T manager, P packet, L listener) {
+        List<Handler<T, P, L>> packetHandlers = getHandlers(packet.getClass());
+        // Indexed loop, as this runs for every outgoing packet
+        for (int i = 0; i < packetHandlers.size(); i++) {
+            Handler<T, P, L> handler = packetHandlers.get(i);
+            if (handler.isActive != null && !handler.isActive.getAsBoolean()) {
+                continue;
+            }
+            handler.calls.increment();
+            boolean result;
+            if (NMSHandler.debugPackets) {
+                long start = System.nanoTime();
+                result = handler.processor.process(manager, packet, listener);
+                handler.nanos.add(System.nanoTime() - start);
+            }
+            else {
+                result = handler.processor.process(manager, packet, listener);
+            }
+            if (result) {
+                handler.consumed.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -6,6 +6,7 @@ import com.denizenscript.denizen.nms.v1_14.impl.network.handlers.DenizenNetworkM
 import com.mojang.authlib.GameProfile;
 import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
 import com.denizenscript.denizen.nms.interfaces.PlayerHelper;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.minecraft.server.v1_14_R1.*;
@@ -155,12 +156,17 @@ public class PlayerHelperImpl extends PlayerHelper {
 
     @Override
     public ImprovedOfflinePlayer getOfflineData(UUID uuid) {
-        return new ImprovedOfflinePlayerImpl(uuid);
+        return OfflinePlayerDataCache.get(uuid, ImprovedOfflinePlayerImpl::new);
     }
 
     @Override
     public ImprovedOfflinePlayer getOfflineData(OfflinePlayer offlinePlayer) {
-        return new ImprovedOfflinePlayerImpl(offlinePlayer.getUniqueId());
+        return OfflinePlayerDataCache.get(offlinePlayer.getUniqueId(), ImprovedOfflinePlayerImpl::new);
+    }
+
+    @Override
+    public void prefetchOfflineData(UUID uuid) {
+        OfflinePlayerDataCache.prefetch(uuid, ImprovedOfflinePlayerImpl::new);
     }
 
     @Override
@@ -5,52 +5,70 @@ import com.denizenscript.denizen.nms.abstracts.Sidebar;
 import net.minecraft.server.v1_14_R1.*;
 import org.bukkit.entity.Player;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class SidebarImpl extends Sidebar {
 
     private static final Scoreboard dummyScoreboard = new Scoreboard();
     private static final IScoreboardCriteria dummyCriteria = new IScoreboardCriteria("dummy"); // what
 
-    private ScoreboardObjective obj1;
-    private ScoreboardObjective obj2;
+    private ScoreboardObjective obj;
+
+    /**
+     * What the client currently has: whether the objective exists, and the score of each line.
+     * Lines are shown by their own text, so each distinct text is only shown once.
+     */
+    public boolean shown = false;
+    public String shownTitle;
+    public HashMap<String, Integer> shownScores = new HashMap<>();
 
     public SidebarImpl(Player player) {
         super(player);
         IChatBaseComponent chatComponentTitle = new ChatComponentText(title);
-        this.obj1 = new ScoreboardObjective(dummyScoreboard, "dummy_1", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
-        this.obj2 = new ScoreboardObjective(dummyScoreboard, "dummy_2", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
+        this.obj = new ScoreboardObjective(dummyScoreboard, "dummy_1", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
+        shownTitle = title;
     }
 
     @Override
-    protected void setDisplayName(String title) {
-        if (this.obj1 != null) {
-            IChatBaseComponent chatComponentTitle = new ChatComponentText(title);
-            this.obj1.setDisplayName(chatComponentTitle);
-            this.obj2.setDisplayName(chatComponentTitle);
+    protected void sendChanges() {
+        boolean titleChanged = !title.equals(shownTitle);
+        if (titleChanged) {
+            obj.setDisplayName(new ChatComponentText(title));
+            shownTitle = title;
         }
-    }
-
-    @Override
-    public void sendUpdate() {
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj1, 0));
-        for (int i = 0; i < this.lines.length; i++) {
-            String line = this.lines[i];
-            if (line == null) {
-                break;
+        if (!shown) {
+            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(obj, 0));
+            shown = true;
+        }
+        else if (titleChanged) {
+            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(obj, 2));
+        }
+        HashMap<String, Integer> newScores = new HashMap<>();
+        for (int i = 0; i < MAX_LENGTH && lines[i] != null; i++) {
+            newScores.put(lines[i], scores[i]);
+        }
+        for (String line : shownScores.keySet()) {
+            if (!newScores.containsKey(line)) {
+                PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.REMOVE, obj.getName(), line, 0));
             }
-            ScoreboardScore score = new ScoreboardScore(dummyScoreboard, this.obj1, line);
-            score.setScore(this.scores[i]);
-            // CraftScoreboardManager setPlayerBoard
-            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.CHANGE, score.getObjective().getName(), score.getPlayerName(), score.getScore()));
         }
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardDisplayObjective(1, this.obj1));
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj2, 1));
-        ScoreboardObjective temp = this.obj2;
-        this.obj2 = this.obj1;
-        this.obj1 = temp;
+        for (Map.Entry<String, Integer> line : newScores.entrySet()) {
+            if (!line.getValue().equals(shownScores.get(line.getKey()))) {
+                PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.CHANGE, obj.getName(), line.getKey(), line.getValue()));
+            }
+        }
+        shownScores = newScores;
+        // Claim the sidebar slot again with every batch of changes, in case something else (like another plugin's scoreboard) took it over since
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardDisplayObjective(1, obj));
     }
 
     @Override
-    public void remove() {
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj2, 1));
+    protected void sendRemove() {
+        shownScores.clear();
+        if (shown) {
+            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(obj, 1));
+            shown = false;
+        }
     }
 }
@@ -1,5 +1,6 @@
 package com.denizenscript.denizen.nms.v1_14.impl.network.handlers;
 
+import com.denizenscript.denizen.nms.abstracts.BlockLight;
 import com.denizenscript.denizen.nms.v1_14.impl.ProfileEditorImpl;
 import com.denizenscript.denizen.nms.v1_14.impl.network.packets.*;
 import com.denizenscript.denizen.nms.v1_14.impl.blocks.BlockLightImpl;
@@ -12,6 +13,7 @@ import com.denizenscript.denizen.utilities.blocks.FakeBlock;
 import com.denizenscript.denizen.utilities.entity.EntityAttachmentHelper;
 import com.denizenscript.denizen.utilities.entity.HideEntitiesHelper;
 import com.denizenscript.denizen.utilities.packets.DenizenPacketHandler;
+import com.denizenscript.denizen.utilities.packets.PacketDispatchTable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
@@ -144,19 +146,41 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
         if (NMSHandler.debugPackets) {
             Debug.log("Packet: " + packet.getClass().getCanonicalName() + " sent to " + player.getName());
         }
-        if (processAttachToForPacket(packet)
-            || processHiddenEntitiesForPacket(packet)
-            || processPacketHandlerForPacket(packet)
-            || processMirrorForPacket(packet)) {
+        if (packetHandlers.dispatch(this, packet, genericfuturelistener)) {
             return;
         }
-        processMirrorForPacket(packet);
-        processShowFakeForPacket(packet);
-        processBlockLightForPacket(packet);
-        processCustomNameForPacket(packet);
         oldManager.sendPacket(packet, genericfuturelistener);
     }
 
+    public static final PacketDispatchTable<DenizenNetworkManagerImpl, Packet<?>, GenericFutureListener<? extends Future<? super Void>>> packetHandlers = new PacketDispatchTable<>();
+
+    static {
+        packetHandlers.register("attach_to", () -> !EntityAttachmentHelper.toEntityToData.isEmpty(), (manager, packet, listener) -> manager.processAttachToForPacket(packet),
+                PacketPlayOutEntity.class, PacketPlayOutEntityVelocity.class, PacketPlayOutEntityTeleport.class);
+        packetHandlers.register("hidden_entities", HideEntitiesHelper::hasAnyHides, (manager, packet, listener) -> manager.processHiddenEntitiesForPacket(packet),
+                PacketPlayOutNamedEntitySpawn.class, PacketPlayOutSpawnEntity.class, PacketPlayOutSpawnEntityLiving.class, PacketPlayOutSpawnEntityPainting.class, PacketPlayOutSpawnEntityExperienceOrb.class,
+                PacketPlayOutEntity.class, PacketPlayOutEntityVelocity.class, PacketPlayOutEntityTeleport.class);
+        packetHandlers.register("packet_handler", null, (manager, packet, listener) -> manager.processPacketHandlerForPacket(packet),
+                PacketPlayOutChat.class, PacketPlayOutEntityMetadata.class);
+        packetHandlers.register("mirror", null, (manager, packet, listener) -> manager.processMirrorForPacket(packet),
+                PacketPlayOutPlayerInfo.class);
+        packetHandlers.register("show_fake", FakeBlock::hasAnyFakeBlocks, (manager, packet, listener) -> {
+                    manager.processShowFakeForPacket(packet);
+                    return false;
+                },
+                PacketPlayOutMapChunk.class, PacketPlayOutMultiBlockChange.class, PacketPlayOutBlockChange.class, PacketPlayOutBlockBreak.class);
+        packetHandlers.register("block_light", () -> !BlockLight.lightsByChunk.isEmpty(), (manager, packet, listener) -> {
+                    manager.processBlockLightForPacket(packet);
+                    return false;
+                },
+                PacketPlayOutLightUpdate.class, PacketPlayOutBlockChange.class);
+        packetHandlers.register("custom_name", RenameCommand::hasAnyDynamicRenames, (manager, packet, listener) -> {
+                    manager.processCustomNameForPacket(packet);
+                    return false;
+                },
+                PacketPlayOutEntityMetadata.class);
+    }
+
     public void processCustomNameForPacket(Packet<?> packet) {
         if (!(packet instanceof PacketPlayOutEntityMetadata)) {
             return;
@@ -385,29 +409,20 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
     }
 
     public void processShowFakeForPacket(Packet<?> packet) {
+        if (!FakeBlock.hasAnyFakeBlocks()) {
+            return;
+        }
         try {
             if (packet instanceof PacketPlayOutMapChunk) {
-                FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(player.getUniqueID());
-                if (map == null) {
-                    return;
-                }
                 int chunkX = CHUNKX_MAPCHUNK.getInt(packet);
                 int chunkZ = CHUNKZ_MAPCHUNK.getInt(packet);
                 ChunkCoordinate chunkCoord = new ChunkCoordinate(chunkX, chunkZ, player.getWorld().getWorld().getName());
-                List<FakeBlock> blocks = FakeBlock.getFakeBlocksFor(player.getUniqueID(), chunkCoord);
-                if (blocks == null) {
-                    return;
-                }
-                FakeBlockHelper.handleMapChunkPacket((PacketPlayOutMapChunk) packet, blocks);
+                FakeBlockHelper.handleMapChunkPacket(player.getUniqueID(), chunkCoord, (PacketPlayOutMapChunk) packet);
             }
             else if (packet instanceof PacketPlayOutMultiBlockChange) {
-                FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(player.getUniqueID());
-                if (map == null) {
-                    return;
-                }
                 ChunkCoordIntPair coord = (ChunkCoordIntPair) CHUNKCOORD_MULTIBLOCKCHANGE.get(packet);
                 ChunkCoordinate coordinateDenizen = new ChunkCoordinate(coord.x, coord.z, player.getWorld().getWorld().getName());
-                if (!map.byChunk.containsKey(coordinateDenizen)) {
+                if (!FakeBlock.hasFakeBlocksInChunk(player.getUniqueID(), coordinateDenizen)) {
                     return;
                 }
                 LocationTag location = new LocationTag(player.getWorld().getWorld(), 0, 0, 0);
@@ -420,7 +435,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                     location.setX((coord.x << 4) + x);
                     location.setY(y);
                     location.setZ((coord.z << 4) + z);
-                    FakeBlock block = map.byLocation.get(location);
+                    FakeBlock block = FakeBlock.getFakeBlockFor(player.getUniqueID(), location);
                     if (block != null) {
                         changeArr[i] = ((PacketPlayOutMultiBlockChange) packet).new MultiBlockChangeInfo(blockInd, FakeBlockHelper.getNMSState(block));
                     }
@@ -1,10 +1,12 @@
 package com.denizenscript.denizen.nms.v1_15.helpers;
 
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTagBuilder;
+import com.denizenscript.denizen.nms.v1_15.impl.blocks.BulkBlockWriterImpl;
 import com.denizenscript.denizen.nms.v1_15.impl.jnbt.CompoundTagImpl;
 import com.google.common.collect.Iterables;
 import com.mojang.authlib.GameProfile;
 import com.mojang.authlib.properties.Property;
+import com.denizenscript.denizen.nms.abstracts.BulkBlockWriter;
 import com.denizenscript.denizen.nms.interfaces.BlockHelper;
 import com.denizenscript.denizen.nms.util.PlayerProfile;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
@@ -13,6 +15,7 @@ import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.minecraft.server.v1_15_R1.*;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.Skull;
 import org.bukkit.block.data.BlockData;
@@ -216,4 +219,9 @@ public class BlockHelperImpl implements BlockHelper {
             Debug.echoError(ex);
         }
     }
+
+    @Override
+    public BulkBlockWriter createBulkBlockWriter(World world) {
+        return new BulkBlockWriterImpl(world);
+    }
 }
@@ -9,6 +9,8 @@ import org.bukkit.World;
 import org.bukkit.Chunk;
 import org.bukkit.craftbukkit.v1_15_R1.CraftChunk;
 import org.bukkit.craftbukkit.v1_15_R1.CraftWorld;
+import org.bukkit.craftbukkit.v1_15_R1.entity.CraftPlayer;
+import org.bukkit.entity.Player;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
@@ -85,6 +87,13 @@ public class ChunkHelperImpl implements ChunkHelper {
         });
     }
 
+    @Override
+    public void refreshChunkSectionsFor(Player player, Chunk chunk) {
+        PlayerConnection connection = ((CraftPlayer) player).getHandle().playerConnection;
+        connection.sendPacket(new PacketPlayOutMapChunk(((CraftChunk) chunk).getHandle(), 255));
+        connection.sendPacket(new PacketPlayOutMapChunk(((CraftChunk) chunk).getHandle(), 65280));
+    }
+
     @Override
     public int[] getHeightMap(Chunk chunk) {
         HeightMap map = ((CraftChunk) chunk).getHandle().heightMap.get(HeightMap.Type.MOTION_BLOCKING);
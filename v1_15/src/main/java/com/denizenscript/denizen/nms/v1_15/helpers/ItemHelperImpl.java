@@ -30,6 +30,7 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
+import java.lang.reflect.Field;
 import java.util.*;
 
 public class ItemHelperImpl extends ItemHelper {
@@ -231,6 +232,43 @@ public class ItemHelperImpl extends ItemHelper {
         return new CompoundTagImpl(new HashMap<>());
     }
 
+    public static final Field CRAFT_ITEMSTACK_HANDLE = ReflectionHelper.getFields(CraftItemStack.class).get("handle");
+    public static final Field BUKKIT_ITEMSTACK_META = ReflectionHelper.getFields(ItemStack.class).get("meta");
+    public static Field CRAFT_META_UNHANDLED_TAGS;
+
+    static {
+        try {
+            CRAFT_META_UNHANDLED_TAGS = ReflectionHelper.getFields(Class.forName("org.bukkit.craftbukkit.v1_15_R1.inventory.CraftMetaItem")).get("unhandledTags");
+        }
+        catch (ClassNotFoundException ex) {
+            Debug.echoError(ex);
+        }
+    }
+
+    @Override
+    public String getStringTagDirect(ItemStack itemStack, String key) {
+        try {
+            if (itemStack instanceof CraftItemStack) {
+                net.minecraft.server.v1_15_R1.ItemStack handle = (net.minecraft.server.v1_15_R1.ItemStack) CRAFT_ITEMSTACK_HANDLE.get(itemStack);
+                if (handle == null || !handle.hasTag()) {
+                    return null;
+                }
+                NBTTagCompound tag = handle.getTag();
+                return tag.hasKeyOfType(key, 8) ? tag.getString(key) : null;
+            }
+            Object meta = itemStack == null ? null : BUKKIT_ITEMSTACK_META.get(itemStack);
+            if (meta == null || CRAFT_META_UNHANDLED_TAGS == null || !CRAFT_META_UNHANDLED_TAGS.getDeclaringClass().isInstance(meta)) {
+                return null;
+            }
+            NBTBase value = ((Map<String, NBTBase>) CRAFT_META_UNHANDLED_TAGS.get(meta)).get(key);
+            return value instanceof NBTTagString ? value.asString() : null;
+        }
+        catch (IllegalAccessException ex) {
+            Debug.echoError(ex);
+            return super.getStringTagDirect(itemStack, key);
+        }
+    }
+
     @Override
     public ItemStack setNbtData(ItemStack itemStack, CompoundTag compoundTag) {
         net.minecraft.server.v1_15_R1.ItemStack nmsItemStack = CraftItemStack.asNMSCopy(itemStack);
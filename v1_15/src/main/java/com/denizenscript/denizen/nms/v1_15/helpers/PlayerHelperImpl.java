@@ -9,6 +9,7 @@ import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.entity.DenizenEntityType;
 import com.denizenscript.denizen.utilities.entity.FakeEntity;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
 import com.denizenscript.denizencore.objects.Mechanism;
 import com.mojang.authlib.GameProfile;
 import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
@@ -235,12 +236,17 @@ public class PlayerHelperImpl extends PlayerHelper {
 
     @Override
     public ImprovedOfflinePlayer getOfflineData(UUID uuid) {
-        return new ImprovedOfflinePlayerImpl(uuid);
+        return OfflinePlayerDataCache.get(uuid, ImprovedOfflinePlayerImpl::new);
     }
 
     @Override
     public ImprovedOfflinePlayer getOfflineData(OfflinePlayer offlinePlayer) {
-        return new ImprovedOfflinePlayerImpl(offlinePlayer.getUniqueId());
+        return OfflinePlayerDataCache.get(offlinePlayer.getUniqueId(), ImprovedOfflinePlayerImpl::new);
+    }
+
+    @Override
+    public void prefetchOfflineData(UUID uuid) {
+        OfflinePlayerDataCache.prefetch(uuid, ImprovedOfflinePlayerImpl::new);
     }
 
     @Override
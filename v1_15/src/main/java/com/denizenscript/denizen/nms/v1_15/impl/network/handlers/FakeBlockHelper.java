@@ -2,15 +2,21 @@ package com.denizenscript.denizen.nms.v1_15.impl.network.handlers;
 
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
 import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.utilities.blocks.ChunkCoordinate;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
+import com.denizenscript.denizen.utilities.blocks.FakeBlockRewriteCache;
+import com.denizenscript.denizen.utilities.blocks.FakeChunkBlocks;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import io.netty.buffer.Unpooled;
 import net.minecraft.server.v1_15_R1.*;
 import org.bukkit.craftbukkit.v1_15_R1.block.data.CraftBlockData;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.UUID;
 
 public class FakeBlockHelper {
 
@@ -23,18 +29,6 @@ public class FakeBlockHelper {
         return ((CraftBlockData) block.material.getModernData()).getState();
     }
 
-    public static boolean anyBlocksInSection(List<FakeBlock> blocks, int y) {
-        int minY = y << 4;
-        int maxY = (y << 4) + 16;
-        for (FakeBlock block : blocks) {
-            int blockY = block.location.getBlockY();
-            if (blockY >= minY && blockY < maxY) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public static int indexInPalette(IBlockData data) {
         return ChunkSection.GLOBAL_PALETTE.a(data);
     }
@@ -52,116 +46,134 @@ public class FakeBlockHelper {
         return -1;
     }
 
-    public static void handleMapChunkPacket(PacketPlayOutMapChunk packet, List<FakeBlock> blocks) {
+    /**
+     * Applies the player's fake blocks to the chunk packet.
+     * Rewrites are cached and shared between players that see the same fake blocks in the same chunk.
+     */
+    public static void handleMapChunkPacket(UUID viewer, ChunkCoordinate chunkCoord, PacketPlayOutMapChunk packet) {
         try {
-            // TODO: properly update HeightMap?
-            int bitmask = BITMASK_MAPCHUNK.getInt(packet);
+            long start = System.nanoTime();
             byte[] data = (byte[]) DATA_MAPCHUNK.get(packet);
-            PacketDataSerializer serial = new PacketDataSerializer(Unpooled.wrappedBuffer(data));
-            PacketDataSerializer outputSerial = new PacketDataSerializer(Unpooled.buffer(data.length));
-            boolean isFull = packet.f();
-            List<NBTTagCompound> blockEntities = (List<NBTTagCompound>) BLOCKENTITIES_MAPCHUNK.get(packet);
-            ListIterator<NBTTagCompound> iterator = blockEntities.listIterator();
-            while (iterator.hasNext()) {
-                NBTTagCompound blockEnt = iterator.next();
-                int x = blockEnt.getInt("x");
-                int y = blockEnt.getInt("y");
-                int z = blockEnt.getInt("z");
-                for (FakeBlock block : blocks) {
-                    LocationTag loc = block.location;
-                    if (loc.getBlockX() == x && loc.getBlockY() == y && loc.getBlockZ() == z) {
-                        iterator.remove();
-                        break;
-                    }
+            FakeBlockRewriteCache.Key key = FakeBlockRewriteCache.createKey(viewer, chunkCoord, data, (List<NBTTagCompound>) BLOCKENTITIES_MAPCHUNK.get(packet));
+            if (key == null) {
+                return;
+            }
+            FakeBlockRewriteCache.Result result = FakeBlockRewriteCache.get(key);
+            if (result == null) {
+                FakeChunkBlocks blocks = FakeBlock.getChunkBlocksFor(viewer, chunkCoord);
+                if (blocks == null) {
+                    return;
                 }
+                result = rewriteChunkData(packet, blocks);
+                FakeBlockRewriteCache.put(key, result);
+                FakeBlockRewriteCache.recordRewrite(System.nanoTime() - start);
             }
-            for (FakeBlock block : blocks) {
-                LocationTag loc = block.location;
-                NBTTagCompound newCompound = new NBTTagCompound();
-                newCompound.setInt("x", loc.getBlockX());
-                newCompound.setInt("y", loc.getBlockY());
-                newCompound.setInt("z", loc.getBlockZ());
-                newCompound.setString("id", block.material.getMaterial().getKey().toString());
-                blockEntities.add(newCompound);
+            else {
+                FakeBlockRewriteCache.recordHit(System.nanoTime() - start);
             }
-            for (int y = 0; y < 16; y++) {
-                if ((bitmask & (1 << y)) != 0) {
-                    int blockCount = serial.readShort();
-                    int width = serial.readUnsignedByte();
-                    int paletteLen = serial.i(); // readVarInt
-                    int[] palette = new int[paletteLen];
+            DATA_MAPCHUNK.set(packet, result.data);
+            BLOCKENTITIES_MAPCHUNK.set(packet, result.copyBlockEntities());
+        }
+        catch (Exception ex) {
+            Debug.echoError(ex);
+        }
+    }
+
+    public static FakeBlockRewriteCache.Result rewriteChunkData(PacketPlayOutMapChunk originalPacket, FakeChunkBlocks blocks) throws IllegalAccessException {
+        // TODO: properly update HeightMap?
+        int bitmask = BITMASK_MAPCHUNK.getInt(originalPacket);
+        byte[] data = (byte[]) DATA_MAPCHUNK.get(originalPacket);
+        PacketDataSerializer serial = new PacketDataSerializer(Unpooled.wrappedBuffer(data));
+        PacketDataSerializer outputSerial = new PacketDataSerializer(Unpooled.buffer(data.length));
+        boolean isFull = originalPacket.f();
+        List<NBTTagCompound> blockEntities = new ArrayList<>((List<NBTTagCompound>) BLOCKENTITIES_MAPCHUNK.get(originalPacket));
+        ListIterator<NBTTagCompound> iterator = blockEntities.listIterator();
+        while (iterator.hasNext()) {
+            NBTTagCompound blockEnt = iterator.next();
+            if (blocks.hasBlockAt(blockEnt.getInt("x"), blockEnt.getInt("y"), blockEnt.getInt("z"))) {
+                iterator.remove();
+            }
+        }
+        for (FakeBlock block : blocks.blocks) {
+            LocationTag loc = block.location;
+            NBTTagCompound newCompound = new NBTTagCompound();
+            newCompound.setInt("x", loc.getBlockX());
+            newCompound.setInt("y", loc.getBlockY());
+            newCompound.setInt("z", loc.getBlockZ());
+            newCompound.setString("id", block.material.getMaterial().getKey().toString());
+            blockEntities.add(newCompound);
+        }
+        for (int y = 0; y < 16; y++) {
+            if ((bitmask & (1 << y)) != 0) {
+                int blockCount = serial.readShort();
+                int width = serial.readUnsignedByte();
+                int paletteLen = serial.i(); // readVarInt
+                int[] palette = new int[paletteLen];
+                for (int p = 0; p < paletteLen; p++) {
+                    palette[p] = serial.i();
+                }
+                int dataLen = serial.i();
+                long[] blockListHelper = new long[dataLen];
+                for (int i = 0; i < blockListHelper.length; i++) {
+                    blockListHelper[i] = serial.readLong();
+                }
+                outputSerial.writeShort(blockCount);
+                List<FakeBlock> sectionBlocks = blocks.getSection(y);
+                if (sectionBlocks == null) {
+                    outputSerial.writeByte(width);
+                    outputSerial.d(paletteLen); // writeVarInt
                     for (int p = 0; p < paletteLen; p++) {
-                        palette[p] = serial.i();
-                    }
-                    int dataLen = serial.i();
-                    long[] blockListHelper = new long[dataLen];
-                    for (int i = 0; i < blockListHelper.length; i++) {
-                        blockListHelper[i] = serial.readLong();
-                    }
-                    outputSerial.writeShort(blockCount);
-                    if (!anyBlocksInSection(blocks, y)) {
-                        outputSerial.writeByte(width);
-                        outputSerial.d(paletteLen); // writeVarInt
-                        for (int p = 0; p < paletteLen; p++) {
-                            outputSerial.d(palette[p]);
-                        }
-                        outputSerial.a(blockListHelper); // writeLongs
-                        continue;
+                        outputSerial.d(palette[p]);
                     }
-                    DataBits bits = new DataBits(width, 4096, blockListHelper);
-                    int minY = y << 4;
-                    int maxY = (y << 4) + 16;
-                    for (FakeBlock block : blocks) {
-                        int blockY = block.location.getBlockY();
-                        if (blockY >= minY && blockY < maxY) {
-                            int blockX = block.location.getBlockX();
-                            int blockZ = block.location.getBlockZ();
-                            blockX -= (blockX >> 4) * 16;
-                            blockY -= (blockY >> 4) * 16;
-                            blockZ -= (blockZ >> 4) * 16;
-                            int blockIndex = blockArrayIndex(blockX, blockY, blockZ);
-                            IBlockData replacementData = getNMSState(block);
-                            int globalPaletteIndex = indexInPalette(replacementData);
-                            int subPaletteId = getPaletteSubId(palette, globalPaletteIndex);
-                            if (subPaletteId == -1) {
-                                int[] newPalette = new int[paletteLen + 1];
-                                if (paletteLen >= 0) System.arraycopy(palette, 0, newPalette, 0, paletteLen);
-                                newPalette[paletteLen] = globalPaletteIndex;
-                                subPaletteId = paletteLen;
-                                paletteLen++;
-                                palette = newPalette;
-                                int newWdith = MathHelper.d(paletteLen);
-                                if (newWdith > width) {
-                                    DataBits newBits = new DataBits(newWdith, 4096);
-                                    for (int i = 0; i < bits.b(); i++) {
-                                        newBits.a(i, bits.a(i));
-                                    }
-                                    bits = newBits;
-                                    width = newWdith;
-                                }
+                    outputSerial.a(blockListHelper); // writeLongs
+                    continue;
+                }
+                DataBits bits = new DataBits(width, 4096, blockListHelper);
+                for (FakeBlock block : sectionBlocks) {
+                    int blockY = block.location.getBlockY();
+                    int blockX = block.location.getBlockX();
+                    int blockZ = block.location.getBlockZ();
+                    blockX -= (blockX >> 4) * 16;
+                    blockY -= (blockY >> 4) * 16;
+                    blockZ -= (blockZ >> 4) * 16;
+                    int blockIndex = blockArrayIndex(blockX, blockY, blockZ);
+                    IBlockData replacementData = getNMSState(block);
+                    int globalPaletteIndex = indexInPalette(replacementData);
+                    int subPaletteId = getPaletteSubId(palette, globalPaletteIndex);
+                    if (subPaletteId == -1) {
+                        int[] newPalette = new int[paletteLen + 1];
+                        if (paletteLen >= 0) System.arraycopy(palette, 0, newPalette, 0, paletteLen);
+                        newPalette[paletteLen] = globalPaletteIndex;
+                        subPaletteId = paletteLen;
+                        paletteLen++;
+                        palette = newPalette;
+                        int newWdith = MathHelper.d(paletteLen);
+                        if (newWdith > width) {
+                            DataBits newBits = new DataBits(newWdith, 4096);
+                            for (int i = 0; i < bits.b(); i++) {
+                                newBits.a(i, bits.a(i));
                             }
-                            bits.a(blockIndex, subPaletteId);
+                            bits = newBits;
+                            width = newWdith;
                         }
                     }
-                    outputSerial.writeByte(width);
-                    outputSerial.d(paletteLen);
-                    for (int p = 0; p < palette.length; p++) {
-                        outputSerial.d(palette[p]);
-                    }
-                    outputSerial.a(bits.a());
+                    bits.a(blockIndex, subPaletteId);
                 }
-            }
-            if (isFull) {
-                BiomeStorage biomes = (BiomeStorage) BIOMESTORAGE_MAPCHUNK.get(packet);
-                if (biomes != null) {
-                    biomes.a(outputSerial);
+                outputSerial.writeByte(width);
+                outputSerial.d(paletteLen);
+                for (int p = 0; p < palette.length; p++) {
+                    outputSerial.d(palette[p]);
                 }
+                outputSerial.a(bits.a());
             }
-            byte[] outputBytes = outputSerial.array();
-            DATA_MAPCHUNK.set(packet, outputBytes);
         }
-        catch (Exception ex) {
-            Debug.echoError(ex);
+        if (isFull) {
+            BiomeStorage biomes = (BiomeStorage) BIOMESTORAGE_MAPCHUNK.get(originalPacket);
+            if (biomes != null) {
+                biomes.a(outputSerial);
+            }
         }
+        byte[] outputBytes = Arrays.copyOf(outputSerial.array(), outputSerial.writerIndex());
+        return new FakeBlockRewriteCache.Result(outputBytes, blockEntities);
     }
 }
@@ -15,6 +15,7 @@ import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.FormattedTextHelper;
 import com.denizenscript.denizen.utilities.entity.DenizenEntityType;
 import com.denizenscript.denizen.utilities.entity.FakeEntity;
+import com.denizenscript.denizen.utilities.entity.OfflinePlayerDataCache;
 import com.denizenscript.denizencore.objects.Mechanism;
 import com.mojang.authlib.GameProfile;
 import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
@@ -298,12 +299,17 @@ public class PlayerHelperImpl extends PlayerHelper {
 
     @Override
     public ImprovedOfflinePlayer getOfflineData(UUID uuid) {
-        return new ImprovedOfflinePlayerImpl(uuid);
+        return OfflinePlayerDataCache.get(uuid, ImprovedOfflinePlayerImpl::new);
     }
 
     @Override
     public ImprovedOfflinePlayer getOfflineData(OfflinePlayer offlinePlayer) {
-        return new ImprovedOfflinePlayerImpl(offlinePlayer.getUniqueId());
+        return OfflinePlayerDataCache.get(offlinePlayer.getUniqueId(), ImprovedOfflinePlayerImpl::new);
+    }
+
+    @Override
+    public void prefetchOfflineData(UUID uuid) {
+        OfflinePlayerDataCache.prefetch(uuid, ImprovedOfflinePlayerImpl::new);
     }
 
     @Override
@@ -348,7 +354,7 @@ public class PlayerHelperImpl extends PlayerHelper {
 
     @Override
     public void setBossBarTitle(BossBar bar, String title) {
-        ((CraftBossBar) bar).getHandle().title = Handler.componentToNMS(FormattedTextHelper.parse(title, ChatColor.WHITE));
+        ((CraftBossBar) bar).getHandle().title = Handler.componentToNMS(FormattedTextHelper.parseShared(title, ChatColor.WHITE));
         ((CraftBossBar) bar).getHandle().sendUpdate(PacketPlayOutBoss.Action.UPDATE_NAME);
     }
 }
@@ -1,10 +1,10 @@
 package com.denizenscript.denizen.nms.v1_16.impl;
 
 import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
+import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.nms.v1_16.impl.jnbt.CompoundTagImpl;
-import com.denizenscript.denizencore.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.inventory.OfflineInventoryRegistry;
 import net.minecraft.server.v1_16_R3.*;
-import org.bukkit.Bukkit;
 import org.bukkit.craftbukkit.v1_16_R3.inventory.CraftInventory;
 import org.bukkit.craftbukkit.v1_16_R3.inventory.CraftInventoryPlayer;
 import org.bukkit.entity.HumanEntity;
@@ -48,13 +48,14 @@ public class ImprovedOfflinePlayerImpl extends ImprovedOfflinePlayer {
 
     @Override
     public org.bukkit.inventory.PlayerInventory getInventory() {
-        if (offlineInventories.containsKey(getUniqueId())) {
-            return offlineInventories.get(getUniqueId());
+        org.bukkit.inventory.PlayerInventory registered = OfflineInventoryRegistry.getInventory(getUniqueId());
+        if (registered != null) {
+            return registered;
         }
         PlayerInventory inventory = new OfflinePlayerInventory(null);
         inventory.b(((CompoundTagImpl) this.compound).toNMSTag().getList("Inventory", 10));
         org.bukkit.inventory.PlayerInventory inv = new OfflineCraftInventoryPlayer(inventory);
-        offlineInventories.put(getUniqueId(), inv);
+        OfflineInventoryRegistry.putInventory(getUniqueId(), inv);
         return inv;
     }
 
@@ -71,13 +72,14 @@ public class ImprovedOfflinePlayerImpl extends ImprovedOfflinePlayer {
 
     @Override
     public Inventory getEnderChest() {
-        if (offlineEnderChests.containsKey(getUniqueId())) {
-            return offlineEnderChests.get(getUniqueId());
+        Inventory registered = OfflineInventoryRegistry.getEnderChest(getUniqueId());
+        if (registered != null) {
+            return registered;
         }
         InventoryEnderChest endchest = new InventoryEnderChest(null);
         endchest.a(((CompoundTagImpl) this.compound).toNMSTag().getList("EnderItems", 10));
         org.bukkit.inventory.Inventory inv = new CraftInventory(endchest);
-        offlineEnderChests.put(getUniqueId(), inv);
+        OfflineInventoryRegistry.putEnderChest(getUniqueId(), inv);
         return inv;
     }
 
@@ -124,32 +126,16 @@ public class ImprovedOfflinePlayerImpl extends ImprovedOfflinePlayer {
     }
 
     @Override
-    protected boolean loadPlayerData(UUID uuid) {
-        try {
-            this.player = uuid;
-            for (org.bukkit.World w : Bukkit.getWorlds()) {
-                this.file = new File(w.getWorldFolder(), "playerdata" + File.separator + this.player + ".dat");
-                if (this.file.exists()) {
-                    this.compound = CompoundTagImpl.fromNMSTag(NBTCompressedStreamTools.a(new FileInputStream(this.file)));
-                    return true;
-                }
-            }
+    protected CompoundTag readPlayerData(File file) throws Exception {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return CompoundTagImpl.fromNMSTag(NBTCompressedStreamTools.a(in));
         }
-        catch (Exception e) {
-            Debug.echoError(e);
-        }
-        return false;
     }
 
     @Override
-    public void savePlayerData() {
-        if (this.exists) {
-            try {
-                NBTCompressedStreamTools.a(((CompoundTagImpl) this.compound).toNMSTag(), new FileOutputStream(this.file));
-            }
-            catch (Exception e) {
-                Debug.echoError(e);
-            }
+    protected void writePlayerData(File file, CompoundTag compound) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            NBTCompressedStreamTools.a(((CompoundTagImpl) compound).toNMSTag(), out);
         }
     }
 }
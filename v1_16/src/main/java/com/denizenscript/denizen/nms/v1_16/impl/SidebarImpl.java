@@ -9,69 +9,114 @@ import net.md_5.bungee.api.ChatColor;
 import net.minecraft.server.v1_16_R3.*;
 import org.bukkit.entity.Player;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
 
 public class SidebarImpl extends Sidebar {
 
     public static final Scoreboard dummyScoreboard = new Scoreboard();
     public static final IScoreboardCriteria dummyCriteria = new IScoreboardCriteria("dummy"); // what
 
-    private ScoreboardObjective obj1;
-    private ScoreboardObjective obj2;
+    public ScoreboardObjective obj;
+
+    /**
+     * One team per line slot, kept for the life of the sidebar, so a changed line only needs its team's prefix updated.
+     */
+    public ScoreboardTeam[] teams = new ScoreboardTeam[MAX_LENGTH];
+
+    /**
+     * What the client currently has: whether the objective exists, and the text (null if unused) and score of each slot.
+     */
+    public boolean shown = false;
+    public String shownTitle;
+    public String[] shownLines = new String[MAX_LENGTH];
+    public int[] shownScores = new int[MAX_LENGTH];
+
+    /**
+     * The parsed text of each line currently shown, so lines that only moved to a different slot aren't parsed again.
+     */
+    public HashMap<String, IChatBaseComponent> parsedLines = new HashMap<>();
 
     public SidebarImpl(Player player) {
         super(player);
-        IChatBaseComponent chatComponentTitle = Handler.componentToNMS(FormattedTextHelper.parse(title, ChatColor.WHITE));
-        this.obj1 = new ScoreboardObjective(dummyScoreboard, "dummy_1", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
-        this.obj2 = new ScoreboardObjective(dummyScoreboard, "dummy_2", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
+        IChatBaseComponent chatComponentTitle = Handler.componentToNMS(FormattedTextHelper.parseShared(title, ChatColor.WHITE));
+        this.obj = new ScoreboardObjective(dummyScoreboard, "dummy_1", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
+        shownTitle = title;
     }
 
-    @Override
-    protected void setDisplayName(String title) {
-        if (this.obj1 != null) {
-            IChatBaseComponent chatComponentTitle = Handler.componentToNMS(FormattedTextHelper.parse(title, ChatColor.WHITE));
-            this.obj1.setDisplayName(chatComponentTitle);
-            this.obj2.setDisplayName(chatComponentTitle);
+    public ScoreboardTeam getTeam(int slot) {
+        ScoreboardTeam team = teams[slot];
+        if (team == null) {
+            String lineId = Utilities.generateRandomColors(8);
+            team = new ScoreboardTeam(dummyScoreboard, lineId);
+            team.getPlayerNameSet().add(lineId);
+            teams[slot] = team;
         }
+        return team;
     }
 
-    public List<ScoreboardTeam> generatedTeams = new ArrayList<>();
-
     @Override
-    public void sendUpdate() {
-        List<ScoreboardTeam> oldTeams = generatedTeams;
-        generatedTeams = new ArrayList<>();
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj1, 0));
-        for (int i = 0; i < this.lines.length; i++) {
-            String line = this.lines[i];
+    protected void sendChanges() {
+        boolean titleChanged = !title.equals(shownTitle);
+        if (titleChanged) {
+            obj.setDisplayName(Handler.componentToNMS(FormattedTextHelper.parseShared(title, ChatColor.WHITE)));
+            shownTitle = title;
+        }
+        if (!shown) {
+            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(obj, 0));
+            shown = true;
+        }
+        else if (titleChanged) {
+            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(obj, 2));
+        }
+        HashMap<String, IChatBaseComponent> newParsedLines = new HashMap<>();
+        for (int i = 0; i < MAX_LENGTH; i++) {
+            String line = lines[i];
+            String shownLine = shownLines[i];
             if (line == null) {
-                break;
+                if (shownLine != null) {
+                    ScoreboardTeam team = teams[i];
+                    PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.REMOVE, obj.getName(), team.getName(), 0));
+                    PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardTeam(team, 1));
+                    shownLines[i] = null;
+                }
+                continue;
             }
-            String lineId = Utilities.generateRandomColors(8);
-            ScoreboardTeam team = new ScoreboardTeam(dummyScoreboard, lineId);
-            team.getPlayerNameSet().add(lineId);
-            team.setPrefix(Handler.componentToNMS(FormattedTextHelper.parse(line, ChatColor.WHITE)));
-            generatedTeams.add(team);
-            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardTeam(team, 0));
-            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.CHANGE, obj1.getName(), lineId, this.scores[i]));
-        }
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardDisplayObjective(1, this.obj1));
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj2, 1));
-        ScoreboardObjective temp = this.obj2;
-        this.obj2 = this.obj1;
-        this.obj1 = temp;
-        for (ScoreboardTeam team : oldTeams) {
-            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardTeam(team, 1));
+            ScoreboardTeam team = getTeam(i);
+            IChatBaseComponent parsed = newParsedLines.get(line);
+            if (parsed == null) {
+                parsed = parsedLines.get(line);
+                if (parsed == null) {
+                    parsed = Handler.componentToNMS(FormattedTextHelper.parseShared(line, ChatColor.WHITE));
+                }
+                newParsedLines.put(line, parsed);
+            }
+            if (!line.equals(shownLine)) {
+                team.setPrefix(parsed);
+                PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardTeam(team, shownLine == null ? 0 : 2));
+            }
+            if (shownLine == null || scores[i] != shownScores[i]) {
+                PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.CHANGE, obj.getName(), team.getName(), scores[i]));
+            }
+            shownLines[i] = line;
+            shownScores[i] = scores[i];
         }
+        parsedLines = newParsedLines;
+        // Claim the sidebar slot again with every batch of changes, in case something else (like another plugin's scoreboard) took it over since
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardDisplayObjective(1, obj));
     }
 
     @Override
-    public void remove() {
-        for (ScoreboardTeam team : generatedTeams) {
-            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardTeam(team, 1));
+    protected void sendRemove() {
+        for (int i = 0; i < MAX_LENGTH; i++) {
+            if (shownLines[i] != null) {
+                PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardTeam(teams[i], 1));
+                shownLines[i] = null;
+            }
+        }
+        parsedLines.clear();
+        if (shown) {
+            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(obj, 1));
+            shown = false;
         }
-        generatedTeams.clear();
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj2, 1));
     }
 }
@@ -0,0 +1,59 @@
+package com.denizenscript.denizen.nms.v1_16.impl.blocks;
+
+import com.denizenscript.denizen.nms.abstracts.BulkBlockWriter;
+import net.minecraft.server.v1_16_R3.*;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.craftbukkit.v1_16_R3.CraftChunk;
+import org.bukkit.craftbukkit.v1_16_R3.CraftWorld;
+import org.bukkit.craftbukkit.v1_16_R3.block.data.CraftBlockData;
+
+public class BulkBlockWriterImpl extends BulkBlockWriter {
+
+    public BulkBlockWriterImpl(World world) {
+        super(world);
+    }
+
+    @Override
+    public boolean setDirect(int x, int y, int z, BlockData data) {
+        if (y < 0 || y > 255) {
+            return true;
+        }
+        IBlockData state = ((CraftBlockData) data).getState();
+        if (state.getBlock() instanceof ITileEntity) {
+            return false;
+        }
+        Chunk chunk = ((CraftChunk) world.getChunkAt(x >> 4, z >> 4)).getHandle();
+        ChunkSection[] sections = chunk.getSections();
+        ChunkSection section = sections[y >> 4];
+        if (section == Chunk.a) {
+            if (state.isAir()) {
+                return true;
+            }
+            section = new ChunkSection(y >> 4 << 4);
+            sections[y >> 4] = section;
+        }
+        IBlockData oldState = section.getType(x & 15, y & 15, z & 15);
+        if (oldState == state) {
+            return true;
+        }
+        if (oldState.getBlock() instanceof ITileEntity) {
+            return false;
+        }
+        boolean wasEmpty = section.c();
+        section.setType(x & 15, y & 15, z & 15, state, false);
+        for (HeightMap heightMap : chunk.heightMap.values()) {
+            heightMap.a(x & 15, y, z & 15, state);
+        }
+        BlockPosition pos = new BlockPosition(x, y, z);
+        LightEngine lightEngine = chunk.e();
+        if (wasEmpty != section.c()) {
+            lightEngine.a(pos, section.c());
+        }
+        lightEngine.a(pos);
+        // Keep points of interest (beds, workstations, etc.) in sync, as a normal block change would
+        ((CraftWorld) world).getHandle().a(pos, oldState, state);
+        chunk.markDirty();
+        return true;
+    }
+}
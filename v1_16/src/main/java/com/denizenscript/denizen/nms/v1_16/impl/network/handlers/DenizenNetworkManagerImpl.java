@@ -22,6 +22,7 @@ import com.denizenscript.denizen.utilities.entity.EntityAttachmentHelper;
 import com.denizenscript.denizen.utilities.entity.HideEntitiesHelper;
 import com.denizenscript.denizen.utilities.packets.DenizenPacketHandler;
 import com.denizenscript.denizen.utilities.packets.HideParticles;
+import com.denizenscript.denizen.utilities.packets.PacketDispatchTable;
 import com.mojang.datafixers.util.Pair;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
@@ -190,21 +191,41 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
             Debug.log("Packet: " + packet.getClass().getCanonicalName() + " sent to " + player.getName());
         }
         packetsSent++;
-        if (processAttachToForPacket(packet)
-            || processHiddenEntitiesForPacket(packet)
-            || processPacketHandlerForPacket(packet)
-            || processMirrorForPacket(packet)
-            || processParticlesForPacket(packet)
-            || processDisguiseForPacket(packet, genericfuturelistener)
-            || processMetadataChangesForPacket(packet, genericfuturelistener)
-            || processEquipmentForPacket(packet, genericfuturelistener)
-            || processShowFakeForPacket(packet, genericfuturelistener)) {
+        if (packetHandlers.dispatch(this, packet, genericfuturelistener)) {
             return;
         }
-        processBlockLightForPacket(packet);
         oldManager.sendPacket(packet, genericfuturelistener);
     }
 
+    public static final PacketDispatchTable<DenizenNetworkManagerImpl, Packet<?>, GenericFutureListener<? extends Future<? super Void>>> packetHandlers = new PacketDispatchTable<>();
+
+    static {
+        packetHandlers.register("attach_to", () -> !EntityAttachmentHelper.toEntityToData.isEmpty(), (manager, packet, listener) -> manager.processAttachToForPacket(packet),
+                PacketPlayOutEntity.class, PacketPlayOutEntityVelocity.class, PacketPlayOutEntityTeleport.class);
+        packetHandlers.register("hidden_entities", HideEntitiesHelper::hasAnyHides, (manager, packet, listener) -> manager.processHiddenEntitiesForPacket(packet),
+                PacketPlayOutNamedEntitySpawn.class, PacketPlayOutSpawnEntity.class, PacketPlayOutSpawnEntityLiving.class, PacketPlayOutSpawnEntityPainting.class, PacketPlayOutSpawnEntityExperienceOrb.class,
+                PacketPlayOutEntity.class, PacketPlayOutEntityMetadata.class, PacketPlayOutEntityVelocity.class, PacketPlayOutEntityTeleport.class);
+        packetHandlers.register("packet_handler", null, (manager, packet, listener) -> manager.processPacketHandlerForPacket(packet),
+                PacketPlayOutChat.class, PacketPlayOutEntityMetadata.class);
+        packetHandlers.register("mirror", null, (manager, packet, listener) -> manager.processMirrorForPacket(packet),
+                PacketPlayOutPlayerInfo.class);
+        packetHandlers.register("particles", () -> !HideParticles.hidden.isEmpty(), (manager, packet, listener) -> manager.processParticlesForPacket(packet),
+                PacketPlayOutWorldParticles.class);
+        packetHandlers.register("disguise", () -> !DisguiseCommand.disguises.isEmpty(), DenizenNetworkManagerImpl::processDisguiseForPacket,
+                PacketPlayOutEntityMetadata.class, PacketPlayOutNamedEntitySpawn.class, PacketPlayOutSpawnEntity.class, PacketPlayOutSpawnEntityLiving.class);
+        packetHandlers.register("metadata_changes", () -> RenameCommand.hasAnyDynamicRenames() || !SneakCommand.forceSetSneak.isEmpty(), DenizenNetworkManagerImpl::processMetadataChangesForPacket,
+                PacketPlayOutEntityMetadata.class);
+        packetHandlers.register("equipment", () -> !FakeEquipCommand.overrides.isEmpty(), DenizenNetworkManagerImpl::processEquipmentForPacket,
+                PacketPlayOutEntityEquipment.class, PacketPlayOutEntityStatus.class, PacketPlayOutWindowItems.class, PacketPlayOutSetSlot.class);
+        packetHandlers.register("show_fake", FakeBlock::hasAnyFakeBlocks, DenizenNetworkManagerImpl::processShowFakeForPacket,
+                PacketPlayOutMapChunk.class, PacketPlayOutMultiBlockChange.class, PacketPlayOutBlockChange.class, PacketPlayOutBlockBreak.class);
+        packetHandlers.register("block_light", () -> !BlockLight.lightsByChunk.isEmpty(), (manager, packet, listener) -> {
+                    manager.processBlockLightForPacket(packet);
+                    return false;
+                },
+                PacketPlayOutLightUpdate.class, PacketPlayOutBlockChange.class);
+    }
+
     public boolean processEquipmentForPacket(Packet<?> packet, GenericFutureListener<? extends Future<? super Void>> genericfuturelistener) {
         if (FakeEquipCommand.overrides.isEmpty()) {
             return false;
@@ -828,34 +849,25 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
     }
 
     public boolean processShowFakeForPacket(Packet<?> packet, GenericFutureListener<? extends Future<? super Void>> genericfuturelistener) {
-        if (FakeBlock.blocks.isEmpty()) {
+        if (!FakeBlock.hasAnyFakeBlocks()) {
             return false;
         }
         try {
             if (packet instanceof PacketPlayOutMapChunk) {
-                FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(player.getUniqueID());
-                if (map == null) {
-                    return false;
-                }
                 int chunkX = CHUNKX_MAPCHUNK.getInt(packet);
                 int chunkZ = CHUNKZ_MAPCHUNK.getInt(packet);
                 ChunkCoordinate chunkCoord = new ChunkCoordinate(chunkX, chunkZ, player.getWorld().getWorld().getName());
-                List<FakeBlock> blocks = FakeBlock.getFakeBlocksFor(player.getUniqueID(), chunkCoord);
-                if (blocks == null || blocks.isEmpty()) {
+                PacketPlayOutMapChunk newPacket = FakeBlockHelper.handleMapChunkPacket(player.getUniqueID(), chunkCoord, (PacketPlayOutMapChunk) packet);
+                if (newPacket == null) {
                     return false;
                 }
-                PacketPlayOutMapChunk newPacket = FakeBlockHelper.handleMapChunkPacket((PacketPlayOutMapChunk) packet, blocks);
                 oldManager.sendPacket(newPacket, genericfuturelistener);
                 return true;
             }
             else if (packet instanceof PacketPlayOutMultiBlockChange) {
-                FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(player.getUniqueID());
-                if (map == null) {
-                    return false;
-                }
                 SectionPosition coord = (SectionPosition) SECTIONPOS_MULTIBLOCKCHANGE.get(packet);
                 ChunkCoordinate coordinateDenizen = new ChunkCoordinate(coord.getX(), coord.getZ(), player.getWorld().getWorld().getName());
-                if (!map.byChunk.containsKey(coordinateDenizen)) {
+                if (!FakeBlock.hasFakeBlocksInChunk(player.getUniqueID(), coordinateDenizen)) {
                     return false;
                 }
                 PacketPlayOutMultiBlockChange newPacket = new PacketPlayOutMultiBlockChange();
@@ -873,7 +885,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                     location.setX(pos.getX());
                     location.setY(pos.getY());
                     location.setZ(pos.getZ());
-                    FakeBlock block = map.byLocation.get(location);
+                    FakeBlock block = FakeBlock.getFakeBlockFor(player.getUniqueID(), location);
                     if (block != null) {
                         dataArray[i] = FakeBlockHelper.getNMSState(block);
                     }
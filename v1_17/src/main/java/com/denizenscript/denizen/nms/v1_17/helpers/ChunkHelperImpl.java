@@ -14,6 +14,8 @@ import org.bukkit.World;
 import org.bukkit.Chunk;
 import org.bukkit.craftbukkit.v1_17_R1.CraftChunk;
 import org.bukkit.craftbukkit.v1_17_R1.CraftWorld;
+import org.bukkit.craftbukkit.v1_17_R1.entity.CraftPlayer;
+import org.bukkit.entity.Player;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
@@ -87,6 +89,11 @@ public class ChunkHelperImpl implements ChunkHelper {
         });
     }
 
+    @Override
+    public void refreshChunkSectionsFor(Player player, Chunk chunk) {
+        ((CraftPlayer) player).getHandle().connection.send(new ClientboundLevelChunkPacket(((CraftChunk) chunk).getHandle()));
+    }
+
     @Override
     public int[] getHeightMap(Chunk chunk) {
         Heightmap map = ((CraftChunk) chunk).getHandle().heightmaps.get(Heightmap.Types.MOTION_BLOCKING);
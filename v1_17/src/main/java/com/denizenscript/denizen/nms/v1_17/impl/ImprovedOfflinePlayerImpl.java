@@ -1,8 +1,9 @@
 package com.denizenscript.denizen.nms.v1_17.impl;
 
 import com.denizenscript.denizen.nms.abstracts.ImprovedOfflinePlayer;
+import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.nms.v1_17.impl.jnbt.CompoundTagImpl;
-import com.denizenscript.denizencore.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.inventory.OfflineInventoryRegistry;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.NbtIo;
 import net.minecraft.world.entity.ai.attributes.AttributeInstance;
@@ -10,7 +11,6 @@ import net.minecraft.world.entity.ai.attributes.AttributeMap;
 import net.minecraft.world.entity.ai.attributes.Attributes;
 import net.minecraft.world.entity.ai.attributes.DefaultAttributes;
 import net.minecraft.world.inventory.PlayerEnderChestContainer;
-import org.bukkit.Bukkit;
 import org.bukkit.craftbukkit.v1_17_R1.inventory.CraftInventory;
 import org.bukkit.craftbukkit.v1_17_R1.inventory.CraftInventoryPlayer;
 import org.bukkit.entity.HumanEntity;
@@ -54,13 +54,14 @@ public class ImprovedOfflinePlayerImpl extends ImprovedOfflinePlayer {
 
     @Override
     public org.bukkit.inventory.PlayerInventory getInventory() {
-        if (offlineInventories.containsKey(getUniqueId())) {
-            return offlineInventories.get(getUniqueId());
+        org.bukkit.inventory.PlayerInventory registered = OfflineInventoryRegistry.getInventory(getUniqueId());
+        if (registered != null) {
+            return registered;
         }
         net.minecraft.world.entity.player.Inventory inventory = new OfflinePlayerInventory(null);
         inventory.load(((CompoundTagImpl) this.compound).toNMSTag().getList("Inventory", 10));
         org.bukkit.inventory.PlayerInventory inv = new OfflineCraftInventoryPlayer(inventory);
-        offlineInventories.put(getUniqueId(), inv);
+        OfflineInventoryRegistry.putInventory(getUniqueId(), inv);
         return inv;
     }
 
@@ -77,13 +78,14 @@ public class ImprovedOfflinePlayerImpl extends ImprovedOfflinePlayer {
 
     @Override
     public Inventory getEnderChest() {
-        if (offlineEnderChests.containsKey(getUniqueId())) {
-            return offlineEnderChests.get(getUniqueId());
+        Inventory registered = OfflineInventoryRegistry.getEnderChest(getUniqueId());
+        if (registered != null) {
+            return registered;
         }
         PlayerEnderChestContainer endchest = new PlayerEnderChestContainer(null);
         endchest.fromTag(((CompoundTagImpl) this.compound).toNMSTag().getList("EnderItems", 10));
         org.bukkit.inventory.Inventory inv = new CraftInventory(endchest);
-        offlineEnderChests.put(getUniqueId(), inv);
+        OfflineInventoryRegistry.putEnderChest(getUniqueId(), inv);
         return inv;
     }
 
@@ -127,32 +129,16 @@ public class ImprovedOfflinePlayerImpl extends ImprovedOfflinePlayer {
     }
 
     @Override
-    protected boolean loadPlayerData(UUID uuid) {
-        try {
-            this.player = uuid;
-            for (org.bukkit.World w : Bukkit.getWorlds()) {
-                this.file = new File(w.getWorldFolder(), "playerdata" + File.separator + this.player + ".dat");
-                if (this.file.exists()) {
-                    this.compound = CompoundTagImpl.fromNMSTag(NbtIo.readCompressed(new FileInputStream(this.file)));
-                    return true;
-                }
-            }
+    protected CompoundTag readPlayerData(File file) throws Exception {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return CompoundTagImpl.fromNMSTag(NbtIo.readCompressed(in));
         }
-        catch (Exception e) {
-            Debug.echoError(e);
-        }
-        return false;
     }
 
     @Override
-    public void savePlayerData() {
-        if (this.exists) {
-            try {
-                NbtIo.writeCompressed(((CompoundTagImpl) this.compound).toNMSTag(), new FileOutputStream(this.file));
-            }
-            catch (Exception e) {
-                Debug.echoError(e);
-            }
+    protected void writePlayerData(File file, CompoundTag compound) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            NbtIo.writeCompressed(((CompoundTagImpl) compound).toNMSTag(), out);
         }
     }
 }
@@ -20,8 +20,7 @@ import net.minecraft.world.scores.criteria.ObjectiveCriteria;
 import org.bukkit.entity.Player;
 
 import java.lang.reflect.Constructor;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
 
 public class SidebarImpl extends Sidebar {
 
@@ -39,61 +38,107 @@ public class SidebarImpl extends Sidebar {
         }
     }
 
-    public Objective obj1;
-    public Objective obj2;
+    public Objective obj;
+
+    /**
+     * One team per line slot, kept for the life of the sidebar, so a changed line only needs its team's prefix updated.
+     */
+    public PlayerTeam[] teams = new PlayerTeam[MAX_LENGTH];
+
+    /**
+     * What the client currently has: whether the objective exists, and the text (null if unused) and score of each slot.
+     */
+    public boolean shown = false;
+    public String shownTitle;
+    public String[] shownLines = new String[MAX_LENGTH];
+    public int[] shownScores = new int[MAX_LENGTH];
+
+    /**
+     * The parsed text of each line currently shown, so lines that only moved to a different slot aren't parsed again.
+     */
+    public HashMap<String, MutableComponent> parsedLines = new HashMap<>();
 
     public SidebarImpl(Player player) {
         super(player);
-        MutableComponent chatComponentTitle = Handler.componentToNMS(FormattedTextHelper.parse(title, ChatColor.WHITE));
-        this.obj1 = new Objective(dummyScoreboard, "dummy_1", dummyCriteria, chatComponentTitle, ObjectiveCriteria.RenderType.INTEGER);
-        this.obj2 = new Objective(dummyScoreboard, "dummy_2", dummyCriteria, chatComponentTitle, ObjectiveCriteria.RenderType.INTEGER);
+        MutableComponent chatComponentTitle = Handler.componentToNMS(FormattedTextHelper.parseShared(title, ChatColor.WHITE));
+        this.obj = new Objective(dummyScoreboard, "dummy_1", dummyCriteria, chatComponentTitle, ObjectiveCriteria.RenderType.INTEGER);
+        shownTitle = title;
     }
 
-    @Override
-    protected void setDisplayName(String title) {
-        if (this.obj1 != null) {
-            MutableComponent chatComponentTitle = Handler.componentToNMS(FormattedTextHelper.parse(title, ChatColor.WHITE));
-            this.obj1.setDisplayName(chatComponentTitle);
-            this.obj2.setDisplayName(chatComponentTitle);
+    public PlayerTeam getTeam(int slot) {
+        PlayerTeam team = teams[slot];
+        if (team == null) {
+            String lineId = Utilities.generateRandomColors(8);
+            team = new PlayerTeam(dummyScoreboard, lineId);
+            team.getPlayers().add(lineId);
+            teams[slot] = team;
         }
+        return team;
     }
 
-    public List<PlayerTeam> generatedTeams = new ArrayList<>();
-
     @Override
-    public void sendUpdate() {
-        List<PlayerTeam> oldTeams = generatedTeams;
-        generatedTeams = new ArrayList<>();
-        PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(this.obj1, 0));
-        for (int i = 0; i < this.lines.length; i++) {
-            String line = this.lines[i];
+    protected void sendChanges() {
+        boolean titleChanged = !title.equals(shownTitle);
+        if (titleChanged) {
+            obj.setDisplayName(Handler.componentToNMS(FormattedTextHelper.parseShared(title, ChatColor.WHITE)));
+            shownTitle = title;
+        }
+        if (!shown) {
+            PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(obj, 0));
+            shown = true;
+        }
+        else if (titleChanged) {
+            PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(obj, 2));
+        }
+        HashMap<String, MutableComponent> newParsedLines = new HashMap<>();
+        for (int i = 0; i < MAX_LENGTH; i++) {
+            String line = lines[i];
+            String shownLine = shownLines[i];
             if (line == null) {
-                break;
+                if (shownLine != null) {
+                    PlayerTeam team = teams[i];
+                    PacketHelperImpl.send(player, new ClientboundSetScorePacket(ServerScoreboard.Method.REMOVE, obj.getName(), team.getName(), 0));
+                    PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createRemovePacket(team));
+                    shownLines[i] = null;
+                }
+                continue;
             }
-            String lineId = Utilities.generateRandomColors(8);
-            PlayerTeam team = new PlayerTeam(dummyScoreboard, lineId);
-            team.getPlayers().add(lineId);
-            team.setPlayerPrefix(Handler.componentToNMS(FormattedTextHelper.parse(line, ChatColor.WHITE)));
-            generatedTeams.add(team);
-            PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createAddOrModifyPacket(team, true));
-            PacketHelperImpl.send(player, new ClientboundSetScorePacket(ServerScoreboard.Method.CHANGE, obj1.getName(), lineId, this.scores[i]));
-        }
-        PacketHelperImpl.send(player, new ClientboundSetDisplayObjectivePacket(1, this.obj1));
-        PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(this.obj2, 1));
-        Objective temp = this.obj2;
-        this.obj2 = this.obj1;
-        this.obj1 = temp;
-        for (PlayerTeam team : oldTeams) {
-            PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createRemovePacket(team));
+            PlayerTeam team = getTeam(i);
+            MutableComponent parsed = newParsedLines.get(line);
+            if (parsed == null) {
+                parsed = parsedLines.get(line);
+                if (parsed == null) {
+                    parsed = Handler.componentToNMS(FormattedTextHelper.parseShared(line, ChatColor.WHITE));
+                }
+                newParsedLines.put(line, parsed);
+            }
+            if (!line.equals(shownLine)) {
+                team.setPlayerPrefix(parsed);
+                PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createAddOrModifyPacket(team, shownLine == null));
+            }
+            if (shownLine == null || scores[i] != shownScores[i]) {
+                PacketHelperImpl.send(player, new ClientboundSetScorePacket(ServerScoreboard.Method.CHANGE, obj.getName(), team.getName(), scores[i]));
+            }
+            shownLines[i] = line;
+            shownScores[i] = scores[i];
         }
+        parsedLines = newParsedLines;
+        // Claim the sidebar slot again with every batch of changes, in case something else (like another plugin's scoreboard) took it over since
+        PacketHelperImpl.send(player, new ClientboundSetDisplayObjectivePacket(1, obj));
     }
 
     @Override
-    public void remove() {
-        for (PlayerTeam team : generatedTeams) {
-            PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createRemovePacket(team));
+    protected void sendRemove() {
+        for (int i = 0; i < MAX_LENGTH; i++) {
+            if (shownLines[i] != null) {
+                PacketHelperImpl.send(player, ClientboundSetPlayerTeamPacket.createRemovePacket(teams[i]));
+                shownLines[i] = null;
+            }
+        }
+        parsedLines.clear();
+        if (shown) {
+            PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(obj, 1));
+            shown = false;
         }
-        generatedTeams.clear();
-        PacketHelperImpl.send(player, new ClientboundSetObjectivePacket(this.obj2, 1));
     }
 }
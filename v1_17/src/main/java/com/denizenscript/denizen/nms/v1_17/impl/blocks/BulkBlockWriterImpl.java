@@ -0,0 +1,70 @@
+package com.denizenscript.denizen.nms.v1_17.impl.blocks;
+
+import com.denizenscript.denizen.nms.abstracts.BulkBlockWriter;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.craftbukkit.v1_17_R1.CraftChunk;
+import org.bukkit.craftbukkit.v1_17_R1.CraftWorld;
+import org.bukkit.craftbukkit.v1_17_R1.block.data.CraftBlockData;
+
+public class BulkBlockWriterImpl extends BulkBlockWriter {
+
+    public BulkBlockWriterImpl(World world) {
+        super(world);
+    }
+
+    @Override
+    public boolean setDirect(int x, int y, int z, BlockData data) {
+        if (y < world.getMinHeight() || y >= world.getMaxHeight()) {
+            return true;
+        }
+        BlockState state = ((CraftBlockData) data).getState();
+        if (state.hasBlockEntity()) {
+            return false;
+        }
+        LevelChunk chunk = ((CraftChunk) world.getChunkAt(x >> 4, z >> 4)).getHandle();
+        LevelChunkSection[] sections = chunk.getSections();
+        int sectionIndex = chunk.getSectionIndex(y);
+        LevelChunkSection section = sections[sectionIndex];
+        if (section == LevelChunk.EMPTY_SECTION) {
+            if (state.isAir()) {
+                return true;
+            }
+            section = new LevelChunkSection(SectionPos.blockToSectionCoord(y));
+            sections[sectionIndex] = section;
+        }
+        BlockState oldState = section.getBlockState(x & 15, y & 15, z & 15);
+        if (oldState == state) {
+            return true;
+        }
+        if (oldState.hasBlockEntity()) {
+            return false;
+        }
+        boolean wasEmpty = section.isEmpty();
+        section.setBlockState(x & 15, y & 15, z & 15, state, false);
+        for (Heightmap heightmap : chunk.heightmaps.values()) {
+            heightmap.update(x & 15, y, z & 15, state);
+        }
+        BlockPos pos = new BlockPos(x, y, z);
+        LevelLightEngine lightEngine = chunk.getLevel().getChunkSource().getLightEngine();
+        if (wasEmpty != section.isEmpty()) {
+            lightEngine.updateSectionStatus(pos, section.isEmpty());
+        }
+        // Same check the server uses to decide whether a block change needs relighting
+        if (oldState.getLightBlock(chunk, pos) != state.getLightBlock(chunk, pos) || oldState.getLightEmission() != state.getLightEmission()
+                || oldState.useShapeForLightOcclusion() || state.useShapeForLightOcclusion()) {
+            lightEngine.checkBlock(pos);
+        }
+        // Keep points of interest (beds, workstations, etc.) in sync, as a normal block change would
+        ((CraftWorld) world).getHandle().onBlockStateChange(pos, oldState, state);
+        chunk.setUnsaved(true);
+        return true;
+    }
+}
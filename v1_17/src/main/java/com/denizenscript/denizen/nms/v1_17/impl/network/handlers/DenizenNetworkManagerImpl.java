@@ -21,6 +21,7 @@ import com.denizenscript.denizen.utilities.entity.EntityAttachmentHelper;
 import com.denizenscript.denizen.utilities.entity.HideEntitiesHelper;
 import com.denizenscript.denizen.utilities.packets.DenizenPacketHandler;
 import com.denizenscript.denizen.utilities.packets.HideParticles;
+import com.denizenscript.denizen.utilities.packets.PacketDispatchTable;
 import com.mojang.datafixers.util.Pair;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
@@ -235,21 +236,41 @@ public class DenizenNetworkManagerImpl extends Connection {
             }
         }
         packetsSent++;
-        if (processAttachToForPacket(packet)
-            || processHiddenEntitiesForPacket(packet)
-            || processPacketHandlerForPacket(packet)
-            || processMirrorForPacket(packet)
-            || processParticlesForPacket(packet)
-            || processDisguiseForPacket(packet, genericfuturelistener)
-            || processMetadataChangesForPacket(packet, genericfuturelistener)
-            || processEquipmentForPacket(packet, genericfuturelistener)
-            || processShowFakeForPacket(packet, genericfuturelistener)) {
+        if (packetHandlers.dispatch(this, packet, genericfuturelistener)) {
             return;
         }
-        processBlockLightForPacket(packet);
         oldManager.send(packet, genericfuturelistener);
     }
 
+    public static final PacketDispatchTable<DenizenNetworkManagerImpl, Packet<?>, GenericFutureListener<? extends Future<? super Void>>> packetHandlers = new PacketDispatchTable<>();
+
+    static {
+        packetHandlers.register("attach_to", () -> !EntityAttachmentHelper.toEntityToData.isEmpty(), (manager, packet, listener) -> manager.processAttachToForPacket(packet),
+                ClientboundMoveEntityPacket.class, ClientboundSetEntityMotionPacket.class, ClientboundTeleportEntityPacket.class);
+        packetHandlers.register("hidden_entities", HideEntitiesHelper::hasAnyHides, (manager, packet, listener) -> manager.processHiddenEntitiesForPacket(packet),
+                ClientboundAddPlayerPacket.class, ClientboundAddEntityPacket.class, ClientboundAddMobPacket.class, ClientboundAddPaintingPacket.class, ClientboundAddExperienceOrbPacket.class,
+                ClientboundMoveEntityPacket.class, ClientboundSetEntityDataPacket.class, ClientboundSetEntityMotionPacket.class, ClientboundTeleportEntityPacket.class);
+        packetHandlers.register("packet_handler", null, (manager, packet, listener) -> manager.processPacketHandlerForPacket(packet),
+                ClientboundChatPacket.class, ClientboundSetEntityDataPacket.class);
+        packetHandlers.register("mirror", null, (manager, packet, listener) -> manager.processMirrorForPacket(packet),
+                ClientboundPlayerInfoPacket.class);
+        packetHandlers.register("particles", () -> !HideParticles.hidden.isEmpty(), (manager, packet, listener) -> manager.processParticlesForPacket(packet),
+                ClientboundLevelParticlesPacket.class);
+        packetHandlers.register("disguise", () -> !DisguiseCommand.disguises.isEmpty(), DenizenNetworkManagerImpl::processDisguiseForPacket,
+                ClientboundSetEntityDataPacket.class, ClientboundAddPlayerPacket.class, ClientboundAddEntityPacket.class, ClientboundAddMobPacket.class);
+        packetHandlers.register("metadata_changes", () -> RenameCommand.hasAnyDynamicRenames() || !SneakCommand.forceSetSneak.isEmpty(), DenizenNetworkManagerImpl::processMetadataChangesForPacket,
+                ClientboundSetEntityDataPacket.class);
+        packetHandlers.register("equipment", () -> !FakeEquipCommand.overrides.isEmpty(), DenizenNetworkManagerImpl::processEquipmentForPacket,
+                ClientboundSetEquipmentPacket.class, ClientboundEntityEventPacket.class, ClientboundContainerSetContentPacket.class, ClientboundContainerSetSlotPacket.class);
+        packetHandlers.register("show_fake", FakeBlock::hasAnyFakeBlocks, DenizenNetworkManagerImpl::processShowFakeForPacket,
+                ClientboundLevelChunkPacket.class, ClientboundSectionBlocksUpdatePacket.class, ClientboundBlockUpdatePacket.class, ClientboundBlockBreakAckPacket.class);
+        packetHandlers.register("block_light", () -> !BlockLight.lightsByChunk.isEmpty(), (manager, packet, listener) -> {
+                    manager.processBlockLightForPacket(packet);
+                    return false;
+                },
+                ClientboundLightUpdatePacket.class, ClientboundBlockUpdatePacket.class);
+    }
+
     public boolean processEquipmentForPacket(Packet<?> packet, GenericFutureListener<? extends Future<? super Void>> genericfuturelistener) {
         if (FakeEquipCommand.overrides.isEmpty()) {
             return false;
@@ -891,34 +912,25 @@ public class DenizenNetworkManagerImpl extends Connection {
     }
 
     public boolean processShowFakeForPacket(Packet<?> packet, GenericFutureListener<? extends Future<? super Void>> genericfuturelistener) {
-        if (FakeBlock.blocks.isEmpty()) {
+        if (!FakeBlock.hasAnyFakeBlocks()) {
             return false;
         }
         try {
             if (packet instanceof ClientboundLevelChunkPacket) {
-                FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(player.getUUID());
-                if (map == null) {
-                    return false;
-                }
                 int chunkX = ((ClientboundLevelChunkPacket) packet).getX();
                 int chunkZ = ((ClientboundLevelChunkPacket) packet).getZ();
                 ChunkCoordinate chunkCoord = new ChunkCoordinate(chunkX, chunkZ, player.getLevel().getWorld().getName());
-                List<FakeBlock> blocks = FakeBlock.getFakeBlocksFor(player.getUUID(), chunkCoord);
-                if (blocks == null || blocks.isEmpty()) {
+                ClientboundLevelChunkPacket newPacket = FakeBlockHelper.handleMapChunkPacket(player.getUUID(), chunkCoord, (ClientboundLevelChunkPacket) packet);
+                if (newPacket == null) {
                     return false;
                 }
-                ClientboundLevelChunkPacket newPacket = FakeBlockHelper.handleMapChunkPacket((ClientboundLevelChunkPacket) packet, blocks);
                 oldManager.send(newPacket, genericfuturelistener);
                 return true;
             }
             else if (packet instanceof ClientboundSectionBlocksUpdatePacket) {
-                FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(player.getUUID());
-                if (map == null) {
-                    return false;
-                }
                 SectionPos coord = (SectionPos) SECTIONPOS_MULTIBLOCKCHANGE.get(packet);
                 ChunkCoordinate coordinateDenizen = new ChunkCoordinate(coord.getX(), coord.getZ(), player.getLevel().getWorld().getName());
-                if (!map.byChunk.containsKey(coordinateDenizen)) {
+                if (!FakeBlock.hasFakeBlocksInChunk(player.getUUID(), coordinateDenizen)) {
                     return false;
                 }
                 ClientboundSectionBlocksUpdatePacket newPacket = new ClientboundSectionBlocksUpdatePacket(copyPacket(packet));
@@ -935,7 +947,7 @@ public class DenizenNetworkManagerImpl extends Connection {
                     location.setX(pos.getX());
                     location.setY(pos.getY());
                     location.setZ(pos.getZ());
-                    FakeBlock block = map.byLocation.get(location);
+                    FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), location);
                     if (block != null) {
                         dataArray[i] = FakeBlockHelper.getNMSState(block);
                     }
@@ -3,7 +3,10 @@ package com.denizenscript.denizen.nms.v1_17.impl.network.handlers;
 import com.denizenscript.denizen.nms.v1_17.ReflectionMappingsInfo;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
 import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.utilities.blocks.ChunkCoordinate;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
+import com.denizenscript.denizen.utilities.blocks.FakeBlockRewriteCache;
+import com.denizenscript.denizen.utilities.blocks.FakeChunkBlocks;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import io.netty.buffer.Unpooled;
 import net.minecraft.nbt.CompoundTag;
@@ -16,10 +19,7 @@ import net.minecraft.world.level.chunk.LevelChunkSection;
 import org.bukkit.craftbukkit.v1_17_R1.block.data.CraftBlockData;
 
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.*;
 
 public class FakeBlockHelper {
 
@@ -30,18 +30,6 @@ public class FakeBlockHelper {
         return ((CraftBlockData) block.material.getModernData()).getState();
     }
 
-    public static boolean anyBlocksInSection(List<FakeBlock> blocks, int y) {
-        int minY = y << 4;
-        int maxY = (y << 4) + 16;
-        for (FakeBlock block : blocks) {
-            int blockY = block.location.getBlockY();
-            if (blockY >= minY && blockY < maxY) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public static int indexInPalette(BlockState data) {
         return LevelChunkSection.GLOBAL_BLOCKSTATE_PALETTE.idFor(data);
     }
@@ -59,122 +47,142 @@ public class FakeBlockHelper {
         return -1;
     }
 
-    public static ClientboundLevelChunkPacket handleMapChunkPacket(ClientboundLevelChunkPacket originalPacket, List<FakeBlock> blocks) {
+    /**
+     * Returns a copy of the chunk packet with the player's fake blocks applied, or null if the original packet should be sent as-is.
+     * Rewrites are cached and shared between players that see the same fake blocks in the same chunk.
+     */
+    public static ClientboundLevelChunkPacket handleMapChunkPacket(UUID viewer, ChunkCoordinate chunkCoord, ClientboundLevelChunkPacket originalPacket) {
         try {
-            ClientboundLevelChunkPacket packet = new ClientboundLevelChunkPacket(DenizenNetworkManagerImpl.copyPacket(originalPacket));
-            // TODO: properly update HeightMap?
-            BitSet bitmask = packet.getAvailableSections();
-            FriendlyByteBuf serial = originalPacket.getReadBuffer();
-            FriendlyByteBuf outputSerial = new FriendlyByteBuf(Unpooled.buffer(serial.readableBytes()));
-            List<net.minecraft.nbt.CompoundTag> blockEntities = new ArrayList<>(packet.getBlockEntitiesTags());
-            BLOCKENTITIES_MAPCHUNK.set(packet, blockEntities);
-            ListIterator<CompoundTag> iterator = blockEntities.listIterator();
-            while (iterator.hasNext()) {
-                net.minecraft.nbt.CompoundTag blockEnt = iterator.next();
-                int x = blockEnt.getInt("x");
-                int y = blockEnt.getInt("y");
-                int z = blockEnt.getInt("z");
-                for (FakeBlock block : blocks) {
-                    LocationTag loc = block.location;
-                    if (loc.getBlockX() == x && loc.getBlockY() == y && loc.getBlockZ() == z) {
-                        iterator.remove();
-                        break;
-                    }
+            long start = System.nanoTime();
+            byte[] data = (byte[]) DATA_MAPCHUNK.get(originalPacket);
+            FakeBlockRewriteCache.Key key = FakeBlockRewriteCache.createKey(viewer, chunkCoord, data, originalPacket.getBlockEntitiesTags());
+            if (key == null) {
+                return null;
+            }
+            FakeBlockRewriteCache.Result result = FakeBlockRewriteCache.get(key);
+            if (result == null) {
+                FakeChunkBlocks blocks = FakeBlock.getChunkBlocksFor(viewer, chunkCoord);
+                if (blocks == null) {
+                    return null;
+                }
+                result = rewriteChunkData(originalPacket, blocks);
+                if (result == null) {
+                    return null;
                 }
+                FakeBlockRewriteCache.put(key, result);
+                FakeBlockRewriteCache.recordRewrite(System.nanoTime() - start);
             }
-            for (FakeBlock block : blocks) {
-                LocationTag loc = block.location;
-                net.minecraft.nbt.CompoundTag newCompound = new net.minecraft.nbt.CompoundTag();
-                newCompound.putInt("x", loc.getBlockX());
-                newCompound.putInt("y", loc.getBlockY());
-                newCompound.putInt("z", loc.getBlockZ());
-                newCompound.putString("id", block.material.getMaterial().getKey().toString());
-                blockEntities.add(newCompound);
+            else {
+                FakeBlockRewriteCache.recordHit(System.nanoTime() - start);
             }
-            for (int y = 0; y < 16; y++) {
-                if (bitmask.get(y)) {
-                    int blockCount = serial.readShort();
-                    int width = serial.readUnsignedByte();
-                    int paletteLen = serial.readVarInt();
-                    int[] palette = new int[paletteLen];
+            ClientboundLevelChunkPacket packet = new ClientboundLevelChunkPacket(DenizenNetworkManagerImpl.copyPacket(originalPacket));
+            DATA_MAPCHUNK.set(packet, result.data);
+            BLOCKENTITIES_MAPCHUNK.set(packet, result.copyBlockEntities());
+            return packet;
+        }
+        catch (Exception ex) {
+            Debug.echoError(ex);
+        }
+        return null;
+    }
+
+    public static FakeBlockRewriteCache.Result rewriteChunkData(ClientboundLevelChunkPacket originalPacket, FakeChunkBlocks blocks) {
+        // TODO: properly update HeightMap?
+        BitSet bitmask = originalPacket.getAvailableSections();
+        FriendlyByteBuf serial = originalPacket.getReadBuffer();
+        FriendlyByteBuf outputSerial = new FriendlyByteBuf(Unpooled.buffer(serial.readableBytes()));
+        List<net.minecraft.nbt.CompoundTag> blockEntities = new ArrayList<>(originalPacket.getBlockEntitiesTags());
+        ListIterator<CompoundTag> iterator = blockEntities.listIterator();
+        while (iterator.hasNext()) {
+            net.minecraft.nbt.CompoundTag blockEnt = iterator.next();
+            if (blocks.hasBlockAt(blockEnt.getInt("x"), blockEnt.getInt("y"), blockEnt.getInt("z"))) {
+                iterator.remove();
+            }
+        }
+        for (FakeBlock block : blocks.blocks) {
+            LocationTag loc = block.location;
+            net.minecraft.nbt.CompoundTag newCompound = new net.minecraft.nbt.CompoundTag();
+            newCompound.putInt("x", loc.getBlockX());
+            newCompound.putInt("y", loc.getBlockY());
+            newCompound.putInt("z", loc.getBlockZ());
+            newCompound.putString("id", block.material.getMaterial().getKey().toString());
+            blockEntities.add(newCompound);
+        }
+        for (int y = 0; y < 16; y++) {
+            if (bitmask.get(y)) {
+                int blockCount = serial.readShort();
+                int width = serial.readUnsignedByte();
+                int paletteLen = serial.readVarInt();
+                int[] palette = new int[paletteLen];
+                for (int p = 0; p < paletteLen; p++) {
+                    palette[p] = serial.readVarInt();
+                }
+                int dataLen = serial.readVarInt();
+                long[] blockListHelper = new long[dataLen];
+                for (int i = 0; i < blockListHelper.length; i++) {
+                    blockListHelper[i] = serial.readLong();
+                }
+                outputSerial.writeShort(blockCount);
+                List<FakeBlock> sectionBlocks = blocks.getSection(y);
+                if (sectionBlocks == null) {
+                    outputSerial.writeByte(width);
+                    outputSerial.writeVarInt(paletteLen);
                     for (int p = 0; p < paletteLen; p++) {
-                        palette[p] = serial.readVarInt();
-                    }
-                    int dataLen = serial.readVarInt();
-                    long[] blockListHelper = new long[dataLen];
-                    for (int i = 0; i < blockListHelper.length; i++) {
-                        blockListHelper[i] = serial.readLong();
-                    }
-                    outputSerial.writeShort(blockCount);
-                    if (!anyBlocksInSection(blocks, y)) {
-                        outputSerial.writeByte(width);
-                        outputSerial.writeVarInt(paletteLen);
-                        for (int p = 0; p < paletteLen; p++) {
-                            outputSerial.writeVarInt(palette[p]);
-                        }
-                        outputSerial.writeLongArray(blockListHelper);
-                        continue;
-                    }
-                    char dataBitsF = (char)(64 / width);
-                    int expectedLength = (4096 + dataBitsF - 1) / dataBitsF;
-                    if (blockListHelper.length != expectedLength) {
-                        return originalPacket; // This chunk is too-complex and is using non-standard chunk format. For now, just ignore it.
-                        // TODO: Add support for processing very-complex chunks (DataPaletteHash might be responsible for the unique format?)
+                        outputSerial.writeVarInt(palette[p]);
                     }
-                    BitStorage bits = new BitStorage(width, 4096, blockListHelper);
-                    int minY = y << 4;
-                    int maxY = (y << 4) + 16;
-                    for (FakeBlock block : blocks) {
-                        int blockY = block.location.getBlockY();
-                        if (blockY >= minY && blockY < maxY) {
-                            int blockX = block.location.getBlockX();
-                            int blockZ = block.location.getBlockZ();
-                            blockX -= (blockX >> 4) * 16;
-                            blockY -= (blockY >> 4) * 16;
-                            blockZ -= (blockZ >> 4) * 16;
-                            int blockIndex = blockArrayIndex(blockX, blockY, blockZ);
-                            BlockState replacementData = getNMSState(block);
-                            int globalPaletteIndex = indexInPalette(replacementData);
-                            int subPaletteId = getPaletteSubId(palette, globalPaletteIndex);
-                            if (subPaletteId == -1) {
-                                int[] newPalette = new int[paletteLen + 1];
-                                if (paletteLen >= 0) System.arraycopy(palette, 0, newPalette, 0, paletteLen);
-                                newPalette[paletteLen] = globalPaletteIndex;
-                                subPaletteId = paletteLen;
-                                paletteLen++;
-                                palette = newPalette;
-                                int newWidth = Mth.ceillog2(paletteLen);
-                                if (newWidth > width) {
-                                    BitStorage newBits = new BitStorage(newWidth, 4096);
-                                    for (int i = 0; i < bits.getSize(); i++) {
-                                        newBits.getAndSet(i, bits.get(i));
-                                    }
-                                    bits = newBits;
-                                    width = newWidth;
-                                }
+                    outputSerial.writeLongArray(blockListHelper);
+                    continue;
+                }
+                char dataBitsF = (char)(64 / width);
+                int expectedLength = (4096 + dataBitsF - 1) / dataBitsF;
+                if (blockListHelper.length != expectedLength) {
+                    return null; // This chunk is too-complex and is using non-standard chunk format. For now, just ignore it.
+                    // TODO: Add support for processing very-complex chunks (DataPaletteHash might be responsible for the unique format?)
+                }
+                BitStorage bits = new BitStorage(width, 4096, blockListHelper);
+                for (FakeBlock block : sectionBlocks) {
+                    int blockY = block.location.getBlockY();
+                    int blockX = block.location.getBlockX();
+                    int blockZ = block.location.getBlockZ();
+                    blockX -= (blockX >> 4) * 16;
+                    blockY -= (blockY >> 4) * 16;
+                    blockZ -= (blockZ >> 4) * 16;
+                    int blockIndex = blockArrayIndex(blockX, blockY, blockZ);
+                    BlockState replacementData = getNMSState(block);
+                    int globalPaletteIndex = indexInPalette(replacementData);
+                    int subPaletteId = getPaletteSubId(palette, globalPaletteIndex);
+                    if (subPaletteId == -1) {
+                        int[] newPalette = new int[paletteLen + 1];
+                        if (paletteLen >= 0) System.arraycopy(palette, 0, newPalette, 0, paletteLen);
+                        newPalette[paletteLen] = globalPaletteIndex;
+                        subPaletteId = paletteLen;
+                        paletteLen++;
+                        palette = newPalette;
+                        int newWidth = Mth.ceillog2(paletteLen);
+                        if (newWidth > width) {
+                            BitStorage newBits = new BitStorage(newWidth, 4096);
+                            for (int i = 0; i < bits.getSize(); i++) {
+                                newBits.getAndSet(i, bits.get(i));
                             }
-                            bits.getAndSet(blockIndex, subPaletteId);
+                            bits = newBits;
+                            width = newWidth;
                         }
                     }
-                    outputSerial.writeByte(width);
-                    outputSerial.writeVarInt(paletteLen);
-                    for (int p = 0; p < palette.length; p++) {
-                        outputSerial.writeVarInt(palette[p]);
-                    }
-                    outputSerial.writeLongArray(bits.getRaw());
+                    bits.getAndSet(blockIndex, subPaletteId);
                 }
+                outputSerial.writeByte(width);
+                outputSerial.writeVarInt(paletteLen);
+                for (int p = 0; p < palette.length; p++) {
+                    outputSerial.writeVarInt(palette[p]);
+                }
+                outputSerial.writeLongArray(bits.getRaw());
             }
-            int[] biomes =  packet.getBiomes();
-            if (biomes != null) {
-                outputSerial.writeVarIntArray(biomes);
-            }
-            byte[] outputBytes = outputSerial.array();
-            DATA_MAPCHUNK.set(packet, outputBytes);
-            return packet;
         }
-        catch (Exception ex) {
-            Debug.echoError(ex);
+        int[] biomes = originalPacket.getBiomes();
+        if (biomes != null) {
+            outputSerial.writeVarIntArray(biomes);
         }
-        return null;
+        byte[] outputBytes = Arrays.copyOf(outputSerial.array(), outputSerial.writerIndex());
+        return new FakeBlockRewriteCache.Result(outputBytes, blockEntities);
     }
 }